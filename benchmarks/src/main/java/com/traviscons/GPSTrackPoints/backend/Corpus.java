@@ -0,0 +1,62 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* Corpus
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+/**
+ * GPSd report lines as seen from a SiRF receiver, one corpus per report class.
+ */
+final class Corpus {
+
+	static final String[] TPV = {
+		"{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"mode\":3,\"time\":\"2018-05-12T17:01:04.000Z\",\"ept\":0.005,\"lat\":42.239283474,\"lon\":-88.329418327,\"alt\":268.474,\"epx\":8.473,\"epy\":11.297,\"epv\":30.360,\"track\":0.0000,\"speed\":0.000,\"climb\":0.000,\"eps\":22.59,\"epc\":60.72}",
+		"{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"mode\":3,\"time\":\"2018-05-12T17:01:05.000Z\",\"ept\":0.005,\"lat\":42.239285012,\"lon\":-88.329420880,\"alt\":268.912,\"epx\":9.160,\"epy\":12.105,\"epv\":31.002,\"track\":231.2100,\"speed\":0.232,\"climb\":0.012,\"eps\":24.21,\"epc\":62.00}",
+		"{\"class\":\"TPV\",\"tag\":\"RMC\",\"device\":\"/dev/ttyUSB0\",\"mode\":2,\"time\":\"2018-05-12T17:01:06.000Z\",\"ept\":0.005,\"lat\":42.239290102,\"lon\":-88.329431007,\"epx\":9.511,\"epy\":12.730,\"track\":229.8700,\"speed\":0.411,\"eps\":25.46}",
+		"{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"mode\":1}"
+	};
+
+	static final String[] SKY = {
+		"{\"class\":\"SKY\",\"device\":\"/dev/ttyUSB0\",\"xdop\":0.72,\"ydop\":0.93,\"vdop\":1.67,\"tdop\":1.02,\"hdop\":1.05,\"gdop\":2.31,\"pdop\":1.97,\"satellites\":[{\"PRN\":7,\"el\":44,\"az\":306,\"ss\":29,\"used\":true},{\"PRN\":8,\"el\":18,\"az\":267,\"ss\":22,\"used\":true},{\"PRN\":9,\"el\":8,\"az\":173,\"ss\":0,\"used\":false},{\"PRN\":30,\"el\":70,\"az\":52,\"ss\":31,\"used\":true},{\"PRN\":133,\"el\":33,\"az\":235,\"ss\":0,\"used\":false}]}",
+		"{\"class\":\"SKY\",\"device\":\"/dev/ttyUSB0\",\"time\":\"2018-05-12T17:01:07.000Z\",\"xdop\":0.84,\"hdop\":1.05,\"satellites\":[{\"PRN\":1,\"el\":61,\"az\":12,\"ss\":35,\"used\":true},{\"PRN\":11,\"el\":27,\"az\":101,\"ss\":30,\"used\":true},{\"PRN\":17,\"el\":49,\"az\":290,\"ss\":33,\"used\":true},{\"PRN\":22,\"el\":5,\"az\":330,\"ss\":0,\"used\":false}]}"
+	};
+
+	static final String[] SUBFRAME = {
+		"{\"class\":\"SUBFRAME\",\"device\":\"/dev/ttyUSB0\",\"tSV\":7,\"TOW17\":112230,\"frame\":1,\"scaled\":true,\"EPHEM1\":{\"WN\":1000,\"IODC\":50,\"L2\":1,\"ura\":0,\"hlth\":0,\"L2P\":0,\"Tgd\":-1.0E-8,\"toc\":331200,\"af2\":0.0,\"af1\":-2.2E-12,\"af0\":2.3E-4}}",
+		"{\"class\":\"SUBFRAME\",\"device\":\"/dev/ttyUSB0\",\"tSV\":8,\"TOW17\":112231,\"frame\":1,\"scaled\":true,\"EPHEM1\":{\"WN\":1000,\"IODC\":81,\"L2\":1,\"ura\":0,\"hlth\":0,\"L2P\":0,\"Tgd\":-4.6E-9,\"toc\":331200,\"af2\":0.0,\"af1\":-9.1E-13,\"af0\":-1.7E-5}}"
+	};
+
+	private Corpus() {
+		//
+	}
+
+	/**
+	 * @param name TPV, SKY or SUBFRAME
+	 * @return the corpus lines
+	 */
+	static String[] get(final String name) {
+		if ("TPV".equals(name)) {
+			return TPV;
+		}
+		if ("SKY".equals(name)) {
+			return SKY;
+		}
+		if ("SUBFRAME".equals(name)) {
+			return SUBFRAME;
+		}
+		throw new IllegalArgumentException("Unknown corpus " + name);
+	}
+}
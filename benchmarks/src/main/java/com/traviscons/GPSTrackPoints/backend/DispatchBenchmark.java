@@ -0,0 +1,85 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* DispatchBenchmark
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * GPSdEndpoint.handle fanning a report out to its listeners on the calling thread.
+ * The endpoint is never started, handle() is called directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+	@Param({ "1", "10", "100" })
+	public int listeners;
+
+	private GPSdEndpoint endpoint;
+
+	private TPVObject tpv;
+
+	private SKYObject sky;
+
+	@Setup
+	public void setUp(final Blackhole blackhole) {
+		this.endpoint = new GPSdEndpoint("localhost", 2947);
+		for (int i = 0; i < this.listeners; i++) {
+			// TPV only, so SKY reports show what an unsubscribed class costs
+			this.endpoint.addListener(new ObjectListener(null, null, null) {
+				@Override
+				public void handleTPV(final TPVObject tpv) {
+					blackhole.consume(tpv);
+				}
+			}, TPVObject.class);
+		}
+		this.tpv = new TPVObject();
+		this.sky = new SKYObject();
+	}
+
+	@Benchmark
+	public void handleTPV() {
+		this.endpoint.handle(this.tpv);
+	}
+
+	@Benchmark
+	public void handleUnsubscribedSKY() {
+		this.endpoint.handle(this.sky);
+	}
+}
@@ -0,0 +1,130 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* EphemerisBenchmark
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.traviscons.GPSTrackPoints.types.subframes.EPHEM1Object;
+import com.traviscons.GPSTrackPoints.types.subframes.EPHEM2Object;
+import com.traviscons.GPSTrackPoints.types.subframes.EPHEM3Object;
+
+/**
+ * Azimuth and elevation of a 31 satellite constellation over the four hour fit interval
+ * at one second steps, 14400 epochs per call. Epochs per second are 14400 / the score.
+ *
+ * batch runs EphemerisBatch, single computes every satellite state on its own the way a
+ * caller without the batch would, starting each Kepler iteration from scratch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EphemerisBenchmark {
+
+	private static final int EPOCHS = 14400;
+
+	private static final double TOE = 331200;
+
+	@Param({ "31" })
+	private int satellites;
+
+	private Ephemeris[] ephemerides;
+
+	private double start;
+
+	private double[] azimuth;
+
+	private double[] elevation;
+
+	private final Observer observer = new Observer(42.239283474, -88.329418327, 268.474);
+
+	private final EphemerisBatch batch = new EphemerisBatch(this.observer, 5);
+
+	@Setup
+	public void setUp() {
+		this.ephemerides = new Ephemeris[this.satellites];
+		for (int prn = 1; prn <= this.satellites; prn++) {
+			final EPHEM1Object sf1 = new EPHEM1Object();
+			sf1.setIODC(30);
+			sf1.setHlth(0);
+			sf1.setToc((int) TOE);
+			sf1.setAf0(2.3e-4);
+			sf1.setAf1(-2.2e-12);
+			sf1.setAf2(0);
+			final EPHEM2Object sf2 = new EPHEM2Object();
+			sf2.setIODE(30);
+			sf2.setSqrtA(5153.6);
+			sf2.setE(0.005 + (prn * 0.0005));
+			sf2.setM0(-1 + (((prn * 7) % 32) / 16.0));
+			sf2.setDeltan(1.4e-9);
+			sf2.setCrs(20.5);
+			sf2.setCuc(1.1e-6);
+			sf2.setCus(8.2e-6);
+			sf2.setToe((int) TOE);
+			final EPHEM3Object sf3 = new EPHEM3Object();
+			sf3.setIODE(30);
+			sf3.setI0(0.306);
+			sf3.setOmega0(-1 + ((prn % 6) / 3.0));
+			sf3.setOmega(0.21);
+			sf3.setOmegad(-2.6e-9);
+			sf3.setIDOT(1e-10);
+			sf3.setCrc(250.1);
+			sf3.setCic(1.2e-7);
+			sf3.setCis(-5e-8);
+			this.ephemerides[prn - 1] = Ephemeris.from(prn, sf1, sf2, sf3);
+		}
+		this.start = ((2000 * GpsTime.SECONDS_PER_WEEK) + TOE) - 7200;
+		this.azimuth = new double[EPOCHS * this.satellites];
+		this.elevation = new double[EPOCHS * this.satellites];
+	}
+
+	@Benchmark
+	public int batch() {
+		return this.batch.evaluate(this.ephemerides, this.start, 1, EPOCHS, this.azimuth, this.elevation, null);
+	}
+
+	@Benchmark
+	public int single() {
+		final double[] look = new double[3];
+		int visible = 0;
+		for (int k = 0; k < EPOCHS; k++) {
+			for (int s = 0; s < this.ephemerides.length; s++) {
+				final double[] state = this.ephemerides[s].compute(this.start + k);
+				this.observer.look(state[Ephemeris.X], state[Ephemeris.Y], state[Ephemeris.Z], look, 0);
+				if (look[1] >= 5) {
+					visible++;
+				}
+			}
+		}
+		return visible;
+	}
+}
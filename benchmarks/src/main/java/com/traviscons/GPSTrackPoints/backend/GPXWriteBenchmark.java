@@ -0,0 +1,131 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* GPXWriteBenchmark
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.traviscons.GPSTrackPoints.types.ENMEAMode;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * Appending one point to a GPX file.
+ *
+ * rafWaypoint is the way ButtonCallback used to write: open a RandomAccessFile, seek
+ * over the closing tag and write byte by byte. It is kept here as the baseline.
+ * Syncing is switched off for GPXWriter so only the write path is compared.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GPXWriteBenchmark {
+
+	private File rafFile;
+
+	private File waypointFile;
+
+	private File trackFile;
+
+	private GPXWriter waypoints;
+
+	private GPXWriter track;
+
+	private TPVObject tpv;
+
+	private int index;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws IOException {
+		this.rafFile = File.createTempFile("GPXWriteBenchmark", ".gpx");
+		final RandomAccessFile raf = new RandomAccessFile(this.rafFile, "rw");
+		writeString(raf, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<gpx version=\"1.1\">\n</gpx>\n");
+		raf.close();
+
+		this.waypointFile = File.createTempFile("GPXWriteBenchmark", ".gpx");
+		this.waypoints = new GPXWriter(this.waypointFile.getPath(), "benchmark");
+		this.waypoints.setSyncEveryPoints(0);
+		this.waypoints.setSyncInterval(0);
+
+		this.trackFile = File.createTempFile("GPXWriteBenchmark", ".gpx");
+		this.track = new GPXWriter(this.trackFile.getPath(), "benchmark");
+		this.track.setSyncEveryPoints(0);
+		this.track.setSyncInterval(0);
+		this.track.setFlushInterval(0);
+
+		this.tpv = new TPVObject();
+		this.tpv.setLatitude(42.239283474);
+		this.tpv.setLongitude(-88.329418327);
+		this.tpv.setAltitude(268.474);
+		this.tpv.setTimestampText("2018-05-12T17:01:04.000Z");
+		this.tpv.setMode(ENMEAMode.ThreeDimensional);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws IOException {
+		this.waypoints.close();
+		this.track.close();
+		this.rafFile.delete();
+		this.waypointFile.delete();
+		this.trackFile.delete();
+	}
+
+	@Benchmark
+	public void rafWaypoint() throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(this.rafFile, "rw");
+		raf.seek(raf.length() - 7);
+		writeString(raf, "<wpt lat=\"" + this.tpv.getLatitude() + "\" lon=\"" + this.tpv.getLongitude() + "\">");
+		writeString(raf, "<ele>" + this.tpv.getAltitude() + "</ele><time>" + this.tpv.getTimestampText() + "</time>");
+		writeString(raf, "<name>" + this.index++ + "</name><fix>3d</fix></wpt>\n");
+		writeString(raf, "</gpx>\n");
+		raf.close();
+	}
+
+	@Benchmark
+	public void writerWaypoint() throws IOException {
+		this.waypoints.addWaypoint(this.tpv, Integer.toString(this.index++));
+	}
+
+	@Benchmark
+	public void writerTrackPoint() throws IOException {
+		this.track.addTrackPoint(this.tpv);
+	}
+
+	private static void writeString(final RandomAccessFile file, final String s) throws IOException {
+		for (int i = 0; i < s.length(); i++) {
+			file.writeByte(s.charAt(i));
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* GeodesicBenchmark
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Segment distances of a 100000 point track: GISTool per call against GeodesicEngine.
+ *
+ * The vector kernel is only used on JDK 17 and later when the module is added, e.g.
+ * <pre>
+ * java -jar target/benchmarks.jar Geodesic -jvmArgsAppend --add-modules=jdk.incubator.vector
+ * </pre>
+ * Otherwise sphericalVector runs the scalar kernel, see the engine's isVectorized().
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeodesicBenchmark {
+
+	private static final int POINTS = 100000;
+
+	private final double[] lat = new double[POINTS];
+
+	private final double[] lon = new double[POINTS];
+
+	private final double[] distances = new double[POINTS - 1];
+
+	private final double[] cumulative = new double[POINTS];
+
+	private final double[] bearings = new double[POINTS - 1];
+
+	private final GeodesicEngine scalar = new GeodesicEngine(GeodesicEngine.Model.SPHERICAL, false);
+
+	private final GeodesicEngine vector = new GeodesicEngine(GeodesicEngine.Model.SPHERICAL, true);
+
+	private final GeodesicEngine vincenty = new GeodesicEngine(GeodesicEngine.Model.VINCENTY);
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+		this.lat[0] = 42.239283474;
+		this.lon[0] = -88.329418327;
+		for (int i = 1; i < POINTS; i++) {
+			this.lat[i] = this.lat[i - 1] + ((random.nextDouble() - 0.5) * 0.0002);
+			this.lon[i] = this.lon[i - 1] + ((random.nextDouble() - 0.5) * 0.0002);
+		}
+	}
+
+	@Benchmark
+	public double[] gisToolPerCall() {
+		for (int i = 0; i < (POINTS - 1); i++) {
+			this.distances[i] = GISTool.getDistance(this.lon[i], this.lon[i + 1], this.lat[i], this.lat[i + 1]) * 1000.0;
+		}
+		return this.distances;
+	}
+
+	@Benchmark
+	public double[] sphericalScalar() {
+		this.scalar.segments(this.lat, this.lon, POINTS, this.distances, null, null);
+		return this.distances;
+	}
+
+	@Benchmark
+	public double[] sphericalVector() {
+		this.vector.segments(this.lat, this.lon, POINTS, this.distances, null, null);
+		return this.distances;
+	}
+
+	@Benchmark
+	public double[] sphericalVectorAllOutputs() {
+		this.vector.segments(this.lat, this.lon, POINTS, this.distances, this.cumulative, this.bearings);
+		return this.cumulative;
+	}
+
+	@Benchmark
+	public double[] vincenty() {
+		this.vincenty.segments(this.lat, this.lon, POINTS, this.distances, null, null);
+		return this.distances;
+	}
+}
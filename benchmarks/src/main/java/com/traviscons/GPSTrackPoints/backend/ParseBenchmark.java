@@ -0,0 +1,73 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* ParseBenchmark
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.traviscons.GPSTrackPoints.types.IGPSObject;
+import com.traviscons.GPSTrackPoints.types.ParseException;
+
+/**
+ * ResultParser.parse on a corpus of one report class, one line per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+	@Param({ "TPV", "SKY", "SUBFRAME" })
+	public String corpus;
+
+	@Param({ "ResultParser", "StreamingResultParser" })
+	public String parser;
+
+	private String[] lines;
+
+	private ResultParser resultParser;
+
+	private int next;
+
+	@Setup
+	public void setUp() {
+		this.lines = Corpus.get(this.corpus);
+		this.resultParser = "ResultParser".equals(this.parser) ? new ResultParser() : new StreamingResultParser();
+	}
+
+	@Benchmark
+	public IGPSObject parse() throws ParseException, JSONException {
+		final String line = this.lines[this.next];
+		this.next = (this.next + 1) % this.lines.length;
+		return this.resultParser.parse(line);
+	}
+}
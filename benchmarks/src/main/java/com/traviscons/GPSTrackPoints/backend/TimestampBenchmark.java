@@ -0,0 +1,69 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* TimestampBenchmark
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AbstractResultParser.parseTimestamp and the TimestampDecoder behind it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimestampBenchmark {
+
+	/// same day, so the decoder's day cache is hit as with a live receiver
+	private final String[] timestamps = {
+		"2018-05-12T17:01:04.000Z", "2018-05-12T17:01:05.000Z", "2018-05-12T17:01:06.12Z", "2018-05-12T17:01:07Z"
+	};
+
+	private final ResultParser parser = new ResultParser();
+
+	private final TimestampDecoder decoder = new TimestampDecoder();
+
+	private int next;
+
+	private String nextTimestamp() {
+		final String timestamp = this.timestamps[this.next];
+		this.next = (this.next + 1) & 3;
+		return timestamp;
+	}
+
+	@Benchmark
+	public double parseTimestamp() {
+		return this.parser.parseTimestamp(this.nextTimestamp());
+	}
+
+	@Benchmark
+	public double decode() {
+		return this.decoder.decode(this.nextTimestamp());
+	}
+}
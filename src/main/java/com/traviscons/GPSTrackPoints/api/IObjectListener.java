@@ -23,6 +23,8 @@ package com.traviscons.GPSTrackPoints.api;
 import com.traviscons.GPSTrackPoints.types.ATTObject;
 import com.traviscons.GPSTrackPoints.types.DeviceObject;
 import com.traviscons.GPSTrackPoints.types.DevicesObject;
+import com.traviscons.GPSTrackPoints.types.GSTObject;
+import com.traviscons.GPSTrackPoints.types.PollObject;
 import com.traviscons.GPSTrackPoints.types.SKYObject;
 import com.traviscons.GPSTrackPoints.types.TPVObject;
 import com.traviscons.GPSTrackPoints.types.subframes.SUBFRAMEObject;
@@ -48,6 +50,13 @@ public interface IObjectListener {
 	 */
 	void handleATT(ATTObject att);
 	
+	/**
+	 * @param gst the GST object. Ignored unless overridden.
+	 */
+	default void handleGST(final GSTObject gst) {
+		// implement if needed
+	}
+	
 	/**
 	 * @param subframe the SUBFRAME object
 	 */
@@ -63,4 +72,11 @@ public interface IObjectListener {
 	 */
 	void handleDevice(DeviceObject device);
 	
+	/**
+	 * @param poll the POLL object. Ignored unless overridden.
+	 */
+	default void handlePoll(final PollObject poll) {
+		// implement if needed
+	}
+	
 }
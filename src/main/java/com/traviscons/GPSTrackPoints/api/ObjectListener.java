@@ -26,6 +26,8 @@ import java.io.IOException;
 import com.traviscons.GPSTrackPoints.types.ATTObject;
 import com.traviscons.GPSTrackPoints.types.DeviceObject;
 import com.traviscons.GPSTrackPoints.types.DevicesObject;
+import com.traviscons.GPSTrackPoints.types.GSTObject;
+import com.traviscons.GPSTrackPoints.types.PollObject;
 import com.traviscons.GPSTrackPoints.types.SKYObject;
 import com.traviscons.GPSTrackPoints.types.TPVObject;
 import com.traviscons.GPSTrackPoints.types.subframes.SUBFRAMEObject;
@@ -64,6 +66,11 @@ public class ObjectListener implements IObjectListener {
 		// implement in subclass if needed
 	}
 
+	@Override
+	public void handleGST(final GSTObject gst) {
+		// implement in subclass if needed
+	}
+
 	@Override
 	public void handleSUBFRAME(final SUBFRAMEObject subframe) {
 		// implement in subclass if needed
@@ -79,4 +86,9 @@ public class ObjectListener implements IObjectListener {
 		// implement in subclass if needed
 	}
 
+	@Override
+	public void handlePoll(final PollObject poll) {
+		// implement in subclass if needed
+	}
+
 }
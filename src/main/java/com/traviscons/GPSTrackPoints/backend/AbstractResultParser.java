@@ -20,12 +20,8 @@ package com.traviscons.GPSTrackPoints.backend;
  * #L%
  */
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
-import java.util.TimeZone;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -39,14 +35,14 @@ import com.traviscons.GPSTrackPoints.types.ParseException;
  */
 public abstract class AbstractResultParser {
 
-	protected final DateFormat dateFormat; // Don't make this static!
+	/// decodes the GPSd time fields. It is thread safe so a parser can be shared.
+	protected final TimestampDecoder timestampDecoder;
 
 	/**
 	 * Create new ResultParser
 	 */
 	public AbstractResultParser() {
-		this.dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-		this.dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		this.timestampDecoder = new TimestampDecoder();
 	}
 
 	/**
@@ -65,6 +61,17 @@ public abstract class AbstractResultParser {
 		}
 	}
 
+	/**
+	 * Parse a received line held in any character sequence, e.g. a view on a receive buffer.
+	 *
+	 * @param line the line read from GPSd
+	 * @return the parsed object
+	 * @throws ParseException if parsing fails
+	 */
+	public IGPSObject parse(final CharSequence line) throws ParseException {
+		return this.parse(line.toString());
+	}
+
 	/**
 	 * @param json
 	 * @return the parsed {@link IGPSObject}
@@ -92,26 +99,31 @@ public abstract class AbstractResultParser {
 	}
 
 	protected double parseTimestamp(final JSONObject json, final String fieldName) {
-		try {
-			final String text = json.optString(fieldName, null);
-			// System.err.println("DEBUG: AbstractResultParser " + fieldName + ": " + text);
+		final String text = json.optString(fieldName, null);
+		// System.err.println("DEBUG: AbstractResultParser " + fieldName + ": " + text);
 
-			if (text != null) {
-				final Date date = this.dateFormat.parse(text);
-				/* if (AbstractResultParser.LOG.isDebugEnabled()) {
-					final String ds = DateFormat.getDateTimeInstance(DateFormat.FULL, DateFormat.FULL).format(date);
-					AbstractResultParser.LOG.debug("Date: {}", ds);
-				}
-				*/
-				return date.getTime() / 1000.0;
-			}
-		} catch (final Exception ex) {
-			// trying to parse field as double
-			double d = json.optDouble(fieldName, Double.NaN);
-			if (d != Double.NaN) {
-				return d;
-			}
-			System.err.println("INFO: AbstractResultParser - Failed to parse time " + ex);
+		if (text != null) {
+			return this.parseTimestamp(text);
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Convert the text of a time field into seconds since the Unix epoch.
+	 *
+	 * @param text an ISO-8601 UTC timestamp or a number of seconds
+	 * @return the timestamp or NaN if the text can not be parsed
+	 */
+	protected double parseTimestamp(final String text) {
+		final double timestamp = this.timestampDecoder.decode(text);
+		if (!Double.isNaN(timestamp)) {
+			return timestamp;
+		}
+		// trying to parse field as double
+		try {
+			return Double.parseDouble(text);
+		} catch (final NumberFormatException ex) {
+			System.err.println("INFO: AbstractResultParser - Failed to parse time " + text);
 		}
 		return Double.NaN;
 	}
@@ -0,0 +1,224 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* Almanac
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import com.traviscons.GPSTrackPoints.types.subframes.ALMANACObject;
+
+/**
+ * The almanac orbit of one GPS satellite, from a page of subframe 4 or 5.
+ *
+ * The almanac is a coarse orbit without the harmonic corrections of the ephemeris. It is
+ * good to a few kilometers for days, which is plenty to tell when a satellite rises and
+ * sets, but not for positioning. Positions are computed as in IS-GPS-200 20.3.3.5.2.1.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public final class Almanac {
+
+	/// reference inclination the almanac's deltai is added to, 0.3 semicircles
+	private static final double I_REFERENCE = 0.3 * Math.PI;
+
+	private static final int KEPLER_ITERATIONS = 10;
+
+	private final int prn;
+
+	private final int health;
+
+	private final double toa;
+
+	private final double e;
+
+	private final double sqrtA;
+
+	private final double m0;
+
+	private final double omega0;
+
+	private final double omega;
+
+	private final double omegaDot;
+
+	private final double af0;
+
+	private final double af1;
+
+	/// the page it was made of, to recognize a rebroadcast
+	private final ALMANACObject page;
+
+	// derived once
+	private final double a;
+
+	private final double n;
+
+	private final double rootOneMinusE2;
+
+	private final double sinI;
+
+	private final double cosI;
+
+	private final double omegaRate;
+
+	private final double omegaAtToa;
+
+	/**
+	 * @param page a scaled almanac page
+	 * @return the almanac of the satellite the page describes
+	 * @throws IllegalArgumentException if the page is a dummy or a value is missing
+	 */
+	public static Almanac from(final ALMANACObject page) {
+		if (page == null) {
+			throw new IllegalArgumentException("page can not be null!");
+		}
+		return new Almanac(page);
+	}
+
+	private Almanac(final ALMANACObject page) {
+		if ((page.getID() < 1) || Double.isNaN(page.getSqrtA()) || (page.getSqrtA() <= 0)) {
+			throw new IllegalArgumentException("Not an almanac of a satellite: ID " + page.getID() + ", sqrtA " + page.getSqrtA());
+		}
+		this.page = page;
+		this.prn = page.getID();
+		this.health = page.getHealth();
+		this.toa = page.getToa();
+		this.e = required(page.getE(), "e");
+		this.sqrtA = page.getSqrtA();
+		this.m0 = required(page.getM0(), "M0") * Math.PI;
+		this.omega0 = required(page.getOmega0(), "Omega0") * Math.PI;
+		this.omega = required(page.getOmega(), "omega") * Math.PI;
+		this.omegaDot = zeroIfNaN(page.getOmegad()) * Math.PI;
+		this.af0 = zeroIfNaN(page.getAf0());
+		this.af1 = zeroIfNaN(page.getAf1());
+		final double i = I_REFERENCE + (zeroIfNaN(page.getDeltai()) * Math.PI);
+
+		if ((this.e < 0) || (this.e >= 1) || (this.toa < 0)) {
+			throw new IllegalArgumentException("Not an orbit: e " + this.e + ", toa " + this.toa);
+		}
+		this.a = this.sqrtA * this.sqrtA;
+		this.n = Math.sqrt(Ephemeris.MU / (this.a * this.a * this.a));
+		this.rootOneMinusE2 = Math.sqrt(1 - (this.e * this.e));
+		this.sinI = Math.sin(i);
+		this.cosI = Math.cos(i);
+		this.omegaRate = this.omegaDot - Ephemeris.OMEGA_E;
+		this.omegaAtToa = this.omega0 - (Ephemeris.OMEGA_E * this.toa);
+	}
+
+	private static double zeroIfNaN(final double value) {
+		return Double.isNaN(value) ? 0 : value;
+	}
+
+	private static double required(final double value, final String name) {
+		if (Double.isNaN(value)) {
+			throw new IllegalArgumentException(name + " is missing");
+		}
+		return value;
+	}
+
+	/**
+	 * Compute the satellite position.
+	 *
+	 * @param tk     seconds from the almanac reference time, see {@link AlmanacSet#sinceToa(Almanac, double)}
+	 * @param out    gets ECEF x, y and z in meters at Ephemeris.X, Y and Z
+	 * @param offset where in out to write them
+	 */
+	public void position(final double tk, final double[] out, final int offset) {
+		final double mk = this.m0 + (this.n * tk);
+		double ek = mk;
+		for (int k = 0; k < KEPLER_ITERATIONS; k++) {
+			final double step = ((ek - (this.e * Math.sin(ek))) - mk) / (1 - (this.e * Math.cos(ek)));
+			ek -= step;
+			if (Math.abs(step) < 1e-12) {
+				break;
+			}
+		}
+		final double sinE = Math.sin(ek);
+		final double cosE = Math.cos(ek);
+		final double u = Math.atan2(this.rootOneMinusE2 * sinE, cosE - this.e) + this.omega;
+		final double r = this.a * (1 - (this.e * cosE));
+		final double xp = r * Math.cos(u);
+		final double yp = r * Math.sin(u);
+		final double omegaK = this.omegaAtToa + (this.omegaRate * tk);
+		final double sinO = Math.sin(omegaK);
+		final double cosO = Math.cos(omegaK);
+		out[offset + Ephemeris.X] = (xp * cosO) - (yp * this.cosI * sinO);
+		out[offset + Ephemeris.Y] = (xp * sinO) + (yp * this.cosI * cosO);
+		out[offset + Ephemeris.Z] = yp * this.sinI;
+	}
+
+	/**
+	 * @param page an almanac page
+	 * @return true if the page carries the same data this almanac was made of, i.e. it is a rebroadcast
+	 */
+	boolean isFrom(final ALMANACObject page) {
+		return this.page.equals(page);
+	}
+
+	/**
+	 * @return true if the page reports the satellite healthy
+	 */
+	public boolean isHealthy() {
+		return this.health == 0;
+	}
+
+	/**
+	 * @return the satellite (PRN)
+	 */
+	public int getPrn() {
+		return this.prn;
+	}
+
+	/**
+	 * @return the health bits of the page
+	 */
+	public int getHealth() {
+		return this.health;
+	}
+
+	/**
+	 * @return the reference time in seconds into the almanac week
+	 */
+	public double getToa() {
+		return this.toa;
+	}
+
+	/**
+	 * @return the semi-major axis in meters
+	 */
+	public double getSemiMajorAxis() {
+		return this.a;
+	}
+
+	/**
+	 * @return the clock offset at toa in seconds
+	 */
+	public double getAf0() {
+		return this.af0;
+	}
+
+	/**
+	 * @return the clock drift in s/s
+	 */
+	public double getAf1() {
+		return this.af1;
+	}
+
+	@Override
+	public String toString() {
+		return "Almanac{PRN " + this.prn + ", toa " + this.toa + ", health " + this.health + "}";
+	}
+}
@@ -0,0 +1,194 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* AlmanacSet
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The almanac of the whole constellation as known at one moment: the orbit of every
+ * satellite heard so far, the health of subframe 4 and 5 page 25 and the almanac week.
+ *
+ * A set never changes. {@link PassPredictor} makes a new one, with a higher version, when
+ * a page brings something new, and keeps the old one when a page is only a rebroadcast.
+ */
+public final class AlmanacSet {
+
+	/// health not reported yet
+	static final int UNKNOWN = -1;
+
+	private static final int SATELLITES = 32;
+
+	/// the empty set before any page arrived
+	static final AlmanacSet EMPTY = new AlmanacSet(0, Collections.<Integer, Almanac> emptyMap(), unknownHealth(), UNKNOWN, UNKNOWN);
+
+	private final long version;
+
+	private final Map<Integer, Almanac> almanacs;
+
+	/// page 25 health by PRN - 1
+	private final int[] health;
+
+	private final int week;
+
+	private final int toa;
+
+	AlmanacSet(final long version, final Map<Integer, Almanac> almanacs, final int[] health, final int week, final int toa) {
+		this.version = version;
+		this.almanacs = almanacs;
+		this.health = health;
+		this.week = week;
+		this.toa = toa;
+	}
+
+	static int[] unknownHealth() {
+		final int[] health = new int[SATELLITES];
+		Arrays.fill(health, UNKNOWN);
+		return health;
+	}
+
+	/**
+	 * @param almanac a satellite's almanac
+	 * @return a new set with the almanac added or replaced
+	 */
+	AlmanacSet with(final Almanac almanac) {
+		final Map<Integer, Almanac> copy = new HashMap<Integer, Almanac>(this.almanacs);
+		copy.put(almanac.getPrn(), almanac);
+		return new AlmanacSet(this.version + 1, Collections.unmodifiableMap(copy), this.health, this.week, this.toa);
+	}
+
+	/**
+	 * @param first  the PRN of health[0]
+	 * @param health the health bits of page 25
+	 * @param week   the almanac week WNa, UNKNOWN to keep the current one
+	 * @param toa    the almanac reference time, UNKNOWN to keep the current one
+	 * @return a new set with the health and week, or this one if nothing changed
+	 */
+	AlmanacSet withHealth(final int first, final int[] health, final int week, final int toa) {
+		final int[] copy = this.health.clone();
+		System.arraycopy(health, 0, copy, first - 1, Math.min(health.length, SATELLITES - (first - 1)));
+		final int newWeek = (week == UNKNOWN) ? this.week : week;
+		final int newToa = (toa == UNKNOWN) ? this.toa : toa;
+		if (Arrays.equals(copy, this.health) && (newWeek == this.week) && (newToa == this.toa)) {
+			return this;
+		}
+		return new AlmanacSet(this.version + 1, this.almanacs, copy, newWeek, newToa);
+	}
+
+	/**
+	 * The time from a satellite's almanac reference time. When the almanac week is known the
+	 * reference is placed in the week it belongs to, so predictions stay right across a
+	 * week rollover; otherwise the nearest toa is taken.
+	 *
+	 * @param almanac    the satellite's almanac
+	 * @param gpsSeconds seconds since the GPS epoch
+	 * @return seconds since toa
+	 */
+	public double sinceToa(final Almanac almanac, final double gpsSeconds) {
+		if (this.week == UNKNOWN) {
+			return GpsTime.sinceTimeOfWeek(gpsSeconds, almanac.getToa());
+		}
+		// WNa is the week modulo 256, take the full week nearest to now
+		final long now = (long) Math.floor(gpsSeconds / GpsTime.SECONDS_PER_WEEK);
+		long behind = (now - this.week) & 0xFF;
+		if (behind > 127) {
+			behind -= 256;
+		}
+		return gpsSeconds - (((now - behind) * GpsTime.SECONDS_PER_WEEK) + almanac.getToa());
+	}
+
+	/**
+	 * @param prn the satellite
+	 * @return true if both the satellite's almanac page and page 25, if heard, report it healthy
+	 */
+	public boolean isHealthy(final int prn) {
+		final Almanac almanac = this.almanacs.get(prn);
+		if ((almanac == null) || !almanac.isHealthy()) {
+			return false;
+		}
+		final int h = ((prn >= 1) && (prn <= SATELLITES)) ? this.health[prn - 1] : UNKNOWN;
+		return (h == UNKNOWN) || (h == 0);
+	}
+
+	/**
+	 * @return the almanacs of the healthy satellites, sorted by PRN
+	 */
+	public List<Almanac> getHealthy() {
+		final List<Almanac> healthy = new ArrayList<Almanac>();
+		for (final Almanac almanac : this.getAll()) {
+			if (this.isHealthy(almanac.getPrn())) {
+				healthy.add(almanac);
+			}
+		}
+		return healthy;
+	}
+
+	/**
+	 * @return every almanac, sorted by PRN
+	 */
+	public List<Almanac> getAll() {
+		final List<Integer> prns = new ArrayList<Integer>(this.almanacs.keySet());
+		Collections.sort(prns);
+		final List<Almanac> all = new ArrayList<Almanac>(prns.size());
+		for (final Integer prn : prns) {
+			all.add(this.almanacs.get(prn));
+		}
+		return all;
+	}
+
+	/**
+	 * @param prn the satellite
+	 * @return its almanac, null if no page for it was heard
+	 */
+	public Almanac get(final int prn) {
+		return this.almanacs.get(prn);
+	}
+
+	/**
+	 * @return the number of satellites with an almanac
+	 */
+	public int size() {
+		return this.almanacs.size();
+	}
+
+	/**
+	 * @return goes up every time the almanac data changes
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * @return the almanac week modulo 256 from page 25, UNKNOWN (-1) until heard
+	 */
+	public int getWeek() {
+		return this.week;
+	}
+
+	/**
+	 * @return the almanac reference time from page 25, UNKNOWN (-1) until heard
+	 */
+	public int getToa() {
+		return this.toa;
+	}
+}
@@ -0,0 +1,114 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* BlinkPattern
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import java.util.Arrays;
+
+/**
+ * A declarative LED pattern for {@link Led}: a list of steps, each an LED level held for a
+ * number of milliseconds. A repeating pattern starts over after its last step, a one-shot
+ * pattern hands back to the LED's base pattern. A step of 0 ms is held until the pattern
+ * is replaced.
+ */
+public final class BlinkPattern {
+
+	/// the LED off until told otherwise
+	public static final BlinkPattern OFF = steady(false);
+
+	/// the LED on until told otherwise
+	public static final BlinkPattern ON = steady(true);
+
+	private final boolean[] levels;
+
+	private final long[] millis;
+
+	private final boolean repeating;
+
+	private BlinkPattern(final boolean[] levels, final long[] millis, final boolean repeating) {
+		this.levels = levels;
+		this.millis = millis;
+		this.repeating = repeating;
+	}
+
+	/**
+	 * @param on the level to hold
+	 * @return a pattern that sets the level once and never wakes the scheduler
+	 */
+	public static BlinkPattern steady(final boolean on) {
+		return new BlinkPattern(new boolean[] { on }, new long[] { 0 }, false);
+	}
+
+	/**
+	 * @param millis how long each step lasts, alternating on and off and starting with on
+	 * @return a pattern played once, e.g. once(200) for a 200 ms flash
+	 */
+	public static BlinkPattern once(final long... millis) {
+		return alternating(true, millis, false);
+	}
+
+	/**
+	 * @param startOn level of the first step
+	 * @param millis  how long each step lasts, alternating levels
+	 * @return a pattern played over and over, e.g. repeat(false, 5000, 200) for a short flash every 5.2 s
+	 */
+	public static BlinkPattern repeat(final boolean startOn, final long... millis) {
+		for (final long m : millis) {
+			if (m <= 0) {
+				throw new IllegalArgumentException("a repeating step needs a duration: " + Arrays.toString(millis));
+			}
+		}
+		return alternating(startOn, millis, true);
+	}
+
+	private static BlinkPattern alternating(final boolean startOn, final long[] millis, final boolean repeating) {
+		if (millis.length == 0) {
+			throw new IllegalArgumentException("a pattern needs at least one step");
+		}
+		final boolean[] levels = new boolean[millis.length];
+		for (int i = 0; i < levels.length; i++) {
+			levels[i] = ((i % 2) == 0) == startOn;
+		}
+		return new BlinkPattern(levels, millis.clone(), repeating);
+	}
+
+	int size() {
+		return this.levels.length;
+	}
+
+	boolean levelAt(final int step) {
+		return this.levels[step];
+	}
+
+	long millisAt(final int step) {
+		return this.millis[step];
+	}
+
+	/**
+	 * @return true if the pattern starts over after its last step
+	 */
+	public boolean isRepeating() {
+		return this.repeating;
+	}
+
+	@Override
+	public String toString() {
+		return "BlinkPattern{levels=" + Arrays.toString(this.levels) + ", millis=" + Arrays.toString(this.millis)
+				+ ", repeating=" + this.repeating + "}";
+	}
+}
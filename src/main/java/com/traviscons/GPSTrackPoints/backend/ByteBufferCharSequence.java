@@ -0,0 +1,84 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* ByteBufferCharSequence
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A reusable character view on a range of bytes in a receive buffer.
+ *
+ * GPSd sends UTF-8 JSON. All JSON syntax is ASCII, so each byte is presented as one
+ * character and a parser can walk the frame without decoding it. Only the Strings a
+ * parser asks for via subSequence or toString are decoded as UTF-8.
+ *
+ * The view does not copy the bytes. It is only valid until the buffer is compacted.
+ */
+final class ByteBufferCharSequence implements CharSequence {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private ByteBuffer buffer;
+
+	private int start;
+
+	private int length;
+
+	/**
+	 * Point the view at a new range of bytes.
+	 *
+	 * @param buffer the buffer holding the frame
+	 * @param start  absolute index of the first byte
+	 * @param end    absolute index after the last byte
+	 */
+	void set(final ByteBuffer buffer, final int start, final int end) {
+		this.buffer = buffer;
+		this.start = start;
+		this.length = end - start;
+	}
+
+	@Override
+	public int length() {
+		return this.length;
+	}
+
+	@Override
+	public char charAt(final int index) {
+		if ((index < 0) || (index >= this.length)) {
+			throw new IndexOutOfBoundsException("index " + index + " length " + this.length);
+		}
+		return (char) (this.buffer.get(this.start + index) & 0xFF);
+	}
+
+	@Override
+	public CharSequence subSequence(final int from, final int to) {
+		if ((from < 0) || (to > this.length) || (from > to)) {
+			throw new IndexOutOfBoundsException("from " + from + " to " + to + " length " + this.length);
+		}
+		final byte[] bytes = new byte[to - from];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = this.buffer.get(this.start + from + i);
+		}
+		return new String(bytes, UTF8);
+	}
+
+	@Override
+	public String toString() {
+		return (String) this.subSequence(0, this.length);
+	}
+}
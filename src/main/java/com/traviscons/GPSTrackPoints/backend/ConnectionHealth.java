@@ -0,0 +1,163 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* ConnectionHealth
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reconnect backoff and health of one GPSd connection.
+ *
+ * Failed connection attempts back off exponentially from the endpoint's retry interval up
+ * to its maximum retry interval. Each delay is drawn at random from the upper half of the
+ * current step so that many clients dropped by the same gpsd restart do not reconnect in
+ * lock step. The backoff is reset by the first report received on a new connection rather
+ * than by the TCP connect itself, so a server that accepts and closes at once still backs off.
+ *
+ * Written by the socket reader or the selector I/O thread, read from any thread.
+ */
+public final class ConnectionHealth {
+
+	private volatile boolean connected;
+
+	/// connection attempts since the last report was received
+	private volatile int failures;
+
+	/// System.nanoTime() of the last report, the only field every line writes
+	private volatile long lastReceive;
+
+	/// System.nanoTime() of the last connect
+	private volatile long connectedAt;
+
+	/// set by the first report
+	private volatile boolean reported;
+
+	private final AtomicLong connects = new AtomicLong();
+
+	private final AtomicLong idleTimeouts = new AtomicLong();
+
+	ConnectionHealth() {
+		this.connectedAt = System.nanoTime();
+	}
+
+	/**
+	 * Compute how long to wait before the next connection attempt and count the attempt.
+	 *
+	 * @param initial the delay before the first attempt in ms
+	 * @param max     the cap on the delay in ms
+	 * @return the delay in ms
+	 */
+	long nextRetryDelay(final long initial, final long max) {
+		final int attempt = this.failures;
+		this.failures = attempt + 1;
+		long step = Math.max(1, initial);
+		for (int i = 0; (i < attempt) && (step < max); i++) {
+			step <<= 1;
+		}
+		step = Math.min(step, Math.max(max, initial));
+		final long half = step / 2;
+		return half + ThreadLocalRandom.current().nextLong(step - half + 1);
+	}
+
+	void connected() {
+		this.connectedAt = System.nanoTime();
+		this.connects.incrementAndGet();
+		this.connected = true;
+	}
+
+	void disconnected() {
+		this.connected = false;
+	}
+
+	void idleTimeout() {
+		this.idleTimeouts.incrementAndGet();
+	}
+
+	/**
+	 * A report arrived. Called for every line, so it reads the clock once and writes
+	 * only the time; the other fields are written when they change.
+	 */
+	void received() {
+		this.lastReceive = System.nanoTime();
+		if (!this.reported) {
+			this.reported = true;
+		}
+		if (this.failures != 0) {
+			this.failures = 0;
+		}
+	}
+
+	/**
+	 * @return System.nanoTime() of the last report or connect, whichever is later, for the idle watchdog
+	 */
+	long getLastReceive() {
+		final long receive = this.lastReceive;
+		final long connect = this.connectedAt;
+		return (!this.reported || ((connect - receive) > 0)) ? connect : receive;
+	}
+
+	/**
+	 * @return true while a connection to gpsd is established
+	 */
+	public boolean isConnected() {
+		return this.connected;
+	}
+
+	/**
+	 * @return the number of connection attempts since a report was last received
+	 */
+	public int getConsecutiveFailures() {
+		return this.failures;
+	}
+
+	/**
+	 * @return the number of times a connection was established
+	 */
+	public long getConnectCount() {
+		return this.connects.get();
+	}
+
+	/**
+	 * @return the number of times a connection was established after the first one
+	 */
+	public long getReconnectCount() {
+		return Math.max(0, this.connects.get() - 1);
+	}
+
+	/**
+	 * @return the number of connections dropped because no report arrived within the idle timeout
+	 */
+	public long getIdleTimeouts() {
+		return this.idleTimeouts.get();
+	}
+
+	/**
+	 * @return ms since the last report was received, -1 if none has arrived yet
+	 */
+	public long getMillisSinceLastReport() {
+		return this.reported ? ((System.nanoTime() - this.lastReceive) / 1000000L) : -1;
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionHealth{connected=" + this.connected + ", connects=" + this.connects.get()
+				+ ", failures=" + this.failures + ", idleTimeouts=" + this.idleTimeouts.get()
+				+ ", lastReport=" + this.getMillisSinceLastReport() + "ms ago}";
+	}
+}
@@ -0,0 +1,130 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* DeviceState
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import com.traviscons.GPSTrackPoints.types.ENMEAMode;
+import com.traviscons.GPSTrackPoints.types.GSTObject;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * The latest reports of one gpsd device, see {@link DeviceTracker}.
+ *
+ * Each report is replaced whole by the reader thread and published through a volatile
+ * field, so readers on any thread see a complete report without locking. The TPV, SKY
+ * and GST are replaced independently and may belong to different epochs.
+ */
+public final class DeviceState {
+
+	private final String device;
+
+	private volatile TPVObject tpv;
+
+	private volatile SKYObject sky;
+
+	private volatile GSTObject gst;
+
+	/// System.nanoTime() when the TPV was received
+	private volatile long tpvReceived;
+
+	private volatile long tpvCount;
+
+	DeviceState(final String device) {
+		this.device = device;
+	}
+
+	void setTPV(final TPVObject tpv) {
+		this.tpvReceived = System.nanoTime();
+		this.tpv = tpv;
+		// single writer, the reader thread of the endpoint
+		this.tpvCount++;
+	}
+
+	void setSKY(final SKYObject sky) {
+		this.sky = sky;
+	}
+
+	void setGST(final GSTObject gst) {
+		this.gst = gst;
+	}
+
+	/**
+	 * @return the device path, "" for reports that named no device
+	 */
+	public String getDevice() {
+		return this.device;
+	}
+
+	/**
+	 * @return the latest TPV, null if none arrived yet
+	 */
+	public TPVObject getTPV() {
+		return this.tpv;
+	}
+
+	/**
+	 * @return the latest SKY, null if none arrived yet
+	 */
+	public SKYObject getSKY() {
+		return this.sky;
+	}
+
+	/**
+	 * @return the latest GST, null if none arrived yet
+	 */
+	public GSTObject getGST() {
+		return this.gst;
+	}
+
+	/**
+	 * @return the number of TPVs received from this device
+	 */
+	public long getTPVCount() {
+		return this.tpvCount;
+	}
+
+	/**
+	 * @return ms since the latest TPV was received, Long.MAX_VALUE if none arrived yet
+	 */
+	public long getTPVAgeMillis() {
+		if (this.tpv == null) {
+			return Long.MAX_VALUE;
+		}
+		return (System.nanoTime() - this.tpvReceived) / 1000000L;
+	}
+
+	/**
+	 * @param maxAgeMillis how old the TPV may be
+	 * @return true if the latest TPV is a 2D or 3D fix received within maxAgeMillis
+	 */
+	public boolean hasFix(final long maxAgeMillis) {
+		return isFix(this.tpv) && (this.getTPVAgeMillis() <= maxAgeMillis);
+	}
+
+	/// @return true if the TPV is a 2D or 3D fix with a position
+	static boolean isFix(final TPVObject tpv) {
+		return (tpv != null) && ((tpv.getMode() == ENMEAMode.TwoDimensional) || (tpv.getMode() == ENMEAMode.ThreeDimensional))
+				&& !Double.isNaN(tpv.getLatitude()) && !Double.isNaN(tpv.getLongitude());
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceState{device=" + this.device + ", tpvs=" + this.tpvCount + ", tpv=" + this.tpv + "}";
+	}
+}
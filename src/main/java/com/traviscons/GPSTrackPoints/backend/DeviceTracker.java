@@ -0,0 +1,145 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* DeviceTracker
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.types.GSTObject;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * Keeps the latest TPV, SKY and GST of every device behind one gpsd, keyed by the device
+ * path of the reports.
+ *
+ * gpsd accepts only one device in a WATCH, so to follow several receivers watch all of them
+ * and give the tracker the paths to keep. Reports of other devices are ignored.
+ * Lookups are lock-free and can be made from any thread while reports arrive.
+ *
+ * <pre>
+ * final DeviceTracker devices = new DeviceTracker("/dev/ttyUSB0", "/dev/ttyACM0");
+ * ep.addListener(devices, TPVObject.class, SKYObject.class, GSTObject.class);
+ * ep.watch(true, true);
+ * ...
+ * final TPVObject usb = devices.get("/dev/ttyUSB0").getTPV();
+ * </pre>
+ */
+public class DeviceTracker extends ObjectListener {
+
+	/// key used for reports that named no device
+	public static final String NO_DEVICE = "";
+
+	private final ConcurrentHashMap<String, DeviceState> states = new ConcurrentHashMap<String, DeviceState>();
+
+	/// the devices to keep, null for all
+	private final Set<String> allowed;
+
+	/**
+	 * @param devices the device paths to keep, none to keep every device
+	 */
+	public DeviceTracker(final String... devices) {
+		super(null, null, null);
+		this.allowed = (devices.length == 0) ? null : new HashSet<String>(Arrays.asList(devices));
+	}
+
+	@Override
+	public void handleTPV(final TPVObject tpv) {
+		final DeviceState state = this.state(tpv.getDevice());
+		if (state != null) {
+			state.setTPV(tpv);
+		}
+	}
+
+	@Override
+	public void handleSKY(final SKYObject sky) {
+		final DeviceState state = this.state(sky.getDevice());
+		if (state != null) {
+			state.setSKY(sky);
+		}
+	}
+
+	@Override
+	public void handleGST(final GSTObject gst) {
+		final DeviceState state = this.state(gst.getDevice());
+		if (state != null) {
+			state.setGST(gst);
+		}
+	}
+
+	/// the state of a device, created on its first report; null if the device is not kept
+	DeviceState state(final String device) {
+		final String key = (device == null) ? NO_DEVICE : device;
+		DeviceState state = this.states.get(key);
+		if (state == null) {
+			if ((this.allowed != null) && !this.allowed.contains(key)) {
+				return null;
+			}
+			final DeviceState created = new DeviceState(key);
+			state = this.states.putIfAbsent(key, created);
+			if (state == null) {
+				state = created;
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * @param device the device path
+	 * @return the state of the device, null if nothing was received from it
+	 */
+	public DeviceState get(final String device) {
+		return this.states.get((device == null) ? NO_DEVICE : device);
+	}
+
+	/**
+	 * @return the paths of the devices reports were received from
+	 */
+	public Set<String> getDevices() {
+		return Collections.unmodifiableSet(this.states.keySet());
+	}
+
+	/**
+	 * @return the states of all devices reports were received from
+	 */
+	public Collection<DeviceState> getStates() {
+		return Collections.unmodifiableCollection(this.states.values());
+	}
+
+	/**
+	 * @param maxAgeMillis how old a fix may be
+	 * @return the states of the devices that have a fix received within maxAgeMillis
+	 */
+	public List<DeviceState> getFixed(final long maxAgeMillis) {
+		final List<DeviceState> fixed = new ArrayList<DeviceState>(this.states.size());
+		for (final DeviceState s : this.states.values()) {
+			if (s.hasFix(maxAgeMillis)) {
+				fixed.add(s);
+			}
+		}
+		return fixed;
+	}
+}
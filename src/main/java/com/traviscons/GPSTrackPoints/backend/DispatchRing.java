@@ -0,0 +1,375 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* DispatchRing
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.traviscons.GPSTrackPoints.api.IObjectListener;
+import com.traviscons.GPSTrackPoints.types.IGPSObject;
+
+/**
+ * A bounded ring of parsed GPSd messages between the socket reader and the listeners.
+ *
+ * The socket reader is the single producer. It only stores the message and moves on.
+ * Every listener runs on its own thread with its own cursor into the ring, so a slow
+ * listener (e.g. the GPX writer) neither stalls the socket nor the other listeners.
+ *
+ * When the slowest listener is a full ring behind, the {@link OverflowPolicy} decides
+ * what happens. Dropped messages are counted.
+ *
+ * With {@link LatencyMetrics} set, the read and parse times of each message travel with
+ * it through the ring and each listener call is timed.
+ *
+ * The ring is lock-free. The producer and each consumer only write their own sequence,
+ * except that DROP_OLDEST lets the producer push a lagging consumer's cursor forward
+ * with a compare-and-set.
+ */
+public final class DispatchRing {
+
+	/// longest a parked thread sleeps before it looks again, in case a wake-up was missed
+	private static final long PARK_NANOS = 10000000L;
+
+	private final IGPSObject[] slots;
+
+	/// System.nanoTime() of line read and parse complete for each slot, 0 when not timed
+	private final long[] readNanos;
+
+	private final long[] parseNanos;
+
+	private volatile LatencyMetrics metrics;
+
+	private final int mask;
+
+	private final WaitStrategy waitStrategy;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private final boolean daemon;
+
+	private final CopyOnWriteArrayList<Consumer> consumers = new CopyOnWriteArrayList<Consumer>();
+
+	/// sequence of the last published message
+	private volatile long published = -1;
+
+	/// next sequence to publish. Only touched by the producer.
+	private long next = 0;
+
+	/// lowest consumer cursor seen last time, saves scanning the consumers on every publish
+	private long cachedGate = 0;
+
+	/// messages not published because of DROP_NEWEST
+	private final AtomicLong droppedNewest = new AtomicLong();
+
+	private volatile boolean running = true;
+
+	private volatile Thread producer;
+
+	/**
+	 * @param capacity       number of messages the ring holds, rounded up to a power of two
+	 * @param waitStrategy   how listeners wait for messages and the producer for space
+	 * @param overflowPolicy what to do when a listener falls a full ring behind
+	 * @param daemon         whether the listener threads are daemons, as defined in {@link Thread#setDaemon}
+	 */
+	public DispatchRing(final int capacity, final WaitStrategy waitStrategy, final OverflowPolicy overflowPolicy, final boolean daemon) {
+		if ((capacity < 1) || (capacity > (1 << 30))) {
+			throw new IllegalArgumentException("Illegal capacity: " + capacity);
+		}
+		if ((waitStrategy == null) || (overflowPolicy == null)) {
+			throw new IllegalArgumentException("waitStrategy and overflowPolicy can not be null!");
+		}
+		final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+		this.slots = new IGPSObject[size];
+		this.readNanos = new long[size];
+		this.parseNanos = new long[size];
+		this.mask = size - 1;
+		this.waitStrategy = waitStrategy;
+		this.overflowPolicy = overflowPolicy;
+		this.daemon = daemon;
+	}
+
+	/**
+	 * Start a thread delivering to this listener. It receives the messages published from now on.
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addListener(final IObjectListener listener) {
+		this.addListener(listener, ListenerRegistry.allReports());
+	}
+
+	/**
+	 * Start a thread delivering the messages of the given classes to this listener.
+	 * Other messages are skipped without calling the listener.
+	 *
+	 * @param listener the listener to add
+	 * @param types    the report classes the listener subscribed to
+	 */
+	public void addListener(final IObjectListener listener, final Set<Class<?>> types) {
+		final Consumer c = new Consumer(listener, types, this.published + 1);
+		this.consumers.add(c);
+		final Thread t = new Thread(c, "GPSd Dispatch " + this.consumers.size());
+		t.setDaemon(this.daemon);
+		c.thread = t;
+		t.start();
+	}
+
+	/**
+	 * Stop delivering to this listener. Messages still in the ring for it are discarded.
+	 *
+	 * @param listener the listener to remove
+	 */
+	public void removeListener(final IObjectListener listener) {
+		for (final Consumer c : this.consumers) {
+			if (c.listener == listener) {
+				this.consumers.remove(c);
+				c.halt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stop all listener threads.
+	 */
+	public void halt() {
+		this.running = false;
+		for (final Consumer c : this.consumers) {
+			c.halt();
+		}
+		this.consumers.clear();
+		final Thread p = this.producer;
+		if (p != null) {
+			LockSupport.unpark(p);
+		}
+	}
+
+	/**
+	 * Hand a message to the listeners. Must only be called from one thread at a time.
+	 *
+	 * @param object the message
+	 * @return false if the message was dropped (DROP_NEWEST) or the ring was halted while blocked
+	 */
+	public boolean publish(final IGPSObject object) {
+		return this.publish(object, 0L, 0L);
+	}
+
+	/**
+	 * Hand a timed message to the listeners. Must only be called from one thread at a time.
+	 *
+	 * @param object     the message
+	 * @param readNanos  System.nanoTime() when the line was read, 0 if not timed
+	 * @param parseNanos System.nanoTime() when parsing completed
+	 * @return false if the message was dropped (DROP_NEWEST) or the ring was halted while blocked
+	 */
+	boolean publish(final IGPSObject object, final long readNanos, final long parseNanos) {
+		final long seq = this.next;
+		final long wrap = seq - this.slots.length;
+		if (wrap >= this.cachedGate) {
+			this.cachedGate = this.minCursor();
+			int spins = 0;
+			while (wrap >= this.cachedGate) {
+				// the slot still holds a message the slowest consumer has not taken
+				switch (this.overflowPolicy) {
+				case DROP_NEWEST:
+					this.droppedNewest.incrementAndGet();
+					return false;
+				case DROP_OLDEST:
+					for (final Consumer c : this.consumers) {
+						final long cursor = c.cursor.get();
+						if ((cursor <= wrap) && c.cursor.compareAndSet(cursor, cursor + 1)) {
+							c.dropped.incrementAndGet();
+						}
+					}
+					break;
+				default:
+					if (!this.running) {
+						return false;
+					}
+					this.producer = Thread.currentThread();
+					this.waitForSpace(spins++);
+					break;
+				}
+				this.cachedGate = this.minCursor();
+			}
+		}
+		final int slot = (int) seq & this.mask;
+		this.readNanos[slot] = readNanos;
+		this.parseNanos[slot] = parseNanos;
+		this.slots[slot] = object;
+		this.next = seq + 1;
+		this.published = seq;
+		if (this.waitStrategy == WaitStrategy.PARK) {
+			for (final Consumer c : this.consumers) {
+				if (c.parked) {
+					LockSupport.unpark(c.thread);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param metrics where to record listener timings, null to stop timing
+	 */
+	void setMetrics(final LatencyMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return messages lost so far, summed over all listeners
+	 */
+	public long getDropped() {
+		long dropped = this.droppedNewest.get();
+		for (final Consumer c : this.consumers) {
+			dropped += c.dropped.get();
+		}
+		return dropped;
+	}
+
+	/**
+	 * @param listener a listener added to this ring
+	 * @return messages this listener did not get because of an overflow, -1 if it is not on this ring
+	 */
+	public long getDropped(final IObjectListener listener) {
+		for (final Consumer c : this.consumers) {
+			if (c.listener == listener) {
+				return c.dropped.get() + this.droppedNewest.get() - c.droppedNewestAtStart;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of messages the ring holds
+	 */
+	public int getCapacity() {
+		return this.slots.length;
+	}
+
+	private long minCursor() {
+		long min = Long.MAX_VALUE;
+		for (final Consumer c : this.consumers) {
+			min = Math.min(min, c.cursor.get());
+		}
+		return min;
+	}
+
+	private void waitForSpace(final int spins) {
+		switch (this.waitStrategy) {
+		case BUSY_SPIN:
+			break;
+		case YIELD:
+			Thread.yield();
+			break;
+		default:
+			// consumers do not wake the producer, so poll the cursors at a short interval
+			LockSupport.parkNanos(this, spins < 100 ? 50000L : 1000000L);
+			break;
+		}
+	}
+
+	/**
+	 * One listener, its cursor and its thread.
+	 */
+	private final class Consumer implements Runnable {
+
+		final IObjectListener listener;
+
+		final Set<Class<?>> types;
+
+		/// next sequence this listener reads
+		final AtomicLong cursor;
+
+		final AtomicLong dropped = new AtomicLong();
+
+		final long droppedNewestAtStart;
+
+		volatile boolean parked;
+
+		volatile boolean active = true;
+
+		volatile Thread thread;
+
+		Consumer(final IObjectListener listener, final Set<Class<?>> types, final long start) {
+			this.listener = listener;
+			this.types = types;
+			this.cursor = new AtomicLong(start);
+			this.droppedNewestAtStart = DispatchRing.this.droppedNewest.get();
+		}
+
+		void halt() {
+			this.active = false;
+			final Thread t = this.thread;
+			if (t != null) {
+				LockSupport.unpark(t);
+			}
+		}
+
+		@Override
+		public void run() {
+			while (this.active) {
+				final long seq = this.cursor.get();
+				if (seq > DispatchRing.this.published) {
+					this.waitForMessage(seq);
+					continue;
+				}
+				final int slot = (int) seq & DispatchRing.this.mask;
+				final IGPSObject object = DispatchRing.this.slots[slot];
+				final long read = DispatchRing.this.readNanos[slot];
+				final long parsed = DispatchRing.this.parseNanos[slot];
+				if (!this.cursor.compareAndSet(seq, seq + 1)) {
+					// the producer pushed us past this message (DROP_OLDEST), the slot may be reused
+					continue;
+				}
+				if (!this.types.contains(object.getClass())) {
+					continue;
+				}
+				final LatencyMetrics m = DispatchRing.this.metrics;
+				final long start = ((m != null) && (read != 0L)) ? System.nanoTime() : 0L;
+				try {
+					ListenerRegistry.dispatch(this.listener, object);
+					if (start != 0L) {
+						m.delivered(object, this.listener, read, parsed, start, System.nanoTime());
+					}
+				} catch (final RuntimeException e) {
+					System.err.println("WARNING: DispatchRing - Listener failed handling " + object + ": " + e);
+				}
+			}
+		}
+
+		private void waitForMessage(final long seq) {
+			switch (DispatchRing.this.waitStrategy) {
+			case BUSY_SPIN:
+				break;
+			case YIELD:
+				Thread.yield();
+				break;
+			default:
+				this.parked = true;
+				// check again after announcing the park so a publish in between is not missed
+				if (this.active && (seq > DispatchRing.this.published)) {
+					LockSupport.parkNanos(this, PARK_NANOS);
+				}
+				this.parked = false;
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,414 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* Ephemeris
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import com.traviscons.GPSTrackPoints.types.subframes.EPHEM1Object;
+import com.traviscons.GPSTrackPoints.types.subframes.EPHEM2Object;
+import com.traviscons.GPSTrackPoints.types.subframes.EPHEM3Object;
+
+/**
+ * The broadcast ephemeris of one GPS satellite, assembled from subframes 1 to 3, and the
+ * satellite position, velocity and clock computed from it as in IS-GPS-200 table 20-IV.
+ *
+ * gpsd reports scaled subframes with angles in semicircles; they are kept in radians here.
+ * The constants of the orbit that do not depend on time are computed once when the
+ * ephemeris is built, so a position costs a Kepler solve and some trigonometry.
+ *
+ * Positions are earth centered, earth fixed (WGS-84) at the time of transmission. Instances
+ * are immutable and can be shared between threads.
+ */
+public final class Ephemeris {
+
+	/// index of ECEF x in meters in a state
+	public static final int X = 0;
+
+	/// index of ECEF y in meters in a state
+	public static final int Y = 1;
+
+	/// index of ECEF z in meters in a state
+	public static final int Z = 2;
+
+	/// index of the ECEF x velocity in m/s in a state
+	public static final int VX = 3;
+
+	/// index of the ECEF y velocity in m/s in a state
+	public static final int VY = 4;
+
+	/// index of the ECEF z velocity in m/s in a state
+	public static final int VZ = 5;
+
+	/// index of the satellite clock offset in seconds in a state, relativistic term included
+	public static final int CLOCK = 6;
+
+	/// number of doubles in a state
+	public static final int STATE_SIZE = 7;
+
+	/// WGS-84 gravitational constant, m^3/s^2
+	static final double MU = 3.986005e14;
+
+	/// WGS-84 earth rotation rate, rad/s
+	static final double OMEGA_E = 7.2921151467e-5;
+
+	/// relativistic clock correction constant, s/sqrt(m)
+	private static final double F = -4.442807633e-10;
+
+	private static final int KEPLER_ITERATIONS = 10;
+
+	private final int prn;
+
+	private final int iode;
+
+	private final int week;
+
+	private final int health;
+
+	private final double ura;
+
+	private final int fit;
+
+	private final double tgd;
+
+	private final double toc;
+
+	private final double af0;
+
+	private final double af1;
+
+	private final double af2;
+
+	private final double toe;
+
+	private final double sqrtA;
+
+	private final double e;
+
+	private final double m0;
+
+	private final double crs;
+
+	private final double crc;
+
+	private final double cus;
+
+	private final double cuc;
+
+	private final double cis;
+
+	private final double cic;
+
+	private final double omega0;
+
+	private final double i0;
+
+	private final double omega;
+
+	private final double omegaDot;
+
+	private final double idot;
+
+	// derived once
+	private final double a;
+
+	private final double n;
+
+	private final double rootOneMinusE2;
+
+	private final double omegaRate;
+
+	private final double omegaAtToe;
+
+	/**
+	 * Assemble an ephemeris from the three subframes of one issue.
+	 *
+	 * @param prn the satellite, see SUBFRAMEObject.getSatelliteNumber()
+	 * @param sf1 clock and health, subframe 1
+	 * @param sf2 orbit, subframe 2
+	 * @param sf3 orbit, subframe 3
+	 * @return the ephemeris
+	 * @throws IllegalArgumentException if a subframe is missing, the issues do not match or a value is missing
+	 */
+	public static Ephemeris from(final int prn, final EPHEM1Object sf1, final EPHEM2Object sf2, final EPHEM3Object sf3) {
+		if ((sf1 == null) || (sf2 == null) || (sf3 == null)) {
+			throw new IllegalArgumentException("subframes 1, 2 and 3 are needed");
+		}
+		if (!matches(sf1, sf2, sf3)) {
+			throw new IllegalArgumentException("subframes of different issues: IODC " + sf1.getIODC() + ", IODE " + sf2.getIODE() + " and " + sf3.getIODE());
+		}
+		return new Ephemeris(prn, sf1, sf2, sf3);
+	}
+
+	/**
+	 * @return true if the three subframes are of the same issue, i.e. the IODEs agree with
+	 *         the low 8 bits of the IODC
+	 */
+	static boolean matches(final EPHEM1Object sf1, final EPHEM2Object sf2, final EPHEM3Object sf3) {
+		return (sf2.getIODE() == sf3.getIODE()) && ((sf1.getIODC() & 0xFF) == sf2.getIODE());
+	}
+
+	private Ephemeris(final int prn, final EPHEM1Object sf1, final EPHEM2Object sf2, final EPHEM3Object sf3) {
+		this.prn = prn;
+		this.iode = sf2.getIODE();
+		this.week = sf1.getWN();
+		this.health = Double.isNaN(sf1.getHlth()) ? 0 : (int) sf1.getHlth();
+		this.ura = sf1.getUra();
+		this.fit = sf2.getFIT();
+		this.tgd = zeroIfNaN(sf1.getTgd());
+		this.toc = sf1.getToc();
+		this.af0 = zeroIfNaN(sf1.getAf0());
+		this.af1 = zeroIfNaN(sf1.getAf1());
+		this.af2 = zeroIfNaN(sf1.getAf2());
+
+		this.toe = sf2.getToe();
+		this.sqrtA = required(sf2.getSqrtA(), "sqrtA");
+		this.e = required(sf2.getE(), "e");
+		this.m0 = semicircles(required(sf2.getM0(), "M0"));
+		this.crs = zeroIfNaN(sf2.getCrs());
+		this.cus = zeroIfNaN(sf2.getCus());
+		this.cuc = zeroIfNaN(sf2.getCuc());
+		final double deltan = semicircles(zeroIfNaN(sf2.getDeltan()));
+
+		this.crc = zeroIfNaN(sf3.getCrc());
+		this.cis = zeroIfNaN(sf3.getCis());
+		this.cic = zeroIfNaN(sf3.getCic());
+		this.omega0 = semicircles(required(sf3.getOmega0(), "Omega0"));
+		this.i0 = semicircles(required(sf3.getI0(), "i0"));
+		this.omega = semicircles(required(sf3.getOmega(), "omega"));
+		this.omegaDot = semicircles(zeroIfNaN(sf3.getOmegad()));
+		this.idot = semicircles(zeroIfNaN(sf3.getIDOT()));
+
+		if ((this.sqrtA <= 0) || (this.e < 0) || (this.e >= 1) || (this.toe < 0)) {
+			throw new IllegalArgumentException("Not an orbit: sqrtA " + this.sqrtA + ", e " + this.e + ", toe " + this.toe);
+		}
+		this.a = this.sqrtA * this.sqrtA;
+		this.n = Math.sqrt(MU / (this.a * this.a * this.a)) + deltan;
+		this.rootOneMinusE2 = Math.sqrt(1 - (this.e * this.e));
+		this.omegaRate = this.omegaDot - OMEGA_E;
+		this.omegaAtToe = this.omega0 - (OMEGA_E * this.toe);
+	}
+
+	private static double semicircles(final double value) {
+		return value * Math.PI;
+	}
+
+	private static double zeroIfNaN(final double value) {
+		return Double.isNaN(value) ? 0 : value;
+	}
+
+	private static double required(final double value, final String name) {
+		if (Double.isNaN(value)) {
+			throw new IllegalArgumentException(name + " is missing");
+		}
+		return value;
+	}
+
+	/**
+	 * Compute the satellite state.
+	 *
+	 * @param gpsSeconds the time of transmission in seconds since the GPS epoch, see {@link GpsTime}
+	 * @param out        gets the STATE_SIZE values X to CLOCK
+	 * @param offset     where in out to write them
+	 */
+	public void compute(final double gpsSeconds, final double[] out, final int offset) {
+		this.compute(gpsSeconds, Double.NaN, out, offset);
+	}
+
+	/**
+	 * @param gpsSeconds the time of transmission in seconds since the GPS epoch
+	 * @return the STATE_SIZE values X to CLOCK
+	 */
+	public double[] compute(final double gpsSeconds) {
+		final double[] out = new double[STATE_SIZE];
+		this.compute(gpsSeconds, Double.NaN, out, 0);
+		return out;
+	}
+
+	/**
+	 * Compute the satellite state, starting the Kepler iteration from a guess. The eccentric
+	 * anomaly of a nearby earlier time converges in one or two steps.
+	 *
+	 * @param eGuess the eccentric anomaly to start from, NaN to start from the mean anomaly
+	 * @return the eccentric anomaly at gpsSeconds
+	 */
+	double compute(final double gpsSeconds, final double eGuess, final double[] out, final int offset) {
+		final double tk = GpsTime.sinceTimeOfWeek(gpsSeconds, this.toe);
+		final double mk = this.m0 + (this.n * tk);
+
+		double ek = Double.isNaN(eGuess) ? mk : eGuess;
+		for (int i = 0; i < KEPLER_ITERATIONS; i++) {
+			final double step = ((ek - (this.e * Math.sin(ek))) - mk) / (1 - (this.e * Math.cos(ek)));
+			ek -= step;
+			if (Math.abs(step) < 1e-13) {
+				break;
+			}
+		}
+		final double sinE = Math.sin(ek);
+		final double cosE = Math.cos(ek);
+		final double oneMinusECosE = 1 - (this.e * cosE);
+
+		final double vk = Math.atan2(this.rootOneMinusE2 * sinE, cosE - this.e);
+		final double phi = vk + this.omega;
+		final double sin2Phi = Math.sin(2 * phi);
+		final double cos2Phi = Math.cos(2 * phi);
+
+		final double uk = phi + (this.cus * sin2Phi) + (this.cuc * cos2Phi);
+		final double rk = (this.a * oneMinusECosE) + (this.crs * sin2Phi) + (this.crc * cos2Phi);
+		final double ik = this.i0 + (this.cis * sin2Phi) + (this.cic * cos2Phi) + (this.idot * tk);
+
+		final double sinU = Math.sin(uk);
+		final double cosU = Math.cos(uk);
+		final double xp = rk * cosU;
+		final double yp = rk * sinU;
+
+		final double omegaK = this.omegaAtToe + (this.omegaRate * tk);
+		final double sinO = Math.sin(omegaK);
+		final double cosO = Math.cos(omegaK);
+		final double sinI = Math.sin(ik);
+		final double cosI = Math.cos(ik);
+
+		out[offset + X] = (xp * cosO) - (yp * cosI * sinO);
+		out[offset + Y] = (xp * sinO) + (yp * cosI * cosO);
+		out[offset + Z] = yp * sinI;
+
+		// rates of the same terms
+		final double eDot = this.n / oneMinusECosE;
+		final double vDot = (eDot * this.rootOneMinusE2) / oneMinusECosE;
+		final double uDot = vDot * (1 + (2 * ((this.cus * cos2Phi) - (this.cuc * sin2Phi))));
+		final double rDot = (this.e * this.a * eDot * sinE) + (2 * vDot * ((this.crs * cos2Phi) - (this.crc * sin2Phi)));
+		final double iDot = this.idot + (2 * vDot * ((this.cis * cos2Phi) - (this.cic * sin2Phi)));
+		final double xpDot = (rDot * cosU) - (yp * uDot);
+		final double ypDot = (rDot * sinU) + (xp * uDot);
+
+		out[offset + VX] = ((-xp * this.omegaRate * sinO) + (xpDot * cosO)) - (ypDot * sinO * cosI)
+				- (yp * ((this.omegaRate * cosO * cosI) - (iDot * sinO * sinI)));
+		out[offset + VY] = ((xp * this.omegaRate * cosO) + (xpDot * sinO) + (ypDot * cosO * cosI))
+				- (yp * ((this.omegaRate * sinO * cosI) + (iDot * cosO * sinI)));
+		out[offset + VZ] = (ypDot * sinI) + (yp * iDot * cosI);
+
+		final double dt = GpsTime.sinceTimeOfWeek(gpsSeconds, this.toc);
+		out[offset + CLOCK] = this.af0 + (this.af1 * dt) + (this.af2 * dt * dt) + (F * this.e * this.sqrtA * sinE);
+		return ek;
+	}
+
+	/**
+	 * @param gpsSeconds seconds since the GPS epoch
+	 * @return seconds from the reference time toe to gpsSeconds
+	 */
+	public double getAge(final double gpsSeconds) {
+		return GpsTime.sinceTimeOfWeek(gpsSeconds, this.toe);
+	}
+
+	/**
+	 * @param gpsSeconds seconds since the GPS epoch
+	 * @return true if gpsSeconds is within the curve fit interval around toe, 4 hours or 6
+	 *         when the fit interval flag is set
+	 */
+	public boolean isValidAt(final double gpsSeconds) {
+		final double half = (this.fit == 1) ? (3 * 3600) : (2 * 3600);
+		return Math.abs(this.getAge(gpsSeconds)) <= half;
+	}
+
+	/**
+	 * @return true if subframe 1 reports the satellite healthy
+	 */
+	public boolean isHealthy() {
+		return this.health == 0;
+	}
+
+	/**
+	 * @return the satellite (PRN)
+	 */
+	public int getPrn() {
+		return this.prn;
+	}
+
+	/**
+	 * @return the issue of data
+	 */
+	public int getIODE() {
+		return this.iode;
+	}
+
+	/**
+	 * @return the week number of subframe 1, modulo 1024
+	 */
+	public int getWeek() {
+		return this.week;
+	}
+
+	/**
+	 * @return the reference time of the orbit in seconds into the week
+	 */
+	public double getToe() {
+		return this.toe;
+	}
+
+	/**
+	 * @return the reference time of the clock in seconds into the week
+	 */
+	public double getToc() {
+		return this.toc;
+	}
+
+	/**
+	 * @return the health bits of subframe 1
+	 */
+	public int getHealth() {
+		return this.health;
+	}
+
+	/**
+	 * @return the user range accuracy as reported by gpsd
+	 */
+	public double getUra() {
+		return this.ura;
+	}
+
+	/**
+	 * @return the L1/L2 group delay in seconds, subtract it from the clock offset for L1 only receivers
+	 */
+	public double getTgd() {
+		return this.tgd;
+	}
+
+	/**
+	 * @return the semi-major axis in meters
+	 */
+	public double getSemiMajorAxis() {
+		return this.a;
+	}
+
+	/**
+	 * @return the eccentricity
+	 */
+	public double getEccentricity() {
+		return this.e;
+	}
+
+	/**
+	 * @return the inclination at toe in radians
+	 */
+	public double getInclination() {
+		return this.i0;
+	}
+
+	@Override
+	public String toString() {
+		return "Ephemeris{PRN " + this.prn + ", IODE " + this.iode + ", toe " + this.toe + ", health " + this.health + "}";
+	}
+}
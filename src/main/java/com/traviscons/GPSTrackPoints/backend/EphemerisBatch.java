@@ -0,0 +1,140 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* EphemerisBatch
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import java.util.List;
+
+/**
+ * Azimuth, elevation and range of many satellites over a series of evenly spaced epochs,
+ * as seen from one {@link Observer}.
+ *
+ * Results are written to caller supplied double[] columns laid out epoch by epoch, one slot
+ * per satellite, so a day at one second steps for 32 satellites fills about 2.8 million
+ * slots without creating an object per value. Each satellite is run through all epochs in
+ * turn and the Kepler iteration starts from the eccentric anomaly of the epoch before, which
+ * converges in one or two steps. Satellites below the elevation mask, unhealthy or outside
+ * their fit interval get NaN.
+ *
+ * The position is taken at the epoch itself; the 70 ms the signal travels moves a satellite
+ * by less than a thousandth of a degree as seen from the ground.
+ *
+ * Instances hold no mutable state and can be shared between threads.
+ */
+public final class EphemerisBatch {
+
+	private final Observer observer;
+
+	private final double sinMask;
+
+	/**
+	 * @param observer         where the satellites are seen from
+	 * @param elevationMaskDeg satellites below this elevation in degrees count as not visible
+	 */
+	public EphemerisBatch(final Observer observer, final double elevationMaskDeg) {
+		if (observer == null) {
+			throw new IllegalArgumentException("observer can not be null!");
+		}
+		this.observer = observer;
+		this.sinMask = Math.sin(Math.toRadians(elevationMaskDeg));
+	}
+
+	/**
+	 * @see #evaluate(Ephemeris[], double, double, int, double[], double[], double[])
+	 */
+	public int evaluate(final List<Ephemeris> satellites, final double startGpsSeconds, final double stepSeconds, final int epochs,
+			final double[] azimuth, final double[] elevation, final double[] range) {
+		return this.evaluate(satellites.toArray(new Ephemeris[satellites.size()]), startGpsSeconds, stepSeconds, epochs, azimuth, elevation, range);
+	}
+
+	/**
+	 * Look at every satellite at every epoch.
+	 *
+	 * @param satellites      the satellites, one slot each per epoch
+	 * @param startGpsSeconds the first epoch in seconds since the GPS epoch
+	 * @param stepSeconds     the time between epochs
+	 * @param epochs          the number of epochs
+	 * @param azimuth         gets degrees from north at [epoch * satellites.length + satellite], may be null
+	 * @param elevation       gets degrees above the horizon, same layout, may be null
+	 * @param range           gets meters, same layout, may be null
+	 * @return the number of slots with a visible satellite
+	 */
+	public int evaluate(final Ephemeris[] satellites, final double startGpsSeconds, final double stepSeconds, final int epochs,
+			final double[] azimuth, final double[] elevation, final double[] range) {
+		final int count = satellites.length;
+		final int slots = count * epochs;
+		checkLength(azimuth, slots);
+		checkLength(elevation, slots);
+		checkLength(range, slots);
+
+		final double[] state = new double[Ephemeris.STATE_SIZE];
+		final double[] look = new double[3];
+		int visible = 0;
+		for (int s = 0; s < count; s++) {
+			final Ephemeris eph = satellites[s];
+			final boolean healthy = eph.isHealthy();
+			double e = Double.NaN;
+			for (int k = 0; k < epochs; k++) {
+				final int slot = (k * count) + s;
+				final double t = startGpsSeconds + (k * stepSeconds);
+				boolean seen = false;
+				if (healthy && eph.isValidAt(t)) {
+					e = eph.compute(t, e, state, 0);
+					if (this.observer.sinElevation(state[Ephemeris.X], state[Ephemeris.Y], state[Ephemeris.Z]) >= this.sinMask) {
+						seen = true;
+					}
+				} else {
+					e = Double.NaN;
+				}
+				if (seen) {
+					visible++;
+					if ((azimuth != null) || (elevation != null) || (range != null)) {
+						this.observer.look(state[Ephemeris.X], state[Ephemeris.Y], state[Ephemeris.Z], look, 0);
+						set(azimuth, slot, look[0]);
+						set(elevation, slot, look[1]);
+						set(range, slot, look[2]);
+					}
+				} else {
+					set(azimuth, slot, Double.NaN);
+					set(elevation, slot, Double.NaN);
+					set(range, slot, Double.NaN);
+				}
+			}
+		}
+		return visible;
+	}
+
+	private static void checkLength(final double[] column, final int slots) {
+		if ((column != null) && (column.length < slots)) {
+			throw new IllegalArgumentException("Output column too short: " + column.length + " < " + slots);
+		}
+	}
+
+	private static void set(final double[] column, final int slot, final double value) {
+		if (column != null) {
+			column[slot] = value;
+		}
+	}
+
+	/**
+	 * @return where the satellites are seen from
+	 */
+	public Observer getObserver() {
+		return this.observer;
+	}
+}
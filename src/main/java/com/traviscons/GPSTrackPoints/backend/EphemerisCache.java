@@ -0,0 +1,251 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* EphemerisCache
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.types.subframes.EPHEM1Object;
+import com.traviscons.GPSTrackPoints.types.subframes.EPHEM2Object;
+import com.traviscons.GPSTrackPoints.types.subframes.EPHEM3Object;
+import com.traviscons.GPSTrackPoints.types.subframes.SUBFRAMEObject;
+
+/**
+ * Assembles the SUBFRAME reports of gpsd into complete {@link Ephemeris}es, one per satellite.
+ *
+ * A satellite broadcasts subframes 1, 2 and 3 every 30 seconds. They are collected per
+ * satellite and issue of data (IODE) until all three of one issue are in, so subframes of
+ * an old and a new issue arriving around an upload are never mixed. The newest complete
+ * issue of every satellite is kept, and the one before it while it is still asked for by
+ * issue. Lookups are lock-free and can be made from any thread while subframes arrive.
+ *
+ * gpsd only sends subframes for receivers that report them and when the WATCH asks for
+ * them, and only scaled subframes carry values in units; raw ones are ignored.
+ *
+ * <pre>
+ * final EphemerisCache ephemerides = new EphemerisCache();
+ * ep.addListener(ephemerides, SUBFRAMEObject.class);
+ * ...
+ * final Ephemeris eph = ephemerides.get(7);
+ * final double[] state = eph.compute(GpsTime.fromUnixMillis(System.currentTimeMillis()));
+ * </pre>
+ */
+public class EphemerisCache extends ObjectListener {
+
+	/// incomplete issues kept per satellite
+	private static final int MAX_IN_FLIGHT = 2;
+
+	/// newest complete issue per satellite
+	private final ConcurrentHashMap<Integer, Ephemeris> current = new ConcurrentHashMap<Integer, Ephemeris>();
+
+	/// complete issues by key(prn, iode), the current and the previous one per satellite
+	private final ConcurrentHashMap<Integer, Ephemeris> byIssue = new ConcurrentHashMap<Integer, Ephemeris>();
+
+	/// subframes of issues not complete yet, by key(prn, iode), guarded by lock
+	private final Map<Integer, Partial> partials = new HashMap<Integer, Partial>();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/// orders the partials, guarded by lock
+	private long sequence;
+
+	private final AtomicLong assembled = new AtomicLong();
+
+	private volatile boolean warnedRaw;
+
+	public EphemerisCache() {
+		super(null, null, null);
+	}
+
+	@Override
+	public void handleSUBFRAME(final SUBFRAMEObject subframe) {
+		if ((subframe.getEphem1() == null) && (subframe.getEphem2() == null) && (subframe.getEphem3() == null)) {
+			return;
+		}
+		if (!subframe.getScaled()) {
+			if (!this.warnedRaw) {
+				this.warnedRaw = true;
+				System.err.println("WARNING: EphemerisCache - Ignoring unscaled subframes, WATCH with scaled:true");
+			}
+			return;
+		}
+		final int prn = subframe.getSatelliteNumber();
+		this.lock.lock();
+		try {
+			final Partial p;
+			if (subframe.getEphem1() != null) {
+				p = this.partial(prn, subframe.getEphem1().getIODC() & 0xFF);
+				p.sf1 = subframe.getEphem1();
+			} else if (subframe.getEphem2() != null) {
+				p = this.partial(prn, subframe.getEphem2().getIODE());
+				p.sf2 = subframe.getEphem2();
+			} else {
+				p = this.partial(prn, subframe.getEphem3().getIODE());
+				p.sf3 = subframe.getEphem3();
+			}
+			if ((p.sf1 != null) && (p.sf2 != null) && (p.sf3 != null)) {
+				this.partials.remove(key(prn, p.iode));
+				this.complete(prn, p);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private Partial partial(final int prn, final int iode) {
+		final Integer key = key(prn, iode);
+		Partial p = this.partials.get(key);
+		if (p == null) {
+			// around an upload two issues are in flight, anything older will not complete
+			Integer oldest = null;
+			int inFlight = 0;
+			for (final Map.Entry<Integer, Partial> entry : this.partials.entrySet()) {
+				if ((entry.getKey() >> 8) == prn) {
+					inFlight++;
+					if ((oldest == null) || (entry.getValue().sequence < this.partials.get(oldest).sequence)) {
+						oldest = entry.getKey();
+					}
+				}
+			}
+			if (inFlight >= MAX_IN_FLIGHT) {
+				this.partials.remove(oldest);
+			}
+			p = new Partial(iode, this.sequence++);
+			this.partials.put(key, p);
+		}
+		return p;
+	}
+
+	private void complete(final int prn, final Partial p) {
+		final Ephemeris eph;
+		try {
+			eph = Ephemeris.from(prn, p.sf1, p.sf2, p.sf3);
+		} catch (final IllegalArgumentException e) {
+			System.err.println("WARNING: EphemerisCache - Dropping ephemeris of PRN " + prn + ": " + e.getMessage());
+			return;
+		}
+		final Ephemeris before = this.current.put(prn, eph);
+		this.byIssue.put(key(prn, eph.getIODE()), eph);
+		if ((before != null) && (before.getIODE() == eph.getIODE())) {
+			return; // the same issue broadcast again
+		}
+		this.assembled.incrementAndGet();
+		if (before != null) {
+			// keep the one replaced, drop the one before that
+			for (final Integer k : new ArrayList<Integer>(this.byIssue.keySet())) {
+				if (((k >> 8) == prn) && ((k & 0xFF) != eph.getIODE()) && ((k & 0xFF) != before.getIODE())) {
+					this.byIssue.remove(k);
+				}
+			}
+		}
+	}
+
+	private static Integer key(final int prn, final int iode) {
+		return (prn << 8) | (iode & 0xFF);
+	}
+
+	/**
+	 * @param prn the satellite
+	 * @return the newest complete ephemeris of the satellite, null if there is none yet
+	 */
+	public Ephemeris get(final int prn) {
+		return this.current.get(prn);
+	}
+
+	/**
+	 * @param prn  the satellite
+	 * @param iode the issue of data
+	 * @return that issue of the satellite's ephemeris, null unless it is the newest or the one before
+	 */
+	public Ephemeris get(final int prn, final int iode) {
+		return this.byIssue.get(key(prn, iode));
+	}
+
+	/**
+	 * @return the newest ephemeris of every satellite, sorted by PRN
+	 */
+	public List<Ephemeris> getAll() {
+		final List<Integer> prns = new ArrayList<Integer>(this.current.keySet());
+		Collections.sort(prns);
+		final List<Ephemeris> all = new ArrayList<Ephemeris>(prns.size());
+		for (final Integer prn : prns) {
+			final Ephemeris eph = this.current.get(prn);
+			if (eph != null) {
+				all.add(eph);
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * @param gpsSeconds seconds since the GPS epoch
+	 * @return the ephemerides of healthy satellites that are within their fit interval at gpsSeconds
+	 */
+	public List<Ephemeris> getValid(final double gpsSeconds) {
+		final List<Ephemeris> valid = new ArrayList<Ephemeris>();
+		for (final Ephemeris eph : this.getAll()) {
+			if (eph.isHealthy() && eph.isValidAt(gpsSeconds)) {
+				valid.add(eph);
+			}
+		}
+		return valid;
+	}
+
+	/**
+	 * @return number of satellites with an ephemeris
+	 */
+	public int size() {
+		return this.current.size();
+	}
+
+	/**
+	 * @return number of new issues assembled so far
+	 */
+	public long getAssembled() {
+		return this.assembled.get();
+	}
+
+	/**
+	 * Subframes 1 to 3 of one issue as they come in.
+	 */
+	private static final class Partial {
+
+		final int iode;
+
+		final long sequence;
+
+		EPHEM1Object sf1;
+
+		EPHEM2Object sf2;
+
+		EPHEM3Object sf3;
+
+		Partial(final int iode, final long sequence) {
+			this.iode = iode;
+			this.sequence = sequence;
+		}
+	}
+}
@@ -0,0 +1,402 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* FixFusion
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.traviscons.GPSTrackPoints.api.IObjectListener;
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.types.ENMEAMode;
+import com.traviscons.GPSTrackPoints.types.GSTObject;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * Turns the interleaved TPVs of several receivers behind one gpsd into one stream of fixes.
+ *
+ * The error of a device's fix is the 1 sigma latitude and longitude error of its GST for the
+ * same epoch if there is one, else the 95% epy and epx of the TPV scaled to 1 sigma, else
+ * the GST rms, else {@link #DEFAULT_SIGMA}. A 3D fix always ranks before a 2D fix.
+ *
+ * In {@link FusionMode#BEST} the fixes of the device with the smallest error are passed on
+ * unchanged. Another device takes over only when its variance is below the switch ratio
+ * times that of the current one, so two similar receivers do not alternate.
+ *
+ * In {@link FusionMode#BLEND} the fixes with the same timestamp are collected until every
+ * device with a current fix has reported, or the next epoch starts, then averaged weighted
+ * by the inverse of their variances. The result has the device {@link #FUSED_DEVICE},
+ * the combined errors and the speed and course of the best device.
+ *
+ * A TPV without a fix is passed on only when no device has a fix, so a writer ends its
+ * segment when the last receiver loses the sky. Register the fusion instead of its
+ * tracker; it keeps the tracker up to date.
+ *
+ * <pre>
+ * final DeviceTracker devices = new DeviceTracker();
+ * ep.addListener(new FixFusion(devices, new TrackRecorder(writer), FusionMode.BLEND),
+ *         TPVObject.class, SKYObject.class, GSTObject.class);
+ * </pre>
+ */
+public class FixFusion extends ObjectListener {
+
+	/// device name of blended fixes
+	public static final String FUSED_DEVICE = "fused";
+
+	/// 1 sigma error in meters assumed for a fix that reports none
+	public static final double DEFAULT_SIGMA = 25.0;
+
+	/// gpsd reports TPV errors at 95% confidence
+	private static final double SIGMA_95 = 1.96;
+
+	private final DeviceTracker tracker;
+
+	private final IObjectListener downstream;
+
+	private final FusionMode mode;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private long maxAge = 2000;
+
+	private double switchRatio = 0.8;
+
+	private double epochTolerance = 0.05;
+
+	/// device currently passed on in BEST mode
+	private String selected;
+
+	/// timestamp of the epoch being collected in BLEND mode, NaN if none
+	private double epochTime = Double.NaN;
+
+	private boolean epochEmitted;
+
+	private final LinkedHashMap<String, TPVObject> epochFixes = new LinkedHashMap<String, TPVObject>();
+
+	private long received;
+
+	private long emitted;
+
+	/**
+	 * @param tracker    keeps the latest reports of every device
+	 * @param downstream gets the fused fixes
+	 * @param mode       pick the best device or blend them
+	 */
+	public FixFusion(final DeviceTracker tracker, final IObjectListener downstream, final FusionMode mode) {
+		super(null, null, null);
+		if ((tracker == null) || (downstream == null) || (mode == null)) {
+			throw new IllegalArgumentException("tracker, downstream and mode can not be null!");
+		}
+		this.tracker = tracker;
+		this.downstream = downstream;
+		this.mode = mode;
+	}
+
+	@Override
+	public void handleTPV(final TPVObject tpv) {
+		this.tracker.handleTPV(tpv);
+		final DeviceState state = this.tracker.get(tpv.getDevice());
+		if ((state == null) || (state.getTPV() != tpv)) {
+			return; // a device the tracker does not keep
+		}
+		this.lock.lock();
+		try {
+			this.received++;
+			if (!DeviceState.isFix(tpv)) {
+				if (this.tracker.getFixed(this.maxAge).isEmpty()) {
+					this.flushEpoch();
+					this.selected = null;
+					this.emit(tpv);
+				}
+				return;
+			}
+			if ((this.mode == FusionMode.BEST) || Double.isNaN(tpv.getTimestamp())) {
+				this.best(state, tpv);
+			} else {
+				this.collect(state, tpv);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public void handleSKY(final SKYObject sky) {
+		this.tracker.handleSKY(sky);
+	}
+
+	@Override
+	public void handleGST(final GSTObject gst) {
+		this.tracker.handleGST(gst);
+	}
+
+	/// pass the fix on if its device is, or now becomes, the selected one
+	private void best(final DeviceState state, final TPVObject tpv) {
+		final List<DeviceState> fixed = this.tracker.getFixed(this.maxAge);
+		DeviceState best = null;
+		for (final DeviceState s : fixed) {
+			if ((best == null) || (this.compare(s, best) < 0)) {
+				best = s;
+			}
+		}
+		if (best == null) {
+			best = state;
+		}
+		if ((this.selected != null) && !this.selected.equals(best.getDevice())) {
+			final DeviceState current = this.tracker.get(this.selected);
+			if (fixed.contains(current) && (rank(current.getTPV()) == rank(best.getTPV()))
+					&& (this.variance(best) > (this.switchRatio * this.variance(current)))) {
+				best = current;
+			}
+		}
+		this.selected = best.getDevice();
+		if (best == state) {
+			this.emit(tpv);
+		}
+	}
+
+	/// add the fix to its epoch, blending the epoch once every device with a fix has reported
+	private void collect(final DeviceState state, final TPVObject tpv) {
+		final double t = tpv.getTimestamp();
+		if (!Double.isNaN(this.epochTime)) {
+			if (t < (this.epochTime - this.epochTolerance)) {
+				return; // late for an epoch that was already passed on
+			}
+			if (t > (this.epochTime + this.epochTolerance)) {
+				this.flushEpoch();
+				this.epochTime = Double.NaN;
+			}
+		}
+		if (Double.isNaN(this.epochTime)) {
+			this.epochTime = t;
+			this.epochFixes.clear();
+			this.epochEmitted = false;
+		}
+		if (this.epochEmitted) {
+			return; // straggler of an epoch already blended
+		}
+		this.epochFixes.put(state.getDevice(), tpv);
+		for (final DeviceState s : this.tracker.getFixed(this.maxAge)) {
+			if (!this.epochFixes.containsKey(s.getDevice())) {
+				return;
+			}
+		}
+		this.flushEpoch();
+	}
+
+	/// blend and pass on the epoch being collected, if it was not yet
+	private void flushEpoch() {
+		if (this.epochEmitted || this.epochFixes.isEmpty()) {
+			return;
+		}
+		this.epochEmitted = true;
+		this.emit(this.blend());
+	}
+
+	private TPVObject blend() {
+		TPVObject ref = null;
+		TPVObject best = null;
+		DeviceState bestState = null;
+		double wLat = 0;
+		double sumLat = 0;
+		double wLon = 0;
+		double sumLon = 0;
+		double wAlt = 0;
+		double sumAlt = 0;
+		for (final TPVObject tpv : this.epochFixes.values()) {
+			final DeviceState s = this.tracker.get(tpv.getDevice());
+			final GSTObject gst = this.gst(s, tpv);
+			if (ref == null) {
+				ref = tpv;
+			}
+			if ((best == null) || (compare(tpv, this.variance(s, tpv), best, this.variance(bestState, best)) < 0)) {
+				best = tpv;
+				bestState = s;
+			}
+			final double sLat = sigma((gst != null) ? gst.getLat() : Double.NaN, tpv.getLatitudeError(), gst);
+			final double sLon = sigma((gst != null) ? gst.getLon() : Double.NaN, tpv.getLongitudeError(), gst);
+			wLat += 1 / (sLat * sLat);
+			sumLat += tpv.getLatitude() / (sLat * sLat);
+			wLon += 1 / (sLon * sLon);
+			sumLon += wrap(tpv.getLongitude() - ref.getLongitude()) / (sLon * sLon);
+			if ((tpv.getMode() == ENMEAMode.ThreeDimensional) && !Double.isNaN(tpv.getAltitude())) {
+				final double sAlt = sigma((gst != null) ? gst.getAlt() : Double.NaN, tpv.getAltitudeError(), gst);
+				wAlt += 1 / (sAlt * sAlt);
+				sumAlt += tpv.getAltitude() / (sAlt * sAlt);
+			}
+		}
+
+		final TPVObject fused = new TPVObject();
+		fused.setDevice(FUSED_DEVICE);
+		fused.setTag(best.getTag());
+		fused.setTimestamp(best.getTimestamp());
+		fused.setTimestampText(best.getTimestampText());
+		fused.setTimestampError(best.getTimestampError());
+		fused.setLatitude(sumLat / wLat);
+		fused.setLongitude(wrap(ref.getLongitude() + (sumLon / wLon)));
+		fused.setLatitudeError(SIGMA_95 / Math.sqrt(wLat));
+		fused.setLongitudeError(SIGMA_95 / Math.sqrt(wLon));
+		if (wAlt > 0) {
+			fused.setMode(ENMEAMode.ThreeDimensional);
+			fused.setAltitude(sumAlt / wAlt);
+			fused.setAltitudeError(SIGMA_95 / Math.sqrt(wAlt));
+		} else {
+			fused.setMode(ENMEAMode.TwoDimensional);
+		}
+		fused.setCourse(best.getCourse());
+		fused.setCourseError(best.getCourseError());
+		fused.setSpeed(best.getSpeed());
+		fused.setSpeedError(best.getSpeedError());
+		fused.setClimbRate(best.getClimbRate());
+		fused.setClimbRateError(best.getClimbRateError());
+		return fused;
+	}
+
+	private void emit(final TPVObject tpv) {
+		this.emitted++;
+		this.downstream.handleTPV(tpv);
+	}
+
+	/// the GST of the device if it belongs to the epoch of the TPV
+	private GSTObject gst(final DeviceState state, final TPVObject tpv) {
+		final GSTObject gst = (state == null) ? null : state.getGST();
+		if ((gst == null) || !(Math.abs(gst.getTimestamp() - tpv.getTimestamp()) <= this.epochTolerance)) {
+			return null;
+		}
+		return gst;
+	}
+
+	/// 1 sigma error in meters from the GST, the 95% TPV error or the GST rms, in that order
+	private static double sigma(final double gstSigma, final double tpvError, final GSTObject gst) {
+		if (gstSigma > 0) {
+			return gstSigma;
+		}
+		if (tpvError > 0) {
+			return tpvError / SIGMA_95;
+		}
+		if ((gst != null) && (gst.getRms() > 0)) {
+			return gst.getRms();
+		}
+		return DEFAULT_SIGMA;
+	}
+
+	/// horizontal error variance in square meters of the device's latest fix
+	private double variance(final DeviceState state) {
+		return this.variance(state, state.getTPV());
+	}
+
+	private double variance(final DeviceState state, final TPVObject tpv) {
+		final GSTObject gst = this.gst(state, tpv);
+		final double sLat = sigma((gst != null) ? gst.getLat() : Double.NaN, tpv.getLatitudeError(), gst);
+		final double sLon = sigma((gst != null) ? gst.getLon() : Double.NaN, tpv.getLongitudeError(), gst);
+		return (sLat * sLat) + (sLon * sLon);
+	}
+
+	private int compare(final DeviceState a, final DeviceState b) {
+		return compare(a.getTPV(), this.variance(a), b.getTPV(), this.variance(b));
+	}
+
+	/// 3D before 2D, then the smaller variance
+	private static int compare(final TPVObject a, final double varianceA, final TPVObject b, final double varianceB) {
+		final int byMode = rank(b) - rank(a);
+		return (byMode != 0) ? byMode : Double.compare(varianceA, varianceB);
+	}
+
+	private static int rank(final TPVObject tpv) {
+		return (tpv.getMode() == ENMEAMode.ThreeDimensional) ? 1 : 0;
+	}
+
+	/// longitude difference or sum into -180..180
+	private static double wrap(final double lon) {
+		double l = lon;
+		while (l > 180) {
+			l -= 360;
+		}
+		while (l < -180) {
+			l += 360;
+		}
+		return l;
+	}
+
+	/**
+	 * Pass on the epoch being collected without waiting for the remaining devices.
+	 */
+	public void flush() {
+		this.lock.lock();
+		try {
+			this.flushEpoch();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @param millis how old a device's fix may be and still count, default 2000
+	 */
+	public void setMaxAge(final long millis) {
+		this.maxAge = millis;
+	}
+
+	/**
+	 * @param ratio in BEST mode, how much smaller another device's variance must be before it
+	 *              takes over. 1 switches to any better device, default 0.8.
+	 */
+	public void setSwitchRatio(final double ratio) {
+		if ((ratio <= 0) || (ratio > 1)) {
+			throw new IllegalArgumentException("switch ratio must be in (0, 1]: " + ratio);
+		}
+		this.switchRatio = ratio;
+	}
+
+	/**
+	 * @param seconds how far apart timestamps of one epoch may be, default 0.05
+	 */
+	public void setEpochTolerance(final double seconds) {
+		this.epochTolerance = seconds;
+	}
+
+	/**
+	 * @return the tracker holding the latest reports of every device
+	 */
+	public DeviceTracker getTracker() {
+		return this.tracker;
+	}
+
+	/**
+	 * @return the device passed on in BEST mode, null if none has a fix
+	 */
+	public String getSelected() {
+		return this.selected;
+	}
+
+	/**
+	 * @return number of TPVs received from tracked devices
+	 */
+	public long getReceived() {
+		return this.received;
+	}
+
+	/**
+	 * @return number of TPVs passed on
+	 */
+	public long getEmitted() {
+		return this.emitted;
+	}
+}
@@ -0,0 +1,258 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* FixSnapshot
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import com.traviscons.GPSTrackPoints.types.GSTObject;
+import com.traviscons.GPSTrackPoints.types.SATObject;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * An immutable view of the latest fix, published by {@link GPSPosition}.
+ *
+ * Besides the TPV it carries the dilutions of precision of the latest SKY and the error
+ * estimates of the latest GST. gpsd sends these after the TPV of the same epoch, so right
+ * after a new TPV they may still be those of the previous epoch; {@link #isGSTCurrent()}
+ * tells whether the GST matches the TPV.
+ */
+public final class FixSnapshot {
+
+	/// before the first fix
+	static final FixSnapshot EMPTY = new FixSnapshot(0, null, 0L, (SKYObject) null, (GSTObject) null);
+
+	private final long version;
+
+	private final TPVObject tpv;
+
+	private final long receivedNanos;
+
+	private final double hdop;
+
+	private final double vdop;
+
+	private final double pdop;
+
+	private final double tdop;
+
+	private final double gdop;
+
+	private final int satellitesVisible;
+
+	private final int satellitesUsed;
+
+	private final double gstTimestamp;
+
+	private final double rms;
+
+	private final double latitudeSigma;
+
+	private final double longitudeSigma;
+
+	private final double altitudeSigma;
+
+	private FixSnapshot(final long version, final TPVObject tpv, final long receivedNanos, final SKYObject sky, final GSTObject gst) {
+		this.version = version;
+		this.tpv = tpv;
+		this.receivedNanos = receivedNanos;
+		if (sky != null) {
+			this.hdop = sky.getHorizontalDOP();
+			this.vdop = sky.getAltitudeDOP();
+			this.pdop = sky.getSphericalDOP();
+			this.tdop = sky.getTimestampDOP();
+			this.gdop = sky.getHypersphericalDOP();
+			int used = 0;
+			final int visible = (sky.getSatellites() == null) ? 0 : sky.getSatellites().size();
+			for (int i = 0; i < visible; i++) {
+				final SATObject sat = sky.getSatellites().get(i);
+				if (sat.getUsed()) {
+					used++;
+				}
+			}
+			this.satellitesVisible = visible;
+			this.satellitesUsed = used;
+		} else {
+			this.hdop = Double.NaN;
+			this.vdop = Double.NaN;
+			this.pdop = Double.NaN;
+			this.tdop = Double.NaN;
+			this.gdop = Double.NaN;
+			this.satellitesVisible = 0;
+			this.satellitesUsed = 0;
+		}
+		if (gst != null) {
+			this.gstTimestamp = gst.getTimestamp();
+			this.rms = gst.getRms();
+			this.latitudeSigma = gst.getLat();
+			this.longitudeSigma = gst.getLon();
+			this.altitudeSigma = gst.getAlt();
+		} else {
+			this.gstTimestamp = Double.NaN;
+			this.rms = Double.NaN;
+			this.latitudeSigma = Double.NaN;
+			this.longitudeSigma = Double.NaN;
+			this.altitudeSigma = Double.NaN;
+		}
+	}
+
+	/// copy with the SKY and GST values taken from other snapshots
+	private FixSnapshot(final long version, final TPVObject tpv, final long receivedNanos, final FixSnapshot skyFrom, final FixSnapshot gstFrom) {
+		this.version = version;
+		this.tpv = tpv;
+		this.receivedNanos = receivedNanos;
+		this.hdop = skyFrom.hdop;
+		this.vdop = skyFrom.vdop;
+		this.pdop = skyFrom.pdop;
+		this.tdop = skyFrom.tdop;
+		this.gdop = skyFrom.gdop;
+		this.satellitesVisible = skyFrom.satellitesVisible;
+		this.satellitesUsed = skyFrom.satellitesUsed;
+		this.gstTimestamp = gstFrom.gstTimestamp;
+		this.rms = gstFrom.rms;
+		this.latitudeSigma = gstFrom.latitudeSigma;
+		this.longitudeSigma = gstFrom.longitudeSigma;
+		this.altitudeSigma = gstFrom.altitudeSigma;
+	}
+
+	/// a new fix, keeping the SKY and GST values
+	FixSnapshot withTPV(final TPVObject newTPV) {
+		return new FixSnapshot(this.version + 1, newTPV, System.nanoTime(), this, this);
+	}
+
+	/// the same fix with the DOPs of a new SKY
+	FixSnapshot withSKY(final SKYObject sky) {
+		return new FixSnapshot(this.version, this.tpv, this.receivedNanos, new FixSnapshot(0, null, 0L, sky, null), this);
+	}
+
+	/// the same fix with the errors of a new GST
+	FixSnapshot withGST(final GSTObject gst) {
+		return new FixSnapshot(this.version, this.tpv, this.receivedNanos, this, new FixSnapshot(0, null, 0L, null, gst));
+	}
+
+	/**
+	 * @return the number of fixes published before and including this one, 0 before the first fix.
+	 *         SKY and GST updates do not change it.
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * @return the latest TPV, null before the first fix
+	 */
+	public TPVObject getTPV() {
+		return this.tpv;
+	}
+
+	/**
+	 * @return ms since the TPV was published, Long.MAX_VALUE before the first fix
+	 */
+	public long getAgeMillis() {
+		return (this.tpv == null) ? Long.MAX_VALUE : ((System.nanoTime() - this.receivedNanos) / 1000000L);
+	}
+
+	/**
+	 * @return horizontal dilution of precision, NaN if no SKY arrived
+	 */
+	public double getHorizontalDOP() {
+		return this.hdop;
+	}
+
+	/**
+	 * @return vertical dilution of precision, NaN if no SKY arrived
+	 */
+	public double getVerticalDOP() {
+		return this.vdop;
+	}
+
+	/**
+	 * @return position (spherical) dilution of precision, NaN if no SKY arrived
+	 */
+	public double getPositionDOP() {
+		return this.pdop;
+	}
+
+	/**
+	 * @return time dilution of precision, NaN if no SKY arrived
+	 */
+	public double getTimeDOP() {
+		return this.tdop;
+	}
+
+	/**
+	 * @return geometric (hyperspherical) dilution of precision, NaN if no SKY arrived
+	 */
+	public double getGeometricDOP() {
+		return this.gdop;
+	}
+
+	/**
+	 * @return satellites in the latest SKY
+	 */
+	public int getSatellitesVisible() {
+		return this.satellitesVisible;
+	}
+
+	/**
+	 * @return satellites used in the solution according to the latest SKY
+	 */
+	public int getSatellitesUsed() {
+		return this.satellitesUsed;
+	}
+
+	/**
+	 * @return true if the GST values belong to the epoch of the TPV
+	 */
+	public boolean isGSTCurrent() {
+		return (this.tpv != null) && (Math.abs(this.gstTimestamp - this.tpv.getTimestamp()) < 0.05);
+	}
+
+	/**
+	 * @return RMS of the pseudorange residuals from the latest GST, NaN if none arrived
+	 */
+	public double getRms() {
+		return this.rms;
+	}
+
+	/**
+	 * @return 1 sigma latitude error in meters from the latest GST, NaN if none arrived
+	 */
+	public double getLatitudeSigma() {
+		return this.latitudeSigma;
+	}
+
+	/**
+	 * @return 1 sigma longitude error in meters from the latest GST, NaN if none arrived
+	 */
+	public double getLongitudeSigma() {
+		return this.longitudeSigma;
+	}
+
+	/**
+	 * @return 1 sigma altitude error in meters from the latest GST, NaN if none arrived
+	 */
+	public double getAltitudeSigma() {
+		return this.altitudeSigma;
+	}
+
+	@Override
+	public String toString() {
+		return "FixSnapshot{version=" + this.version + ", hdop=" + this.hdop + ", used=" + this.satellitesUsed
+				+ ", rms=" + this.rms + ", tpv=" + this.tpv + "}";
+	}
+}
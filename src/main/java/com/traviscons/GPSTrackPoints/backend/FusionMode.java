@@ -0,0 +1,34 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* FusionMode
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+/**
+ * How a {@link FixFusion} turns the fixes of several devices into one.
+ */
+public enum FusionMode {
+
+	/**
+	 * Pass on the fixes of the device with the smallest reported error, unchanged.
+	 */
+	BEST,
+	/**
+	 * Average the fixes of one epoch, weighting each device by the inverse of its error variance.
+	 */
+	BLEND;
+}
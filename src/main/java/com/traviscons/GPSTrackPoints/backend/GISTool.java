@@ -25,6 +25,8 @@ import com.traviscons.GPSTrackPoints.types.TPVObject;
 /**
  * This class provides tools to measure the distance between two locations in WGS84 coordinates
  *
+ * For whole tracks held in double[] columns use {@link GeodesicEngine}
+ *
  * @author thoeger
  */
 public final class GISTool {
@@ -69,10 +71,60 @@ public final class GISTool {
 		// great-circle-distance with hypersine formula
 		final double dlong = x1rad - x2rad;
 		final double dlat = y1rad - y2rad;
-		final double a = Math.pow(Math.sin(dlat / 2), 2) + (Math.cos(y1rad) * Math.cos(y2rad) * Math.pow(Math.sin(dlong / 2), 2));
+		final double sdlat = Math.sin(dlat / 2);
+		final double sdlong = Math.sin(dlong / 2);
+		final double a = (sdlat * sdlat) + (Math.cos(y1rad) * Math.cos(y2rad) * sdlong * sdlong);
 		final double c = 2 * Math.asin(Math.sqrt(a));
 
 		return GISTool.EARTH_RADIUS_KILOMETERS * c;
 	}
 
+	/**
+	 * calculates the initial bearing from one {@link TPVObject} to another in degrees from true north
+	 *
+	 * @param from - start position
+	 * @param to   - end position
+	 * @return bearing in degrees, 0 to 360
+	 */
+	public static double getBearing(final TPVObject from, final TPVObject to) {
+		final double deg2rad = Math.PI / 180;
+		final double y1rad = from.getLatitude() * deg2rad;
+		final double y2rad = to.getLatitude() * deg2rad;
+		final double dlong = (to.getLongitude() - from.getLongitude()) * deg2rad;
+
+		final double y = Math.sin(dlong) * Math.cos(y2rad);
+		final double x = (Math.cos(y1rad) * Math.sin(y2rad)) - (Math.sin(y1rad) * Math.cos(y2rad) * Math.cos(dlong));
+		final double bearing = Math.toDegrees(Math.atan2(y, x));
+		return (bearing < 0) ? bearing + 360 : bearing;
+	}
+
+	/**
+	 * calculates the distance of a {@link TPVObject} from the great circle segment between two others in kilometers<br>
+	 * beyond either end of the segment the distance to that end is returned
+	 *
+	 * @param point - the position to measure
+	 * @param start - start of the segment
+	 * @param end   - end of the segment
+	 * @return distance in kilometers
+	 */
+	public static double getCrossTrackDistance(final TPVObject point, final TPVObject start, final TPVObject end) {
+		final double d13 = GISTool.getDistance(start, point) / GISTool.EARTH_RADIUS_KILOMETERS;
+		final double d12 = GISTool.getDistance(start, end) / GISTool.EARTH_RADIUS_KILOMETERS;
+		if (d12 == 0) {
+			return d13 * GISTool.EARTH_RADIUS_KILOMETERS;
+		}
+		final double angle = Math.toRadians(GISTool.getBearing(start, point) - GISTool.getBearing(start, end));
+		final double xt = Math.asin(Math.sin(d13) * Math.sin(angle));
+		final double at = Math.acos(Math.max(-1, Math.min(1, Math.cos(d13) / Math.cos(xt))));
+		if (Math.cos(angle) < 0) {
+			// behind the start
+			return d13 * GISTool.EARTH_RADIUS_KILOMETERS;
+		}
+		if (at > d12) {
+			// past the end
+			return GISTool.getDistance(end, point);
+		}
+		return Math.abs(xt) * GISTool.EARTH_RADIUS_KILOMETERS;
+	}
+
 }
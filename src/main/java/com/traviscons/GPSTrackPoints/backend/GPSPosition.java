@@ -1,17 +1,62 @@
 package com.traviscons.GPSTrackPoints.backend;
 
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.traviscons.GPSTrackPoints.types.GSTObject;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
 import com.traviscons.GPSTrackPoints.types.TPVObject;
 
-/** Hold a GPS position and protect access to it for thread safety.
+/** Hold the latest GPS position and publish it to other threads.
+ *
+ * Every update publishes a new immutable {@link FixSnapshot}. Readers never lock or wait,
+ * they read one reference. Writers swap the reference with compare and set, so the socket
+ * thread is never held up by a reader either. The snapshot version counts the fixes, so a
+ * reader can tell "no new fix since last look" by comparing one long.
 */
 public class GPSPosition {
-	private TPVObject tpv;
+	private final AtomicReference<FixSnapshot> latest = new AtomicReference<FixSnapshot>(FixSnapshot.EMPTY);
+
+	public void setPosition(TPVObject newTPV) {
+		FixSnapshot current;
+		do {
+			current = latest.get();
+		} while (!latest.compareAndSet(current, current.withTPV(newTPV)));
+	}
+
+	public TPVObject getPosition() {
+		return(latest.get().getTPV());
+	}
+
+	/// Keep the dilutions of precision of a SKY with the position
+	public void setSKY(SKYObject sky) {
+		FixSnapshot current;
+		do {
+			current = latest.get();
+		} while (!latest.compareAndSet(current, current.withSKY(sky)));
+	}
+
+	/// Keep the error estimates of a GST with the position
+	public void setGST(GSTObject gst) {
+		FixSnapshot current;
+		do {
+			current = latest.get();
+		} while (!latest.compareAndSet(current, current.withGST(gst)));
+	}
+
+	/// @return the latest position with its DOPs and errors
+	public FixSnapshot getSnapshot() {
+		return(latest.get());
+	}
 
-	synchronized public void setPosition(TPVObject newTPV) {
-		tpv = newTPV;
+	/// @return the number of positions set so far
+	public long getVersion() {
+		return(latest.get().getVersion());
 	}
 
-	synchronized public TPVObject getPosition() {
-		return(tpv);
+	/// @param version the version of the snapshot the caller has
+	/// @return the latest snapshot, or null if no position was set since that version
+	public FixSnapshot getSnapshotIfNewer(long version) {
+		final FixSnapshot current = latest.get();
+		return((current.getVersion() > version) ? current : null);
 	}
-}
\ No newline at end of file
+}
@@ -27,13 +27,15 @@ import java.util.Date;
 import java.util.TimeZone;
 import java.lang.Runtime;
 
-import java.io.RandomAccessFile;
 import java.io.IOException;
 
+import javax.management.JMException;
+
 import com.traviscons.GPSTrackPoints.api.ObjectListener;
 import com.traviscons.GPSTrackPoints.types.ATTObject;
 import com.traviscons.GPSTrackPoints.types.DeviceObject;
 import com.traviscons.GPSTrackPoints.types.DevicesObject;
+import com.traviscons.GPSTrackPoints.types.GSTObject;
 import com.traviscons.GPSTrackPoints.types.SATObject;
 import com.traviscons.GPSTrackPoints.types.SKYObject;
 import com.traviscons.GPSTrackPoints.types.TPVObject;
@@ -80,22 +82,14 @@ public class GPSTrackPointsRun {
 	 */
 	public static void main(final String[] args) {
 		WatchButton wp = new WatchButton(23); // watch for button action on GPIO23
-		FixStatus fsLED = new FixStatus(); // take over LED1
+		FixStatus fsLED = new FixStatus(); // take over LED1, driven by the shared LED scheduler
 		int wptIndex = 0;
 		GPSPosition myGPSPosition = new GPSPosition();
-
-
-
-		// start the LED thread
-		Thread fsLEDThread = new Thread(fsLED);
-		fsLEDThread.start();
+		// every fix and waypoint of the session, for proximity queries
+		final SpatialIndex trackIndex = new SpatialIndex();
 
 		LogStatus lsLED = new LogStatus(); // sets up the LED to its default state and shuts the LED off
 
-		// start the LED thread
-		Thread lsLEDThread = new Thread(lsLED);
-		lsLEDThread.start();
-
 		String host = "localhost";
 		int port = 2947;
 
@@ -119,16 +113,30 @@ public class GPSTrackPointsRun {
 		}
 
 		GPSdEndpoint ep = null;
-		ResultParser rp = new ResultParser();
+		ResultParser rp = new StreamingResultParser();
 
 		try {
 			ep = new GPSdEndpoint(host, port, rp);
+			// keep GPX and LED file writes off the socket thread
+			ep.setDispatchRing(256, WaitStrategy.PARK, OverflowPolicy.DROP_OLDEST);
+			// gpsd reports at least once a second while watching, reconnect if it goes quiet
+			ep.setIdleTimeout(5000);
 		} catch (Exception e) {
 			System.err.println("Caught an exception setting socket port " + e.toString());
 		}
 
+		if (ep != null) {
+			try {
+				// fix staleness and listener timings, visible in jconsole
+				ep.enableMetrics().register(host + ":" + port);
+			} catch (final JMException e) {
+				System.err.println("WARNING: GPSTrackPoints - Latency metrics not registered with JMX, still collected " + e);
+			}
+		}
+
 		String GPXFilename = GPSTrackPointsRun.getNewGPXFilename();
-		GPSTrackPointsRun.writeGPXHeader(GPXFilename);
+		final GPXWriter GPXOutput = GPSTrackPointsRun.openGPX(GPXFilename);
+		final TrackJournal journal = GPSTrackPointsRun.openJournal(GPXFilename.replace(".gpx", ".journal"));
 
 		try {
 			ep.addListener(new ObjectListener(GPXFilename, fsLED, myGPSPosition) {
@@ -138,6 +146,7 @@ public class GPSTrackPointsRun {
 					if (!Double.isNaN(tpv.getAltitude())) {
 
 						myGPSPosition.setPosition(tpv);
+						trackIndex.add(tpv);
 
 						if (fsLED != null) {
 							fsLED.GPSFixLED1();
@@ -147,12 +156,18 @@ public class GPSTrackPointsRun {
 
 				@Override
 				public void handleSKY(final SKYObject sky) {
+					myGPSPosition.setSKY(sky);
 					// System.err.println("INFO: Tester - SKY: " + sky);
 					for (final SATObject sat : sky.getSatellites()) {
 						// System.err.println("INFO: Tester - SAT: " + sat);
 					}
 				}
 
+				@Override
+				public void handleGST(final GSTObject gst) {
+					myGPSPosition.setGST(gst);
+				}
+
 				@Override
 				public void handleSUBFRAME(final SUBFRAMEObject subframe) {
 					// System.err.println("INFO: Tester - SUBFRAME: " + subframe);
@@ -176,10 +191,45 @@ public class GPSTrackPointsRun {
 				}
 			});
 
+			TrackSimplifier simplifier = null;
+			if (GPXOutput != null) {
+				// keep the fixes that shape the track to within 2m, skipping fixes worse than 50m
+				// before they are simplified, so a bad fix can not stand in for good ones
+				final TrackRecorder recorder = new TrackRecorder(GPXOutput);
+				recorder.setMinInterval(0);
+				simplifier = new TrackSimplifier(recorder, 2.0);
+				simplifier.setMaxError(50.0);
+				ep.addListener(simplifier, TPVObject.class);
+			}
+
+			if (journal != null) {
+				// every TPV and SKY at full rate, GPX can be regenerated from it with JournalExporter
+				ep.addListener(new ObjectListener(null, null, null) {
+					@Override
+					public void handleTPV(final TPVObject tpv) {
+						try {
+							journal.append(tpv);
+						} catch (final IOException e) {
+							System.err.println("WARNING: GPSTrackPoints - Problem encountered journaling TPV " + e);
+						}
+					}
+
+					@Override
+					public void handleSKY(final SKYObject sky) {
+						try {
+							journal.append(sky);
+						} catch (final IOException e) {
+							System.err.println("WARNING: GPSTrackPoints - Problem encountered journaling SKY " + e);
+						}
+					}
+				}, TPVObject.class, SKYObject.class);
+			}
+
 			ep.start();
-			ep.watch(true, true);
+			// fails at once while still connecting, the WATCH is then sent when the connection comes up
+			ep.watchAsync(true, true);
 
-			ButtonCallback myButtonCallback = new ButtonCallback(GPXFilename, lsLED, wptIndex, myGPSPosition);
+			ButtonCallback myButtonCallback = new ButtonCallback(GPXOutput, lsLED, wptIndex, myGPSPosition, trackIndex);
 
 			wp.initButton();
 
@@ -197,9 +247,20 @@ public class GPSTrackPointsRun {
 			}
 
 			ep.stop();
+			if (simplifier != null) {
+				simplifier.flush();
+				System.err.println("INFO: GPSTrackPoints - track simplified " + simplifier.getReceived() + " to "
+						+ simplifier.getKept() + " fixes");
+			}
+			if (GPXOutput != null) {
+				GPXOutput.close();
+			}
+			if (journal != null) {
+				journal.close();
+			}
 
 			fsLED.stopLED1();
-			lsLEDThread.stop();
+			lsLED.stopLED();
 
 		} catch (final Exception e) {
 			System.err.println("ERROR: GPSTrackPoints - Problem encountered" + e);
@@ -221,33 +282,48 @@ public class GPSTrackPointsRun {
 		return(GPXFilename);
 	}
 
-	private static void writeGPXHeader(String GPXFilename) {
+	private static GPXWriter openGPX(String GPXFilename) {
 		if (GPXFilename == null || GPXFilename.matches(""))
-			return;
+			return null;
 
 		try {
-			RandomAccessFile GPXHeader = new RandomAccessFile(GPXFilename, "rw"); // Open no append
-			writeString(GPXHeader, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-			writeString(GPXHeader, "<gpx version=\"1.1\" creator=\"com.traviscons.GPSTrackPoints\"\n");
-			writeString(GPXHeader, "xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
-			writeString(GPXHeader, "<metadata><name>GPSTRackPoints " + GPXFilename + "</name></metadata>\n");
-			writeString(GPXHeader, "</gpx>");
-			GPXHeader.close();
-
+			final GPXWriter GPXOutput = new GPXWriter(GPXFilename, "GPSTRackPoints " + GPXFilename);
+			// a power cut must not lose the track, close() forces everything to the SD card
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					try {
+						GPXOutput.close();
+					} catch (IOException e) {
+						System.err.println("Caught an exception closing the GPX output " + e.toString());
+					}
+				}
+			});
+			return GPXOutput;
 		} catch (IOException e) {
 			System.err.println("Caught an exception writing GPX header " + e.toString());
+			return null;
 		}
 	}
 
-	private static void writeString(RandomAccessFile myFile, String outString) {
-		for (int i=0; i<outString.length(); i++) {
-			try {
-				myFile.writeByte(outString.charAt(i));
-			} catch (IOException e) {
-				System.err.println("Exception " + e.toString());
-			}
+	private static TrackJournal openJournal(String journalFilename) {
+		try {
+			final TrackJournal journal = new TrackJournal(journalFilename);
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					try {
+						journal.close();
+					} catch (IOException e) {
+						System.err.println("Caught an exception closing the track journal " + e.toString());
+					}
+				}
+			});
+			return journal;
+		} catch (IOException e) {
+			System.err.println("Caught an exception creating the track journal " + e.toString());
+			return null;
 		}
 	}
 
 }
-
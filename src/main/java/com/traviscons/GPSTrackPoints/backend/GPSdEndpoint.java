@@ -25,26 +25,31 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.traviscons.GPSTrackPoints.api.IObjectListener;
-import com.traviscons.GPSTrackPoints.types.ATTObject;
 import com.traviscons.GPSTrackPoints.types.DeviceObject;
-import com.traviscons.GPSTrackPoints.types.DevicesObject;
 import com.traviscons.GPSTrackPoints.types.IGPSObject;
 import com.traviscons.GPSTrackPoints.types.PollObject;
-import com.traviscons.GPSTrackPoints.types.SKYObject;
-import com.traviscons.GPSTrackPoints.types.TPVObject;
 import com.traviscons.GPSTrackPoints.types.VersionObject;
 import com.traviscons.GPSTrackPoints.types.WatchObject;
-import com.traviscons.GPSTrackPoints.types.subframes.SUBFRAMEObject;
 
 /**
  * GPSd client endpoint. Constructs a thread to listen to a socket. Processing the incoming
@@ -62,15 +67,31 @@ public class GPSdEndpoint {
 
 	private SocketThread listenThread;
 
+	/// set when the endpoint is served by a GPSdSelector instead of a SocketThread
+	private volatile SelectorConnection connection;
+
 	private final boolean daemon;
 
-	private final List<IObjectListener> listeners = new ArrayList<IObjectListener>(1);
+	private final ListenerRegistry listeners = new ListenerRegistry();
+
+	/// when set, listeners run on their own threads fed from this ring instead of on the socket thread
+	private volatile DispatchRing dispatchRing;
+
+	/// null unless enableMetrics() was called
+	private volatile LatencyMetrics metrics;
+
+	/// commands sent and still waiting for their response, oldest first
+	private final Queue<PendingCommand<?>> pending = new ConcurrentLinkedQueue<PendingCommand<?>>();
+
+	/// fails commands whose response does not arrive in time and schedules reconnects
+	private static final TimerWheel TIMERS = TimerWheel.getDefault();
 
-	private IGPSObject asyncResult = null;
+	private volatile long commandTimeout = 5000;
 
-	private final Object asyncMutex = new Object();
+	/// serializes commands. A lock rather than a monitor so virtual threads do not pin their carrier.
+	private final ReentrantLock asyncMutex = new ReentrantLock();
 
-	private final Object asyncWaitMutex = new Object();
+	private volatile boolean virtualThreads = false;
 
 	private final AbstractResultParser resultParser;
 
@@ -78,10 +99,26 @@ public class GPSdEndpoint {
 
 	private int port;
 
-	private String lastWatch;
+	private volatile String lastWatch;
 
 	private AtomicLong retryInterval = new AtomicLong(1000);
 
+	private volatile long maxRetryInterval = 30000;
+
+	private volatile int connectTimeout = 5000;
+
+	private volatile int idleTimeout = 0;
+
+	private volatile boolean keepAlive = true;
+
+	private final ConnectionHealth health = new ConnectionHealth();
+
+	/// set by stop() so a connect attempt already under way does not bring the endpoint back
+	private volatile boolean stopped;
+
+	/// the next connect attempt while disconnected, no thread waits for it
+	private volatile TimerWheel.Timeout reconnect;
+
 	/**
 	 * The caller must supply the server name and a port
 	 *
@@ -146,8 +183,77 @@ public class GPSdEndpoint {
 	 * start the socket thread
 	 */
 	public void start() {
-		this.listenThread = new SocketThread(this.in, this, this.resultParser, this.daemon);
-		this.listenThread.start();
+		this.stopped = false;
+		this.reconnectLater();
+	}
+
+	/**
+	 * Schedule the next connect attempt after the back-off delay. Nothing runs until the
+	 * delay has passed, then a socket thread makes a single attempt.
+	 */
+	void reconnectLater() {
+		if (this.stopped) {
+			return;
+		}
+		try {
+			this.reconnect = TIMERS.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (!GPSdEndpoint.this.stopped) {
+						// connecting blocks, so it gets a thread of its own
+						GPSdEndpoint.this.launch(new SocketThread(null, GPSdEndpoint.this, GPSdEndpoint.this.resultParser, GPSdEndpoint.this.daemon));
+					}
+				}
+			}, this.nextRetryDelay(), TimeUnit.MILLISECONDS);
+		} catch (final RejectedExecutionException e) {
+			System.err.println("WARNING: GPSdEndpoint - Timer wheel shut down, not reconnecting");
+		}
+	}
+
+	/**
+	 * Run the socket reader and its connect attempts on virtual threads instead of platform threads.
+	 * A disconnected endpoint waiting to retry holds no thread at all, only a timer.
+	 *
+	 * Virtual threads need Java 21 or later. On older JVMs platform threads are used.
+	 * Must be called before {@link #start()}.
+	 *
+	 * @param virtualThreads true to use virtual threads
+	 */
+	public void setVirtualThreads(final boolean virtualThreads) {
+		if (virtualThreads && !VirtualThreads.isSupported()) {
+			System.err.println("INFO: GPSdEndpoint - Virtual threads are not supported by this JVM, using platform threads");
+			this.virtualThreads = false;
+			return;
+		}
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * @return true if the socket reader runs on virtual threads
+	 */
+	public boolean isVirtualThreads() {
+		return this.virtualThreads;
+	}
+
+	/**
+	 * Start a socket thread either as a platform thread or on a virtual thread.
+	 */
+	private void launch(final SocketThread thread) {
+		if (this.virtualThreads) {
+			VirtualThreads.newThread(thread, thread.getName()).start();
+		} else {
+			thread.start();
+		}
+	}
+
+	/**
+	 * Start receiving through a shared GPSdSelector instead of a dedicated socket thread.
+	 * The selector connects, reconnects and dispatches to the listeners on its I/O thread.
+	 *
+	 * @param selector the selector to serve this endpoint
+	 */
+	public void start(final GPSdSelector selector) {
+		this.connection = selector.register(this);
 	}
 
 	/**
@@ -155,6 +261,17 @@ public class GPSdEndpoint {
 	 */
 	public void stop() {
 
+		this.stopped = true;
+		final TimerWheel.Timeout r = this.reconnect;
+		if (r != null) {
+			r.cancel();
+		}
+
+		if (this.connection != null) {
+			this.connection.close();
+			this.connection = null;
+		}
+
 		try {
 			if (this.socket != null) {
 				this.socket.close();
@@ -164,6 +281,13 @@ public class GPSdEndpoint {
 		}
 
 		this.listeners.clear();
+		this.health.disconnected();
+
+		if (this.dispatchRing != null) {
+			this.dispatchRing.halt();
+		}
+
+		this.failPending(new IOException("GPSdEndpoint stopped"));
 
 		if (this.listenThread != null) {
 			this.listenThread.halt();
@@ -208,11 +332,42 @@ public class GPSdEndpoint {
 	 * @param enable   enable/disable watch mode
 	 * @param dumpData enable/disable dumping of data
 	 * @param device   If present, enable watching only of the specified device rather than all devices
-	 * @return {@link WatchObject}
+	 * @return {@link WatchObject}, null if not connected yet. The WATCH is then sent once connected.
 	 * @throws IOException   on IO error in socket
 	 * @throws JSONException
 	 */
 	public WatchObject watch(final boolean enable, final boolean dumpData, final String device) throws IOException, JSONException {
+		return this.syncCommand(watchCommand(enable, dumpData, device), WatchObject.class);
+	}
+
+	/**
+	 * Send a WATCH command without waiting for the response.
+	 *
+	 * @param enable   enable/disable watch mode
+	 * @param dumpData enable/disable dumping of data
+	 * @return a future completed with the {@link WatchObject} response
+	 * @throws JSONException
+	 * @see #watch(boolean, boolean, String)
+	 */
+	public CompletableFuture<WatchObject> watchAsync(final boolean enable, final boolean dumpData) throws JSONException {
+		return this.watchAsync(enable, dumpData, null);
+	}
+
+	/**
+	 * Send a WATCH command without waiting for the response.
+	 *
+	 * @param enable   enable/disable watch mode
+	 * @param dumpData enable/disable dumping of data
+	 * @param device   If present, enable watching only of the specified device rather than all devices
+	 * @return a future completed with the {@link WatchObject} response
+	 * @throws JSONException
+	 * @see #watch(boolean, boolean, String)
+	 */
+	public CompletableFuture<WatchObject> watchAsync(final boolean enable, final boolean dumpData, final String device) throws JSONException {
+		return this.command(watchCommand(enable, dumpData, device), WatchObject.class);
+	}
+
+	private static String watchCommand(final boolean enable, final boolean dumpData, final String device) throws JSONException {
 		JSONObject watch = new JSONObject();
 		watch.put("class", "WATCH");
 		watch.put("enable", enable);
@@ -220,7 +375,7 @@ public class GPSdEndpoint {
 		if (device != null) {
 			watch.put("device", device);
 		}
-		return this.syncCommand("?WATCH=" + watch.toString(), WatchObject.class);
+		return "?WATCH=" + watch.toString();
 	}
 
 	/**
@@ -247,12 +402,134 @@ public class GPSdEndpoint {
 	}
 
 	/**
-	 * Add a Listener for data coming from GPSD.
+	 * Send a POLL command without waiting for the response.
+	 *
+	 * @return a future completed with the {@link PollObject} response
+	 * @see #poll()
+	 */
+	public CompletableFuture<PollObject> pollAsync() {
+		return this.command("?POLL;", PollObject.class);
+	}
+
+	/**
+	 * Send a VERSION command without waiting for the response.
+	 *
+	 * @return a future completed with the {@link VersionObject} response
+	 * @see #version()
+	 */
+	public CompletableFuture<VersionObject> versionAsync() {
+		return this.command("?VERSION;", VersionObject.class);
+	}
+
+	/**
+	 * Ask GPSd for the current device. GPSd responds with a DEVICE object, which is
+	 * also passed to the listeners as usual.
+	 *
+	 * @return a future completed with the {@link DeviceObject} response
+	 */
+	public CompletableFuture<DeviceObject> deviceAsync() {
+		return this.command("?DEVICE;", DeviceObject.class);
+	}
+
+	/**
+	 * Send a command and return at once with a future for the response. Any number of
+	 * commands may be outstanding on the connection. Responses are matched to commands
+	 * by their class, in the order the commands were sent.
+	 *
+	 * The future is completed on the thread reading the socket. Dependent actions that
+	 * block or take long should use the *Async variants of CompletableFuture.
+	 *
+	 * The command times out after {@link #getCommandTimeout()}.
+	 *
+	 * @param command is a JSON constructed command
+	 * @param responseClass is the class of message we expect in response.
+	 * @return a future completed with the response, or failed with an IOException if the
+	 *         command could not be sent or a TimeoutException if no response arrived in time
+	 */
+	public <T extends IGPSObject> CompletableFuture<T> command(final String command, final Class<T> responseClass) {
+		return this.command(command, responseClass, this.commandTimeout);
+	}
+
+	/**
+	 * Send a command and return at once with a future for the response.
+	 *
+	 * @param command is a JSON constructed command
+	 * @param responseClass is the class of message we expect in response.
+	 * @param timeoutMillis how long to wait for the response. 0 waits forever.
+	 * @return a future completed with the response
+	 * @see #command(String, Class)
+	 */
+	public <T extends IGPSObject> CompletableFuture<T> command(final String command, final Class<T> responseClass, final long timeoutMillis) {
+		final PendingCommand<T> p = new PendingCommand<T>(responseClass);
+		if (timeoutMillis > 0) {
+			// scheduled before queueing so even an immediate response finds the timeout to cancel
+			p.timeout = TIMERS.schedule(new Runnable() {
+				@Override
+				public void run() {
+					GPSdEndpoint.this.pending.remove(p);
+					p.future.completeExceptionally(new TimeoutException("No " + responseClass.getSimpleName() + " response to " + command));
+				}
+			}, timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		this.asyncMutex.lock();
+		try {
+			if (responseClass == WatchObject.class) {
+				lastWatch = command;
+			}
+			// queued and sent under one lock so the queue order is the order on the wire
+			this.pending.add(p);
+			this.send(command);
+		} catch (final IOException e) {
+			this.pending.remove(p);
+			p.fail(e);
+		} finally {
+			this.asyncMutex.unlock();
+		}
+		return p.future;
+	}
+
+	/**
+	 * Set how long commands wait for their response. Default value is 5000ms.
+	 *
+	 * @param millis the timeout. 0 waits forever.
+	 */
+	public void setCommandTimeout(final long millis) {
+		this.commandTimeout = millis;
+	}
+
+	/**
+	 * @return how long commands wait for their response
+	 */
+	public long getCommandTimeout() {
+		return this.commandTimeout;
+	}
+
+	/**
+	 * Add a Listener for data coming from GPSD. It receives every report class.
 	 *
 	 * @param listener the listener to add
 	 */
 	public void addListener(final IObjectListener listener) {
-		this.listeners.add(listener);
+		this.addListener(listener, new Class<?>[0]);
+	}
+
+	/**
+	 * Add a Listener for some report classes only, e.g.
+	 * <code>addListener(l, TPVObject.class)</code>. Other reports cost the listener nothing.
+	 *
+	 * The report classes are TPVObject, SKYObject, ATTObject, GSTObject, SUBFRAMEObject,
+	 * DeviceObject, DevicesObject and PollObject.
+	 *
+	 * @param listener the listener to add
+	 * @param types    the report classes to receive, all of them if none are given
+	 * @throws IllegalArgumentException if a class is not a report class
+	 */
+	public void addListener(final IObjectListener listener, final Class<?>... types) {
+		final Set<Class<?>> subscribed = this.listeners.add(listener, types);
+		if (this.dispatchRing != null) {
+			this.dispatchRing.removeListener(listener);
+			this.dispatchRing.addListener(listener, subscribed);
+		}
 	}
 
 	/**
@@ -262,6 +539,83 @@ public class GPSdEndpoint {
 	 */
 	public void removeListener(final IObjectListener listener) {
 		this.listeners.remove(listener);
+		if (this.dispatchRing != null) {
+			this.dispatchRing.removeListener(listener);
+		}
+	}
+
+	/**
+	 * Run the listeners on their own threads, fed through a bounded ring from the socket thread.
+	 * A slow listener then no longer holds up reading from GPSd. Each listener gets its own
+	 * thread and reads the ring at its own pace.
+	 *
+	 * Must be called before {@link #start()}. Listeners already added are moved onto the ring.
+	 *
+	 * @param capacity       number of messages the ring holds, rounded up to a power of two
+	 * @param waitStrategy   how the listener threads wait for messages
+	 * @param overflowPolicy what to do when a listener falls a full ring behind
+	 */
+	public void setDispatchRing(final int capacity, final WaitStrategy waitStrategy, final OverflowPolicy overflowPolicy) {
+		final DispatchRing ring = new DispatchRing(capacity, waitStrategy, overflowPolicy, this.daemon);
+		ring.setMetrics(this.metrics);
+		for (final Map.Entry<IObjectListener, Set<Class<?>>> e : this.listeners.subscriptions().entrySet()) {
+			ring.addListener(e.getKey(), e.getValue());
+		}
+		final DispatchRing old = this.dispatchRing;
+		this.dispatchRing = ring;
+		if (old != null) {
+			old.halt();
+		}
+	}
+
+	/**
+	 * @return messages the listeners lost because the dispatch ring overflowed. 0 without a ring.
+	 */
+	public long getDroppedEvents() {
+		final DispatchRing ring = this.dispatchRing;
+		return (ring != null) ? ring.getDropped() : 0;
+	}
+
+	/**
+	 * Start timing every report from the socket read to each listener, see {@link LatencyMetrics}.
+	 * Costs a few System.nanoTime() calls and histogram updates per report.
+	 *
+	 * @return the metrics, the same instance when already enabled
+	 */
+	public synchronized LatencyMetrics enableMetrics() {
+		if (this.metrics == null) {
+			this.metrics = new LatencyMetrics();
+		}
+		final DispatchRing ring = this.dispatchRing;
+		if (ring != null) {
+			ring.setMetrics(this.metrics);
+		}
+		return this.metrics;
+	}
+
+	/**
+	 * Stop timing reports. The metrics collected so far stay readable.
+	 */
+	public synchronized void disableMetrics() {
+		this.metrics = null;
+		final DispatchRing ring = this.dispatchRing;
+		if (ring != null) {
+			ring.setMetrics(null);
+		}
+	}
+
+	/**
+	 * @return the latency metrics, null if not enabled
+	 */
+	public LatencyMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * @return true if reports are timed, for the socket readers
+	 */
+	boolean isTimed() {
+		return this.metrics != null;
 	}
 
 	/**
@@ -269,29 +623,24 @@ public class GPSdEndpoint {
 	 *
 	 * @param command is a JSON constructed command
 	 * @param responseClass is the class of message we expect in response.
-	 * @returns the message received
+	 * @returns the message received, null if not connected or it did not arrive in time
 	 */
 	private <T extends IGPSObject> T syncCommand(final String command, final Class<T> responseClass) throws IOException {
-		synchronized (this.asyncMutex) {
-			if (out != null) {
-				this.out.write(command + "\n");
-				this.out.flush();
-			}
-			if (responseClass == WatchObject.class) {
-				lastWatch = command;
+		try {
+			return this.command(command, responseClass).get();
+		} catch (final InterruptedException e) {
+			System.err.println("INFO: GPSdEndpoint - Interrupted while waiting for result" + e);
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof NotConnectedException) {
+				// as before the asynchronous API, a WATCH is remembered and sent on connect
+				return null;
 			}
-			int endLoop = 5;
-			while (endLoop > 0) {
-				// wait for the specific message
-				// FIXME it is possible that the expected result is overwritten before getting to this point.
-				// the loop counter will prevent an infinite loop but we still won't get our expected message.
-				final IGPSObject result = this.waitForResult();
-				if ((result == null) || result.getClass().equals(responseClass)) {
-					return responseClass.cast(result);
-				}
-				endLoop--;
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
 			}
-			return(null);
+			return null;
 		}
 	}
 
@@ -301,70 +650,115 @@ public class GPSdEndpoint {
 	 * @param command is a JSON constructed command.
 	 */
 	private void voidCommand(final String command) throws IOException {
-		synchronized (this.asyncMutex) {
+		this.asyncMutex.lock();
+		try {
+			this.send(command);
+		} finally {
+			this.asyncMutex.unlock();
+		}
+	}
+
+	/**
+	 * Write a command to the socket or queue it on the selector connection.
+	 *
+	 * @param command is a JSON constructed command.
+	 * @throws IOException if not connected or the write fails
+	 */
+	private void send(final String command) throws IOException {
+		final SelectorConnection c = this.connection;
+		if (c != null) {
+			c.write(command);
+		} else if (this.out != null) {
 			this.out.write(command + "\n");
 			this.out.flush();
+		} else {
+			throw new NotConnectedException();
 		}
 	}
 
 	/**
-	 * wait for a response for one second
+	 * Complete the oldest command waiting for a response of this class.
+	 * Called on the socket reader thread, so it never blocks.
 	 *
-	 * @return an IGPSObject with the response. Response can be null.
+	 * @param object the response
+	 * @return true if a command was waiting for it
 	 */
-	private IGPSObject waitForResult() {
-		synchronized (this.asyncWaitMutex) {
-			if (this.asyncResult == null) {
-				try {
-					this.asyncWaitMutex.wait(1000);
-				} catch (final InterruptedException e) {
-					System.err.println("INFO: GPSdEndpoint - Interrupted while waiting for result" + e);
-				}
+	private boolean completePending(final IGPSObject object) {
+		if (this.pending.isEmpty()) {
+			return false;
+		}
+		final Iterator<PendingCommand<?>> it = this.pending.iterator();
+		while (it.hasNext()) {
+			final PendingCommand<?> p = it.next();
+			if (p.future.isDone()) {
+				// timed out before it could be removed
+				it.remove();
+			} else if (p.responseClass == object.getClass()) {
+				it.remove();
+				p.complete(object);
+				return true;
 			}
-			final IGPSObject result = this.asyncResult;
-			this.asyncResult = null;
-			return result;
 		}
+		return false;
 	}
 
 	/**
-	 * Determine the class of the message and dispatch it to specific listeners.
+	 * Fail every command still waiting for a response. Their responses will not come,
+	 * e.g. because the connection was lost.
+	 *
+	 * @param cause the reason
+	 */
+	void failPending(final IOException cause) {
+		PendingCommand<?> p;
+		while ((p = this.pending.poll()) != null) {
+			p.fail(cause);
+		}
+	}
+
+	/**
+	 * Hand reports to the listeners subscribed to their class, directly or through the
+	 * dispatch ring. Then complete the command waiting for a response of this class, if any.
 	 *
 	 * @param object an IGPSObject with the message
 	 * @return void
 	 */
 	void handle(final IGPSObject object) {
-		if (object instanceof TPVObject) {
-			for (final IObjectListener l : this.listeners) {
-				l.handleTPV((TPVObject) object);
-			}
-		} else if (object instanceof SKYObject) {
-			for (final IObjectListener l : this.listeners) {
-				l.handleSKY((SKYObject) object);
-			}
-		} else if (object instanceof ATTObject) {
-			for (final IObjectListener l : this.listeners) {
-				l.handleATT((ATTObject) object);
-			}
-		} else if (object instanceof SUBFRAMEObject) {
-			for (final IObjectListener l : this.listeners) {
-				l.handleSUBFRAME((SUBFRAMEObject) object);
-			}
-		} else if (object instanceof DevicesObject) {
-			for (final IObjectListener l : this.listeners) {
-				l.handleDevices((DevicesObject) object);
-			}
-		} else if (object instanceof DeviceObject) {
-			for (final IObjectListener l : this.listeners) {
-				l.handleDevice((DeviceObject) object);
-			}
-		} else {
-			// object was requested, so put it in the response object
-			synchronized (this.asyncWaitMutex) {
-				this.asyncResult = object;
-				this.asyncWaitMutex.notifyAll();
+		this.handle(object, 0L, 0L);
+	}
+
+	/**
+	 * Dispatch a timed message, see {@link #enableMetrics()}.
+	 *
+	 * @param object     the message
+	 * @param readNanos  System.nanoTime() when the line was read, 0 if not timed
+	 * @param parseNanos System.nanoTime() when parsing completed
+	 */
+	void handle(final IGPSObject object, final long readNanos, final long parseNanos) {
+		this.health.received();
+		final LatencyMetrics m = (readNanos != 0L) ? this.metrics : null;
+		if (m != null) {
+			m.parsed(object, readNanos, parseNanos);
+		}
+		final IObjectListener[] subscribed = this.listeners.get(object.getClass());
+		if (subscribed.length > 0) {
+			final DispatchRing ring = this.dispatchRing;
+			if (ring != null) {
+				ring.publish(object, readNanos, parseNanos);
+			} else if (m != null) {
+				for (final IObjectListener l : subscribed) {
+					final long start = System.nanoTime();
+					ListenerRegistry.dispatch(l, object);
+					m.delivered(object, l, readNanos, parseNanos, start, System.nanoTime());
+				}
+			} else {
+				for (final IObjectListener l : subscribed) {
+					ListenerRegistry.dispatch(l, object);
+				}
 			}
 		}
+		// e.g. the answer to ?VERSION; ?POLL; or ?DEVICE;
+		// Unrequested objects, like the VERSION sent on connect, are dropped.
+		this.completePending(object);
 	}
 
 	/**
@@ -385,21 +779,44 @@ public class GPSdEndpoint {
 
 	/**
 	 * Our socket thread got disconnect and is exiting.
+	 *
+	 * The new socket is connected before the command lock is taken, so commands issued
+	 * meanwhile, e.g. by listeners on the dispatch ring, fail at once instead of waiting
+	 * for the connect timeout.
 	 */
 	void handleDisconnected() throws IOException {
-		synchronized (this.asyncMutex) {
+		this.failPending(new IOException("Connection to gpsd lost"));
+		final Socket s = new Socket();
+		try {
+			s.setKeepAlive(this.keepAlive);
+			s.setSoTimeout(this.idleTimeout);
+			s.connect(new InetSocketAddress(this.server, this.port), this.connectTimeout);
+		} catch (final IOException e) {
+			s.close();
+			throw e;
+		}
+		this.asyncMutex.lock();
+		try {
+			if (this.stopped) {
+				s.close();
+				return;
+			}
 			if (socket != null) {
 				socket.close();
 			}
-			this.socket = new Socket(server, port);
+			this.socket = s;
 			this.in = new BufferedReader(new InputStreamReader(this.socket.getInputStream()));
 			this.out = new BufferedWriter(new OutputStreamWriter(this.socket.getOutputStream()));
+			// connected once commands can be written
+			this.health.connected();
 
 			this.listenThread = new SocketThread(this.in, this, this.resultParser, this.daemon);
-			this.listenThread.start();
-			if (lastWatch != null) { // restore watch if we had one.
-				this.syncCommand(lastWatch, WatchObject.class);
+			this.launch(this.listenThread);
+			if (lastWatch != null) { // restore watch if we had one. Not waited for, the new socket thread reads the answer.
+				this.command(lastWatch, WatchObject.class);
 			}
+		} finally {
+			this.asyncMutex.unlock();
 		}
 
 	}
@@ -424,4 +841,176 @@ public class GPSdEndpoint {
 		return retryInterval.get();
 	}
 
+	/**
+	 * Set the cap on the reconnect delay. Every failed attempt doubles the delay, starting
+	 * from the retry interval, until it reaches this cap. Default value is 30000ms.
+	 *
+	 * @param millis the longest wait between two reconnection attempts
+	 */
+	public void setMaxRetryInterval(final long millis) {
+		this.maxRetryInterval = millis;
+	}
+
+	/**
+	 * @return the cap on the reconnect delay in ms
+	 */
+	public long getMaxRetryInterval() {
+		return this.maxRetryInterval;
+	}
+
+	/**
+	 * @return the delay before the next reconnection attempt, counting the attempt
+	 */
+	long nextRetryDelay() {
+		return this.health.nextRetryDelay(this.retryInterval.get(), this.maxRetryInterval);
+	}
+
+	/**
+	 * Set how long to wait for a connection to gpsd to be established. Default value is 5000ms.
+	 *
+	 * @param millis the connect timeout, 0 waits for the operating system to give up
+	 */
+	public void setConnectTimeout(final int millis) {
+		this.connectTimeout = millis;
+	}
+
+	/**
+	 * @return the connect timeout in ms
+	 */
+	public int getConnectTimeout() {
+		return this.connectTimeout;
+	}
+
+	/**
+	 * Declare the connection dead and reconnect if no report arrives within this window
+	 * while a WATCH is enabled. gpsd sends at least one TPV per second while watching, so
+	 * a few seconds catches a half-open connection long before TCP does.
+	 * Default value is 0, which disables the watchdog. With a GPSdSelector a change takes
+	 * effect from the next connection.
+	 *
+	 * @param millis the read idle timeout
+	 */
+	public void setIdleTimeout(final int millis) {
+		this.idleTimeout = millis;
+		final Socket s = this.socket;
+		if (s != null) {
+			try {
+				s.setSoTimeout(millis);
+			} catch (final IOException e) {
+				// closed, the next connection picks the timeout up
+			}
+		}
+	}
+
+	/**
+	 * @return the read idle timeout in ms, 0 if disabled
+	 */
+	public int getIdleTimeout() {
+		return this.idleTimeout;
+	}
+
+	/**
+	 * Enable TCP keepalive on new connections. Default value is true.
+	 *
+	 * @param keepAlive whether to set SO_KEEPALIVE
+	 */
+	public void setKeepAlive(final boolean keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	/**
+	 * @return true if TCP keepalive is enabled on new connections
+	 */
+	public boolean isKeepAlive() {
+		return this.keepAlive;
+	}
+
+	/**
+	 * @return the reconnect and watchdog state of the connection
+	 */
+	public ConnectionHealth getHealth() {
+		return this.health;
+	}
+
+	/**
+	 * @return the server name or IP
+	 */
+	public String getServer() {
+		return this.server;
+	}
+
+	/**
+	 * @return the server port
+	 */
+	public int getPort() {
+		return this.port;
+	}
+
+	/**
+	 * @return the result parser used for this endpoint
+	 */
+	AbstractResultParser getResultParser() {
+		return this.resultParser;
+	}
+
+	/**
+	 * @return the last WATCH command sent, to be restored after a reconnect
+	 */
+	String getLastWatch() {
+		return this.lastWatch;
+	}
+
+	/**
+	 * @return true if the last WATCH enabled watching, so reports are expected to keep coming
+	 */
+	boolean isWatching() {
+		final String watch = this.lastWatch;
+		return (watch != null) && !watch.contains("\"enable\":false");
+	}
+
+	/**
+	 * A command could not be sent because there is no connection to gpsd.
+	 */
+	static final class NotConnectedException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		NotConnectedException() {
+			super("not connected");
+		}
+	}
+
+	/**
+	 * A command waiting for its response.
+	 */
+	private static final class PendingCommand<T extends IGPSObject> {
+
+		final Class<T> responseClass;
+
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+
+		volatile TimerWheel.Timeout timeout;
+
+		PendingCommand(final Class<T> responseClass) {
+			this.responseClass = responseClass;
+		}
+
+		void complete(final IGPSObject response) {
+			this.cancelTimeout();
+			this.future.complete(this.responseClass.cast(response));
+		}
+
+		void fail(final Throwable cause) {
+			this.cancelTimeout();
+			this.future.completeExceptionally(cause);
+		}
+
+		private void cancelTimeout() {
+			final TimerWheel.Timeout t = this.timeout;
+			if (t != null) {
+				t.cancel();
+			}
+		}
+	}
+
 }
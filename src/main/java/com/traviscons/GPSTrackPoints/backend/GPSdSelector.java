@@ -0,0 +1,239 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* GPSdSelector
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multiplex the connections of many GPSdEndpoints on a small number of I/O threads.
+ *
+ * Each I/O thread owns a java.nio Selector. Endpoints are assigned to the threads round robin
+ * when they are started with {@link GPSdEndpoint#start(GPSdSelector)}. The I/O thread connects,
+ * reads and frames the newline delimited JSON and hands every line to the endpoint's result
+ * parser and handle() dispatch, exactly like a SocketThread does for a single endpoint.
+ *
+ * Lost connections are retried after the endpoint's retry interval and the last WATCH
+ * command is sent again once the connection is back. Retry delays and timeouts run on the
+ * shared {@link TimerWheel}, so an I/O thread only wakes for I/O and for timers that fire.
+ *
+ * Listeners run on the I/O thread, so a slow listener delays every endpoint on that thread.
+ *
+ * \author Travis Marlatte
+ */
+public class GPSdSelector {
+
+	private final IOThread[] ioThreads;
+
+	private final AtomicInteger nextThread = new AtomicInteger();
+
+	/**
+	 * @param threads number of I/O threads
+	 * @param daemon  whether to start the I/O threads as daemons, as defined in {@link Thread#setDaemon}
+	 * @throws IOException if a selector can not be opened
+	 */
+	public GPSdSelector(final int threads, final boolean daemon) throws IOException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be at least 1: " + threads);
+		}
+		this.ioThreads = new IOThread[threads];
+		for (int i = 0; i < threads; i++) {
+			this.ioThreads[i] = new IOThread(Selector.open(), i, daemon);
+		}
+	}
+
+	/**
+	 * Create a selector with a single daemon I/O thread.
+	 *
+	 * @throws IOException if the selector can not be opened
+	 */
+	public GPSdSelector() throws IOException {
+		this(1, true);
+	}
+
+	/**
+	 * start the I/O threads
+	 */
+	public void start() {
+		for (final IOThread t : this.ioThreads) {
+			t.start();
+		}
+	}
+
+	/**
+	 * Stop the I/O threads and close every connection.
+	 */
+	public void stop() {
+		for (final IOThread t : this.ioThreads) {
+			t.halt();
+		}
+	}
+
+	/**
+	 * Assign an endpoint to an I/O thread and start connecting.
+	 *
+	 * @param endpoint the endpoint
+	 * @return the connection now serving the endpoint
+	 */
+	SelectorConnection register(final GPSdEndpoint endpoint) {
+		final IOThread t = this.ioThreads[(this.nextThread.getAndIncrement() & Integer.MAX_VALUE) % this.ioThreads.length];
+		final SelectorConnection connection = new SelectorConnection(t, endpoint);
+		t.connectLater(connection);
+		return connection;
+	}
+
+	/**
+	 * @return the number of connections handled by all I/O threads
+	 */
+	public int getConnectionCount() {
+		int count = 0;
+		for (final IOThread t : this.ioThreads) {
+			count += t.connectionCount;
+		}
+		return count;
+	}
+
+	/**
+	 * An I/O thread. Work for the thread is queued from other threads and the selector is
+	 * woken up to pick it up.
+	 */
+	static final class IOThread extends Thread {
+
+		private final Selector selector;
+
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+		private volatile boolean running = true;
+
+		private volatile int connectionCount;
+
+		IOThread(final Selector selector, final int index, final boolean daemon) {
+			this.selector = selector;
+			this.setDaemon(daemon);
+			this.setName("GPSd Selector Thread " + index);
+		}
+
+		void connectLater(final SelectorConnection connection) {
+			this.submit(new Runnable() {
+				@Override
+				public void run() {
+					IOThread.this.connectionCount++;
+					connection.connect(IOThread.this.selector);
+				}
+			});
+		}
+
+		void flushLater(final SelectorConnection connection) {
+			this.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						connection.flush();
+					} catch (final IOException e) {
+						connection.disconnected();
+					}
+				}
+			});
+		}
+
+		void closeLater(final SelectorConnection connection) {
+			this.submit(new Runnable() {
+				@Override
+				public void run() {
+					connection.disconnected();
+					IOThread.this.connectionCount--;
+				}
+			});
+		}
+
+		/// called on a resolver thread when a connection's name lookup is done
+		void resolvedLater(final SelectorConnection connection, final InetSocketAddress resolved) {
+			this.submit(new Runnable() {
+				@Override
+				public void run() {
+					connection.resolved(IOThread.this.selector, resolved);
+				}
+			});
+		}
+
+		/// called on the timer wheel thread when a connection's timer fires
+		void timerLater(final SelectorConnection connection, final int generation) {
+			this.submit(new Runnable() {
+				@Override
+				public void run() {
+					connection.timer(IOThread.this.selector, generation);
+				}
+			});
+		}
+
+		private void submit(final Runnable task) {
+			this.tasks.add(task);
+			this.selector.wakeup();
+		}
+
+		void halt() {
+			this.running = false;
+			this.selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			while (this.running) {
+				try {
+					this.selector.select();
+				} catch (final IOException e) {
+					System.err.println("ERROR: GPSdSelector - select failed " + e);
+					break;
+				}
+
+				final Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					final SelectionKey key = keys.next();
+					keys.remove();
+					if (key.isValid()) {
+						((SelectorConnection) key.attachment()).ready();
+					}
+				}
+
+				Runnable task;
+				while ((task = this.tasks.poll()) != null) {
+					task.run();
+				}
+			}
+
+			for (final SelectionKey key : this.selector.keys()) {
+				((SelectorConnection) key.attachment()).close();
+			}
+			Runnable task;
+			while ((task = this.tasks.poll()) != null) {
+				task.run();
+			}
+			try {
+				this.selector.close();
+			} catch (final IOException e) {
+				// ignore
+			}
+		}
+	}
+}
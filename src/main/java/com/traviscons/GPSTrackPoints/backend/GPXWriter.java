@@ -0,0 +1,564 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* GPXWriter
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * Writes a GPX 1.1 file through one open FileChannel.
+ *
+ * Elements are encoded into a reusable buffer and written in batches. Every write
+ * puts the pending elements and the closing tags at the end of the body in a single
+ * positional write, so the file on disk is always a complete GPX document.
+ *
+ * The file is forced to the storage device every N points, every T milliseconds
+ * and on {@link #close()}, whichever comes first. Forcing is what costs on an SD card,
+ * so both can be tuned or switched off. The flush and sync intervals are kept by timers
+ * on the shared {@link TimerWheel}, so a point is written in time even when the next one
+ * is minutes away. The timers only hand the write to the writer's own thread, so a slow
+ * card does not hold up the other timers.
+ *
+ * Track points go into one track segment. A waypoint closes the open segment and the
+ * next track point starts a new one.
+ */
+public class GPXWriter implements Closeable {
+
+	private static final String TRACK_FOOTER = "</trkseg></trk>\n";
+
+	private static final String FOOTER = "</gpx>\n";
+
+	/// bytes an element takes at most besides its text: tags, numbers, segment and closing tags
+	private static final int ELEMENT_SIZE = 512;
+
+	private final FileChannel channel;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/// pending elements, followed by the footer while being written
+	private ByteBuffer buffer;
+
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	/// end of the last element on disk, where the next write goes
+	private long bodyEnd;
+
+	/// elements waiting in the buffer
+	private int pending;
+
+	private boolean inSegment;
+
+	private int batchSize = 16;
+
+	private int syncEveryPoints = 60;
+
+	private long syncIntervalMillis = 30000;
+
+	private long flushIntervalMillis = 5000;
+
+	private int unsynced;
+
+	private long lastSync = System.currentTimeMillis();
+
+	private long firstPending;
+
+	private boolean closed;
+
+	/// writes the pending points once the flush interval has passed
+	private TimerWheel.Timeout flushTimer;
+
+	/// forces the written points once the sync interval has passed
+	private TimerWheel.Timeout syncTimer;
+
+	/// runs the timed writes and syncs off the wheel thread
+	private final ThreadPoolExecutor io = IoExecutor.create("GPXWriter");
+
+	private final Runnable timedFlush = new Runnable() {
+		@Override
+		public void run() {
+			GPXWriter.this.timedFlush();
+		}
+	};
+
+	private final Runnable timedSync = new Runnable() {
+		@Override
+		public void run() {
+			GPXWriter.this.timedSync();
+		}
+	};
+
+	private final Runnable flushDue = new Runnable() {
+		@Override
+		public void run() {
+			GPXWriter.this.handOff(GPXWriter.this.timedFlush);
+		}
+	};
+
+	private final Runnable syncDue = new Runnable() {
+		@Override
+		public void run() {
+			GPXWriter.this.handOff(GPXWriter.this.timedSync);
+		}
+	};
+
+	/**
+	 * Create the file, replacing an existing one, and write the GPX header.
+	 *
+	 * @param filename the GPX file
+	 * @param name     the name put into the GPX metadata
+	 * @throws IOException if the file can not be created
+	 */
+	public GPXWriter(final String filename, final String name) throws IOException {
+		this(filename, name, 64 * 1024);
+	}
+
+	/**
+	 * @param filename   the GPX file
+	 * @param name       the name put into the GPX metadata
+	 * @param bufferSize bytes of elements buffered before they are written regardless of the batch size.
+	 *                   Grown for an element that does not fit, e.g. one with a very long name.
+	 * @throws IOException if the file can not be created
+	 */
+	public GPXWriter(final String filename, final String name, final int bufferSize) throws IOException {
+		if ((filename == null) || filename.isEmpty()) {
+			throw new IllegalArgumentException("filename can not be empty!");
+		}
+		if (bufferSize < 1024) {
+			throw new IllegalArgumentException("bufferSize must be at least 1024: " + bufferSize);
+		}
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.lock.lock();
+		try {
+			this.reserve(length(name));
+			this.put("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			this.put("<gpx version=\"1.1\" creator=\"com.traviscons.GPSTrackPoints\"\n");
+			this.put("xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
+			this.put("<metadata><name>");
+			this.putEscaped(name);
+			this.put("</name></metadata>\n");
+			this.write();
+			this.sync();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Append a track point. It is written with the next batch.
+	 *
+	 * @param tpv the position
+	 * @throws IOException on write errors
+	 */
+	public void addTrackPoint(final TPVObject tpv) throws IOException {
+		this.lock.lock();
+		try {
+			this.checkOpen();
+			this.reserve(length(tpv.getTimestampText()));
+			if (!this.inSegment) {
+				this.put("<trk><trkseg>\n");
+				this.inSegment = true;
+			}
+			this.putPoint("trkpt", tpv, null);
+			this.added(false);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Append a waypoint and write it at once, together with any pending track points.
+	 *
+	 * @param tpv  the position
+	 * @param name the waypoint name
+	 * @throws IOException on write errors
+	 */
+	public void addWaypoint(final TPVObject tpv, final String name) throws IOException {
+		this.lock.lock();
+		try {
+			this.checkOpen();
+			this.reserve(length(tpv.getTimestampText()) + length(name));
+			if (this.inSegment) {
+				this.put(TRACK_FOOTER);
+				this.inSegment = false;
+			}
+			this.putPoint("wpt", tpv, name);
+			this.added(true);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Close the open track segment. The next track point starts a new one.
+	 *
+	 * @throws IOException on write errors
+	 */
+	public void endSegment() throws IOException {
+		this.lock.lock();
+		try {
+			this.checkOpen();
+			if (this.inSegment) {
+				this.reserve(0);
+				this.put(TRACK_FOOTER);
+				this.inSegment = false;
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Write the pending elements. They are not forced to the device unless the sync policy says so.
+	 *
+	 * @throws IOException on write errors
+	 */
+	public void flush() throws IOException {
+		this.lock.lock();
+		try {
+			this.checkOpen();
+			if (this.pending > 0) {
+				this.write();
+			}
+			this.maybeSync();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Write the pending elements, force everything to the device and close the file.
+	 * Further calls do nothing.
+	 *
+	 * @throws IOException on write errors
+	 */
+	@Override
+	public void close() throws IOException {
+		this.lock.lock();
+		try {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			try {
+				if (this.pending > 0) {
+					this.write();
+				}
+				this.sync();
+			} finally {
+				this.cancelTimers();
+				this.io.shutdown();
+				this.channel.close();
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @param points how many track points are collected before they are written. Default 16.
+	 */
+	public void setBatchSize(final int points) {
+		this.batchSize = Math.max(1, points);
+	}
+
+	/**
+	 * @param millis longest time a collected track point waits before it is written. Default 5000ms, 0 for no limit.
+	 */
+	public void setFlushInterval(final long millis) {
+		this.flushIntervalMillis = millis;
+	}
+
+	/**
+	 * @param points force the file to the device after this many points. Default 60, 0 to switch off.
+	 */
+	public void setSyncEveryPoints(final int points) {
+		this.syncEveryPoints = points;
+	}
+
+	/**
+	 * @param millis force the file to the device when this long has passed since the last time. Default 30000ms, 0 to switch off.
+	 */
+	public void setSyncInterval(final long millis) {
+		this.syncIntervalMillis = millis;
+	}
+
+	/**
+	 * @return the bytes written to the file, including the closing tags
+	 * @throws IOException if the file is closed
+	 */
+	public long size() throws IOException {
+		return this.channel.size();
+	}
+
+	private void checkOpen() throws IOException {
+		if (this.closed) {
+			throw new IOException("GPXWriter is closed");
+		}
+	}
+
+	/// make room for one more element with this many characters of text, and the footer
+	private void reserve(final int textLength) throws IOException {
+		// escaping turns a character into at most 6 bytes, UTF-8 into at most 3
+		final int needed = ELEMENT_SIZE + (6 * textLength);
+		if ((this.buffer.position() > 0) && (this.buffer.remaining() < needed)) {
+			this.write();
+		}
+		if (this.buffer.capacity() < needed) {
+			// empty after the write above
+			this.buffer = ByteBuffer.allocateDirect(needed);
+		}
+	}
+
+	private static int length(final String s) {
+		return (s == null) ? 0 : s.length();
+	}
+
+	private void added(final boolean now) throws IOException {
+		if (this.pending == 0) {
+			this.firstPending = System.currentTimeMillis();
+		}
+		this.pending++;
+		this.unsynced++;
+		if (now || (this.pending >= this.batchSize)
+				|| ((this.flushIntervalMillis > 0) && ((System.currentTimeMillis() - this.firstPending) >= this.flushIntervalMillis))) {
+			this.write();
+		} else if ((this.flushIntervalMillis > 0) && (this.flushTimer == null)) {
+			this.flushTimer = this.schedule(this.flushDue, this.flushIntervalMillis - (System.currentTimeMillis() - this.firstPending));
+		}
+		this.maybeSync();
+		if ((this.unsynced > 0) && (this.syncIntervalMillis > 0) && (this.syncTimer == null)) {
+			this.syncTimer = this.schedule(this.syncDue, this.syncIntervalMillis - (System.currentTimeMillis() - this.lastSync));
+		}
+	}
+
+	/// called with the lock held
+	private TimerWheel.Timeout schedule(final Runnable task, final long millis) {
+		try {
+			return TimerWheel.getDefault().schedule(task, Math.max(0, millis), TimeUnit.MILLISECONDS);
+		} catch (final RejectedExecutionException e) {
+			// the wheel was shut down, adds still write and sync on their own
+			return null;
+		}
+	}
+
+	/// on the timer wheel thread, which must not wait for the file
+	private void handOff(final Runnable task) {
+		try {
+			this.io.execute(task);
+		} catch (final RejectedExecutionException e) {
+			// closed meanwhile, close() wrote and synced everything
+		}
+	}
+
+	/// on the writer's own thread
+	private void timedFlush() {
+		this.lock.lock();
+		try {
+			this.flushTimer = null;
+			if (!this.closed && (this.pending > 0)) {
+				this.write();
+				this.maybeSync();
+			}
+		} catch (final IOException e) {
+			System.err.println("WARNING: GPXWriter - Problem encountered writing pending points " + e);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/// on the writer's own thread
+	private void timedSync() {
+		this.lock.lock();
+		try {
+			this.syncTimer = null;
+			if (!this.closed && (this.unsynced > 0)) {
+				if (this.pending > 0) {
+					this.write();
+				}
+				this.sync();
+			}
+		} catch (final IOException e) {
+			System.err.println("WARNING: GPXWriter - Problem encountered syncing points " + e);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void cancelTimers() {
+		if (this.flushTimer != null) {
+			this.flushTimer.cancel();
+			this.flushTimer = null;
+		}
+		if (this.syncTimer != null) {
+			this.syncTimer.cancel();
+			this.syncTimer = null;
+		}
+	}
+
+	/// append the footer and write buffer and footer at the end of the body in one go
+	private void write() throws IOException {
+		final int body = this.buffer.position();
+		if (this.inSegment) {
+			this.put(TRACK_FOOTER);
+		}
+		this.put(FOOTER);
+		this.buffer.flip();
+		long position = this.bodyEnd;
+		while (this.buffer.hasRemaining()) {
+			position += this.channel.write(this.buffer, position);
+		}
+		this.bodyEnd += body;
+		this.buffer.clear();
+		this.pending = 0;
+		if (this.flushTimer != null) {
+			this.flushTimer.cancel();
+			this.flushTimer = null;
+		}
+	}
+
+	private void maybeSync() throws IOException {
+		if (((this.syncEveryPoints > 0) && (this.unsynced >= this.syncEveryPoints))
+				|| ((this.syncIntervalMillis > 0) && (this.unsynced > 0) && ((System.currentTimeMillis() - this.lastSync) >= this.syncIntervalMillis))) {
+			if (this.pending > 0) {
+				this.write();
+			}
+			this.sync();
+		}
+	}
+
+	private void sync() throws IOException {
+		this.channel.force(false);
+		this.unsynced = 0;
+		this.lastSync = System.currentTimeMillis();
+		if (this.syncTimer != null) {
+			this.syncTimer.cancel();
+			this.syncTimer = null;
+		}
+	}
+
+	private void putPoint(final String element, final TPVObject tpv, final String name) {
+		this.put("<");
+		this.put(element);
+		this.put(" lat=\"");
+		this.put(Double.toString(tpv.getLatitude()));
+		this.put("\" lon=\"");
+		this.put(Double.toString(tpv.getLongitude()));
+		this.put("\">");
+		if (!Double.isNaN(tpv.getAltitude())) {
+			this.put("<ele>");
+			this.put(Double.toString(tpv.getAltitude()));
+			this.put("</ele>");
+		}
+		if (tpv.getTimestampText() != null) {
+			this.put("<time>");
+			this.putEscaped(tpv.getTimestampText());
+			this.put("</time>");
+		}
+		if (name != null) {
+			this.put("<name>");
+			this.putEscaped(name);
+			this.put("</name>");
+		}
+		if (tpv.getMode() != null) {
+			switch (tpv.getMode()) {
+			case ThreeDimensional:
+				this.put("<fix>3d</fix>");
+				break;
+			case TwoDimensional:
+				this.put("<fix>2d</fix>");
+				break;
+			default:
+				// Do nothing
+			}
+		}
+		this.put("</");
+		this.put(element);
+		this.put(">\n");
+	}
+
+	/// encode markup. ASCII goes straight into the buffer.
+	private void put(final String s) {
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c < 0x80) {
+				this.buffer.put((byte) c);
+			} else {
+				this.putUtf8(s.substring(i));
+				return;
+			}
+		}
+	}
+
+	private void putEscaped(final String s) {
+		if (s == null) {
+			return;
+		}
+		int start = 0;
+		for (int i = 0; i < s.length(); i++) {
+			final String entity;
+			switch (s.charAt(i)) {
+			case '<':
+				entity = "&lt;";
+				break;
+			case '>':
+				entity = "&gt;";
+				break;
+			case '&':
+				entity = "&amp;";
+				break;
+			case '"':
+				entity = "&quot;";
+				break;
+			default:
+				continue;
+			}
+			this.put(s.substring(start, i));
+			this.put(entity);
+			start = i + 1;
+		}
+		this.put(start == 0 ? s : s.substring(start));
+	}
+
+	private void putUtf8(final String s) {
+		this.encoder.reset();
+		final CharBuffer in = CharBuffer.wrap(s);
+		final CoderResult result = this.encoder.encode(in, this.buffer, true);
+		if (result.isOverflow()) {
+			throw new IllegalStateException("GPX element does not fit the buffer");
+		}
+		this.encoder.flush(this.buffer);
+	}
+}
@@ -0,0 +1,280 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* GeodesicEngine
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+/**
+ * Batch distances, bearings and track lengths over primitive latitude and longitude columns.
+ *
+ * Where {@link GISTool} computes one distance per call from two TPVObjects, this works on
+ * whole tracks held in double[] columns and computes segment lengths, cumulative length and
+ * bearings in one pass. Results are in meters and degrees.
+ *
+ * Two models are offered:
+ * <ul>
+ * <li>SPHERICAL: haversine on the same 6371 km sphere as GISTool. Uses the JDK Vector API
+ * when the Java 17 kernel and the jdk.incubator.vector module are available, plain Java otherwise.</li>
+ * <li>VINCENTY: Vincenty's inverse formula on the WGS-84 ellipsoid. Accurate to a millimeter
+ * but iterative, so always scalar. Nearly antipodal points that do not converge give NaN.</li>
+ * </ul>
+ *
+ * Instances hold no mutable state and can be shared between threads.
+ */
+public final class GeodesicEngine {
+
+	/**
+	 * The earth model distances are computed on.
+	 */
+	public enum Model {
+		/**
+		 * sphere with the mean earth radius
+		 */
+		SPHERICAL,
+		/**
+		 * WGS-84 ellipsoid, Vincenty's inverse formula
+		 */
+		VINCENTY;
+	}
+
+	/// same sphere as GISTool
+	public static final double EARTH_RADIUS_METERS = 6371000.0;
+
+	private static final double WGS84_A = 6378137.0;
+
+	private static final double WGS84_F = 1 / 298.257223563;
+
+	private static final double WGS84_B = WGS84_A * (1 - WGS84_F);
+
+	private static final int VINCENTY_ITERATIONS = 200;
+
+	private static final GeodesicKernel VECTOR_KERNEL = loadVectorKernel();
+
+	private final Model model;
+
+	private final GeodesicKernel kernel;
+
+	/**
+	 * An engine that uses the Vector API when it is available.
+	 *
+	 * @param model the earth model
+	 */
+	public GeodesicEngine(final Model model) {
+		this(model, true);
+	}
+
+	/**
+	 * @param model     the earth model
+	 * @param vectorize false to use the scalar kernel even if the Vector API is available
+	 */
+	public GeodesicEngine(final Model model, final boolean vectorize) {
+		if (model == null) {
+			throw new IllegalArgumentException("model can not be null!");
+		}
+		this.model = model;
+		this.kernel = (vectorize && (VECTOR_KERNEL != null)) ? VECTOR_KERNEL : ScalarGeodesicKernel.INSTANCE;
+	}
+
+	/**
+	 * The vector kernel is in the Java 17 part of the jar. It fails to load on older JVMs
+	 * and when the JVM was started without --add-modules jdk.incubator.vector.
+	 */
+	private static GeodesicKernel loadVectorKernel() {
+		if ("false".equals(System.getProperty("com.traviscons.GPSTrackPoints.vector"))) {
+			return null;
+		}
+		try {
+			final Class<?> c = Class.forName("com.traviscons.GPSTrackPoints.backend.VectorGeodesicKernel");
+			final GeodesicKernel kernel = (GeodesicKernel) c.getDeclaredConstructor().newInstance();
+			// make sure the vector classes link before committing to the kernel
+			kernel.haversine(new double[] { 0, 1 }, new double[] { 0, 1 }, 0, 1, EARTH_RADIUS_METERS, new double[1], new double[1]);
+			return kernel;
+		} catch (final Exception e) {
+			return null;
+		} catch (final LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the JDK Vector API can be used in this JVM
+	 */
+	public static boolean isVectorAvailable() {
+		return VECTOR_KERNEL != null;
+	}
+
+	/**
+	 * @return the earth model
+	 */
+	public Model getModel() {
+		return this.model;
+	}
+
+	/**
+	 * @return true if spherical distances are computed with the Vector API
+	 */
+	public boolean isVectorized() {
+		return (this.model == Model.SPHERICAL) && (this.kernel != ScalarGeodesicKernel.INSTANCE);
+	}
+
+	/**
+	 * Compute the segments of a track in one pass. Segment i runs from point i to point i + 1.
+	 * Any of the outputs can be null if it is not needed.
+	 *
+	 * @param lat        latitudes in degrees
+	 * @param lon        longitudes in degrees
+	 * @param count      number of points to use from the columns
+	 * @param distances  receives count - 1 segment lengths in meters
+	 * @param cumulative receives count distances from the first point in meters, starting with 0
+	 * @param bearings   receives count - 1 initial bearings in degrees, 0 to 360 clockwise from north
+	 */
+	public void segments(final double[] lat, final double[] lon, final int count, final double[] distances,
+			final double[] cumulative, final double[] bearings) {
+		if ((count < 0) || (count > lat.length) || (count > lon.length)) {
+			throw new IllegalArgumentException("Illegal count: " + count);
+		}
+		final int segments = Math.max(0, count - 1);
+		if (((distances != null) && (distances.length < segments)) || ((bearings != null) && (bearings.length < segments))
+				|| ((cumulative != null) && (cumulative.length < count))) {
+			throw new IllegalArgumentException("Output arrays are too short for " + count + " points");
+		}
+		final double[] d = ((distances == null) && (cumulative != null)) ? new double[segments] : distances;
+		if (this.model == Model.SPHERICAL) {
+			this.kernel.haversine(lat, lon, 0, segments, EARTH_RADIUS_METERS, d, bearings);
+		} else {
+			vincenty(lat, lon, segments, d, bearings);
+		}
+		if ((cumulative != null) && (count > 0)) {
+			double sum = 0;
+			cumulative[0] = 0;
+			for (int i = 0; i < segments; i++) {
+				sum += d[i];
+				cumulative[i + 1] = sum;
+			}
+		}
+	}
+
+	/**
+	 * @param lat   latitudes in degrees
+	 * @param lon   longitudes in degrees
+	 * @param count number of points to use from the columns
+	 * @return the length of the track in meters
+	 */
+	public double length(final double[] lat, final double[] lon, final int count) {
+		final double[] d = new double[Math.max(0, count - 1)];
+		this.segments(lat, lon, count, d, null, null);
+		double sum = 0;
+		for (final double segment : d) {
+			sum += segment;
+		}
+		return sum;
+	}
+
+	/**
+	 * @param lat1 latitude of position 1 in degrees
+	 * @param lon1 longitude of position 1 in degrees
+	 * @param lat2 latitude of position 2 in degrees
+	 * @param lon2 longitude of position 2 in degrees
+	 * @return the distance in meters
+	 */
+	public double distance(final double lat1, final double lon1, final double lat2, final double lon2) {
+		final double[] d = new double[1];
+		if (this.model == Model.SPHERICAL) {
+			ScalarGeodesicKernel.INSTANCE.haversine(new double[] { lat1, lat2 }, new double[] { lon1, lon2 }, 0, 1, EARTH_RADIUS_METERS, d, null);
+		} else {
+			vincenty(new double[] { lat1, lat2 }, new double[] { lon1, lon2 }, 1, d, null);
+		}
+		return d[0];
+	}
+
+	/// Vincenty's inverse formula on WGS-84 for every segment
+	private static void vincenty(final double[] lat, final double[] lon, final int segments, final double[] distances, final double[] bearings) {
+		if (segments <= 0) {
+			return;
+		}
+		// reduced latitude of the first point, carried over like the scalar haversine
+		double u1 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(lat[0])));
+		double sinU1 = Math.sin(u1);
+		double cosU1 = Math.cos(u1);
+		for (int i = 0; i < segments; i++) {
+			final double u2 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(lat[i + 1])));
+			final double sinU2 = Math.sin(u2);
+			final double cosU2 = Math.cos(u2);
+			final double l = Math.toRadians(lon[i + 1] - lon[i]);
+
+			double lambda = l;
+			double sinLambda;
+			double cosLambda;
+			double sinSigma;
+			double cosSigma = 0;
+			double sigma = 0;
+			double cos2Alpha = 0;
+			double cos2SigmaM = 0;
+			int iterations = 0;
+			boolean converged = false;
+			do {
+				sinLambda = Math.sin(lambda);
+				cosLambda = Math.cos(lambda);
+				final double t = (cosU1 * sinU2) - (sinU1 * cosU2 * cosLambda);
+				sinSigma = Math.sqrt(((cosU2 * sinLambda) * (cosU2 * sinLambda)) + (t * t));
+				if (sinSigma == 0) {
+					break; // same point
+				}
+				cosSigma = (sinU1 * sinU2) + (cosU1 * cosU2 * cosLambda);
+				sigma = Math.atan2(sinSigma, cosSigma);
+				final double sinAlpha = (cosU1 * cosU2 * sinLambda) / sinSigma;
+				cos2Alpha = 1 - (sinAlpha * sinAlpha);
+				cos2SigmaM = (cos2Alpha != 0) ? cosSigma - ((2 * sinU1 * sinU2) / cos2Alpha) : 0; // equatorial line
+				final double c = (WGS84_F / 16) * cos2Alpha * (4 + (WGS84_F * (4 - (3 * cos2Alpha))));
+				final double previous = lambda;
+				lambda = l + ((1 - c) * WGS84_F * sinAlpha
+						* (sigma + (c * sinSigma * (cos2SigmaM + (c * cosSigma * (-1 + (2 * cos2SigmaM * cos2SigmaM)))))));
+				converged = Math.abs(lambda - previous) < 1e-12;
+			} while (!converged && (++iterations < VINCENTY_ITERATIONS));
+
+			if (sinSigma == 0) {
+				if (distances != null) {
+					distances[i] = 0;
+				}
+				if (bearings != null) {
+					bearings[i] = 0;
+				}
+			} else if (!converged) {
+				if (distances != null) {
+					distances[i] = Double.NaN;
+				}
+				if (bearings != null) {
+					bearings[i] = Double.NaN;
+				}
+			} else {
+				if (distances != null) {
+					final double uSq = (cos2Alpha * ((WGS84_A * WGS84_A) - (WGS84_B * WGS84_B))) / (WGS84_B * WGS84_B);
+					final double a = 1 + ((uSq / 16384) * (4096 + (uSq * (-768 + (uSq * (320 - (175 * uSq)))))));
+					final double b = (uSq / 1024) * (256 + (uSq * (-128 + (uSq * (74 - (47 * uSq))))));
+					final double deltaSigma = b * sinSigma * (cos2SigmaM + ((b / 4) * ((cosSigma * (-1 + (2 * cos2SigmaM * cos2SigmaM)))
+							- ((b / 6) * cos2SigmaM * (-3 + (4 * sinSigma * sinSigma)) * (-3 + (4 * cos2SigmaM * cos2SigmaM))))));
+					distances[i] = WGS84_B * a * (sigma - deltaSigma);
+				}
+				if (bearings != null) {
+					final double b = Math.toDegrees(Math.atan2(cosU2 * sinLambda, (cosU1 * sinU2) - (sinU1 * cosU2 * cosLambda)));
+					bearings[i] = (b < 0) ? b + 360.0 : b;
+				}
+			}
+			sinU1 = sinU2;
+			cosU1 = cosU2;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* GeodesicKernel
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+/**
+ * Computes the spherical segment distances and bearings of a track for {@link GeodesicEngine}.
+ *
+ * Segment i runs from point i to point i + 1. Outputs that are null are not computed.
+ */
+interface GeodesicKernel {
+
+	/**
+	 * @param lat       latitudes in degrees
+	 * @param lon       longitudes in degrees
+	 * @param from      first segment
+	 * @param segments  one past the last segment
+	 * @param radius    sphere radius in meters
+	 * @param distances segment lengths in meters, or null
+	 * @param bearings  initial bearings in degrees 0..360, or null
+	 */
+	void haversine(double[] lat, double[] lon, int from, int segments, double radius, double[] distances, double[] bearings);
+}
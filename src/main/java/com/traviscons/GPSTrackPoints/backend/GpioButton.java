@@ -0,0 +1,228 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* GpioButton
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Turns the level changes of a {@link GpioInput} into button presses.
+ *
+ * The first edge is taken at once, timestamped with the sample that saw it, so a press is
+ * reported without waiting for the contacts to settle. Changes within the debounce time
+ * after an accepted edge are contact bounce and ignored; a level that is still different
+ * when the debounce time ends is taken as the next edge.
+ *
+ * A press held for the long press time is reported while the button is still held, and
+ * its release then no longer counts as a short push. The long press is a timer on the
+ * shared {@link TimerWheel}, armed on press and cancelled on release. The timer only marks
+ * the press as long; while it is pending the loop waits no longer than its deadline, so
+ * the long press is reported on the button's thread like the other edges and a callback
+ * may block or halt the button.
+ *
+ * <pre>
+ * final GpioButton button = new GpioButton(new SysfsGpioInput("/sys/class/gpio", 23), callback);
+ * new Thread(button).start();
+ * </pre>
+ */
+public class GpioButton implements Runnable {
+
+	/// longest single wait, so halt() is noticed without interrupting a read
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+	/// how often the loop looks again when the long press timer is due but not yet marked
+	private static final long LATE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final GpioInput input;
+
+	private final iButtonCallback callback;
+
+	private volatile iButtonListener listener;
+
+	private volatile int activeLevel = 0;
+
+	private volatile long debounceNanos = TimeUnit.MILLISECONDS.toNanos(20);
+
+	private volatile long longPressNanos = TimeUnit.SECONDS.toNanos(3);
+
+	private volatile boolean running = true;
+
+	/// the pending long press of the current press, only touched by the loop
+	private TimerWheel.Timeout longTimer;
+
+	/// when the long press timer fired, 0 until then; set on the wheel thread
+	private volatile long longDueAt;
+
+	/**
+	 * @param input    the line the button is wired to
+	 * @param callback gets ShortPush on release of a short press and LongPush when a press
+	 *                 reaches the long press time, may be null
+	 */
+	public GpioButton(final GpioInput input, final iButtonCallback callback) {
+		if (input == null) {
+			throw new IllegalArgumentException("input can not be null!");
+		}
+		this.input = input;
+		this.callback = callback;
+	}
+
+	@Override
+	public void run() {
+		try {
+			int level = this.input.read();
+			boolean pressed = (level == this.activeLevel);
+			long pressedAt = System.nanoTime();
+			boolean longFired = false;
+
+			while (this.running) {
+				long wait = IDLE_NANOS;
+				if (this.longTimer != null) {
+					final long due = (pressedAt + this.longPressNanos) - System.nanoTime();
+					wait = Math.min(wait, Math.max(due, LATE_NANOS));
+				}
+				final int next = this.input.awaitChange(level, wait);
+
+				// a long press that came due before this edge is reported first
+				final long dueAt = this.longDueAt;
+				if ((this.longTimer != null) && (dueAt != 0)) {
+					this.longTimer = null;
+					longFired = true;
+					this.longPressed(dueAt);
+				}
+				if (next == level) {
+					continue;
+				}
+				final long at = System.nanoTime();
+
+				level = next;
+				if (pressed != (level == this.activeLevel)) {
+					pressed = !pressed;
+					if (pressed) {
+						pressedAt = at;
+						longFired = false;
+						this.pressed(at);
+						this.longTimer = this.armLongPress();
+					} else {
+						final TimerWheel.Timeout t = this.longTimer;
+						if (t != null) {
+							t.cancel();
+							this.longTimer = null;
+						}
+						this.released(at, at - pressedAt, longFired);
+					}
+				}
+
+				// ride out the bounce; the level is looked at again when it is over
+				final long settle = at + this.debounceNanos;
+				for (long left = this.debounceNanos; this.running && (left > 0); left = settle - System.nanoTime()) {
+					LockSupport.parkNanos(left);
+				}
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (final IOException e) {
+			System.err.println("WARNING: GpioButton - Problem encountered reading the button " + e);
+		} finally {
+			final TimerWheel.Timeout t = this.longTimer;
+			if (t != null) {
+				t.cancel();
+			}
+		}
+	}
+
+	private TimerWheel.Timeout armLongPress() {
+		this.longDueAt = 0;
+		try {
+			return TimerWheel.getDefault().schedule(new Runnable() {
+				@Override
+				public void run() {
+					GpioButton.this.longDueAt = System.nanoTime();
+				}
+			}, this.longPressNanos, TimeUnit.NANOSECONDS);
+		} catch (final RejectedExecutionException e) {
+			System.err.println("WARNING: GpioButton - Timer wheel shut down, no long press");
+			return null;
+		}
+	}
+
+	private void pressed(final long at) {
+		final iButtonListener l = this.listener;
+		if (l != null) {
+			l.pressed(at);
+		}
+	}
+
+	private void released(final long at, final long held, final boolean longFired) {
+		final iButtonListener l = this.listener;
+		if (l != null) {
+			l.released(at, held);
+		}
+		if (!longFired && (this.callback != null)) {
+			this.callback.ShortPush();
+		}
+	}
+
+	private void longPressed(final long at) {
+		final iButtonListener l = this.listener;
+		if (l != null) {
+			l.longPressed(at);
+		}
+		if (this.callback != null) {
+			this.callback.LongPush();
+		}
+	}
+
+	/**
+	 * Stop the loop. It returns within 250 ms. The input is left open.
+	 */
+	public void halt() {
+		this.running = false;
+	}
+
+	/**
+	 * @param listener gets every debounced edge with its timestamp, may be null
+	 */
+	public void setListener(final iButtonListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @param level the level of a pressed button. 0, the default, for a button closing to
+	 *              ground against a pull up
+	 */
+	public void setActiveLevel(final int level) {
+		this.activeLevel = level;
+	}
+
+	/**
+	 * @param nanos how long after an edge changes are taken as contact bounce. Default 20 ms.
+	 */
+	public void setDebounce(final long nanos) {
+		this.debounceNanos = Math.max(0, nanos);
+	}
+
+	/**
+	 * @param nanos how long a press must be held to be a long press. Default 3 s.
+	 */
+	public void setLongPress(final long nanos) {
+		this.longPressNanos = nanos;
+	}
+}
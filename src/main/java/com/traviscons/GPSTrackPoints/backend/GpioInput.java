@@ -0,0 +1,48 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* GpioInput
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A GPIO input that can wait for its level to change, see {@link GpioButton}.
+ *
+ * An implementation keeps the line open between reads. {@link SysfsGpioInput} is the
+ * pure Java one. A native poll(2) or gpiochip backend can be put in its place.
+ */
+public interface GpioInput extends Closeable {
+
+	/**
+	 * @return the current level, 0 or 1
+	 * @throws IOException if the line can not be read
+	 */
+	int read() throws IOException;
+
+	/**
+	 * Wait until the level differs from the given one.
+	 *
+	 * @param level        the level the caller last saw
+	 * @param timeoutNanos how long to wait at most
+	 * @return the new level, or level if the timeout passed first
+	 * @throws IOException          if the line can not be read
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	int awaitChange(int level, long timeoutNanos) throws IOException, InterruptedException;
+}
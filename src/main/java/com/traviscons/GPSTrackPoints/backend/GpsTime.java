@@ -0,0 +1,85 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* GpsTime
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+/**
+ * GPS system time as used by the broadcast ephemeris and almanac.
+ *
+ * GPS time counts continuous seconds from 1980-01-06 00:00:00 UTC. It does not stop for
+ * leap seconds, so it is ahead of UTC by the leap seconds inserted since then. Orbits are
+ * computed from the seconds into the GPS week, which wraps every 604800 seconds.
+ */
+public final class GpsTime {
+
+	/// seconds in a GPS week
+	public static final double SECONDS_PER_WEEK = 604800.0;
+
+	/// GPS time minus UTC since 2017-01-01. A leap second announced later changes this.
+	public static final int LEAP_SECONDS = 18;
+
+	/// 1980-01-06T00:00:00Z in Unix milliseconds
+	private static final long GPS_EPOCH_MILLIS = 315964800000L;
+
+	private GpsTime() {
+		//
+	}
+
+	/**
+	 * @param unixMillis UTC in milliseconds since 1970, e.g. System.currentTimeMillis() or a TPV time * 1000
+	 * @return seconds since the GPS epoch
+	 */
+	public static double fromUnixMillis(final long unixMillis) {
+		return ((unixMillis - GPS_EPOCH_MILLIS) / 1000.0) + LEAP_SECONDS;
+	}
+
+	/**
+	 * @param gpsSeconds seconds since the GPS epoch
+	 * @return UTC in milliseconds since 1970
+	 */
+	public static long toUnixMillis(final double gpsSeconds) {
+		return GPS_EPOCH_MILLIS + Math.round((gpsSeconds - LEAP_SECONDS) * 1000.0);
+	}
+
+	/**
+	 * @param gpsSeconds seconds since the GPS epoch
+	 * @return seconds into the GPS week
+	 */
+	public static double timeOfWeek(final double gpsSeconds) {
+		final double tow = gpsSeconds % SECONDS_PER_WEEK;
+		return (tow < 0) ? tow + SECONDS_PER_WEEK : tow;
+	}
+
+	/**
+	 * The time from a reference time of week, e.g. toe, to a time, taking the week
+	 * rollover into account as IS-GPS-200 does.
+	 *
+	 * @param gpsSeconds    seconds since the GPS epoch
+	 * @param referenceTime the reference in seconds into the week
+	 * @return the difference in seconds, between -302400 and 302400
+	 */
+	public static double sinceTimeOfWeek(final double gpsSeconds, final double referenceTime) {
+		double dt = timeOfWeek(gpsSeconds) - referenceTime;
+		if (dt > (SECONDS_PER_WEEK / 2)) {
+			dt -= SECONDS_PER_WEEK;
+		} else if (dt < (-SECONDS_PER_WEEK / 2)) {
+			dt += SECONDS_PER_WEEK;
+		}
+		return dt;
+	}
+}
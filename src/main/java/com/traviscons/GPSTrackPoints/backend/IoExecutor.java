@@ -0,0 +1,58 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* IoExecutor
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread of its own for file work that a {@link TimerWheel} task must not do on the wheel
+ * thread, e.g. forcing a file to an SD card, which can take hundreds of milliseconds.
+ *
+ * One thread runs the tasks in order. It is started when work arrives and ends after a few
+ * idle seconds, so a writer that is not flushing holds no thread.
+ */
+final class IoExecutor {
+
+	private static final long KEEP_ALIVE_SECONDS = 5;
+
+	private IoExecutor() {
+		//
+	}
+
+	/**
+	 * @param name the thread name
+	 * @return a single thread executor with daemon threads that time out when idle
+	 */
+	static ThreadPoolExecutor create(final String name) {
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread t = new Thread(r, name);
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
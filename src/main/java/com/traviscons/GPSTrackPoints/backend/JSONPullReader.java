@@ -0,0 +1,634 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* JSONPullReader
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import com.traviscons.GPSTrackPoints.types.ParseException;
+
+/**
+ * Pull reader over one line of gpsd JSON.
+ *
+ * The reader walks the characters of the line in place. Keys are compared against
+ * the raw characters and numbers are decoded without building an intermediate String,
+ * so reading a report only allocates the Strings that end up in the result object.
+ *
+ * Value readers follow the same conversion rules as the org.json opt* methods used by
+ * ResultParser so that both parsers produce identical objects.
+ *
+ * A reader holds the position within the current line and is not thread safe. Use one
+ * reader per thread.
+ */
+final class JSONPullReader {
+
+	/// exact powers of ten usable for the fast number path
+	private static final double[] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	/// largest mantissa that a double holds exactly
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	/// number of recently read short strings kept to avoid re-allocating device names and tags
+	private static final int CACHE_SIZE = 16;
+
+	/// longest string that is looked up in the cache
+	private static final int CACHE_MAX_LENGTH = 32;
+
+	private CharSequence text;
+
+	private int pos;
+
+	private int end;
+
+	private int keyStart;
+
+	private int keyEnd;
+
+	private boolean lastNumberIntegral;
+
+	private long lastNumberLong;
+
+	private final String[] cache = new String[CACHE_SIZE];
+
+	private int cacheNext;
+
+	/**
+	 * Start reading a new line.
+	 *
+	 * @param text the line read from GPSd
+	 */
+	void reset(final CharSequence text) {
+		this.text = text;
+		this.pos = 0;
+		this.end = text.length();
+	}
+
+	/**
+	 * Move back to the start of the current line.
+	 */
+	void rewind() {
+		this.pos = 0;
+	}
+
+	/**
+	 * Consume the opening brace of an object.
+	 *
+	 * @throws ParseException if the next value is not an object
+	 */
+	void beginObject() throws ParseException {
+		this.skipWhitespace();
+		this.expect('{');
+	}
+
+	/**
+	 * Advance to the next field of the current object. The key can then be checked with
+	 * {@link #keyEquals(String)} and the value must be consumed by one of the read or skip methods.
+	 *
+	 * @return false when the closing brace of the object was consumed
+	 * @throws ParseException on malformed input
+	 */
+	boolean nextField() throws ParseException {
+		this.skipWhitespace();
+		char c = this.peek();
+		if (c == '}') {
+			this.pos++;
+			return false;
+		}
+		if (c == ',') {
+			this.pos++;
+			this.skipWhitespace();
+		}
+		this.expect('"');
+		this.keyStart = this.pos;
+		this.pos = this.endOfString(this.pos);
+		this.keyEnd = this.pos;
+		this.pos++; // closing quote
+		this.skipWhitespace();
+		this.expect(':');
+		this.skipWhitespace();
+		return true;
+	}
+
+	/**
+	 * @param name the key to compare against
+	 * @return true if the current key is name
+	 */
+	boolean keyEquals(final String name) {
+		final int length = this.keyEnd - this.keyStart;
+		if (length != name.length()) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (this.text.charAt(this.keyStart + i) != name.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Position the reader on the value of a top level field.
+	 *
+	 * @param name the key to look for
+	 * @return true if the field was found. The reader is left at the start of its value.
+	 * @throws ParseException on malformed input
+	 */
+	boolean seekField(final String name) throws ParseException {
+		this.rewind();
+		this.beginObject();
+		while (this.nextField()) {
+			if (this.keyEquals(name)) {
+				return true;
+			}
+			this.skipValue();
+		}
+		return false;
+	}
+
+	/**
+	 * Compare the current value with a String without consuming it.
+	 *
+	 * @param value the expected value
+	 * @return true if the current value is a plain JSON string equal to value
+	 */
+	boolean valueEquals(final String value) throws ParseException {
+		if (this.peek() != '"') {
+			return false;
+		}
+		final int start = this.pos + 1;
+		final int stop = this.endOfString(start);
+		if ((stop - start) != value.length()) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if (this.text.charAt(start + i) != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Consume the opening bracket of an array.
+	 *
+	 * @return false if the value is not an array. The value is skipped in that case.
+	 * @throws ParseException on malformed input
+	 */
+	boolean beginArray() throws ParseException {
+		if (this.peek() != '[') {
+			this.skipValue();
+			return false;
+		}
+		this.pos++;
+		return true;
+	}
+
+	/**
+	 * Advance to the next element of the current array.
+	 *
+	 * @return false when the closing bracket of the array was consumed
+	 * @throws ParseException on malformed input
+	 */
+	boolean nextElement() throws ParseException {
+		this.skipWhitespace();
+		final char c = this.peek();
+		if (c == ']') {
+			this.pos++;
+			return false;
+		}
+		if (c == ',') {
+			this.pos++;
+			this.skipWhitespace();
+		}
+		return true;
+	}
+
+	/**
+	 * Read the current value as a double like JSONObject.optDouble(key, Double.NaN).
+	 *
+	 * @return the value or NaN if it is not a number
+	 * @throws ParseException on malformed input
+	 */
+	double readDouble() throws ParseException {
+		final char c = this.peek();
+		if (c == '"') {
+			final String s = this.readString();
+			try {
+				return Double.parseDouble(s);
+			} catch (final NumberFormatException e) {
+				return Double.NaN;
+			}
+		}
+		if ((c == '-') || ((c >= '0') && (c <= '9'))) {
+			return this.readNumber();
+		}
+		this.skipValue();
+		return Double.NaN;
+	}
+
+	/**
+	 * Read the current value as an int like JSONObject.optInt(key, defaultValue).
+	 *
+	 * @param defaultValue returned if the value is not a number
+	 * @return the value
+	 * @throws ParseException on malformed input
+	 */
+	int readInt(final int defaultValue) throws ParseException {
+		final char c = this.peek();
+		if (c == '"') {
+			final String s = this.readString();
+			try {
+				return Integer.parseInt(s);
+			} catch (final NumberFormatException e) {
+				return defaultValue;
+			}
+		}
+		if ((c == '-') || ((c >= '0') && (c <= '9'))) {
+			final double d = this.readNumber();
+			if (this.lastNumberIntegral) {
+				return (int) this.lastNumberLong;
+			}
+			return (int) d;
+		}
+		this.skipValue();
+		return defaultValue;
+	}
+
+	/**
+	 * Read the current value as a boolean like JSONObject.optBoolean(key, defaultValue).
+	 *
+	 * @param defaultValue returned if the value is not a boolean
+	 * @return the value
+	 * @throws ParseException on malformed input
+	 */
+	boolean readBoolean(final boolean defaultValue) throws ParseException {
+		final char c = this.peek();
+		if (c == '"') {
+			final String s = this.readString();
+			if ("true".equalsIgnoreCase(s)) {
+				return true;
+			}
+			if ("false".equalsIgnoreCase(s)) {
+				return false;
+			}
+			return defaultValue;
+		}
+		final int start = this.pos;
+		this.skipValue();
+		if (this.regionEqualsIgnoreCase(start, this.pos, "true")) {
+			return true;
+		}
+		if (this.regionEqualsIgnoreCase(start, this.pos, "false")) {
+			return false;
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Read the current value as text like JSONObject.optString(key, null).
+	 *
+	 * Short strings without escapes are returned from a small cache of recently seen values,
+	 * which keeps repeated device names and tags from allocating.
+	 *
+	 * @return the text or null for a JSON null
+	 * @throws ParseException on malformed input
+	 */
+	String readText() throws ParseException {
+		final char c = this.peek();
+		if (c == '"') {
+			return this.readString();
+		}
+		if ((c == '-') || ((c >= '0') && (c <= '9'))) {
+			final double d = this.readNumber();
+			if (this.lastNumberIntegral) {
+				return Long.toString(this.lastNumberLong);
+			}
+			return Double.toString(d);
+		}
+		final int start = this.pos;
+		this.skipValue();
+		if (this.regionEqualsIgnoreCase(start, this.pos, "null")) {
+			return null;
+		}
+		if (this.regionEqualsIgnoreCase(start, this.pos, "true")) {
+			return "true";
+		}
+		if (this.regionEqualsIgnoreCase(start, this.pos, "false")) {
+			return "false";
+		}
+		return this.text.subSequence(start, this.pos).toString();
+	}
+
+	/**
+	 * Decode the current value as a GPSd timestamp without creating a String.
+	 *
+	 * @param decoder the timestamp decoder
+	 * @return the timestamp or NaN if the value is not a plain timestamp string. The value is
+	 * not consumed in that case so it can be read with another method.
+	 * @throws ParseException on malformed input
+	 */
+	double readTimestamp(final TimestampDecoder decoder) throws ParseException {
+		if (this.peek() != '"') {
+			return Double.NaN;
+		}
+		final int start = this.pos + 1;
+		final int stop = this.endOfString(start);
+		final double timestamp = decoder.decode(this.text, start, stop);
+		if (!Double.isNaN(timestamp)) {
+			this.pos = stop + 1;
+		}
+		return timestamp;
+	}
+
+	/**
+	 * Skip the current value including any nested objects or arrays.
+	 *
+	 * @throws ParseException on malformed input
+	 */
+	void skipValue() throws ParseException {
+		final char c = this.peek();
+		if (c == '"') {
+			this.pos = this.endOfString(this.pos + 1) + 1;
+			return;
+		}
+		if ((c == '{') || (c == '[')) {
+			int depth = 0;
+			while (this.pos < this.end) {
+				final char d = this.text.charAt(this.pos);
+				if (d == '"') {
+					this.pos = this.endOfString(this.pos + 1);
+				} else if ((d == '{') || (d == '[')) {
+					depth++;
+				} else if ((d == '}') || (d == ']')) {
+					depth--;
+					if (depth == 0) {
+						this.pos++;
+						return;
+					}
+				}
+				this.pos++;
+			}
+			throw new ParseException("Parsing failed: unterminated value");
+		}
+		final int start = this.pos;
+		while (this.pos < this.end) {
+			final char d = this.text.charAt(this.pos);
+			if ((d == ',') || (d == '}') || (d == ']') || (d <= ' ')) {
+				break;
+			}
+			this.pos++;
+		}
+		if (this.pos == start) {
+			throw new ParseException("Parsing failed: missing value at " + start);
+		}
+	}
+
+	/**
+	 * Read a JSON string. The reader is positioned on the opening quote.
+	 */
+	private String readString() throws ParseException {
+		final int start = this.pos + 1;
+		final int stop = this.endOfString(start);
+		this.pos = stop + 1;
+
+		boolean escaped = false;
+		for (int i = start; i < stop; i++) {
+			if (this.text.charAt(i) == '\\') {
+				escaped = true;
+				break;
+			}
+		}
+		if (!escaped) {
+			return this.cachedString(start, stop);
+		}
+
+		final StringBuilder sb = new StringBuilder(stop - start);
+		int i = start;
+		while (i < stop) {
+			char c = this.text.charAt(i++);
+			if (c == '\\') {
+				c = this.text.charAt(i++);
+				switch (c) {
+				case 'b':
+					sb.append('\b');
+					break;
+				case 't':
+					sb.append('\t');
+					break;
+				case 'n':
+					sb.append('\n');
+					break;
+				case 'f':
+					sb.append('\f');
+					break;
+				case 'r':
+					sb.append('\r');
+					break;
+				case 'u':
+					if ((i + 4) > stop) {
+						throw new ParseException("Parsing failed: illegal escape at " + i);
+					}
+					int code = 0;
+					for (int k = 0; k < 4; k++) {
+						final int digit = Character.digit(this.text.charAt(i++), 16);
+						if (digit < 0) {
+							throw new ParseException("Parsing failed: illegal escape at " + i);
+						}
+						code = (code << 4) | digit;
+					}
+					sb.append((char) code);
+					break;
+				default:
+					sb.append(c);
+					break;
+				}
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private String cachedString(final int start, final int stop) {
+		final int length = stop - start;
+		if (length > CACHE_MAX_LENGTH) {
+			return this.text.subSequence(start, stop).toString();
+		}
+		for (int n = 0; n < CACHE_SIZE; n++) {
+			final String candidate = this.cache[n];
+			if ((candidate != null) && (candidate.length() == length) && this.regionEquals(start, candidate)) {
+				return candidate;
+			}
+		}
+		final String s = this.text.subSequence(start, stop).toString();
+		this.cache[this.cacheNext] = s;
+		this.cacheNext = (this.cacheNext + 1) % CACHE_SIZE;
+		return s;
+	}
+
+	/**
+	 * Decode a JSON number in place.
+	 *
+	 * Numbers with up to 15 significant digits and a small exponent are converted exactly
+	 * from a long mantissa and a power of ten, which rounds the same as Double.parseDouble.
+	 * Anything else falls back to Double.parseDouble.
+	 */
+	private double readNumber() throws ParseException {
+		final int start = this.pos;
+		boolean negative = false;
+		if (this.text.charAt(this.pos) == '-') {
+			negative = true;
+			this.pos++;
+		}
+
+		long mantissa = 0;
+		int exponent = 0;
+		int digits = 0;
+		boolean exact = true;
+		boolean integral = true;
+
+		final int intStart = this.pos;
+		while ((this.pos < this.end) && isDigit(this.text.charAt(this.pos))) {
+			if (mantissa < (MAX_EXACT_MANTISSA / 10)) {
+				mantissa = (mantissa * 10) + (this.text.charAt(this.pos) - '0');
+			} else {
+				exact = false;
+			}
+			digits++;
+			this.pos++;
+		}
+		if (this.pos == intStart) {
+			throw new ParseException("Parsing failed: illegal number at " + start);
+		}
+		if ((this.pos < this.end) && (this.text.charAt(this.pos) == '.')) {
+			integral = false;
+			this.pos++;
+			while ((this.pos < this.end) && isDigit(this.text.charAt(this.pos))) {
+				if (mantissa < (MAX_EXACT_MANTISSA / 10)) {
+					mantissa = (mantissa * 10) + (this.text.charAt(this.pos) - '0');
+					exponent--;
+				} else {
+					exact = false;
+				}
+				digits++;
+				this.pos++;
+			}
+		}
+		if ((this.pos < this.end) && ((this.text.charAt(this.pos) == 'e') || (this.text.charAt(this.pos) == 'E'))) {
+			integral = false;
+			this.pos++;
+			boolean negativeExponent = false;
+			if ((this.pos < this.end) && ((this.text.charAt(this.pos) == '+') || (this.text.charAt(this.pos) == '-'))) {
+				negativeExponent = this.text.charAt(this.pos) == '-';
+				this.pos++;
+			}
+			int explicit = 0;
+			final int expStart = this.pos;
+			while ((this.pos < this.end) && isDigit(this.text.charAt(this.pos))) {
+				if (explicit < 10000) {
+					explicit = (explicit * 10) + (this.text.charAt(this.pos) - '0');
+				}
+				this.pos++;
+			}
+			if (this.pos == expStart) {
+				throw new ParseException("Parsing failed: illegal number at " + start);
+			}
+			exponent += negativeExponent ? -explicit : explicit;
+		}
+
+		this.lastNumberIntegral = integral && (digits <= 18);
+		if (this.lastNumberIntegral) {
+			this.lastNumberLong = negative ? -mantissa : mantissa;
+			if (!exact) {
+				this.lastNumberLong = Long.parseLong(this.text.subSequence(start, this.pos).toString());
+			}
+		}
+
+		if (exact && (exponent >= -22) && (exponent <= 22)) {
+			double value = mantissa;
+			if (exponent < 0) {
+				value = value / POW10[-exponent];
+			} else {
+				value = value * POW10[exponent];
+			}
+			return negative ? -value : value;
+		}
+		return Double.parseDouble(this.text.subSequence(start, this.pos).toString());
+	}
+
+	private static boolean isDigit(final char c) {
+		return (c >= '0') && (c <= '9');
+	}
+
+	/// @return the index of the closing quote of a string whose content starts at start
+	private int endOfString(final int start) throws ParseException {
+		int i = start;
+		while (i < this.end) {
+			final char c = this.text.charAt(i);
+			if (c == '"') {
+				return i;
+			}
+			if (c == '\\') {
+				i++;
+			}
+			i++;
+		}
+		throw new ParseException("Parsing failed: unterminated string at " + start);
+	}
+
+	private boolean regionEquals(final int start, final String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (this.text.charAt(start + i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean regionEqualsIgnoreCase(final int start, final int stop, final String s) {
+		if ((stop - start) != s.length()) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (Character.toLowerCase(this.text.charAt(start + i)) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private char peek() throws ParseException {
+		if (this.pos >= this.end) {
+			throw new ParseException("Parsing failed: unexpected end of line");
+		}
+		return this.text.charAt(this.pos);
+	}
+
+	private void expect(final char c) throws ParseException {
+		if (this.peek() != c) {
+			throw new ParseException("Parsing failed: expected '" + c + "' at " + this.pos);
+		}
+		this.pos++;
+	}
+
+	private void skipWhitespace() {
+		while ((this.pos < this.end) && (this.text.charAt(this.pos) <= ' ')) {
+			this.pos++;
+		}
+	}
+}
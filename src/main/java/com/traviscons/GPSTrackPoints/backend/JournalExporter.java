@@ -0,0 +1,82 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* JournalExporter
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.IOException;
+
+/**
+ * Convert a {@link TrackJournal} to a GPX track offline.
+ *
+ * The journal is replayed into a {@link TrackRecorder}, so the GPX gets the same track
+ * segments as a live recording: losing the fix ends a segment. By default every fix is
+ * exported. A minimum interval thins a 10 Hz journal to a smaller track.
+ *
+ * <pre>
+ * java -cp GPSTrackPoints.jar com.traviscons.GPSTrackPoints.backend.JournalExporter track.journal track.gpx [seconds]
+ * </pre>
+ */
+public final class JournalExporter {
+
+	private JournalExporter() {
+		//
+	}
+
+	/**
+	 * @param journal     the journal to read
+	 * @param gpx         the GPX file to create
+	 * @param name        the name put into the GPX metadata
+	 * @param minInterval least time between two track points in seconds, 0 for every fix
+	 * @return number of track points written
+	 * @throws IOException if the journal can not be read or the GPX file written
+	 */
+	public static long export(final String journal, final String gpx, final String name, final double minInterval)
+			throws IOException {
+		final GPXWriter writer = new GPXWriter(gpx, name);
+		try {
+			// offline, so large batches and a single sync on close
+			writer.setBatchSize(1024);
+			writer.setFlushInterval(0);
+			writer.setSyncEveryPoints(0);
+			writer.setSyncInterval(0);
+			final TrackRecorder recorder = new TrackRecorder(writer);
+			recorder.setMinInterval(minInterval);
+			TrackJournal.replay(journal, recorder);
+			return recorder.getRecorded();
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * @param args &lt;journal> &lt;gpx> [min interval seconds]
+	 */
+	public static void main(final String[] args) {
+		if ((args.length < 2) || (args.length > 3)) {
+			System.err.println("usage: JournalExporter <journal> <gpx> [min interval seconds]");
+			System.exit(2);
+		}
+		final double interval = (args.length == 3) ? Double.parseDouble(args[2]) : 0.0;
+		try {
+			final long points = export(args[0], args[1], "GPSTrackPoints " + args[0], interval);
+			System.err.println("INFO: JournalExporter - " + points + " track points written to " + args[1]);
+		} catch (final IOException e) {
+			System.err.println("ERROR: JournalExporter - Problem encountered exporting " + args[0] + " " + e);
+			System.exit(1);
+		}
+	}
+}
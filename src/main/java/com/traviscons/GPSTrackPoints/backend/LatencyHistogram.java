@@ -0,0 +1,144 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* LatencyHistogram
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds with log-linear buckets, in the manner of HdrHistogram.
+ *
+ * Values below 64 get a bucket each. Above that every power of two is split into 32 buckets,
+ * so a value is known to within 1/32 (3%) over the whole range from nanoseconds to days,
+ * with a fixed 15 kB of counters. Recording is a few atomic increments and never allocates,
+ * and any number of threads may record at the same time.
+ *
+ * Percentiles are reported as the top of the bucket they fall in, never lower than the true value.
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	/// values below this have a bucket each
+	private static final int LINEAR = SUB_BUCKETS * 2;
+
+	private static final int BUCKETS = ((63 - SUB_BITS) * SUB_BUCKETS) + SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong sum = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/// bucket of a value
+	static int index(final long value) {
+		if (value < LINEAR) {
+			return (int) value;
+		}
+		final int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BITS;
+		return (shift * SUB_BUCKETS) + (int) (value >>> shift);
+	}
+
+	/// largest value that falls into a bucket
+	static long highest(final int index) {
+		if (index < LINEAR) {
+			return index;
+		}
+		final int shift = (index / SUB_BUCKETS) - 1;
+		final long top = index - (shift * SUB_BUCKETS);
+		return ((top + 1) << shift) - 1;
+	}
+
+	/**
+	 * @param nanos the latency, negative values are recorded as 0
+	 */
+	public void record(final long nanos) {
+		final long value = Math.max(0, nanos);
+		this.counts.incrementAndGet(index(value));
+		this.count.incrementAndGet();
+		this.sum.addAndGet(value);
+		long m = this.max.get();
+		while ((value > m) && !this.max.compareAndSet(m, value)) {
+			m = this.max.get();
+		}
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		return this.count.get();
+	}
+
+	/**
+	 * @return the largest recorded value in nanoseconds
+	 */
+	public long getMax() {
+		return this.max.get();
+	}
+
+	/**
+	 * @return the mean in nanoseconds, 0 when empty
+	 */
+	public double getMean() {
+		final long n = this.count.get();
+		return (n == 0) ? 0 : (double) this.sum.get() / n;
+	}
+
+	/**
+	 * @param percentile e.g. 99.9
+	 * @return the value that percentile of the recorded values is at or below, in nanoseconds. 0 when empty.
+	 */
+	public long getValueAtPercentile(final double percentile) {
+		final long n = this.count.get();
+		if (n == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil((Math.min(100, percentile) / 100.0) * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highest(i), this.max.get());
+			}
+		}
+		return this.max.get();
+	}
+
+	/**
+	 * Forget all recorded values. Values recorded at the same time may be partly kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			this.counts.set(i, 0);
+		}
+		this.count.set(0);
+		this.sum.set(0);
+		this.max.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "LatencyHistogram{count=" + this.getCount() + ", mean=" + (long) this.getMean() + "ns, p50="
+				+ this.getValueAtPercentile(50) + "ns, p99=" + this.getValueAtPercentile(99) + "ns, max=" + this.getMax() + "ns}";
+	}
+}
@@ -0,0 +1,258 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* LatencyMetrics
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.traviscons.GPSTrackPoints.api.IObjectListener;
+import com.traviscons.GPSTrackPoints.types.IGPSObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * Latency of every report on its way from the socket to the listeners.
+ *
+ * The socket reader takes System.nanoTime() when a line has been read and again when it is
+ * parsed. Dispatch takes it when a listener is called and when it returns. From these, per
+ * report class:
+ * <ul>
+ * <li>PARSE: line read to parse complete</li>
+ * <li>QUEUE: parse complete to the listener being called, the time spent in the dispatch ring</li>
+ * <li>TOTAL: line read to the listener returning, how stale the report is once handled</li>
+ * </ul>
+ * and per listener the time spent in the listener. For TPV reports the age of the fix, the
+ * local wall clock at receipt minus the time of the fix, shows how far behind GPSd and the
+ * receiver are. It is only meaningful when the local clock is set, e.g. by NTP or GPSd itself.
+ *
+ * Enable it with {@link GPSdEndpoint#enableMetrics()}. The numbers can be read here or
+ * through JMX after {@link #register(String)}.
+ */
+public final class LatencyMetrics implements LatencyMetricsMXBean {
+
+	/**
+	 * The measured part of the way from socket to listener.
+	 */
+	public enum Stage {
+		/**
+		 * line read to parse complete
+		 */
+		PARSE,
+		/**
+		 * parse complete to listener called
+		 */
+		QUEUE,
+		/**
+		 * line read to listener returned
+		 */
+		TOTAL;
+	}
+
+	private final ConcurrentMap<Class<?>, LatencyHistogram[]> stages = new ConcurrentHashMap<Class<?>, LatencyHistogram[]>();
+
+	private final ConcurrentMap<IObjectListener, LatencyHistogram> listeners = new ConcurrentHashMap<IObjectListener, LatencyHistogram>();
+
+	private final LatencyHistogram fixAge = new LatencyHistogram();
+
+	private final AtomicLong fromTheFuture = new AtomicLong();
+
+	private volatile ObjectName registered;
+
+	private LatencyHistogram[] histograms(final Class<?> type) {
+		LatencyHistogram[] h = this.stages.get(type);
+		if (h == null) {
+			h = new LatencyHistogram[Stage.values().length];
+			for (int i = 0; i < h.length; i++) {
+				h[i] = new LatencyHistogram();
+			}
+			final LatencyHistogram[] raced = this.stages.putIfAbsent(type, h);
+			if (raced != null) {
+				h = raced;
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * A line was read and parsed.
+	 *
+	 * @param object     the parsed report
+	 * @param readNanos  System.nanoTime() when the line was read
+	 * @param parseNanos System.nanoTime() when parsing completed
+	 */
+	void parsed(final IGPSObject object, final long readNanos, final long parseNanos) {
+		this.histograms(object.getClass())[Stage.PARSE.ordinal()].record(parseNanos - readNanos);
+		if (object instanceof TPVObject) {
+			final double fixTime = ((TPVObject) object).getTimestamp();
+			if (!Double.isNaN(fixTime)) {
+				final long age = (long) (((System.currentTimeMillis() / 1000.0) - fixTime) * 1e9);
+				if (age < 0) {
+					this.fromTheFuture.incrementAndGet();
+				}
+				this.fixAge.record(age);
+			}
+		}
+	}
+
+	/**
+	 * A listener handled a report.
+	 *
+	 * @param object     the report
+	 * @param listener   the listener
+	 * @param readNanos  System.nanoTime() when the line was read
+	 * @param parseNanos System.nanoTime() when parsing completed
+	 * @param startNanos System.nanoTime() when the listener was called
+	 * @param endNanos   System.nanoTime() when the listener returned
+	 */
+	void delivered(final IGPSObject object, final IObjectListener listener, final long readNanos, final long parseNanos,
+			final long startNanos, final long endNanos) {
+		final LatencyHistogram[] h = this.histograms(object.getClass());
+		h[Stage.QUEUE.ordinal()].record(startNanos - parseNanos);
+		h[Stage.TOTAL.ordinal()].record(endNanos - readNanos);
+		LatencyHistogram l = this.listeners.get(listener);
+		if (l == null) {
+			l = new LatencyHistogram();
+			final LatencyHistogram raced = this.listeners.putIfAbsent(listener, l);
+			if (raced != null) {
+				l = raced;
+			}
+		}
+		l.record(endNanos - startNanos);
+	}
+
+	/**
+	 * @param reportClass e.g. TPVObject.class
+	 * @param stage       the stage
+	 * @return the histogram, empty if no report of the class was seen yet
+	 */
+	public LatencyHistogram get(final Class<?> reportClass, final Stage stage) {
+		return this.histograms(reportClass)[stage.ordinal()];
+	}
+
+	/**
+	 * @param listener a listener
+	 * @return the time spent in the listener, null if it was never called
+	 */
+	public LatencyHistogram getListener(final IObjectListener listener) {
+		return this.listeners.get(listener);
+	}
+
+	/**
+	 * @return the report classes seen so far
+	 */
+	public Set<Class<?>> getReportClasses() {
+		return Collections.unmodifiableSet(this.stages.keySet());
+	}
+
+	/**
+	 * @return wall clock at receipt minus the fix time of TPV reports, fixes from the future count as 0
+	 */
+	public LatencyHistogram getFixAgeHistogram() {
+		return this.fixAge;
+	}
+
+	@Override
+	public Map<String, LatencySummary> getStages() {
+		final Map<String, LatencySummary> result = new TreeMap<String, LatencySummary>();
+		for (final Map.Entry<Class<?>, LatencyHistogram[]> e : this.stages.entrySet()) {
+			for (final Stage stage : Stage.values()) {
+				result.put(e.getKey().getSimpleName() + " " + stage, new LatencySummary(e.getValue()[stage.ordinal()]));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, LatencySummary> getListeners() {
+		final Map<String, LatencySummary> result = new LinkedHashMap<String, LatencySummary>();
+		for (final Map.Entry<IObjectListener, LatencyHistogram> e : this.listeners.entrySet()) {
+			result.put(e.getKey().getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(e.getKey())),
+					new LatencySummary(e.getValue()));
+		}
+		return result;
+	}
+
+	@Override
+	public LatencySummary getFixAge() {
+		return new LatencySummary(this.fixAge);
+	}
+
+	@Override
+	public long getFixesFromTheFuture() {
+		return this.fromTheFuture.get();
+	}
+
+	@Override
+	public void reset() {
+		for (final LatencyHistogram[] h : this.stages.values()) {
+			for (final LatencyHistogram s : h) {
+				s.reset();
+			}
+		}
+		for (final LatencyHistogram l : this.listeners.values()) {
+			l.reset();
+		}
+		this.fixAge.reset();
+		this.fromTheFuture.set(0);
+	}
+
+	/**
+	 * Register with the platform MBean server as
+	 * com.traviscons.GPSTrackPoints:type=LatencyMetrics,name=&lt;name>.
+	 *
+	 * @param name e.g. the GPSd host and port
+	 * @return the object name
+	 * @throws JMException if the name is taken or invalid
+	 */
+	public ObjectName register(final String name) throws JMException {
+		final ObjectName objectName = new ObjectName("com.traviscons.GPSTrackPoints:type=LatencyMetrics,name="
+				+ ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		this.registered = objectName;
+		return objectName;
+	}
+
+	/**
+	 * Remove the MBean again. Does nothing if it is not registered.
+	 */
+	public void unregister() {
+		final ObjectName objectName = this.registered;
+		if (objectName == null) {
+			return;
+		}
+		this.registered = null;
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (final JMException e) {
+			System.err.println("WARNING: LatencyMetrics - Problem encountered unregistering " + objectName + " " + e);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* LatencyMetricsMXBean
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link LatencyMetrics}. All times are in microseconds.
+ */
+public interface LatencyMetricsMXBean {
+
+	/**
+	 * @return one summary per report class and stage, keyed e.g. "TPVObject PARSE"
+	 */
+	Map<String, LatencySummary> getStages();
+
+	/**
+	 * @return time spent in each listener, keyed by the listener
+	 */
+	Map<String, LatencySummary> getListeners();
+
+	/**
+	 * @return wall clock at receipt minus the fix time of TPV reports
+	 */
+	LatencySummary getFixAge();
+
+	/**
+	 * @return TPV reports whose fix time was ahead of the local clock
+	 */
+	long getFixesFromTheFuture();
+
+	/**
+	 * Forget everything recorded so far.
+	 */
+	void reset();
+}
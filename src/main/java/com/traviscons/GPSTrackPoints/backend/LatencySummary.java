@@ -0,0 +1,85 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* LatencySummary
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+/**
+ * A snapshot of one {@link LatencyHistogram} in microseconds, as shown through JMX.
+ */
+public final class LatencySummary {
+
+	private final long count;
+
+	private final double mean;
+
+	private final double p50;
+
+	private final double p90;
+
+	private final double p99;
+
+	private final double p999;
+
+	private final double max;
+
+	/**
+	 * @param histogram the histogram to summarize
+	 */
+	public LatencySummary(final LatencyHistogram histogram) {
+		this.count = histogram.getCount();
+		this.mean = histogram.getMean() / 1000.0;
+		this.p50 = histogram.getValueAtPercentile(50) / 1000.0;
+		this.p90 = histogram.getValueAtPercentile(90) / 1000.0;
+		this.p99 = histogram.getValueAtPercentile(99) / 1000.0;
+		this.p999 = histogram.getValueAtPercentile(99.9) / 1000.0;
+		this.max = histogram.getMax() / 1000.0;
+	}
+
+	public long getCount() {
+		return this.count;
+	}
+
+	public double getMeanMicros() {
+		return this.mean;
+	}
+
+	public double getP50Micros() {
+		return this.p50;
+	}
+
+	public double getP90Micros() {
+		return this.p90;
+	}
+
+	public double getP99Micros() {
+		return this.p99;
+	}
+
+	public double getP999Micros() {
+		return this.p999;
+	}
+
+	public double getMaxMicros() {
+		return this.max;
+	}
+
+	@Override
+	public String toString() {
+		return "LatencySummary{count=" + this.count + ", mean=" + this.mean + "us, p50=" + this.p50 + "us, p90="
+				+ this.p90 + "us, p99=" + this.p99 + "us, p99.9=" + this.p999 + "us, max=" + this.max + "us}";
+	}
+}
@@ -0,0 +1,257 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* Led
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One sysfs LED, e.g. /sys/class/leds/led0, driven by a {@link LedScheduler}.
+ *
+ * The LED plays a base pattern, usually steady or slowly repeating. A flash plays a
+ * one-shot pattern over it and then starts the base pattern again from its first step.
+ * Only the next transition is ever scheduled, so a steady LED costs no wakeups at all.
+ * The brightness file stays open and is only written when the level changes.
+ */
+public class Led {
+
+	private final LedScheduler scheduler;
+
+	private final String path;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final ByteBuffer one = ByteBuffer.wrap(new byte[] { '1' });
+
+	private final ByteBuffer zero = ByteBuffer.wrap(new byte[] { '0' });
+
+	/// null if the LED could not be opened, e.g. not on a Raspberry Pi
+	private FileChannel brightness;
+
+	private BlinkPattern base = BlinkPattern.OFF;
+
+	private BlinkPattern active = BlinkPattern.OFF;
+
+	private int step;
+
+	/// the level last written, null before the first write
+	private Boolean level;
+
+	private TimerWheel.Timeout next;
+
+	/// bumped on every pattern change so a transition already running for the old one is dropped
+	private long generation;
+
+	private long writes;
+
+	private boolean closed;
+
+	Led(final LedScheduler scheduler, final String path) {
+		this.scheduler = scheduler;
+		this.path = path;
+		try {
+			final FileWriter trigger = new FileWriter(path + "/trigger");
+			trigger.write("none");
+			trigger.close();
+		} catch (final IOException e) {
+			System.err.println("Caught an exception setting the trigger for " + path + " " + e.toString());
+		}
+		try {
+			this.brightness = new RandomAccessFile(path + "/brightness", "rw").getChannel();
+		} catch (final IOException e) {
+			System.err.println("Caught an exception opening the brightness of " + path + " " + e.toString());
+		}
+	}
+
+	/**
+	 * Replace the base pattern and start it from its first step.
+	 *
+	 * @param pattern the pattern to play when no flash is playing
+	 */
+	public void setPattern(final BlinkPattern pattern) {
+		this.lock.lock();
+		try {
+			this.base = pattern;
+			this.play(pattern);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Play a pattern once, then go back to the start of the base pattern. A flash while
+	 * another is playing starts over.
+	 *
+	 * @param pattern the one-shot pattern, e.g. BlinkPattern.once(200)
+	 */
+	public void flash(final BlinkPattern pattern) {
+		this.lock.lock();
+		try {
+			this.play(pattern);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @param on the level to hold from now on
+	 */
+	public void set(final boolean on) {
+		this.setPattern(on ? BlinkPattern.ON : BlinkPattern.OFF);
+	}
+
+	/// start a pattern at its first step, holding the lock
+	private void play(final BlinkPattern pattern) {
+		if (this.closed) {
+			return;
+		}
+		if (this.next != null) {
+			this.next.cancel();
+			this.next = null;
+		}
+		this.generation++;
+		this.active = pattern;
+		this.step = 0;
+		this.enter();
+	}
+
+	/// write the level of the current step and schedule the step's end
+	private void enter() {
+		this.write(this.active.levelAt(this.step));
+		final long millis = this.active.millisAt(this.step);
+		if (millis > 0) {
+			final long expected = this.generation;
+			try {
+				this.next = this.scheduler.schedule(new Runnable() {
+					@Override
+					public void run() {
+						Led.this.advance(expected);
+					}
+				}, millis, TimeUnit.MILLISECONDS);
+			} catch (final RejectedExecutionException e) {
+				// the scheduler was shut down, hold the level
+			}
+		}
+	}
+
+	/// the current step is over, on the scheduler thread
+	private void advance(final long expected) {
+		this.lock.lock();
+		try {
+			if ((expected != this.generation) || this.closed) {
+				return;
+			}
+			this.next = null;
+			this.step++;
+			if (this.step >= this.active.size()) {
+				if (this.active.isRepeating()) {
+					this.step = 0;
+				} else if (this.active != this.base) {
+					this.generation++;
+					this.active = this.base;
+					this.step = 0;
+				} else {
+					return; // a one-shot base pattern holds its last level
+				}
+			}
+			this.enter();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void write(final boolean on) {
+		if ((this.level != null) && (this.level.booleanValue() == on)) {
+			return;
+		}
+		this.level = Boolean.valueOf(on);
+		if (this.brightness == null) {
+			return;
+		}
+		final ByteBuffer b = on ? this.one : this.zero;
+		b.rewind();
+		try {
+			this.brightness.write(b, 0);
+			this.writes++;
+		} catch (final IOException e) {
+			System.err.println("Caught an exception turning " + this.path + (on ? " on " : " off ") + e.toString());
+		}
+	}
+
+	/**
+	 * @return true if the LED is on
+	 */
+	public boolean isOn() {
+		this.lock.lock();
+		try {
+			return (this.level != null) && this.level.booleanValue();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of writes to the brightness file
+	 */
+	public long getWrites() {
+		this.lock.lock();
+		try {
+			return this.writes;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return true if a transition is scheduled
+	 */
+	public boolean isScheduled() {
+		this.lock.lock();
+		try {
+			return this.next != null;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Turn the LED off, stop its pattern and close the brightness file.
+	 */
+	public void close() {
+		this.lock.lock();
+		try {
+			this.play(BlinkPattern.OFF);
+			this.closed = true;
+			if (this.brightness != null) {
+				this.brightness.close();
+				this.brightness = null;
+			}
+		} catch (final IOException e) {
+			// ignore
+		} finally {
+			this.lock.unlock();
+		}
+	}
+}
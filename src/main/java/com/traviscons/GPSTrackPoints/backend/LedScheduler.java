@@ -0,0 +1,106 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* LedScheduler
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One timer thread driving any number of {@link Led}s.
+ *
+ * The transitions are timers on a {@link TimerWheel}, by default the wheel shared with the
+ * rest of the client. Its thread sleeps until the next transition is due. With every LED
+ * steady it does not wake for them at all, unlike a thread per LED ticking every 100 ms.
+ *
+ * <pre>
+ * final Led led = LedScheduler.getDefault().open("/sys/class/leds/led1");
+ * led.setPattern(BlinkPattern.repeat(false, 5000, 200));
+ * led.flash(BlinkPattern.once(200));
+ * </pre>
+ */
+public class LedScheduler {
+
+	private static final LedScheduler DEFAULT = new LedScheduler(TimerWheel.getDefault(), false);
+
+	private final TimerWheel wheel;
+
+	/// only a wheel of our own is shut down with the scheduler
+	private final boolean ownsWheel;
+
+	/**
+	 * A scheduler with a timer wheel of its own.
+	 */
+	public LedScheduler() {
+		this(new TimerWheel("LED scheduler", TimeUnit.MILLISECONDS.toNanos(1)), true);
+	}
+
+	/**
+	 * @param wheel the wheel to run the transitions on
+	 */
+	public LedScheduler(final TimerWheel wheel) {
+		this(wheel, false);
+	}
+
+	private LedScheduler(final TimerWheel wheel, final boolean ownsWheel) {
+		if (wheel == null) {
+			throw new IllegalArgumentException("wheel can not be null!");
+		}
+		this.wheel = wheel;
+		this.ownsWheel = ownsWheel;
+	}
+
+	/**
+	 * @return the scheduler shared by the LEDs of this process, on the shared timer wheel
+	 */
+	public static LedScheduler getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Take over a sysfs LED. Its trigger is set to none and it starts off.
+	 *
+	 * @param ledPath e.g. /sys/class/leds/led0
+	 * @return the LED
+	 */
+	public Led open(final String ledPath) {
+		final Led led = new Led(this, ledPath);
+		led.set(false);
+		return led;
+	}
+
+	TimerWheel.Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+		return this.wheel.schedule(task, delay, unit);
+	}
+
+	/**
+	 * @return the number of timers waiting on the wheel, 0 when every LED is steady and
+	 *         nothing else shares the wheel
+	 */
+	public int getPending() {
+		return this.wheel.getPending();
+	}
+
+	/**
+	 * Stop the timer thread if the wheel is the scheduler's own. LEDs keep their current level.
+	 */
+	public void shutdown() {
+		if (this.ownsWheel) {
+			this.wheel.shutdown();
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* ListenerRegistry
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.traviscons.GPSTrackPoints.api.IObjectListener;
+import com.traviscons.GPSTrackPoints.types.ATTObject;
+import com.traviscons.GPSTrackPoints.types.DeviceObject;
+import com.traviscons.GPSTrackPoints.types.DevicesObject;
+import com.traviscons.GPSTrackPoints.types.GSTObject;
+import com.traviscons.GPSTrackPoints.types.IGPSObject;
+import com.traviscons.GPSTrackPoints.types.PollObject;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+import com.traviscons.GPSTrackPoints.types.subframes.SUBFRAMEObject;
+
+/**
+ * The listeners of an endpoint, indexed by the report class they subscribed to.
+ *
+ * Looking up the listeners for a message is one read of a volatile map and does not lock.
+ * Adding or removing a listener copies the map, so both can be called from any thread,
+ * also while messages are being dispatched.
+ */
+final class ListenerRegistry {
+
+	private static final IObjectListener[] NONE = new IObjectListener[0];
+
+	/**
+	 * Calls the listener method for one report class.
+	 */
+	private abstract static class Handler {
+		abstract void call(IObjectListener listener, IGPSObject object);
+	}
+
+	/// report class -> listener method. Fixed, only read after class initialization.
+	private static final Map<Class<?>, Handler> HANDLERS = new HashMap<Class<?>, Handler>();
+
+	static {
+		HANDLERS.put(TPVObject.class, new Handler() {
+			@Override
+			void call(final IObjectListener listener, final IGPSObject object) {
+				listener.handleTPV((TPVObject) object);
+			}
+		});
+		HANDLERS.put(SKYObject.class, new Handler() {
+			@Override
+			void call(final IObjectListener listener, final IGPSObject object) {
+				listener.handleSKY((SKYObject) object);
+			}
+		});
+		HANDLERS.put(ATTObject.class, new Handler() {
+			@Override
+			void call(final IObjectListener listener, final IGPSObject object) {
+				listener.handleATT((ATTObject) object);
+			}
+		});
+		HANDLERS.put(GSTObject.class, new Handler() {
+			@Override
+			void call(final IObjectListener listener, final IGPSObject object) {
+				listener.handleGST((GSTObject) object);
+			}
+		});
+		HANDLERS.put(SUBFRAMEObject.class, new Handler() {
+			@Override
+			void call(final IObjectListener listener, final IGPSObject object) {
+				listener.handleSUBFRAME((SUBFRAMEObject) object);
+			}
+		});
+		HANDLERS.put(DeviceObject.class, new Handler() {
+			@Override
+			void call(final IObjectListener listener, final IGPSObject object) {
+				listener.handleDevice((DeviceObject) object);
+			}
+		});
+		HANDLERS.put(DevicesObject.class, new Handler() {
+			@Override
+			void call(final IObjectListener listener, final IGPSObject object) {
+				listener.handleDevices((DevicesObject) object);
+			}
+		});
+		HANDLERS.put(PollObject.class, new Handler() {
+			@Override
+			void call(final IObjectListener listener, final IGPSObject object) {
+				listener.handlePoll((PollObject) object);
+			}
+		});
+	}
+
+	private final ReentrantLock writeLock = new ReentrantLock();
+
+	/// report class -> subscribed listeners. Replaced on every change, never modified.
+	private volatile Map<Class<?>, IObjectListener[]> byClass = Collections.emptyMap();
+
+	/// listener -> the report classes it subscribed to, in the order the listeners were added
+	private volatile Map<IObjectListener, Set<Class<?>>> subscriptions = Collections.emptyMap();
+
+	/**
+	 * @param type a message class
+	 * @return true if listeners can subscribe to this class
+	 */
+	static boolean isReport(final Class<?> type) {
+		return HANDLERS.containsKey(type);
+	}
+
+	/**
+	 * @return all report classes listeners can subscribe to
+	 */
+	static Set<Class<?>> allReports() {
+		return Collections.unmodifiableSet(HANDLERS.keySet());
+	}
+
+	/**
+	 * Call the listener method matching the class of the message.
+	 *
+	 * @param listener the listener
+	 * @param object the message, must be a report class
+	 */
+	static void dispatch(final IObjectListener listener, final IGPSObject object) {
+		HANDLERS.get(object.getClass()).call(listener, object);
+	}
+
+	/**
+	 * Subscribe a listener. Adding a listener again adds the new classes to its subscription.
+	 *
+	 * @param listener the listener
+	 * @param types the report classes to receive, all of them if empty
+	 * @return the classes the listener is now subscribed to
+	 */
+	Set<Class<?>> add(final IObjectListener listener, final Class<?>... types) {
+		final Set<Class<?>> wanted = new HashSet<Class<?>>();
+		if (types.length == 0) {
+			wanted.addAll(HANDLERS.keySet());
+		}
+		for (final Class<?> type : types) {
+			if (!isReport(type)) {
+				throw new IllegalArgumentException("Not a report class listeners can subscribe to: " + type);
+			}
+			wanted.add(type);
+		}
+		this.writeLock.lock();
+		try {
+			final Map<IObjectListener, Set<Class<?>>> copy = new LinkedHashMap<IObjectListener, Set<Class<?>>>(this.subscriptions);
+			final Set<Class<?>> previous = copy.get(listener);
+			if (previous != null) {
+				wanted.addAll(previous);
+			}
+			copy.put(listener, Collections.unmodifiableSet(wanted));
+			this.publish(copy);
+			return copy.get(listener);
+		} finally {
+			this.writeLock.unlock();
+		}
+	}
+
+	/**
+	 * @param listener the listener to remove
+	 * @return true if it was subscribed
+	 */
+	boolean remove(final IObjectListener listener) {
+		this.writeLock.lock();
+		try {
+			if (!this.subscriptions.containsKey(listener)) {
+				return false;
+			}
+			final Map<IObjectListener, Set<Class<?>>> copy = new LinkedHashMap<IObjectListener, Set<Class<?>>>(this.subscriptions);
+			copy.remove(listener);
+			this.publish(copy);
+			return true;
+		} finally {
+			this.writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Remove all listeners.
+	 */
+	void clear() {
+		this.writeLock.lock();
+		try {
+			this.publish(new LinkedHashMap<IObjectListener, Set<Class<?>>>());
+		} finally {
+			this.writeLock.unlock();
+		}
+	}
+
+	/**
+	 * @param type a message class
+	 * @return the listeners subscribed to it, never null. The array must not be modified.
+	 */
+	IObjectListener[] get(final Class<?> type) {
+		final IObjectListener[] listeners = this.byClass.get(type);
+		return (listeners != null) ? listeners : NONE;
+	}
+
+	/**
+	 * @return a snapshot of every listener and its subscription
+	 */
+	Map<IObjectListener, Set<Class<?>>> subscriptions() {
+		return this.subscriptions;
+	}
+
+	/// rebuild the class index. Called with the write lock held.
+	private void publish(final Map<IObjectListener, Set<Class<?>>> copy) {
+		final Map<Class<?>, IObjectListener[]> index = new HashMap<Class<?>, IObjectListener[]>();
+		for (final Map.Entry<IObjectListener, Set<Class<?>>> e : copy.entrySet()) {
+			for (final Class<?> type : e.getValue()) {
+				final IObjectListener[] old = index.get(type);
+				final IObjectListener[] grown = (old == null) ? new IObjectListener[1] : Arrays.copyOf(old, old.length + 1);
+				grown[grown.length - 1] = e.getKey();
+				index.put(type, grown);
+			}
+		}
+		this.subscriptions = Collections.unmodifiableMap(copy);
+		this.byClass = index;
+	}
+}
@@ -1,17 +1,5 @@
 package com.traviscons.GPSTrackPoints.backend;
 
-import java.io.IOException;
-import java.nio.file.FileSystems;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-
-import java.util.concurrent.TimeUnit;
-
-import java.io.FileWriter;
-import java.io.FileReader;
-
-import java.lang.Runtime;
-
 /** Take over the activity LED on Raspberry Pi 3+ and use to indicate logging
 *
 * This uses the sysfs interface to LED0 (the green activity LED). It normally is
@@ -20,17 +8,12 @@ import java.lang.Runtime;
 *
 * The LED will normally be off. When we log a position, we will flash the LED for 1/2 second
 *
-* This requires a thread to modify the states of the LED on a timed basis and
-* accessor methods to change the state. These will be synchronized to provide
-* thread safety.
+* The LED is driven by the shared LedScheduler, which only wakes up to end a flash.
 */
 
-public class LogStatus implements Runnable {
-	String LED0Path; ///< Holds the constructed path of the gpio pin
-	enum LEDSTATES {OFF, FLASH}
-	LEDSTATES LED0State;
-	int LED0StateCount;
-	boolean runningState;
+public class LogStatus {
+	static final BlinkPattern LOGGED = BlinkPattern.once(500); ///< flash for a logged position
+	Led LED0; ///< the activity LED
 
 	/** Implement a basic test of the LED.
 	* \param none
@@ -40,10 +23,6 @@ public class LogStatus implements Runnable {
 	public static void main(String args[]) {
 		LogStatus lsLED = new LogStatus(); // sets up the LED to its default state and shuts the LED off
 
-		// start the LED thread
-		Thread lsLEDThread = new Thread(lsLED);
-		lsLEDThread.start();
-
 		// sleep for 5 seconds. The LED will be off
 		lsLED.sleep(5000);
 
@@ -71,13 +50,6 @@ public class LogStatus implements Runnable {
 
 		// Stop the LED and end the test
 		lsLED.stopLED();
-
-
-		try {
-			lsLEDThread.join();
-		} catch (Exception e) {
-			System.err.println("Caught exception while sleeping " + e.toString());
-		}
 	}
 
 	private void sleep(int period) {
@@ -91,104 +63,22 @@ public class LogStatus implements Runnable {
 	*
 	*/
 	LogStatus() {
-		LED0Path = "/sys/class/leds/led0";
-
-		initLED0();
+		this(LedScheduler.getDefault(), "/sys/class/leds/led0");
 	}
 
-	/** Initialize the LED to an off state
+	/** A second form of the constructor that will allow us to junit test
 	*/
-
-	private void initLED0() {
-		FileWriter sysFile;
-
-		LED0State = LEDSTATES.OFF;
-		LED0StateCount = 0; // We don't need to time the off state
-
-		try {
-			sysFile = new FileWriter(LED0Path + "/trigger");
-			sysFile.write("none");
-			sysFile.close();
-
-		} catch (Exception e) {
-			System.err.println("Caught an exception setting the trigger for LED0 " + e.toString());
-		}
-
-		LED0TurnOff();
-	}
-
-	private void LED0TurnOn() {
-		try {
-			FileWriter sysFile = new FileWriter(LED0Path + "/brightness");
-			sysFile.write("1");
-			sysFile.close();
-		} catch (Exception e) {
-			System.err.println("Caught an exception turning LED0 On " + e.toString());
-		}
-	}
-
-	private void LED0TurnOff() {
-		try {
-			FileWriter sysFile = new FileWriter(LED0Path + "/brightness");
-			sysFile.write("0");
-			sysFile.close();
-		} catch (Exception e) {
-			System.err.println("Caught an exception turning LED0 off " + e.toString());
-		}
+	LogStatus(LedScheduler scheduler, String LED0Path) {
+		LED0 = scheduler.open(LED0Path);
 	}
 
-	synchronized public void stopLED() {
-		FileWriter sysFile;
-
-		LED0State = LEDSTATES.OFF;
-
-		LED0TurnOff();
-		runningState = false;
+	public void stopLED() {
+		LED0.set(false);
 	}
 
-	/** Called to flash the LED for a GPS Fix
+	/** Called to flash the LED for a logged position
 	*/
-	synchronized public void logLED() {
-		LED0State = LEDSTATES.FLASH;
-		LED0StateCount = 0;
-		LED0TurnOn();
-	}
-
-	/** Start a thread to maintain a time base for flashing LED0.
-	*
-	* Every 100ms, determine the state of the LED and advance to the next state.
-	*/
-
-	public void run() {
-		runningState = true;
-
-		while (runningState) {
-
-			switch (LED0State) {
-				case OFF:
-					// Nothing to do
-					break;
-
-				case FLASH:
-					LED0StateCount++;
-
-					if (LED0StateCount >= 5) {
-						// We reached 0.5 seconds, turn the LED off
-						LED0State = LEDSTATES.OFF;
-						LED0StateCount = 0;
-						LED0TurnOff();
-					}
-					break;
-			}
-
-			if (runningState) {
-				try {
-					Thread.sleep(100); // Sleep for 100ms at a time
-				} catch (InterruptedException ex) {
-					// Something woke us up but not a watch event
-					System.err.println("poll was interrupted");
-				}
-			}
-		}
+	public void logLED() {
+		LED0.flash(LOGGED);
 	}
 }
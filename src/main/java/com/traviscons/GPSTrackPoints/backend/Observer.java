@@ -0,0 +1,152 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* Observer
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+/**
+ * A place on the ground that satellites are looked at from.
+ *
+ * Converts earth centered, earth fixed (ECEF) WGS-84 coordinates into azimuth, elevation
+ * and range at the observer. The ECEF position and the rotation into the local east, north,
+ * up frame are computed once, so a look costs a handful of multiplications and two atan2.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public final class Observer {
+
+	private static final double WGS84_A = 6378137.0;
+
+	private static final double WGS84_F = 1 / 298.257223563;
+
+	private static final double WGS84_E2 = WGS84_F * (2 - WGS84_F);
+
+	private final double latitude;
+
+	private final double longitude;
+
+	private final double altitude;
+
+	private final double x;
+
+	private final double y;
+
+	private final double z;
+
+	private final double sinLat;
+
+	private final double cosLat;
+
+	private final double sinLon;
+
+	private final double cosLon;
+
+	/**
+	 * @param latitude  degrees north
+	 * @param longitude degrees east
+	 * @param altitude  meters above the WGS-84 ellipsoid
+	 */
+	public Observer(final double latitude, final double longitude, final double altitude) {
+		if (Double.isNaN(latitude) || Double.isNaN(longitude) || (Math.abs(latitude) > 90)) {
+			throw new IllegalArgumentException("Illegal location: " + latitude + ", " + longitude);
+		}
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.altitude = Double.isNaN(altitude) ? 0 : altitude;
+		final double lat = Math.toRadians(latitude);
+		final double lon = Math.toRadians(longitude);
+		this.sinLat = Math.sin(lat);
+		this.cosLat = Math.cos(lat);
+		this.sinLon = Math.sin(lon);
+		this.cosLon = Math.cos(lon);
+		final double n = WGS84_A / Math.sqrt(1 - (WGS84_E2 * this.sinLat * this.sinLat));
+		this.x = (n + this.altitude) * this.cosLat * this.cosLon;
+		this.y = (n + this.altitude) * this.cosLat * this.sinLon;
+		this.z = ((n * (1 - WGS84_E2)) + this.altitude) * this.sinLat;
+	}
+
+	/**
+	 * Azimuth, elevation and range of a point.
+	 *
+	 * @param px     ECEF x in meters
+	 * @param py     ECEF y in meters
+	 * @param pz     ECEF z in meters
+	 * @param out    gets azimuth (degrees from north, 0 to 360), elevation (degrees) and range (meters)
+	 * @param offset where in out to write the three values
+	 */
+	public void look(final double px, final double py, final double pz, final double[] out, final int offset) {
+		final double dx = px - this.x;
+		final double dy = py - this.y;
+		final double dz = pz - this.z;
+		final double east = (-this.sinLon * dx) + (this.cosLon * dy);
+		final double north = (-this.sinLat * this.cosLon * dx) - (this.sinLat * this.sinLon * dy) + (this.cosLat * dz);
+		final double up = (this.cosLat * this.cosLon * dx) + (this.cosLat * this.sinLon * dy) + (this.sinLat * dz);
+		final double horizontal = Math.sqrt((east * east) + (north * north));
+		double azimuth = Math.toDegrees(Math.atan2(east, north));
+		if (azimuth < 0) {
+			azimuth += 360;
+		}
+		out[offset] = azimuth;
+		out[offset + 1] = Math.toDegrees(Math.atan2(up, horizontal));
+		out[offset + 2] = Math.sqrt((horizontal * horizontal) + (up * up));
+	}
+
+	/**
+	 * The sine of the elevation of a point, cheaper than {@link #look} when only the
+	 * horizon matters.
+	 *
+	 * @param px ECEF x in meters
+	 * @param py ECEF y in meters
+	 * @param pz ECEF z in meters
+	 * @return sin(elevation)
+	 */
+	public double sinElevation(final double px, final double py, final double pz) {
+		final double dx = px - this.x;
+		final double dy = py - this.y;
+		final double dz = pz - this.z;
+		final double up = (this.cosLat * this.cosLon * dx) + (this.cosLat * this.sinLon * dy) + (this.sinLat * dz);
+		return up / Math.sqrt((dx * dx) + (dy * dy) + (dz * dz));
+	}
+
+	/**
+	 * @return degrees north
+	 */
+	public double getLatitude() {
+		return this.latitude;
+	}
+
+	/**
+	 * @return degrees east
+	 */
+	public double getLongitude() {
+		return this.longitude;
+	}
+
+	/**
+	 * @return meters above the ellipsoid
+	 */
+	public double getAltitude() {
+		return this.altitude;
+	}
+
+	/**
+	 * @return the ECEF x, y and z of the observer in meters
+	 */
+	public double[] getEcef() {
+		return new double[] { this.x, this.y, this.z };
+	}
+}
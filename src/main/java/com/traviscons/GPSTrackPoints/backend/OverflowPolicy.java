@@ -0,0 +1,37 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* OverflowPolicy
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+/**
+ * What the {@link DispatchRing} does when a listener has fallen a full ring behind.
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * Skip the oldest message the slow listener has not seen yet. Other listeners are not affected.
+	 */
+	DROP_OLDEST,
+	/**
+	 * Do not publish the new message to any listener.
+	 */
+	DROP_NEWEST,
+	/**
+	 * Wait for the slow listener. This stalls the socket reader, so GPSd may start dropping us.
+	 */
+	BLOCK;
+}
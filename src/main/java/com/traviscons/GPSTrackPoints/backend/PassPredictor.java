@@ -0,0 +1,380 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* PassPredictor
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.types.subframes.ALMANACObject;
+import com.traviscons.GPSTrackPoints.types.subframes.HEALTH2Object;
+import com.traviscons.GPSTrackPoints.types.subframes.HEALTHObject;
+import com.traviscons.GPSTrackPoints.types.subframes.SUBFRAMEObject;
+
+/**
+ * Predicts when GPS satellites are above the horizon, from the almanac gpsd reports in
+ * SUBFRAME messages.
+ *
+ * The almanac pages of subframes 4 and 5 and the health of page 25 are collected into an
+ * {@link AlmanacSet}. For an observer, rise, highest point and set of every healthy
+ * satellite are predicted over the requested hours, at least {@link #setHorizon(double)},
+ * and kept as a {@link PassTable}. Later questions about the same observer and any time in
+ * the span are answered from the table without computing an orbit.
+ *
+ * The almanac is broadcast again every 12.5 minutes. A page that repeats what is known
+ * changes nothing; the tables are dropped only when the almanac changes, i.e. a new toa or
+ * WNa is uploaded, a satellite is heard for the first time or its health changes.
+ *
+ * Passes are found by sampling the elevation every {@link #setStep(double) step} seconds,
+ * default 60, and refining rise and set by bisection to under a second. A grazing pass
+ * shorter than the step can be missed.
+ *
+ * <pre>
+ * final PassPredictor predictor = new PassPredictor();
+ * ep.addListener(predictor, SUBFRAMEObject.class);
+ * ...
+ * final double now = GpsTime.fromUnixMillis(System.currentTimeMillis());
+ * for (final SatellitePass pass : predictor.getPasses(new Observer(42.24, -88.33, 268), now, 6)) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class PassPredictor extends ObjectListener {
+
+	/// bisection stops when rise or set is known to this many seconds
+	private static final double TIME_RESOLUTION = 0.5;
+
+	private static final double GOLDEN = (Math.sqrt(5) - 1) / 2;
+
+	private volatile AlmanacSet almanac = AlmanacSet.EMPTY;
+
+	/// serializes updates of the almanac set, reads go to the volatile
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final ConcurrentHashMap<TableKey, PassTable> tables = new ConcurrentHashMap<TableKey, PassTable>();
+
+	private volatile double elevationMask = 5;
+
+	private volatile double step = 60;
+
+	private volatile double horizonHours = 24;
+
+	private final AtomicLong predictions = new AtomicLong();
+
+	private volatile boolean warnedRaw;
+
+	public PassPredictor() {
+		super(null, null, null);
+	}
+
+	@Override
+	public void handleSUBFRAME(final SUBFRAMEObject subframe) {
+		final ALMANACObject page = subframe.getAlmanac();
+		final HEALTHObject health = subframe.getHealth();
+		final HEALTH2Object health2 = subframe.getHealth2();
+		if ((page == null) && (health == null) && (health2 == null)) {
+			return;
+		}
+		if (!subframe.getScaled()) {
+			if (!this.warnedRaw) {
+				this.warnedRaw = true;
+				System.err.println("WARNING: PassPredictor - Ignoring unscaled subframes, WATCH with scaled:true");
+			}
+			return;
+		}
+		this.lock.lock();
+		try {
+			final AlmanacSet before = this.almanac;
+			AlmanacSet after = before;
+			if (page != null) {
+				after = this.withPage(before, page);
+			} else if (health2 != null) {
+				// subframe 5 page 25: PRN 1 to 24, and the week and toa of the almanac
+				final int[] bits = new int[24];
+				for (int i = 0; i < bits.length; i++) {
+					bits[i] = health2.getSVbyIndex(i);
+				}
+				after = before.withHealth(1, bits, health2.getWNa(), health2.getToa());
+			} else {
+				// subframe 4 page 25: PRN 25 to 32
+				final int[] bits = new int[8];
+				for (int i = 0; i < bits.length; i++) {
+					bits[i] = health.getSVHbyIndex(i);
+				}
+				after = before.withHealth(25, bits, AlmanacSet.UNKNOWN, AlmanacSet.UNKNOWN);
+			}
+			if (after != before) {
+				this.almanac = after;
+				this.tables.clear();
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private AlmanacSet withPage(final AlmanacSet set, final ALMANACObject page) {
+		final Almanac known = set.get(page.getID());
+		if ((known != null) && known.isFrom(page)) {
+			return set; // rebroadcast
+		}
+		if ((page.getID() < 1) || Double.isNaN(page.getSqrtA()) || (page.getSqrtA() <= 0)) {
+			return set; // dummy page of an unused slot
+		}
+		try {
+			return set.with(Almanac.from(page));
+		} catch (final IllegalArgumentException e) {
+			System.err.println("WARNING: PassPredictor - Dropping almanac page of PRN " + page.getID() + ": " + e.getMessage());
+			return set;
+		}
+	}
+
+	/**
+	 * The passes during a span, from the cached table if it covers the span and was
+	 * predicted from the current almanac, else from a new table.
+	 *
+	 * @param observer   where the satellites are seen from
+	 * @param gpsSeconds start of the span in seconds since the GPS epoch
+	 * @param hours      length of the span
+	 * @return the passes during the span, sorted by rise
+	 */
+	public List<SatellitePass> getPasses(final Observer observer, final double gpsSeconds, final double hours) {
+		return this.getTable(observer, gpsSeconds, hours).getPasses(gpsSeconds, gpsSeconds + (hours * 3600));
+	}
+
+	/**
+	 * @param observer   where the satellites are seen from
+	 * @param gpsSeconds start of the span in seconds since the GPS epoch
+	 * @param hours      length of the span
+	 * @return a table covering at least the span
+	 */
+	public PassTable getTable(final Observer observer, final double gpsSeconds, final double hours) {
+		final AlmanacSet set = this.almanac;
+		final double mask = this.elevationMask;
+		final double end = gpsSeconds + (hours * 3600);
+		final TableKey key = new TableKey(observer, mask);
+		final PassTable cached = this.tables.get(key);
+		if ((cached != null) && (cached.getAlmanacVersion() == set.getVersion()) && cached.covers(gpsSeconds, end)) {
+			return cached;
+		}
+		final double span = Math.max(hours, this.horizonHours) * 3600;
+		final PassTable table = this.predict(set, observer, mask, gpsSeconds, gpsSeconds + span);
+		if (set == this.almanac) {
+			// a table of an almanac replaced meanwhile is returned but not kept
+			this.tables.put(key, table);
+		}
+		return table;
+	}
+
+	private PassTable predict(final AlmanacSet set, final Observer observer, final double mask, final double from, final double to) {
+		this.predictions.incrementAndGet();
+		final double sinMask = Math.sin(Math.toRadians(mask));
+		final double step = this.step;
+		final double[] xyz = new double[3];
+		final List<SatellitePass> passes = new ArrayList<SatellitePass>();
+		for (final Almanac sat : set.getHealthy()) {
+			double t0 = from;
+			double f0 = height(set, sat, observer, t0, sinMask, xyz);
+			boolean up = f0 >= 0;
+			double rise = from;
+			double best = up ? t0 : Double.NaN;
+			double bestF = up ? f0 : Double.NEGATIVE_INFINITY;
+			while (t0 < to) {
+				final double t1 = Math.min(t0 + step, to);
+				final double f1 = height(set, sat, observer, t1, sinMask, xyz);
+				if (!up && (f1 >= 0)) {
+					up = true;
+					rise = crossing(set, sat, observer, t0, t1, sinMask, xyz);
+					best = t1;
+					bestF = f1;
+				} else if (up && (f1 < 0)) {
+					final double set1 = crossing(set, sat, observer, t0, t1, sinMask, xyz);
+					passes.add(this.pass(set, sat, observer, rise, set1, best, rise > from, true, xyz));
+					up = false;
+				} else if (up && (f1 > bestF)) {
+					best = t1;
+					bestF = f1;
+				}
+				t0 = t1;
+			}
+			if (up) {
+				passes.add(this.pass(set, sat, observer, rise, to, best, rise > from, false, xyz));
+			}
+		}
+		Collections.sort(passes, new Comparator<SatellitePass>() {
+			@Override
+			public int compare(final SatellitePass a, final SatellitePass b) {
+				return Double.compare(a.getRise(), b.getRise());
+			}
+		});
+		return new PassTable(observer, mask, from, to, set.getVersion(), passes);
+	}
+
+	/// sin(elevation) above the mask, negative below it
+	private static double height(final AlmanacSet set, final Almanac sat, final Observer observer, final double t, final double sinMask,
+			final double[] xyz) {
+		sat.position(set.sinceToa(sat, t), xyz, 0);
+		return observer.sinElevation(xyz[0], xyz[1], xyz[2]) - sinMask;
+	}
+
+	/// bisect the horizon crossing between a sample below and one above, or the other way round
+	private static double crossing(final AlmanacSet set, final Almanac sat, final Observer observer, final double t0, final double t1,
+			final double sinMask, final double[] xyz) {
+		double lo = t0;
+		double hi = t1;
+		final boolean rising = height(set, sat, observer, t0, sinMask, xyz) < 0;
+		while ((hi - lo) > TIME_RESOLUTION) {
+			final double mid = (lo + hi) / 2;
+			if ((height(set, sat, observer, mid, sinMask, xyz) >= 0) == rising) {
+				hi = mid;
+			} else {
+				lo = mid;
+			}
+		}
+		return rising ? hi : lo;
+	}
+
+	private SatellitePass pass(final AlmanacSet set, final Almanac sat, final Observer observer, final double rise, final double end,
+			final double best, final boolean risesInWindow, final boolean setsInWindow, final double[] xyz) {
+		// the highest sample is within a step of the top, golden section search finds it
+		double lo = Math.max(rise, best - this.step);
+		double hi = Math.min(end, best + this.step);
+		double a = hi - (GOLDEN * (hi - lo));
+		double b = lo + (GOLDEN * (hi - lo));
+		double fa = height(set, sat, observer, a, 0, xyz);
+		double fb = height(set, sat, observer, b, 0, xyz);
+		while ((hi - lo) > TIME_RESOLUTION) {
+			if (fa < fb) {
+				lo = a;
+				a = b;
+				fa = fb;
+				b = lo + (GOLDEN * (hi - lo));
+				fb = height(set, sat, observer, b, 0, xyz);
+			} else {
+				hi = b;
+				b = a;
+				fb = fa;
+				a = hi - (GOLDEN * (hi - lo));
+				fa = height(set, sat, observer, a, 0, xyz);
+			}
+		}
+		final double top = (lo + hi) / 2;
+		final double[] look = new double[3];
+		sat.position(set.sinceToa(sat, top), xyz, 0);
+		observer.look(xyz[0], xyz[1], xyz[2], look, 0);
+		final double maxElevation = look[1];
+		sat.position(set.sinceToa(sat, rise), xyz, 0);
+		observer.look(xyz[0], xyz[1], xyz[2], look, 0);
+		final double riseAzimuth = look[0];
+		sat.position(set.sinceToa(sat, end), xyz, 0);
+		observer.look(xyz[0], xyz[1], xyz[2], look, 0);
+		return new SatellitePass(sat.getPrn(), rise, end, top, maxElevation, riseAzimuth, look[0], risesInWindow, setsInWindow);
+	}
+
+	/**
+	 * @return the almanac known now
+	 */
+	public AlmanacSet getAlmanac() {
+		return this.almanac;
+	}
+
+	/**
+	 * @return number of tables predicted so far, the others were answered from the cache
+	 */
+	public long getPredictions() {
+		return this.predictions.get();
+	}
+
+	/**
+	 * @param degrees satellites below this elevation count as not visible. Default 5.
+	 */
+	public void setElevationMask(final double degrees) {
+		this.elevationMask = degrees;
+	}
+
+	/**
+	 * @return the elevation mask in degrees
+	 */
+	public double getElevationMask() {
+		return this.elevationMask;
+	}
+
+	/**
+	 * @param seconds time between elevation samples. Default 60.
+	 */
+	public void setStep(final double seconds) {
+		if (seconds <= 0) {
+			throw new IllegalArgumentException("step must be positive: " + seconds);
+		}
+		this.step = seconds;
+		this.tables.clear();
+	}
+
+	/**
+	 * @param hours the shortest span a table is predicted for, so nearby later questions hit
+	 *              the cache. Default 24.
+	 */
+	public void setHorizon(final double hours) {
+		this.horizonHours = hours;
+	}
+
+	/**
+	 * Where and with which mask a table was predicted.
+	 */
+	private static final class TableKey {
+
+		final double latitude;
+
+		final double longitude;
+
+		final double altitude;
+
+		final double mask;
+
+		TableKey(final Observer observer, final double mask) {
+			this.latitude = observer.getLatitude();
+			this.longitude = observer.getLongitude();
+			this.altitude = observer.getAltitude();
+			this.mask = mask;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof TableKey)) {
+				return false;
+			}
+			final TableKey that = (TableKey) o;
+			return (Double.compare(this.latitude, that.latitude) == 0) && (Double.compare(this.longitude, that.longitude) == 0)
+					&& (Double.compare(this.altitude, that.altitude) == 0) && (Double.compare(this.mask, that.mask) == 0);
+		}
+
+		@Override
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(this.latitude);
+			bits = (31 * bits) + Double.doubleToLongBits(this.longitude);
+			bits = (31 * bits) + Double.doubleToLongBits(this.altitude);
+			bits = (31 * bits) + Double.doubleToLongBits(this.mask);
+			return (int) (bits ^ (bits >>> 32));
+		}
+	}
+}
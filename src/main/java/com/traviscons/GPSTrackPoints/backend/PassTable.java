@@ -0,0 +1,163 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* PassTable
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The passes of all healthy satellites over one {@link Observer} for a span of time, as
+ * predicted from one {@link AlmanacSet}. Passes are sorted by rise.
+ *
+ * Tables are made and cached by {@link PassPredictor}. A table never changes; lookups scan
+ * its passes, a few hundred for a day, without touching an orbit.
+ */
+public final class PassTable {
+
+	private final Observer observer;
+
+	private final double elevationMask;
+
+	private final double from;
+
+	private final double to;
+
+	private final long almanacVersion;
+
+	private final List<SatellitePass> passes;
+
+	PassTable(final Observer observer, final double elevationMask, final double from, final double to, final long almanacVersion,
+			final List<SatellitePass> passes) {
+		this.observer = observer;
+		this.elevationMask = elevationMask;
+		this.from = from;
+		this.to = to;
+		this.almanacVersion = almanacVersion;
+		this.passes = Collections.unmodifiableList(passes);
+	}
+
+	/**
+	 * @param start start of a span in seconds since the GPS epoch
+	 * @param end   end of the span
+	 * @return true if the table predicts all of the span
+	 */
+	public boolean covers(final double start, final double end) {
+		return (start >= this.from) && (end <= this.to);
+	}
+
+	/**
+	 * @return every pass, sorted by rise
+	 */
+	public List<SatellitePass> getPasses() {
+		return this.passes;
+	}
+
+	/**
+	 * @param start start of a span in seconds since the GPS epoch
+	 * @param end   end of the span
+	 * @return the passes during the span, sorted by rise
+	 */
+	public List<SatellitePass> getPasses(final double start, final double end) {
+		final List<SatellitePass> during = new ArrayList<SatellitePass>();
+		for (final SatellitePass pass : this.passes) {
+			if (pass.overlaps(start, end)) {
+				during.add(pass);
+			}
+		}
+		return during;
+	}
+
+	/**
+	 * @param prn the satellite
+	 * @return the satellite's passes, sorted by rise
+	 */
+	public List<SatellitePass> getPasses(final int prn) {
+		final List<SatellitePass> mine = new ArrayList<SatellitePass>();
+		for (final SatellitePass pass : this.passes) {
+			if (pass.getPrn() == prn) {
+				mine.add(pass);
+			}
+		}
+		return mine;
+	}
+
+	/**
+	 * @param gpsSeconds seconds since the GPS epoch
+	 * @return the passes under way at that time
+	 */
+	public List<SatellitePass> getVisible(final double gpsSeconds) {
+		final List<SatellitePass> up = new ArrayList<SatellitePass>();
+		for (final SatellitePass pass : this.passes) {
+			if (pass.isUpAt(gpsSeconds)) {
+				up.add(pass);
+			}
+		}
+		return up;
+	}
+
+	/**
+	 * @param prn        the satellite
+	 * @param gpsSeconds seconds since the GPS epoch
+	 * @return the satellite's pass under way at or next after that time, null if there is none in the table
+	 */
+	public SatellitePass next(final int prn, final double gpsSeconds) {
+		for (final SatellitePass pass : this.passes) {
+			if ((pass.getPrn() == prn) && (pass.getSet() >= gpsSeconds)) {
+				return pass;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return where the satellites are seen from
+	 */
+	public Observer getObserver() {
+		return this.observer;
+	}
+
+	/**
+	 * @return the elevation mask in degrees
+	 */
+	public double getElevationMask() {
+		return this.elevationMask;
+	}
+
+	/**
+	 * @return the start of the predicted span in seconds since the GPS epoch
+	 */
+	public double getFrom() {
+		return this.from;
+	}
+
+	/**
+	 * @return the end of the predicted span in seconds since the GPS epoch
+	 */
+	public double getTo() {
+		return this.to;
+	}
+
+	/**
+	 * @return the version of the almanac set the table was predicted from
+	 */
+	public long getAlmanacVersion() {
+		return this.almanacVersion;
+	}
+}
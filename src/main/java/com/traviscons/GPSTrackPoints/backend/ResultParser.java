@@ -197,7 +197,7 @@ public class ResultParser extends AbstractResultParser {
 		emphem2.setCuc(json.optDouble("Cuc", Double.NaN));
 		emphem2.setE(json.optDouble("e", Double.NaN));
 		emphem2.setCus(json.optDouble("Cus", Double.NaN));
-		emphem2.setSqrtA(json.optInt("sqrtA"));
+		emphem2.setSqrtA(json.optDouble("sqrtA", Double.NaN));
 		emphem2.setToe(json.optInt("toe"));
 		emphem2.setFIT(json.optInt("FIT"));
 		emphem2.setAODO(json.optInt("AODO"));
@@ -0,0 +1,168 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* SatellitePass
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+/**
+ * One pass of a satellite over an {@link Observer}: when it rises above the elevation mask,
+ * when it is highest and when it sets again. Times are seconds since the GPS epoch, see
+ * {@link GpsTime}, azimuths and elevations are degrees.
+ *
+ * A pass that is under way at the start or the end of the predicted span is cut there;
+ * {@link #risesInWindow()} and {@link #setsInWindow()} tell whether rise and set are real.
+ */
+public final class SatellitePass {
+
+	private final int prn;
+
+	private final double rise;
+
+	private final double set;
+
+	private final double maxTime;
+
+	private final double maxElevation;
+
+	private final double riseAzimuth;
+
+	private final double setAzimuth;
+
+	private final boolean risesInWindow;
+
+	private final boolean setsInWindow;
+
+	SatellitePass(final int prn, final double rise, final double set, final double maxTime, final double maxElevation,
+			final double riseAzimuth, final double setAzimuth, final boolean risesInWindow, final boolean setsInWindow) {
+		this.prn = prn;
+		this.rise = rise;
+		this.set = set;
+		this.maxTime = maxTime;
+		this.maxElevation = maxElevation;
+		this.riseAzimuth = riseAzimuth;
+		this.setAzimuth = setAzimuth;
+		this.risesInWindow = risesInWindow;
+		this.setsInWindow = setsInWindow;
+	}
+
+	/**
+	 * @param gpsSeconds seconds since the GPS epoch
+	 * @return true if the satellite is above the mask at that time
+	 */
+	public boolean isUpAt(final double gpsSeconds) {
+		return (gpsSeconds >= this.rise) && (gpsSeconds <= this.set);
+	}
+
+	/**
+	 * @param from start of a span in seconds since the GPS epoch
+	 * @param to   end of the span
+	 * @return true if the satellite is up for some of the span
+	 */
+	public boolean overlaps(final double from, final double to) {
+		return (this.rise <= to) && (this.set >= from);
+	}
+
+	/**
+	 * @return the satellite (PRN)
+	 */
+	public int getPrn() {
+		return this.prn;
+	}
+
+	/**
+	 * @return when the satellite rises above the mask
+	 */
+	public double getRise() {
+		return this.rise;
+	}
+
+	/**
+	 * @return when the satellite sets below the mask
+	 */
+	public double getSet() {
+		return this.set;
+	}
+
+	/**
+	 * @return the rise as UTC milliseconds since 1970
+	 */
+	public long getRiseMillis() {
+		return GpsTime.toUnixMillis(this.rise);
+	}
+
+	/**
+	 * @return the set as UTC milliseconds since 1970
+	 */
+	public long getSetMillis() {
+		return GpsTime.toUnixMillis(this.set);
+	}
+
+	/**
+	 * @return seconds above the mask
+	 */
+	public double getDuration() {
+		return this.set - this.rise;
+	}
+
+	/**
+	 * @return when the satellite is highest
+	 */
+	public double getMaxTime() {
+		return this.maxTime;
+	}
+
+	/**
+	 * @return the highest elevation
+	 */
+	public double getMaxElevation() {
+		return this.maxElevation;
+	}
+
+	/**
+	 * @return the azimuth at rise
+	 */
+	public double getRiseAzimuth() {
+		return this.riseAzimuth;
+	}
+
+	/**
+	 * @return the azimuth at set
+	 */
+	public double getSetAzimuth() {
+		return this.setAzimuth;
+	}
+
+	/**
+	 * @return false if the satellite was already up at the start of the predicted span
+	 */
+	public boolean risesInWindow() {
+		return this.risesInWindow;
+	}
+
+	/**
+	 * @return false if the satellite is still up at the end of the predicted span
+	 */
+	public boolean setsInWindow() {
+		return this.setsInWindow;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("SatellitePass{PRN %d, rise %.0f az %.0f, max %.1f at %.0f, set %.0f az %.0f}", this.prn, this.rise,
+				this.riseAzimuth, this.maxElevation, this.maxTime, this.set, this.setAzimuth);
+	}
+}
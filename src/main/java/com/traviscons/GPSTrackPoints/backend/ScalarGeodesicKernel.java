@@ -0,0 +1,67 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* ScalarGeodesicKernel
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+/**
+ * Plain Java haversine over primitive columns.
+ *
+ * The sine and cosine of each latitude are computed once and carried over to the next
+ * segment (the sine only when bearings are wanted), and the loop has no calls other than Math, so the JIT can keep it tight.
+ */
+final class ScalarGeodesicKernel implements GeodesicKernel {
+
+	static final ScalarGeodesicKernel INSTANCE = new ScalarGeodesicKernel();
+
+	private ScalarGeodesicKernel() {
+		//
+	}
+
+	@Override
+	public void haversine(final double[] lat, final double[] lon, final int from, final int segments, final double radius,
+			final double[] distances, final double[] bearings) {
+		if (from >= segments) {
+			return;
+		}
+		final boolean wantBearings = bearings != null;
+		double phi1 = Math.toRadians(lat[from]);
+		double sin1 = wantBearings ? Math.sin(phi1) : 0;
+		double cos1 = Math.cos(phi1);
+		for (int i = from; i < segments; i++) {
+			final double phi2 = Math.toRadians(lat[i + 1]);
+			// the sine is only needed for the bearing
+			final double sin2 = wantBearings ? Math.sin(phi2) : 0;
+			final double cos2 = Math.cos(phi2);
+			final double dlon = Math.toRadians(lon[i + 1] - lon[i]);
+			if (distances != null) {
+				final double sdlat = Math.sin((phi2 - phi1) * 0.5);
+				final double sdlon = Math.sin(dlon * 0.5);
+				final double a = (sdlat * sdlat) + (cos1 * cos2 * sdlon * sdlon);
+				distances[i] = 2 * radius * Math.asin(Math.sqrt(Math.min(a, 1.0)));
+			}
+			if (wantBearings) {
+				final double y = Math.sin(dlon) * cos2;
+				final double x = (cos1 * sin2) - (sin1 * cos2 * Math.cos(dlon));
+				final double b = Math.toDegrees(Math.atan2(y, x));
+				bearings[i] = (b < 0) ? b + 360.0 : b;
+			}
+			phi1 = phi2;
+			sin1 = sin2;
+			cos1 = cos2;
+		}
+	}
+}
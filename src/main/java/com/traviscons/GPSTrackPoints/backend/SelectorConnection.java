@@ -0,0 +1,386 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* SelectorConnection
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.traviscons.GPSTrackPoints.types.IGPSObject;
+
+/**
+ * One GPSd connection driven by a {@link GPSdSelector} I/O thread.
+ *
+ * The connection owns a non-blocking SocketChannel and a direct receive buffer. Received
+ * bytes are split into newline delimited frames in place and each frame is handed to the
+ * endpoint's result parser through a reusable character view, so no String is built for a
+ * line unless the parser needs one.
+ *
+ * All methods except {@link #write(String)} and {@link #close()} run on the owning I/O thread.
+ */
+final class SelectorConnection {
+
+	/// size of the receive buffer. GPSd lines are well below 4 KB; POLL and DEVICES are the largest.
+	static final int RECEIVE_BUFFER_SIZE = 64 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final GPSdSelector.IOThread ioThread;
+
+	private final GPSdEndpoint endpoint;
+
+	private final ByteBuffer receive = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+
+	private final ByteBufferCharSequence frame = new ByteBufferCharSequence();
+
+	private final Queue<ByteBuffer> pendingWrites = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	private SocketChannel channel;
+
+	private SelectionKey key;
+
+	private volatile boolean connected;
+
+	private volatile boolean closed;
+
+	/// the connect timeout, idle check or reconnect due next, at most one at a time
+	private TimerWheel.Timeout timer;
+
+	/// counts armed timers so one that fired just before being replaced is ignored
+	private int timerGeneration;
+
+	/// the last resolved address. Names are looked up on a thread of their own, never on the I/O thread.
+	private InetSocketAddress address;
+
+	/// look the name up again before the next attempt, the server may have moved
+	private boolean addressStale;
+
+	SelectorConnection(final GPSdSelector.IOThread ioThread, final GPSdEndpoint endpoint) {
+		this.ioThread = ioThread;
+		this.endpoint = endpoint;
+	}
+
+	GPSdEndpoint getEndpoint() {
+		return this.endpoint;
+	}
+
+	boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Queue a command for sending. Commands issued while disconnected are refused so the
+	 * caller can fail them at once; the last WATCH is restored when the connection comes back.
+	 *
+	 * @param command the command line without the trailing newline
+	 * @throws IOException if the connection is not up
+	 */
+	void write(final String command) throws IOException {
+		if (!this.connected || this.closed) {
+			throw new GPSdEndpoint.NotConnectedException();
+		}
+		this.pendingWrites.add(ByteBuffer.wrap((command + "\n").getBytes(UTF8)));
+		this.ioThread.flushLater(this);
+	}
+
+	/**
+	 * Close the connection for good. No reconnection is attempted afterwards.
+	 */
+	void close() {
+		this.closed = true;
+		this.ioThread.closeLater(this);
+	}
+
+	/**
+	 * Start a non-blocking connect to the endpoint's server, after looking its name up
+	 * if that has not been done or the last attempt failed.
+	 */
+	void connect(final Selector selector) {
+		if ((this.address == null) || this.addressStale) {
+			this.resolve();
+		} else {
+			this.open(selector);
+		}
+	}
+
+	/// a name lookup can block for seconds, so it gets a thread of its own and the result is handed back
+	private void resolve() {
+		final Thread lookup = new Thread("GPSd Resolver " + this.endpoint.getServer()) {
+			@Override
+			public void run() {
+				final InetSocketAddress resolved = new InetSocketAddress(SelectorConnection.this.endpoint.getServer(),
+						SelectorConnection.this.endpoint.getPort());
+				SelectorConnection.this.ioThread.resolvedLater(SelectorConnection.this, resolved);
+			}
+		};
+		lookup.setDaemon(true);
+		lookup.start();
+	}
+
+	/**
+	 * The name lookup finished. A failed lookup keeps the address resolved before, if any.
+	 *
+	 * @param selector the I/O thread's selector
+	 * @param resolved the looked up address, unresolved if the lookup failed
+	 */
+	void resolved(final Selector selector, final InetSocketAddress resolved) {
+		if (this.closed) {
+			return;
+		}
+		this.addressStale = false;
+		if (!resolved.isUnresolved()) {
+			this.address = resolved;
+		} else if (this.address == null) {
+			this.disconnected();
+			return;
+		}
+		this.open(selector);
+	}
+
+	private void open(final Selector selector) {
+		try {
+			this.channel = SocketChannel.open();
+			this.channel.configureBlocking(false);
+			this.channel.socket().setTcpNoDelay(true);
+			this.channel.socket().setKeepAlive(this.endpoint.isKeepAlive());
+			if (this.channel.connect(this.address)) {
+				this.key = this.channel.register(selector, SelectionKey.OP_READ, this);
+				this.connected();
+			} else {
+				this.key = this.channel.register(selector, SelectionKey.OP_CONNECT, this);
+				this.arm(this.endpoint.getConnectTimeout());
+			}
+		} catch (final IOException e) {
+			// System.err.println("DEBUG: SelectorConnection - Still disconnected from GPS socket, retrying connection again");
+			// look the name up again next time, the server may have moved
+			this.addressStale = true;
+			this.disconnected();
+		}
+	}
+
+	/**
+	 * Arm the connection's timer on the shared TimerWheel. When it fires, {@link #timer}
+	 * runs on the I/O thread. Replaces the timer armed before.
+	 *
+	 * @param millis the delay, nothing is armed unless positive
+	 */
+	private void arm(final long millis) {
+		if (this.timer != null) {
+			this.timer.cancel();
+			this.timer = null;
+		}
+		final int generation = ++this.timerGeneration;
+		if ((millis <= 0) || this.closed) {
+			return;
+		}
+		try {
+			this.timer = TimerWheel.getDefault().schedule(new Runnable() {
+				@Override
+				public void run() {
+					SelectorConnection.this.ioThread.timerLater(SelectorConnection.this, generation);
+				}
+			}, millis, TimeUnit.MILLISECONDS);
+		} catch (final RejectedExecutionException e) {
+			System.err.println("WARNING: SelectorConnection - Timer wheel shut down, timeouts disabled");
+		}
+	}
+
+	/**
+	 * The armed timer fired: reconnect, give up a connect that takes too long, or
+	 * drop a connection that reported nothing within the idle timeout.
+	 *
+	 * @param selector   the I/O thread's selector
+	 * @param generation the generation the timer was armed with
+	 */
+	void timer(final Selector selector, final int generation) {
+		if ((generation != this.timerGeneration) || this.closed) {
+			return;
+		}
+		this.timer = null;
+		if (this.channel == null) {
+			this.connect(selector);
+			return;
+		}
+		if (!this.connected) {
+			// System.err.println("DEBUG: SelectorConnection - Connect timed out");
+			this.addressStale = true;
+			this.disconnected();
+			return;
+		}
+		final long timeout = this.endpoint.getIdleTimeout();
+		if (timeout <= 0) {
+			return;
+		}
+		if (!this.endpoint.isWatching()) {
+			// silence is expected, look again later in case a WATCH is sent
+			this.arm(timeout);
+			return;
+		}
+		final long idle = (System.nanoTime() - this.endpoint.getHealth().getLastReceive()) / 1000000L;
+		if (idle >= timeout) {
+			System.err.println("WARNING: SelectorConnection - No report within " + timeout + "ms, reconnecting");
+			this.endpoint.getHealth().idleTimeout();
+			this.disconnected();
+			return;
+		}
+		// reports arrived meanwhile, the deadline moved on by itself
+		this.arm(timeout - idle);
+	}
+
+	/**
+	 * Handle the readiness reported by the selector.
+	 */
+	void ready() {
+		try {
+			if (this.key.isConnectable()) {
+				this.channel.finishConnect();
+				this.key.interestOps(SelectionKey.OP_READ);
+				this.connected();
+			}
+			if (this.key.isValid() && this.key.isReadable()) {
+				this.read();
+			}
+			if (this.key.isValid() && this.key.isWritable()) {
+				this.flush();
+			}
+		} catch (final IOException e) {
+			if (this.connected) {
+				System.err.println("WARNING: SelectorConnection - Problem encountered while reading/writing, attempting restart " + e);
+			}
+			this.disconnected();
+		}
+	}
+
+	/**
+	 * Write as much of the queued commands as the socket accepts and wait for
+	 * OP_WRITE if anything is left.
+	 */
+	void flush() throws IOException {
+		if ((this.key == null) || !this.key.isValid() || !this.connected) {
+			return;
+		}
+		ByteBuffer buffer;
+		while ((buffer = this.pendingWrites.peek()) != null) {
+			this.channel.write(buffer);
+			if (buffer.hasRemaining()) {
+				this.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				return;
+			}
+			this.pendingWrites.poll();
+		}
+		this.key.interestOps(SelectionKey.OP_READ);
+	}
+
+	/**
+	 * Release the socket. Unless the connection was closed by the endpoint a new
+	 * connection attempt is scheduled after the endpoint's backed off retry delay.
+	 */
+	void disconnected() {
+		if (this.connected) {
+			this.endpoint.failPending(new IOException("Connection to gpsd lost"));
+			this.endpoint.getHealth().disconnected();
+		}
+		this.connected = false;
+		this.pendingWrites.clear();
+		this.receive.clear();
+		if (this.key != null) {
+			this.key.cancel();
+			this.key = null;
+		}
+		if (this.channel != null) {
+			try {
+				this.channel.close();
+			} catch (final IOException e) {
+				// ignore
+			}
+			this.channel = null;
+		}
+		this.arm(this.closed ? 0 : this.endpoint.nextRetryDelay());
+	}
+
+	private void connected() throws IOException {
+		this.connected = true;
+		this.endpoint.getHealth().connected();
+		this.arm(this.endpoint.getIdleTimeout());
+		// System.err.println("DEBUG: SelectorConnection - Connected to GPS socket");
+		final String lastWatch = this.endpoint.getLastWatch();
+		if (lastWatch != null) { // restore watch if we had one.
+			this.pendingWrites.add(ByteBuffer.wrap((lastWatch + "\n").getBytes(UTF8)));
+			this.flush();
+		}
+	}
+
+	/**
+	 * Read what is available and dispatch every complete line.
+	 */
+	private void read() throws IOException {
+		final int count = this.channel.read(this.receive);
+		if (count < 0) {
+			throw new IOException("Connection closed by GPSd");
+		}
+
+		this.receive.flip();
+		int lineStart = this.receive.position();
+		final int limit = this.receive.limit();
+		for (int i = lineStart; i < limit; i++) {
+			if (this.receive.get(i) == '\n') {
+				int lineEnd = i;
+				if ((lineEnd > lineStart) && (this.receive.get(lineEnd - 1) == '\r')) {
+					lineEnd--;
+				}
+				if (lineEnd > lineStart) {
+					this.dispatch(lineStart, lineEnd);
+				}
+				lineStart = i + 1;
+			}
+		}
+		this.receive.position(lineStart);
+
+		if ((lineStart == 0) && (limit == this.receive.capacity())) {
+			System.err.println("WARNING: SelectorConnection - Line longer than " + RECEIVE_BUFFER_SIZE + " bytes dropped");
+			this.receive.clear();
+			return;
+		}
+		this.receive.compact();
+	}
+
+	private void dispatch(final int start, final int end) {
+		try {
+			final long read = this.endpoint.isTimed() ? System.nanoTime() : 0L;
+			this.frame.set(this.receive, start, end);
+			final IGPSObject object = this.endpoint.getResultParser().parse(this.frame);
+			this.endpoint.handle(object, read, (read != 0L) ? System.nanoTime() : 0L);
+		} catch (final Exception e) {
+			// a bad line or a failing listener costs that line only, the stream stays in sync
+			System.err.println("WARNING: SelectorConnection - Dropped line from " + this.endpoint.getServer() + ":" + this.endpoint.getPort()
+					+ " that could not be parsed/handled: " + e + " " + abbreviate(this.frame));
+		}
+	}
+
+	private static String abbreviate(final CharSequence line) {
+		return (line.length() <= 80) ? line.toString() : line.subSequence(0, 80) + "...";
+	}
+}
@@ -23,6 +23,9 @@ package com.traviscons.GPSTrackPoints.backend;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+import com.traviscons.GPSTrackPoints.types.IGPSObject;
 
 /**
  * thread reading input from GPSd server
@@ -71,55 +74,56 @@ public class SocketThread extends Thread {
 
 	@Override
 	public void run() {
-		if (this.reader != null) {
-			while (this.running.get()) {
+		if (this.reader == null) {
+			// a single connect attempt, the endpoint schedules the next one if it fails
+			if (this.running.get()) {
 				try {
-					// read line from socket
-					final String s = this.reader.readLine();
-					if (s == null) {
-						break;
-					}
-					if (!s.isEmpty()) {
-						// parse line and handle it accordingly
-						this.endpoint.handle(this.resultParser.parse(s));
-					}
-				} catch (final SocketException e) {
-					break; // stop
-				} catch (final Exception e) {
-					// TODO handle this better
-					System.err.println("WARNING: SocketThread - Problem encountered while reading/parsing/handling line" + e);
+					this.endpoint.handleDisconnected();
+				} catch (final IOException e) {
+					this.endpoint.reconnectLater();
 				}
 			}
+			return;
 		}
-		if (this.running.get() && !Thread.interrupted()) {
-			if (this.reader != null) {
-				System.err.println("WARNING: SocketThread - Problem encountered while reading/parsing/handling line, attempting restart");
+		while (this.running.get()) {
+			try {
+				// read line from socket
+				final String s = this.reader.readLine();
+				if (s == null) {
+					break;
+				}
+				if (!s.isEmpty()) {
+					// parse line and handle it accordingly
+					final long read = this.endpoint.isTimed() ? System.nanoTime() : 0L;
+					final IGPSObject object = this.resultParser.parse(s);
+					this.endpoint.handle(object, read, (read != 0L) ? System.nanoTime() : 0L);
+				}
+			} catch (final SocketTimeoutException e) {
+				// the idle timeout passed without a line, only a failure while watching
+				if (this.endpoint.isWatching()) {
+					System.err.println("WARNING: SocketThread - No report within " + this.endpoint.getIdleTimeout() + "ms, reconnecting");
+					this.endpoint.getHealth().idleTimeout();
+					break;
+				}
+			} catch (final SocketException e) {
+				break; // stop
+			} catch (final Exception e) {
+				// TODO handle this better
+				System.err.println("WARNING: SocketThread - Problem encountered while reading/parsing/handling line" + e);
 			}
+		}
+		this.endpoint.getHealth().disconnected();
+		if (this.running.get() && !Thread.interrupted()) {
+			System.err.println("WARNING: SocketThread - Problem encountered while reading/parsing/handling line, attempting restart");
 			retry();
 		}
 	}
 
-	/// Initializes the socket interface. This is used for the first
-	/// initialization as well as recovery.
+	/// Recovers the socket interface. The endpoint's timer makes the attempt after
+	/// the back-off delay, see ConnectionHealth, so this thread can end now.
 	protected void retry() {
-		if (this.reader != null) {
-			// System.err.println("DEBUG: SocketThread - Disconnected from GPS socket, retrying connection");
-		} else {
-			// System.err.println("DEBUG: SocketThread - Connecting to GPSD socket");
-		}
-
-		while (this.running.get()) {
-			try {
-				this.running.waitFor(this.endpoint.getRetryInterval());
-				this.endpoint.handleDisconnected();
-				// System.err.println("DEBUG: SocketThread - Connected to GPS socket");
-				this.running.set(false);
-			} catch (InterruptedException ix) {
-				break;
-			} catch (IOException e) {
-				// System.err.println("DEBUG: SocketThread - Still disconnected from GPS socket, retrying connection again");
-			}
-		}
+		// System.err.println("DEBUG: SocketThread - Disconnected from GPS socket, retrying connection");
+		this.endpoint.reconnectLater();
 	}
 
 	/**
@@ -130,7 +134,9 @@ public class SocketThread extends Thread {
 		this.running.set(false);
 
 		try {
-			this.reader.close();
+			if (this.reader != null) {
+				this.reader.close();
+			}
 		} catch (final IOException e) {
 			// ignore
 		}
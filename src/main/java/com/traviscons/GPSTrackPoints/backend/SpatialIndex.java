@@ -0,0 +1,441 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* SpatialIndex
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * An in-memory grid index over track points and waypoints for proximity queries.
+ *
+ * The globe is cut into cells of a fixed size in degrees, like a geohash prefix. Each cell
+ * holds the ids of the points in it. A query only visits the cells that can hold an answer
+ * and measures those points with the haversine formula of {@link GISTool}. With the default
+ * 0.01 degree cells (about 1.1 km) a radius query of a few hundred meters looks at a handful
+ * of cells whatever the size of the index.
+ *
+ * Points are stored in primitive columns and referred to by an int id in the order they were
+ * added. Waypoints carry a name, track points do not. Points can not be removed.
+ *
+ * Queries may run while another thread adds points.
+ */
+public final class SpatialIndex {
+
+	private static final double METERS_PER_DEGREE = Math.toRadians(GeodesicEngine.EARTH_RADIUS_METERS);
+
+	private final double cellDegrees;
+
+	private final int columns;
+
+	private final int rows;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Map<Long, Cell> cells = new HashMap<Long, Cell>();
+
+	/// the waypoints again, so waypoint queries skip the track points
+	private final Map<Long, Cell> waypointCells = new HashMap<Long, Cell>();
+
+	private double[] lat = new double[1024];
+
+	private double[] lon = new double[1024];
+
+	/// waypoint names by id, null for track points
+	private final Map<Integer, String> names = new HashMap<Integer, String>();
+
+	private int size;
+
+	/// ids of the points in one grid cell
+	private static final class Cell {
+		int[] ids = new int[8];
+
+		int size;
+
+		void add(final int id) {
+			if (this.size == this.ids.length) {
+				this.ids = Arrays.copyOf(this.ids, this.size * 2);
+			}
+			this.ids[this.size++] = id;
+		}
+	}
+
+	/// growable result list
+	private static final class Ids {
+		int[] ids = new int[16];
+
+		int size;
+
+		void add(final int id) {
+			if (this.size == this.ids.length) {
+				this.ids = Arrays.copyOf(this.ids, this.size * 2);
+			}
+			this.ids[this.size++] = id;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(this.ids, this.size);
+		}
+	}
+
+	/**
+	 * An index with 0.01 degree cells.
+	 */
+	public SpatialIndex() {
+		this(0.01);
+	}
+
+	/**
+	 * @param cellDegrees the cell size in degrees. Best around the usual query radius.
+	 */
+	public SpatialIndex(final double cellDegrees) {
+		if (!(cellDegrees > 0) || (cellDegrees > 90)) {
+			throw new IllegalArgumentException("cellDegrees must be between 0 and 90: " + cellDegrees);
+		}
+		this.cellDegrees = cellDegrees;
+		this.columns = (int) Math.ceil(360 / cellDegrees);
+		this.rows = (int) Math.ceil(180 / cellDegrees);
+	}
+
+	private int row(final double latitude) {
+		final int r = (int) Math.floor((latitude + 90) / this.cellDegrees);
+		return Math.max(0, Math.min(this.rows - 1, r));
+	}
+
+	/// unwrapped column, can be outside 0..columns-1
+	private int column(final double longitude) {
+		return (int) Math.floor((longitude + 180) / this.cellDegrees);
+	}
+
+	private long key(final int row, final int column) {
+		final int c = ((column % this.columns) + this.columns) % this.columns;
+		return ((long) row << 32) | c;
+	}
+
+	/**
+	 * Add a track point.
+	 *
+	 * @param tpv the fix
+	 * @return the id of the point, -1 if the fix has no position
+	 */
+	public int add(final TPVObject tpv) {
+		return this.add(tpv.getLatitude(), tpv.getLongitude(), null);
+	}
+
+	/**
+	 * Add a named waypoint.
+	 *
+	 * @param tpv  the fix
+	 * @param name the name of the waypoint
+	 * @return the id of the point, -1 if the fix has no position
+	 */
+	public int addWaypoint(final TPVObject tpv, final String name) {
+		if (name == null) {
+			throw new IllegalArgumentException("name can not be null!");
+		}
+		return this.add(tpv.getLatitude(), tpv.getLongitude(), name);
+	}
+
+	/**
+	 * @param latitude  in degrees
+	 * @param longitude in degrees
+	 * @param name      the waypoint name, null for a track point
+	 * @return the id of the point, -1 if either coordinate is NaN
+	 */
+	public int add(final double latitude, final double longitude, final String name) {
+		if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+			return -1;
+		}
+		this.lock.writeLock().lock();
+		try {
+			final int id = this.size;
+			if (id == this.lat.length) {
+				this.lat = Arrays.copyOf(this.lat, id * 2);
+				this.lon = Arrays.copyOf(this.lon, id * 2);
+			}
+			this.lat[id] = latitude;
+			this.lon[id] = longitude;
+			if (name != null) {
+				this.names.put(Integer.valueOf(id), name);
+			}
+			final Long key = Long.valueOf(this.key(this.row(latitude), this.column(longitude)));
+			addToCell(this.cells, key, id);
+			if (name != null) {
+				addToCell(this.waypointCells, key, id);
+			}
+			this.size = id + 1;
+			return id;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	private static void addToCell(final Map<Long, Cell> grid, final Long key, final int id) {
+		Cell cell = grid.get(key);
+		if (cell == null) {
+			cell = new Cell();
+			grid.put(key, cell);
+		}
+		cell.add(id);
+	}
+
+	/**
+	 * @return number of points
+	 */
+	public int size() {
+		this.lock.readLock().lock();
+		try {
+			return this.size;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	public double getLatitude(final int id) {
+		this.lock.readLock().lock();
+		try {
+			this.check(id);
+			return this.lat[id];
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	public double getLongitude(final int id) {
+		this.lock.readLock().lock();
+		try {
+			this.check(id);
+			return this.lon[id];
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param id a point
+	 * @return the waypoint name, null for a track point
+	 */
+	public String getName(final int id) {
+		this.lock.readLock().lock();
+		try {
+			this.check(id);
+			return this.names.get(Integer.valueOf(id));
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param id a point
+	 * @return true if the point was added as a waypoint
+	 */
+	public boolean isWaypoint(final int id) {
+		return this.getName(id) != null;
+	}
+
+	private void check(final int id) {
+		if ((id < 0) || (id >= this.size)) {
+			throw new IndexOutOfBoundsException("no point " + id);
+		}
+	}
+
+	private double meters(final int id, final double latitude, final double longitude) {
+		return GISTool.getDistance(longitude, this.lon[id], latitude, this.lat[id]) * 1000.0;
+	}
+
+	/**
+	 * Find the points within a distance of a position.
+	 *
+	 * @param latitude      in degrees
+	 * @param longitude     in degrees
+	 * @param meters        the radius
+	 * @param waypointsOnly true to leave out track points
+	 * @return the ids of the points, in no particular order
+	 */
+	public int[] withinRadius(final double latitude, final double longitude, final double meters,
+			final boolean waypointsOnly) {
+		final double dlat = meters / METERS_PER_DEGREE;
+		// the widest part of the circle is nearest the pole
+		final double widest = Math.min(90, Math.abs(latitude) + dlat);
+		final double cos = Math.cos(Math.toRadians(widest));
+		final double dlon = ((cos * 180) > dlat) ? dlat / cos : 180;
+
+		final Ids result = new Ids();
+		this.lock.readLock().lock();
+		try {
+			final Map<Long, Cell> grid = waypointsOnly ? this.waypointCells : this.cells;
+			final int r0 = this.row(latitude - dlat);
+			final int r1 = this.row(latitude + dlat);
+			int c0 = this.column(longitude - dlon);
+			int c1 = this.column(longitude + dlon);
+			if ((c1 - c0) >= this.columns) {
+				c0 = 0;
+				c1 = this.columns - 1;
+			}
+			for (int r = r0; r <= r1; r++) {
+				for (int c = c0; c <= c1; c++) {
+					final Cell cell = grid.get(Long.valueOf(this.key(r, c)));
+					if (cell == null) {
+						continue;
+					}
+					for (int i = 0; i < cell.size; i++) {
+						final int id = cell.ids[i];
+						// cheap reject on the bounding box before the haversine
+						if (Math.abs(this.lat[id] - latitude) > dlat) {
+							continue;
+						}
+						if (this.meters(id, latitude, longitude) <= meters) {
+							result.add(id);
+						}
+					}
+				}
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		return result.toArray();
+	}
+
+	/**
+	 * Find the points inside a latitude and longitude box. A box with minLongitude greater than
+	 * maxLongitude crosses the 180th meridian.
+	 *
+	 * @param minLatitude  south edge in degrees
+	 * @param minLongitude west edge in degrees
+	 * @param maxLatitude  north edge in degrees
+	 * @param maxLongitude east edge in degrees
+	 * @return the ids of the points, in no particular order
+	 */
+	public int[] withinBox(final double minLatitude, final double minLongitude, final double maxLatitude,
+			final double maxLongitude) {
+		final boolean wraps = minLongitude > maxLongitude;
+		final Ids result = new Ids();
+		this.lock.readLock().lock();
+		try {
+			final int r0 = this.row(minLatitude);
+			final int r1 = this.row(maxLatitude);
+			final int c0 = this.column(minLongitude);
+			final int c1 = wraps ? this.column(maxLongitude + 360) : this.column(maxLongitude);
+			for (int r = r0; r <= r1; r++) {
+				for (int c = c0; c <= Math.min(c1, c0 + this.columns - 1); c++) {
+					final Cell cell = this.cells.get(Long.valueOf(this.key(r, c)));
+					if (cell == null) {
+						continue;
+					}
+					for (int i = 0; i < cell.size; i++) {
+						final int id = cell.ids[i];
+						final double la = this.lat[id];
+						final double lo = this.lon[id];
+						final boolean inLon = wraps ? ((lo >= minLongitude) || (lo <= maxLongitude))
+								: ((lo >= minLongitude) && (lo <= maxLongitude));
+						if (inLon && (la >= minLatitude) && (la <= maxLatitude)) {
+							result.add(id);
+						}
+					}
+				}
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+		return result.toArray();
+	}
+
+	/**
+	 * Find the point nearest to a position.
+	 *
+	 * Searches rings of cells outwards from the cell of the position until no unvisited cell
+	 * can hold anything nearer. When the rings have grown to more cells than there are points
+	 * to look at, e.g. in a sparse index, the remaining search scans every point instead.
+	 *
+	 * @param latitude      in degrees
+	 * @param longitude     in degrees
+	 * @param waypointsOnly true to leave out track points
+	 * @return the id of the nearest point, -1 if there is none
+	 */
+	public int nearest(final double latitude, final double longitude, final boolean waypointsOnly) {
+		this.lock.readLock().lock();
+		try {
+			final Map<Long, Cell> grid = waypointsOnly ? this.waypointCells : this.cells;
+			final int points = waypointsOnly ? this.names.size() : this.size;
+			final int row = this.row(latitude);
+			final int column = this.column(longitude);
+			int best = -1;
+			double bestMeters = Double.MAX_VALUE;
+			for (int k = 0;; k++) {
+				final long visited = (2L * k + 1) * (2L * k + 1);
+				if ((visited > points) || (k > (this.rows + this.columns))) {
+					return nearestScan(grid, this.lat, this.lon, latitude, longitude);
+				}
+				for (int r = row - k; r <= row + k; r++) {
+					if ((r < 0) || (r >= this.rows)) {
+						continue;
+					}
+					final boolean edge = (r == (row - k)) || (r == (row + k));
+					for (int c = column - k; c <= column + k; c += (edge || (k == 0)) ? 1 : 2 * k) {
+						final Cell cell = grid.get(Long.valueOf(this.key(r, c)));
+						if (cell == null) {
+							continue;
+						}
+						for (int i = 0; i < cell.size; i++) {
+							final int id = cell.ids[i];
+							final double m = this.meters(id, latitude, longitude);
+							if (m < bestMeters) {
+								bestMeters = m;
+								best = id;
+							}
+						}
+					}
+				}
+				if ((best >= 0) && (bestMeters <= this.ringBound(latitude, k))) {
+					return best;
+				}
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/// least distance in meters from the position to any cell outside ring k
+	private double ringBound(final double latitude, final int k) {
+		final double degrees = k * this.cellDegrees;
+		final double alongMeridian = degrees * METERS_PER_DEGREE;
+		final double widest = Math.toRadians(Math.min(90, Math.abs(latitude) + degrees + this.cellDegrees));
+		final double across = Math.asin(Math.cos(widest) * Math.sin(Math.toRadians(Math.min(90, degrees))));
+		return Math.min(alongMeridian, across * GeodesicEngine.EARTH_RADIUS_METERS);
+	}
+
+	private static int nearestScan(final Map<Long, Cell> grid, final double[] lat, final double[] lon,
+			final double latitude, final double longitude) {
+		int best = -1;
+		double bestMeters = Double.MAX_VALUE;
+		for (final Cell cell : grid.values()) {
+			for (int i = 0; i < cell.size; i++) {
+				final int id = cell.ids[i];
+				final double m = GISTool.getDistance(longitude, lon[id], latitude, lat[id]);
+				if (m < bestMeters) {
+					bestMeters = m;
+					best = id;
+				}
+			}
+		}
+		return best;
+	}
+}
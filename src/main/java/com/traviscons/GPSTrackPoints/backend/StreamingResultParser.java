@@ -0,0 +1,402 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* StreamingResultParser
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.traviscons.GPSTrackPoints.types.ATTObject;
+import com.traviscons.GPSTrackPoints.types.ENMEAMode;
+import com.traviscons.GPSTrackPoints.types.GSTObject;
+import com.traviscons.GPSTrackPoints.types.IGPSObject;
+import com.traviscons.GPSTrackPoints.types.ParseException;
+import com.traviscons.GPSTrackPoints.types.SATObject;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * Parse responses from GPSd without building a JSONObject first.
+ *
+ * The high rate reports (TPV, SKY, ATT and GST) are read in a single pass over the line
+ * with a JSONPullReader. The "class" field is located first and the matching report object
+ * is filled directly from the characters of the line.
+ *
+ * All other messages (VERSION, DEVICES, WATCH, POLL, SUBFRAME, ...) are rare and are handed to
+ * the JSONObject based parsing of ResultParser. The output is the same as ResultParser for
+ * every line.
+ *
+ * One instance can be shared by several socket threads. Each thread gets its own reader.
+ *
+ * \author Travis Marlatte
+ */
+public class StreamingResultParser extends ResultParser {
+
+	private final ThreadLocal<JSONPullReader> readers = new ThreadLocal<JSONPullReader>() {
+		@Override
+		protected JSONPullReader initialValue() {
+			return new JSONPullReader();
+		}
+	};
+
+	/**
+	 * Parse a received line into a {@link IGPSObject}
+	 *
+	 * @param line the line read from GPSd
+	 * @return the parsed object
+	 * @throws ParseException if parsing fails
+	 */
+	@Override
+	public IGPSObject parse(final String line) throws ParseException {
+		return this.parse((CharSequence) line);
+	}
+
+	/**
+	 * Parse a received line into a {@link IGPSObject}. The line can be any character
+	 * sequence, e.g. a view on a receive buffer.
+	 *
+	 * @param line the line read from GPSd
+	 * @return the parsed object
+	 * @throws ParseException if parsing fails
+	 */
+	@Override
+	public IGPSObject parse(final CharSequence line) throws ParseException {
+		final JSONPullReader reader = this.readers.get();
+		reader.reset(line);
+
+		IGPSObject gps = null;
+		if (reader.seekField("class")) {
+			if (reader.valueEquals(TPVObject.NAME)) {
+				gps = this.readTPV(reader);
+			} else if (reader.valueEquals(SKYObject.NAME)) {
+				gps = this.readSKY(reader);
+			} else if (reader.valueEquals(GSTObject.NAME)) {
+				gps = this.readGST(reader);
+			} else if (reader.valueEquals(ATTObject.NAME)) {
+				gps = this.readATT(reader);
+			}
+		}
+		if (gps == null) {
+			// not one of the streamed reports
+			return super.parse(line.toString());
+		}
+		return gps;
+	}
+
+	/**
+	 * Append a TPV line straight to a {@link TrackBuffer} without creating a TPVObject.
+	 * Lines of any other class are left alone.
+	 *
+	 * @param line  the line read from GPSd
+	 * @param track the buffer to append to
+	 * @return true if the line was a TPV and was appended
+	 * @throws ParseException if parsing fails
+	 */
+	public boolean appendTPV(final CharSequence line, final TrackBuffer track) throws ParseException {
+		final JSONPullReader reader = this.readers.get();
+		reader.reset(line);
+		if (!reader.seekField("class") || !reader.valueEquals(TPVObject.NAME)) {
+			return false;
+		}
+
+		double time = Double.NaN;
+		double lat = Double.NaN;
+		double lon = Double.NaN;
+		double alt = Double.NaN;
+		double speed = Double.NaN;
+		double course = Double.NaN;
+		double ept = Double.NaN;
+		double epx = Double.NaN;
+		double epy = Double.NaN;
+		double epv = Double.NaN;
+		int mode = 0;
+		int device = -1;
+
+		reader.rewind();
+		reader.beginObject();
+		while (reader.nextField()) {
+			if (reader.keyEquals("time")) {
+				time = this.readTimestamp(reader);
+			} else if (reader.keyEquals("lat")) {
+				lat = reader.readDouble();
+			} else if (reader.keyEquals("lon")) {
+				lon = reader.readDouble();
+			} else if (reader.keyEquals("alt")) {
+				alt = reader.readDouble();
+			} else if (reader.keyEquals("mode")) {
+				mode = reader.readInt(0);
+			} else if (reader.keyEquals("device")) {
+				device = track.intern(reader.readText());
+			} else if (reader.keyEquals("ept")) {
+				ept = reader.readDouble();
+			} else if (reader.keyEquals("epx")) {
+				epx = reader.readDouble();
+			} else if (reader.keyEquals("epy")) {
+				epy = reader.readDouble();
+			} else if (reader.keyEquals("epv")) {
+				epv = reader.readDouble();
+			} else if (reader.keyEquals("track")) {
+				course = reader.readDouble();
+			} else if (reader.keyEquals("speed")) {
+				speed = reader.readDouble();
+			} else {
+				reader.skipValue();
+			}
+		}
+		track.append(time, lat, lon, alt, speed, course, ept, epx, epy, epv, ENMEAMode.fromInt(mode).ordinal(), device);
+		return true;
+	}
+
+	private IGPSObject readTPV(final JSONPullReader reader) throws ParseException {
+		final TPVObject tpv = new TPVObject();
+		int mode = 0;
+
+		reader.rewind();
+		reader.beginObject();
+		while (reader.nextField()) {
+			if (reader.keyEquals("time")) {
+				final String text = reader.readText();
+				tpv.setTimestampText(text);
+				if (text != null) {
+					tpv.setTimestamp(this.parseTimestamp(text));
+				}
+			} else if (reader.keyEquals("lat")) {
+				tpv.setLatitude(reader.readDouble());
+			} else if (reader.keyEquals("lon")) {
+				tpv.setLongitude(reader.readDouble());
+			} else if (reader.keyEquals("alt")) {
+				tpv.setAltitude(reader.readDouble());
+			} else if (reader.keyEquals("mode")) {
+				mode = reader.readInt(0);
+			} else if (reader.keyEquals("device")) {
+				tpv.setDevice(reader.readText());
+			} else if (reader.keyEquals("tag")) {
+				tpv.setTag(reader.readText());
+			} else if (reader.keyEquals("ept")) {
+				tpv.setTimestampError(reader.readDouble());
+			} else if (reader.keyEquals("epx")) {
+				tpv.setLongitudeError(reader.readDouble());
+			} else if (reader.keyEquals("epy")) {
+				tpv.setLatitudeError(reader.readDouble());
+			} else if (reader.keyEquals("epv")) {
+				tpv.setAltitudeError(reader.readDouble());
+			} else if (reader.keyEquals("track")) {
+				tpv.setCourse(reader.readDouble());
+			} else if (reader.keyEquals("speed")) {
+				tpv.setSpeed(reader.readDouble());
+			} else if (reader.keyEquals("climb")) {
+				tpv.setClimbRate(reader.readDouble());
+			} else if (reader.keyEquals("epd")) {
+				tpv.setCourseError(reader.readDouble());
+			} else if (reader.keyEquals("eps")) {
+				tpv.setSpeedError(reader.readDouble());
+			} else if (reader.keyEquals("epc")) {
+				tpv.setClimbRateError(reader.readDouble());
+			} else {
+				reader.skipValue();
+			}
+		}
+		tpv.setMode(ENMEAMode.fromInt(mode));
+		return tpv;
+	}
+
+	private IGPSObject readSKY(final JSONPullReader reader) throws ParseException {
+		final SKYObject sky = new SKYObject();
+		final List<SATObject> satellites = new ArrayList<SATObject>(10);
+
+		reader.rewind();
+		reader.beginObject();
+		while (reader.nextField()) {
+			if (reader.keyEquals("satellites")) {
+				if (reader.beginArray()) {
+					while (reader.nextElement()) {
+						final SATObject sat = this.readSAT(reader);
+						if (sat == null) {
+							return null;
+						}
+						satellites.add(sat);
+					}
+				}
+			} else if (reader.keyEquals("device")) {
+				sky.setDevice(reader.readText());
+			} else if (reader.keyEquals("tag")) {
+				sky.setTag(reader.readText());
+			} else if (reader.keyEquals("time")) {
+				sky.setTimestamp(this.readTimestamp(reader));
+			} else if (reader.keyEquals("xdop")) {
+				sky.setLongitudeDOP(reader.readDouble());
+			} else if (reader.keyEquals("ydop")) {
+				sky.setLatitudeDOP(reader.readDouble());
+			} else if (reader.keyEquals("vdop")) {
+				sky.setAltitudeDOP(reader.readDouble());
+			} else if (reader.keyEquals("tdop")) {
+				sky.setTimestampDOP(reader.readDouble());
+			} else if (reader.keyEquals("hdop")) {
+				sky.setHorizontalDOP(reader.readDouble());
+			} else if (reader.keyEquals("pdop")) {
+				sky.setSphericalDOP(reader.readDouble());
+			} else if (reader.keyEquals("gdop")) {
+				sky.setHypersphericalDOP(reader.readDouble());
+			} else {
+				reader.skipValue();
+			}
+		}
+		sky.setSatellites(satellites);
+		return sky;
+	}
+
+	/**
+	 * Read one element of the SKY satellites array.
+	 *
+	 * @return the satellite or null if the element is not a plain satellite object.
+	 * The caller falls back to ResultParser in that case.
+	 */
+	private SATObject readSAT(final JSONPullReader reader) throws ParseException {
+		final SATObject sat = new SATObject();
+		boolean hasPRN = false;
+
+		reader.beginObject();
+		while (reader.nextField()) {
+			if (reader.keyEquals("PRN")) {
+				hasPRN = true;
+				sat.setPRN(reader.readInt(-1));
+			} else if (reader.keyEquals("el")) {
+				sat.setElevation(reader.readInt(-1));
+			} else if (reader.keyEquals("az")) {
+				sat.setAzimuth(reader.readInt(-1));
+			} else if (reader.keyEquals("ss")) {
+				sat.setSignalStrength(reader.readInt(-1));
+			} else if (reader.keyEquals("used")) {
+				sat.setUsed(reader.readBoolean(false));
+			} else if (reader.keyEquals("class")) {
+				return null;
+			} else {
+				reader.skipValue();
+			}
+		}
+		return hasPRN ? sat : null;
+	}
+
+	private IGPSObject readGST(final JSONPullReader reader) throws ParseException {
+		final GSTObject gst = new GSTObject();
+
+		reader.rewind();
+		reader.beginObject();
+		while (reader.nextField()) {
+			if (reader.keyEquals("device")) {
+				gst.setDevice(reader.readText());
+			} else if (reader.keyEquals("tag")) {
+				gst.setTag(reader.readText());
+			} else if (reader.keyEquals("time")) {
+				gst.setTimestamp(this.readTimestamp(reader));
+			} else if (reader.keyEquals("rms")) {
+				gst.setRms(reader.readDouble());
+			} else if (reader.keyEquals("major")) {
+				gst.setMajor(reader.readDouble());
+			} else if (reader.keyEquals("minor")) {
+				gst.setMinor(reader.readDouble());
+			} else if (reader.keyEquals("orient")) {
+				gst.setOrient(reader.readDouble());
+			} else if (reader.keyEquals("lat")) {
+				gst.setLat(reader.readDouble());
+			} else if (reader.keyEquals("lon")) {
+				gst.setLon(reader.readDouble());
+			} else if (reader.keyEquals("alt")) {
+				gst.setAlt(reader.readDouble());
+			} else {
+				reader.skipValue();
+			}
+		}
+		return gst;
+	}
+
+	private IGPSObject readATT(final JSONPullReader reader) throws ParseException {
+		final ATTObject att = new ATTObject();
+
+		reader.rewind();
+		reader.beginObject();
+		while (reader.nextField()) {
+			if (reader.keyEquals("device")) {
+				att.setDevice(reader.readText());
+			} else if (reader.keyEquals("tag")) {
+				att.setTag(reader.readText());
+			} else if (reader.keyEquals("time")) {
+				att.setTimestamp(this.readTimestamp(reader));
+			} else if (reader.keyEquals("heading")) {
+				att.setHeading(reader.readDouble());
+			} else if (reader.keyEquals("pitch")) {
+				att.setPitch(reader.readDouble());
+			} else if (reader.keyEquals("yaw")) {
+				att.setYaw(reader.readDouble());
+			} else if (reader.keyEquals("roll")) {
+				att.setRoll(reader.readDouble());
+			} else if (reader.keyEquals("dip")) {
+				att.setDip(reader.readDouble());
+			} else if (reader.keyEquals("mag_len")) {
+				att.setMag_len(reader.readDouble());
+			} else if (reader.keyEquals("mag_x")) {
+				att.setMag_x(reader.readDouble());
+			} else if (reader.keyEquals("mag_y")) {
+				att.setMag_y(reader.readDouble());
+			} else if (reader.keyEquals("mag_z")) {
+				att.setMag_z(reader.readDouble());
+			} else if (reader.keyEquals("acc_len")) {
+				att.setAcc_len(reader.readDouble());
+			} else if (reader.keyEquals("acc_x")) {
+				att.setAcc_x(reader.readDouble());
+			} else if (reader.keyEquals("acc_y")) {
+				att.setAcc_y(reader.readDouble());
+			} else if (reader.keyEquals("acc_z")) {
+				att.setAcc_z(reader.readDouble());
+			} else if (reader.keyEquals("gyro_x")) {
+				att.setGyro_x(reader.readDouble());
+			} else if (reader.keyEquals("gyro_y")) {
+				att.setGyro_y(reader.readDouble());
+			} else if (reader.keyEquals("depth")) {
+				att.setDepth(reader.readDouble());
+			} else if (reader.keyEquals("temperature")) {
+				att.setTemperature(reader.readDouble());
+			} else if (reader.keyEquals("mag_st")) {
+				att.setMagState(reader.readText());
+			} else if (reader.keyEquals("roll_st")) {
+				att.setRollState(reader.readText());
+			} else if (reader.keyEquals("pitch_st")) {
+				att.setPitchState(reader.readText());
+			} else if (reader.keyEquals("yaw_st")) {
+				att.setYawState(reader.readText());
+			} else {
+				reader.skipValue();
+			}
+		}
+		return att;
+	}
+
+	/**
+	 * Read a time field. GPSd timestamps are decoded in place without creating a String.
+	 */
+	private double readTimestamp(final JSONPullReader reader) throws ParseException {
+		final double timestamp = reader.readTimestamp(this.timestampDecoder);
+		if (!Double.isNaN(timestamp)) {
+			return timestamp;
+		}
+		final String text = reader.readText();
+		if (text == null) {
+			return Double.NaN;
+		}
+		return this.parseTimestamp(text);
+	}
+}
@@ -0,0 +1,164 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* SysfsGpioInput
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Paths;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads a GPIO through the sysfs value file, e.g. /sys/class/gpio/gpio23/value.
+ *
+ * The value file is opened once and read with a positioned read at offset 0, which is what
+ * sysfs expects; nothing is reopened per read. Where the kernel reports changes to the value
+ * file through inotify, as it does once the gpio's edge is set, a WatchService on the gpio
+ * directory wakes the wait, so a change is seen within microseconds of the notification.
+ * The wait then blocks on the notification and only samples the file once a second in case
+ * one is lost, so an idle button costs next to nothing.
+ *
+ * Without a WatchService, or when notifications are switched off for a kernel that does not
+ * send them, the file is sampled every poll interval, 25 ms by default.
+ */
+public class SysfsGpioInput implements GpioInput {
+
+	/// how often the value is sampled while waiting without notifications
+	static final long DEFAULT_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(25);
+
+	/// how often the value is sampled while waiting for a notification, in case one is lost
+	static final long FALLBACK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final FileChannel channel;
+
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(4);
+
+	private final WatchService watcher;
+
+	private volatile long pollNanos = DEFAULT_POLL_NANOS;
+
+	/**
+	 * @param sysDir the sysfs gpio directory, /sys/class/gpio on a Raspberry Pi
+	 * @param gpio   the gpio number, not the pin number
+	 * @throws IOException if the value file can not be opened, e.g. the gpio is not exported
+	 */
+	public SysfsGpioInput(final String sysDir, final int gpio) throws IOException {
+		this(sysDir, gpio, true);
+	}
+
+	/**
+	 * @param sysDir   the sysfs gpio directory, /sys/class/gpio on a Raspberry Pi
+	 * @param gpio     the gpio number, not the pin number
+	 * @param notified false to only sample the value file, for kernels that do not notify changes
+	 * @throws IOException if the value file can not be opened, e.g. the gpio is not exported
+	 */
+	public SysfsGpioInput(final String sysDir, final int gpio, final boolean notified) throws IOException {
+		final String gpioPath = sysDir + "/gpio" + gpio;
+		this.channel = new RandomAccessFile(gpioPath + "/value", "r").getChannel();
+		WatchService w = null;
+		if (notified) {
+			try {
+				w = FileSystems.getDefault().newWatchService();
+				Paths.get(gpioPath).register(w, ENTRY_MODIFY);
+			} catch (final IOException e) {
+				// sample only
+				if (w != null) {
+					w.close();
+				}
+				w = null;
+			}
+		}
+		this.watcher = w;
+	}
+
+	@Override
+	public int read() throws IOException {
+		this.buffer.clear();
+		final int n = this.channel.read(this.buffer, 0);
+		if (n <= 0) {
+			throw new IOException("GPIO value file is empty");
+		}
+		return (this.buffer.get(0) == '0') ? 0 : 1;
+	}
+
+	@Override
+	public int awaitChange(final int level, final long timeoutNanos) throws IOException, InterruptedException {
+		final long deadline = System.nanoTime() + timeoutNanos;
+		while (true) {
+			final int now = this.read();
+			if (now != level) {
+				return now;
+			}
+			final long left = deadline - System.nanoTime();
+			if (left <= 0) {
+				return level;
+			}
+			this.pause(Math.min(left, (this.watcher != null) ? FALLBACK_NANOS : this.pollNanos));
+		}
+	}
+
+	/// wait for a notification, or the sampling interval without a watcher
+	private void pause(final long nanos) throws InterruptedException {
+		if (this.watcher != null) {
+			final WatchKey key = this.watcher.poll(nanos, TimeUnit.NANOSECONDS);
+			if (key != null) {
+				key.pollEvents();
+				key.reset();
+			}
+		} else {
+			LockSupport.parkNanos(nanos);
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	/**
+	 * @param nanos how often the value is sampled while waiting without notifications. Shorter
+	 *              intervals cut the latency at the cost of CPU. Default 25 ms.
+	 */
+	public void setPollInterval(final long nanos) {
+		this.pollNanos = Math.max(1000, nanos);
+	}
+
+	/**
+	 * @return true if waits block on change notifications rather than sampling
+	 */
+	public boolean isNotified() {
+		return this.watcher != null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (this.watcher != null) {
+				this.watcher.close();
+			}
+		} finally {
+			this.channel.close();
+		}
+	}
+}
@@ -0,0 +1,398 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* TimerWheel
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A hierarchical timer wheel: one thread runs every timed task of the client, command
+ * timeouts, reconnect delays, long presses, LED transitions and journal flushes.
+ *
+ * Four wheels of 256 slots hold the timers. The first has one slot per tick (1 ms by
+ * default), each slot of the next covers a whole turn of the one below, so the wheels
+ * span 256^4 ticks. Scheduling and cancelling link or unlink a timer in a slot's list
+ * and are O(1). A timer in an outer wheel is moved inward when the wheel below reaches
+ * its slot. The thread sleeps until the next occupied slot is due, so it does not wake at
+ * all while no timer is pending and does not tick through empty slots.
+ *
+ * Tasks run on the wheel thread and must be short. Anything that blocks, e.g. connecting
+ * a socket or forcing a file, must hand the work to another thread, see IoExecutor.
+ *
+ * <pre>
+ * final TimerWheel.Timeout t = TimerWheel.getDefault().schedule(task, 5, TimeUnit.SECONDS);
+ * ...
+ * t.cancel();
+ * </pre>
+ */
+public final class TimerWheel {
+
+	private static final int WHEEL_BITS = 8;
+
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+	private static final int MASK = WHEEL_SIZE - 1;
+
+	private static final int LEVELS = 4;
+
+	/// ticks reachable from now, later deadlines wait in the last slot and are placed again
+	private static final long SPAN = 1L << (WHEEL_BITS * LEVELS);
+
+	private static final TimerWheel DEFAULT = new TimerWheel("Timer wheel", TimeUnit.MILLISECONDS.toNanos(1));
+
+	private static final int PENDING = 0;
+
+	private static final int EXPIRED = 1;
+
+	private static final int CANCELLED = 2;
+
+	private final long tickNanos;
+
+	private final long startNanos = System.nanoTime();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Timeout[][] slots = new Timeout[LEVELS][WHEEL_SIZE];
+
+	private final int[] levelCounts = new int[LEVELS];
+
+	/// every tick up to this one has been run
+	private long currentTick;
+
+	/// the tick the thread sleeps until, Long.MAX_VALUE while nothing is pending
+	private long wakeTick = Long.MAX_VALUE;
+
+	private int pending;
+
+	private volatile boolean running = true;
+
+	private final Thread thread;
+
+	/**
+	 * A wheel with a 1 ms tick and its own daemon thread.
+	 */
+	public TimerWheel() {
+		this("Timer wheel", TimeUnit.MILLISECONDS.toNanos(1));
+	}
+
+	/**
+	 * @param name      the thread name
+	 * @param tickNanos the resolution; tasks run up to one tick late, never early
+	 */
+	public TimerWheel(final String name, final long tickNanos) {
+		if (tickNanos <= 0) {
+			throw new IllegalArgumentException("tick must be positive: " + tickNanos);
+		}
+		this.tickNanos = tickNanos;
+		this.thread = new Thread(name) {
+			@Override
+			public void run() {
+				TimerWheel.this.loop();
+			}
+		};
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * @return the wheel shared by the whole client
+	 */
+	public static TimerWheel getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Run a task once after a delay.
+	 *
+	 * @param task  the task, run on the wheel thread
+	 * @param delay how long to wait
+	 * @param unit  the unit of the delay
+	 * @return the handle to cancel the task with
+	 * @throws RejectedExecutionException if the wheel was shut down
+	 */
+	public Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+		final long at = (System.nanoTime() - this.startNanos) + Math.max(0, unit.toNanos(delay));
+		final Timeout t = new Timeout(this, task);
+		this.lock.lock();
+		try {
+			if (!this.running) {
+				throw new RejectedExecutionException("TimerWheel is shut down");
+			}
+			// rounded up so a task never runs early
+			t.deadline = Math.max(this.currentTick + 1, ((at + this.tickNanos) - 1) / this.tickNanos);
+			this.insert(t);
+			this.pending++;
+			if (t.deadline < this.wakeTick) {
+				this.wakeTick = t.deadline;
+				LockSupport.unpark(this.thread);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		return t;
+	}
+
+	/// link a timer into the wheel and slot its deadline falls in, relative to currentTick
+	private void insert(final Timeout t) {
+		final long delta = Math.min(t.deadline - this.currentTick, SPAN - 1);
+		int level = 0;
+		while ((level < (LEVELS - 1)) && (delta >= (1L << (WHEEL_BITS * (level + 1))))) {
+			level++;
+		}
+		final long placed = this.currentTick + delta;
+		final int slot = (int) ((placed >>> (WHEEL_BITS * level)) & MASK);
+		t.level = level;
+		t.slot = slot;
+		t.prev = null;
+		t.next = this.slots[level][slot];
+		if (t.next != null) {
+			t.next.prev = t;
+		}
+		this.slots[level][slot] = t;
+		this.levelCounts[level]++;
+	}
+
+	private void unlink(final Timeout t) {
+		if (t.prev != null) {
+			t.prev.next = t.next;
+		} else {
+			this.slots[t.level][t.slot] = t.next;
+		}
+		if (t.next != null) {
+			t.next.prev = t.prev;
+		}
+		t.prev = null;
+		t.next = null;
+		this.levelCounts[t.level]--;
+	}
+
+	private boolean cancel(final Timeout t) {
+		this.lock.lock();
+		try {
+			if (t.state != PENDING) {
+				return false;
+			}
+			this.unlink(t);
+			this.pending--;
+			t.state = CANCELLED;
+			// the thread may wake for nothing once, it recomputes its wake tick then
+			return true;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void loop() {
+		final ArrayList<Timeout> due = new ArrayList<Timeout>();
+		while (this.running) {
+			long sleepUntil;
+			this.lock.lock();
+			try {
+				final long nowTick = (System.nanoTime() - this.startNanos) / this.tickNanos;
+				while (this.currentTick < nowTick) {
+					final long next = this.nextWorkTick();
+					if (next > nowTick) {
+						this.currentTick = nowTick;
+						break;
+					}
+					this.currentTick = next;
+					this.advance(due);
+				}
+				this.wakeTick = this.nextWorkTick();
+				sleepUntil = this.wakeTick;
+			} finally {
+				this.lock.unlock();
+			}
+
+			if (!due.isEmpty()) {
+				for (int i = 0; i < due.size(); i++) {
+					try {
+						due.get(i).task.run();
+					} catch (final Throwable e) {
+						System.err.println("WARNING: TimerWheel - Problem encountered running a timer task " + e);
+					}
+				}
+				due.clear();
+				continue; // the tasks may have scheduled more
+			}
+
+			if (sleepUntil == Long.MAX_VALUE) {
+				LockSupport.park(this);
+			} else {
+				final long nanos = (this.startNanos + (sleepUntil * this.tickNanos)) - System.nanoTime();
+				if (nanos > 0) {
+					LockSupport.parkNanos(this, nanos);
+				}
+			}
+		}
+	}
+
+	/// the first tick after currentTick that expires a slot or moves timers inward
+	private long nextWorkTick() {
+		if (this.pending == 0) {
+			return Long.MAX_VALUE;
+		}
+		long best = Long.MAX_VALUE;
+		if (this.levelCounts[0] > 0) {
+			for (int k = 1; k < WHEEL_SIZE; k++) {
+				if (this.slots[0][(int) ((this.currentTick + k) & MASK)] != null) {
+					best = this.currentTick + k;
+					break;
+				}
+			}
+		}
+		for (int level = 1; level < LEVELS; level++) {
+			if (this.levelCounts[level] == 0) {
+				continue;
+			}
+			final int shift = WHEEL_BITS * level;
+			final long turn = this.currentTick >>> shift;
+			for (int k = 1; k <= WHEEL_SIZE; k++) {
+				if (this.slots[level][(int) ((turn + k) & MASK)] != null) {
+					best = Math.min(best, (turn + k) << shift);
+					break;
+				}
+			}
+		}
+		return best;
+	}
+
+	/// run the work of currentTick: move outer timers inward, then take the due ones
+	private void advance(final ArrayList<Timeout> due) {
+		final long tick = this.currentTick;
+		for (int level = LEVELS - 1; level > 0; level--) {
+			final int shift = WHEEL_BITS * level;
+			if ((tick & ((1L << shift) - 1)) == 0) {
+				final int slot = (int) ((tick >>> shift) & MASK);
+				Timeout t = this.slots[level][slot];
+				this.slots[level][slot] = null;
+				while (t != null) {
+					final Timeout next = t.next;
+					this.levelCounts[level]--;
+					this.insert(t);
+					t = next;
+				}
+			}
+		}
+		final int slot = (int) (tick & MASK);
+		Timeout t = this.slots[0][slot];
+		this.slots[0][slot] = null;
+		while (t != null) {
+			final Timeout next = t.next;
+			this.levelCounts[0]--;
+			t.prev = null;
+			t.next = null;
+			if (t.deadline > tick) {
+				this.insert(t); // not reachable by slot arithmetic, kept as a guard
+			} else {
+				t.state = EXPIRED;
+				this.pending--;
+				due.add(t);
+			}
+			t = next;
+		}
+	}
+
+	/**
+	 * @return the number of timers waiting
+	 */
+	public int getPending() {
+		this.lock.lock();
+		try {
+			return this.pending;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Stop the thread. Pending tasks are dropped and new ones rejected.
+	 */
+	public void shutdown() {
+		this.lock.lock();
+		try {
+			this.running = false;
+		} finally {
+			this.lock.unlock();
+		}
+		LockSupport.unpark(this.thread);
+	}
+
+	/**
+	 * A scheduled task.
+	 */
+	public static final class Timeout {
+
+		private final TimerWheel wheel;
+
+		final Runnable task;
+
+		/// guarded by the wheel lock
+		long deadline;
+
+		int level;
+
+		int slot;
+
+		Timeout prev;
+
+		Timeout next;
+
+		int state = PENDING;
+
+		Timeout(final TimerWheel wheel, final Runnable task) {
+			this.wheel = wheel;
+			this.task = task;
+		}
+
+		/**
+		 * @return true if the task will not run, false if it already ran, is running or was cancelled before
+		 */
+		public boolean cancel() {
+			return this.wheel.cancel(this);
+		}
+
+		/**
+		 * @return true once the task was taken to run
+		 */
+		public boolean isExpired() {
+			this.wheel.lock.lock();
+			try {
+				return this.state == EXPIRED;
+			} finally {
+				this.wheel.lock.unlock();
+			}
+		}
+
+		/**
+		 * @return true if the task was cancelled before it ran
+		 */
+		public boolean isCancelled() {
+			this.wheel.lock.lock();
+			try {
+				return this.state == CANCELLED;
+			} finally {
+				this.wheel.lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* TimestampDecoder
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+/**
+ * Decode the ISO-8601 UTC timestamps sent by GPSd into seconds since the Unix epoch.
+ *
+ * GPSd always sends time as &quot;yyyy-MM-dd'T'HH:mm:ss.SSS'Z'&quot;. The number of fractional
+ * digits depends on the receiver and may be missing altogether. The fraction is decoded as a
+ * decimal fraction of a second, i.e. &quot;.5&quot; is half a second.
+ *
+ * Consecutive reports almost always fall on the same UTC day. The epoch seconds of the start
+ * of the last decoded day are cached so only the time of day has to be computed. The cache is a
+ * single volatile long so the decoder can be shared between threads without locking and
+ * without allocating.
+ */
+public final class TimestampDecoder {
+
+	private static final long SECONDS_PER_DAY = 86400L;
+
+	private static final long[] POW10 = {
+		1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+	};
+
+	/// maximum number of fractional digits used. Anything past nanoseconds is ignored.
+	private static final int MAX_FRACTION_DIGITS = 9;
+
+	/// the last decoded date (yyyyMMdd) in the upper 32 bits and its epoch day in the lower 32 bits
+	private volatile long cachedDay = -1L;
+
+	/**
+	 * @param text the timestamp text
+	 * @return seconds since the Unix epoch or NaN if text is not a GPSd timestamp
+	 */
+	public double decode(final CharSequence text) {
+		return this.decode(text, 0, text.length());
+	}
+
+	/**
+	 * Decode the timestamp held in part of a character sequence.
+	 *
+	 * @param text  the characters holding the timestamp
+	 * @param start index of the first character of the timestamp
+	 * @param end   index after the last character of the timestamp
+	 * @return seconds since the Unix epoch or NaN if the characters are not a GPSd timestamp
+	 */
+	public double decode(final CharSequence text, final int start, final int end) {
+		// shortest form is yyyy-MM-ddTHH:mm:ssZ
+		if (((end - start) < 20) || (text.charAt(end - 1) != 'Z')) {
+			return Double.NaN;
+		}
+		final int year = digits(text, start, 4);
+		final int month = digits(text, start + 5, 2);
+		final int day = digits(text, start + 8, 2);
+		final int hour = digits(text, start + 11, 2);
+		final int minute = digits(text, start + 14, 2);
+		final int second = digits(text, start + 17, 2);
+		if ((year < 0) || (month < 1) || (month > 12) || (day < 1) || (day > 31)
+				|| (hour < 0) || (hour > 23) || (minute < 0) || (minute > 59) || (second < 0) || (second > 60)) {
+			return Double.NaN;
+		}
+		if ((text.charAt(start + 4) != '-') || (text.charAt(start + 7) != '-') || (text.charAt(start + 10) != 'T')
+				|| (text.charAt(start + 13) != ':') || (text.charAt(start + 16) != ':')) {
+			return Double.NaN;
+		}
+
+		long fraction = 0;
+		int fractionDigits = 0;
+		int i = start + 19;
+		if (i < (end - 1)) {
+			if (text.charAt(i) != '.') {
+				return Double.NaN;
+			}
+			i++;
+			if (i == (end - 1)) {
+				return Double.NaN;
+			}
+			for (; i < (end - 1); i++) {
+				final char c = text.charAt(i);
+				if ((c < '0') || (c > '9')) {
+					return Double.NaN;
+				}
+				if (fractionDigits < MAX_FRACTION_DIGITS) {
+					fraction = (fraction * 10) + (c - '0');
+					fractionDigits++;
+				}
+			}
+		}
+
+		final long seconds = (this.epochDay(year, month, day) * SECONDS_PER_DAY) + (hour * 3600L) + (minute * 60L) + second;
+		if (fractionDigits == 0) {
+			return seconds;
+		}
+		final long scale = POW10[fractionDigits];
+		return ((seconds * scale) + fraction) / (double) scale;
+	}
+
+	/**
+	 * @return days since 1970-01-01 for a date, served from the cache when the date repeats
+	 */
+	private long epochDay(final int year, final int month, final int day) {
+		final long key = (year * 10000L) + (month * 100L) + day;
+		final long cached = this.cachedDay;
+		if ((cached >>> 32) == key) {
+			return (int) cached;
+		}
+		final long epochDay = daysFromCivil(year, month, day);
+		this.cachedDay = (key << 32) | (epochDay & 0xFFFFFFFFL);
+		return epochDay;
+	}
+
+	/**
+	 * Days since 1970-01-01 in the proleptic Gregorian calendar.
+	 * Days past the end of a month roll into the next month like a lenient Calendar.
+	 */
+	static long daysFromCivil(final int year, final int month, final int day) {
+		final int y = (month <= 2) ? year - 1 : year;
+		final int era = ((y >= 0) ? y : y - 399) / 400;
+		final int yearOfEra = y - (era * 400);
+		final int dayOfYear = ((153 * (month + ((month > 2) ? -3 : 9))) + 2) / 5 + (day - 1);
+		final int dayOfEra = (yearOfEra * 365) + (yearOfEra / 4) - (yearOfEra / 100) + dayOfYear;
+		return (era * 146097L) + dayOfEra - 719468L;
+	}
+
+	/// @return the value of count decimal digits or -1 if any is not a digit
+	private static int digits(final CharSequence text, final int start, final int count) {
+		int value = 0;
+		for (int i = start; i < (start + count); i++) {
+			final char c = text.charAt(i);
+			if ((c < '0') || (c > '9')) {
+				return -1;
+			}
+			value = (value * 10) + (c - '0');
+		}
+		return value;
+	}
+}
@@ -0,0 +1,469 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* TrackBuffer
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.traviscons.GPSTrackPoints.types.ENMEAMode;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * An in-memory track that stores fixes column by column in primitive arrays.
+ *
+ * A TPVObject costs well over 150 bytes once the object headers, the two Strings and the
+ * duplicate timestamp text are counted. Here a fix costs 69 bytes: six doubles (time, lat,
+ * lon, alt, speed and track), four floats for the errors (ept, epx, epy, epv), the mode as a
+ * byte and an int index into a table of device names. A day of 10 Hz fixes fits in about 60 MB.
+ *
+ * Fixes are appended either from a TPVObject, from primitives or straight from a GPSd line with
+ * {@link StreamingResultParser#appendTPV(CharSequence, TrackBuffer)} without creating a TPVObject.
+ * They are read back through a {@link Cursor}, a reusable view on one row, or through the
+ * column arrays which can be handed directly to {@link GeodesicEngine}.
+ *
+ * Missing values are NaN like they are in TPVObject. The buffer is not thread safe. One thread
+ * appends, readers must synchronize with it.
+ */
+public final class TrackBuffer {
+
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	private int size;
+
+	private double[] time;
+
+	private double[] lat;
+
+	private double[] lon;
+
+	private double[] alt;
+
+	private double[] speed;
+
+	private double[] track;
+
+	private float[] ept;
+
+	private float[] epx;
+
+	private float[] epy;
+
+	private float[] epv;
+
+	private byte[] mode;
+
+	private int[] device;
+
+	/// device names by id, id -1 is a fix without a device
+	private String[] devices = new String[4];
+
+	private int deviceCount;
+
+	private final Map<String, Integer> deviceIds = new HashMap<String, Integer>();
+
+	/**
+	 * A buffer with room for 1024 fixes before it grows.
+	 */
+	public TrackBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity the number of fixes to allocate room for
+	 */
+	public TrackBuffer(final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive!");
+		}
+		this.allocate(capacity);
+	}
+
+	private void allocate(final int capacity) {
+		this.time = new double[capacity];
+		this.lat = new double[capacity];
+		this.lon = new double[capacity];
+		this.alt = new double[capacity];
+		this.speed = new double[capacity];
+		this.track = new double[capacity];
+		this.ept = new float[capacity];
+		this.epx = new float[capacity];
+		this.epy = new float[capacity];
+		this.epv = new float[capacity];
+		this.mode = new byte[capacity];
+		this.device = new int[capacity];
+	}
+
+	/**
+	 * Grow every column by half so appends are amortized constant time.
+	 */
+	private void grow(final int minCapacity) {
+		final int old = this.time.length;
+		int capacity = old + (old >> 1) + 1;
+		if (capacity < minCapacity) {
+			capacity = minCapacity;
+		}
+		this.resize(capacity);
+	}
+
+	private void resize(final int capacity) {
+		this.time = Arrays.copyOf(this.time, capacity);
+		this.lat = Arrays.copyOf(this.lat, capacity);
+		this.lon = Arrays.copyOf(this.lon, capacity);
+		this.alt = Arrays.copyOf(this.alt, capacity);
+		this.speed = Arrays.copyOf(this.speed, capacity);
+		this.track = Arrays.copyOf(this.track, capacity);
+		this.ept = Arrays.copyOf(this.ept, capacity);
+		this.epx = Arrays.copyOf(this.epx, capacity);
+		this.epy = Arrays.copyOf(this.epy, capacity);
+		this.epv = Arrays.copyOf(this.epv, capacity);
+		this.mode = Arrays.copyOf(this.mode, capacity);
+		this.device = Arrays.copyOf(this.device, capacity);
+	}
+
+	/**
+	 * Append a fix.
+	 *
+	 * @param time   seconds since the epoch
+	 * @param lat    latitude in degrees
+	 * @param lon    longitude in degrees
+	 * @param alt    altitude in meters
+	 * @param speed  speed over ground in meters per second
+	 * @param track  course over ground in degrees from true north
+	 * @param ept    timestamp error in seconds
+	 * @param epx    longitude error in meters
+	 * @param epy    latitude error in meters
+	 * @param epv    altitude error in meters
+	 * @param mode   the NMEA mode, 0 to 3
+	 * @param device the device that reported the fix or null
+	 * @return the index of the new fix
+	 */
+	public int append(final double time, final double lat, final double lon, final double alt, final double speed,
+			final double track, final double ept, final double epx, final double epy, final double epv, final int mode,
+			final String device) {
+		return this.append(time, lat, lon, alt, speed, track, ept, epx, epy, epv, mode, this.intern(device));
+	}
+
+	/**
+	 * Append a fix with a device id returned by {@link #intern(String)}.
+	 *
+	 * @return the index of the new fix
+	 */
+	int append(final double time, final double lat, final double lon, final double alt, final double speed,
+			final double track, final double ept, final double epx, final double epy, final double epv, final int mode,
+			final int deviceId) {
+		final int i = this.size;
+		if (i == this.time.length) {
+			this.grow(i + 1);
+		}
+		this.time[i] = time;
+		this.lat[i] = lat;
+		this.lon[i] = lon;
+		this.alt[i] = alt;
+		this.speed[i] = speed;
+		this.track[i] = track;
+		this.ept[i] = (float) ept;
+		this.epx[i] = (float) epx;
+		this.epy[i] = (float) epy;
+		this.epv[i] = (float) epv;
+		this.mode[i] = (byte) mode;
+		this.device[i] = deviceId;
+		this.size = i + 1;
+		return i;
+	}
+
+	/**
+	 * Append the fix in a TPVObject. Climb rate and the course, speed and climb errors are
+	 * not stored.
+	 *
+	 * @param tpv the fix
+	 * @return the index of the new fix
+	 */
+	public int append(final TPVObject tpv) {
+		final ENMEAMode m = tpv.getMode();
+		return this.append(tpv.getTimestamp(), tpv.getLatitude(), tpv.getLongitude(), tpv.getAltitude(),
+				tpv.getSpeed(), tpv.getCourse(), tpv.getTimestampError(), tpv.getLongitudeError(),
+				tpv.getLatitudeError(), tpv.getAltitudeError(), (m == null) ? 0 : m.ordinal(), tpv.getDevice());
+	}
+
+	/**
+	 * Look up the id of a device name, adding it to the table if it is new.
+	 *
+	 * @param name the device name or null
+	 * @return the id, -1 for null
+	 */
+	public int intern(final String name) {
+		if (name == null) {
+			return -1;
+		}
+		final Integer id = this.deviceIds.get(name);
+		if (id != null) {
+			return id.intValue();
+		}
+		if (this.deviceCount == this.devices.length) {
+			this.devices = Arrays.copyOf(this.devices, this.deviceCount * 2);
+		}
+		this.devices[this.deviceCount] = name;
+		this.deviceIds.put(name, Integer.valueOf(this.deviceCount));
+		return this.deviceCount++;
+	}
+
+	/**
+	 * @param id a device id
+	 * @return the device name or null for -1
+	 */
+	public String deviceName(final int id) {
+		if (id < 0) {
+			return null;
+		}
+		if (id >= this.deviceCount) {
+			throw new IndexOutOfBoundsException("no device " + id);
+		}
+		return this.devices[id];
+	}
+
+	/**
+	 * @return the number of distinct devices seen
+	 */
+	public int getDeviceCount() {
+		return this.deviceCount;
+	}
+
+	/**
+	 * @return the number of fixes
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the number of fixes that fit before the columns grow
+	 */
+	public int capacity() {
+		return this.time.length;
+	}
+
+	/**
+	 * Forget all fixes. The columns and the device table are kept.
+	 */
+	public void clear() {
+		this.size = 0;
+	}
+
+	/**
+	 * Shrink the columns to the number of fixes, e.g. once a track is complete.
+	 */
+	public void trimToSize() {
+		if (this.time.length > this.size) {
+			this.resize(Math.max(this.size, 1));
+		}
+	}
+
+	/**
+	 * The latitude column. It is the live array, valid up to {@link #size()} and only until the
+	 * next append, which may replace it. Use it to hand the track to {@link GeodesicEngine}.
+	 *
+	 * @return the latitudes in degrees
+	 */
+	public double[] latitudes() {
+		return this.lat;
+	}
+
+	/**
+	 * The longitude column, see {@link #latitudes()}.
+	 *
+	 * @return the longitudes in degrees
+	 */
+	public double[] longitudes() {
+		return this.lon;
+	}
+
+	/**
+	 * The time column, see {@link #latitudes()}.
+	 *
+	 * @return the timestamps in seconds since the epoch
+	 */
+	public double[] times() {
+		return this.time;
+	}
+
+	/**
+	 * @param engine the engine to measure with
+	 * @return the length of the whole track in meters
+	 */
+	public double length(final GeodesicEngine engine) {
+		return engine.length(this.lat, this.lon, this.size);
+	}
+
+	private void check(final int index) {
+		if ((index < 0) || (index >= this.size)) {
+			throw new IndexOutOfBoundsException("index " + index + " size " + this.size);
+		}
+	}
+
+	/**
+	 * Copy one fix into a new TPVObject, e.g. to pass it to code that works on TPVObjects.
+	 *
+	 * @param index the fix
+	 * @return a new TPVObject
+	 */
+	public TPVObject toTPV(final int index) {
+		this.check(index);
+		final TPVObject tpv = new TPVObject();
+		tpv.setTimestamp(this.time[index]);
+		tpv.setLatitude(this.lat[index]);
+		tpv.setLongitude(this.lon[index]);
+		tpv.setAltitude(this.alt[index]);
+		tpv.setSpeed(this.speed[index]);
+		tpv.setCourse(this.track[index]);
+		tpv.setTimestampError(this.ept[index]);
+		tpv.setLongitudeError(this.epx[index]);
+		tpv.setLatitudeError(this.epy[index]);
+		tpv.setAltitudeError(this.epv[index]);
+		tpv.setMode(ENMEAMode.fromInt(this.mode[index]));
+		tpv.setDevice(this.deviceName(this.device[index]));
+		return tpv;
+	}
+
+	/**
+	 * @return a cursor positioned before the first fix
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * A movable view on one fix of the buffer. One cursor can walk the whole track without
+	 * creating an object per fix.
+	 *
+	 * <pre>
+	 * final TrackBuffer.Cursor c = buffer.cursor();
+	 * while (c.next()) {
+	 * 	sum += c.getSpeed();
+	 * }
+	 * </pre>
+	 */
+	public final class Cursor {
+
+		private int index = -1;
+
+		Cursor() {
+			//
+		}
+
+		/**
+		 * Move to the next fix.
+		 *
+		 * @return false if there are no more fixes
+		 */
+		public boolean next() {
+			if ((this.index + 1) >= TrackBuffer.this.size) {
+				this.index = TrackBuffer.this.size;
+				return false;
+			}
+			this.index++;
+			return true;
+		}
+
+		/**
+		 * @param index the fix to move to
+		 * @return this cursor
+		 */
+		public Cursor moveTo(final int index) {
+			TrackBuffer.this.check(index);
+			this.index = index;
+			return this;
+		}
+
+		/**
+		 * Go back to before the first fix.
+		 */
+		public void reset() {
+			this.index = -1;
+		}
+
+		/**
+		 * @return the index of the current fix
+		 */
+		public int getIndex() {
+			return this.index;
+		}
+
+		public double getTimestamp() {
+			return TrackBuffer.this.time[this.index];
+		}
+
+		public double getLatitude() {
+			return TrackBuffer.this.lat[this.index];
+		}
+
+		public double getLongitude() {
+			return TrackBuffer.this.lon[this.index];
+		}
+
+		public double getAltitude() {
+			return TrackBuffer.this.alt[this.index];
+		}
+
+		public double getSpeed() {
+			return TrackBuffer.this.speed[this.index];
+		}
+
+		public double getCourse() {
+			return TrackBuffer.this.track[this.index];
+		}
+
+		public double getTimestampError() {
+			return TrackBuffer.this.ept[this.index];
+		}
+
+		public double getLongitudeError() {
+			return TrackBuffer.this.epx[this.index];
+		}
+
+		public double getLatitudeError() {
+			return TrackBuffer.this.epy[this.index];
+		}
+
+		public double getAltitudeError() {
+			return TrackBuffer.this.epv[this.index];
+		}
+
+		public ENMEAMode getMode() {
+			return ENMEAMode.fromInt(TrackBuffer.this.mode[this.index]);
+		}
+
+		/**
+		 * @return the id of the device, see {@link TrackBuffer#deviceName(int)}
+		 */
+		public int getDeviceId() {
+			return TrackBuffer.this.device[this.index];
+		}
+
+		public String getDevice() {
+			return TrackBuffer.this.deviceName(TrackBuffer.this.device[this.index]);
+		}
+
+		/**
+		 * @return a new TPVObject with the current fix
+		 */
+		public TPVObject toTPV() {
+			return TrackBuffer.this.toTPV(this.index);
+		}
+	}
+}
@@ -0,0 +1,571 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* TrackJournal
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import com.traviscons.GPSTrackPoints.api.IObjectListener;
+import com.traviscons.GPSTrackPoints.types.ENMEAMode;
+import com.traviscons.GPSTrackPoints.types.SATObject;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * A crash safe binary journal of TPV and SKY reports, written through a memory mapped file.
+ *
+ * The file starts with a 32 byte header followed by fixed size blocks. Each block has a
+ * 16 byte header with the number of records in the block and the CRC32 of those records,
+ * followed by room for 64 records of 64 bytes each. Records are written straight into the
+ * mapping. A block is committed, i.e. its count and checksum are updated and the mapping is
+ * forced to the storage device, when it is full, when the flush interval has passed and on
+ * {@link #flush()} and {@link #close()}. The flush interval is also kept by a timer on the
+ * shared {@link TimerWheel}, so records are committed when the reports stop coming too.
+ * The timer hands the commit to the journal's own thread; forcing the mapping can block.
+ * A power cut therefore loses at most the records appended since the last commit. A torn or never committed block fails its checksum and
+ * ends the journal when it is read back.
+ *
+ * Three record types are written:
+ * <ul>
+ * <li>TPV: time, lat, lon and alt as doubles, track, speed, climb and the errors as floats, and the mode</li>
+ * <li>SKY: time and the seven DOPs as floats, the number of satellites seen and used</li>
+ * <li>DEVICE: the name of a device, written once before the first report that refers to its id</li>
+ * </ul>
+ * The satellite list of a SKY report is not kept.
+ *
+ * {@link #replay(String, IObjectListener)} reads a journal back as TPVObjects and SKYObjects,
+ * and {@link JournalExporter} converts a journal to GPX.
+ */
+public final class TrackJournal implements Closeable {
+
+	/// "GPSJ"
+	static final int MAGIC = 0x4750534A;
+
+	static final short VERSION = 1;
+
+	static final int FILE_HEADER = 32;
+
+	static final int BLOCK_HEADER = 16;
+
+	static final int RECORD_SIZE = 64;
+
+	static final int RECORDS_PER_BLOCK = 64;
+
+	static final int BLOCK_SIZE = BLOCK_HEADER + (RECORDS_PER_BLOCK * RECORD_SIZE);
+
+	static final byte TPV = 1;
+
+	static final byte SKY = 2;
+
+	static final byte DEVICE = 3;
+
+	/// longest device name kept, in UTF-8 bytes
+	private static final int MAX_NAME = RECORD_SIZE - 4;
+
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+			.withZone(ZoneOffset.UTC);
+
+	private final FileChannel channel;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/// blocks per mapped window
+	private final int windowBlocks;
+
+	private MappedByteBuffer window;
+
+	/// first block of the current window
+	private long windowStart;
+
+	/// current block, counted from the start of the file
+	private long block;
+
+	/// records in the current block
+	private int count;
+
+	/// records in the current block at the last commit
+	private int committed;
+
+	private final CRC32 crc = new CRC32();
+
+	private final Map<String, Integer> deviceIds = new HashMap<String, Integer>();
+
+	private long flushIntervalMillis = 1000;
+
+	private long lastCommit = System.currentTimeMillis();
+
+	private long records;
+
+	private boolean closed;
+
+	/// commits the records left uncommitted when no further append does
+	private TimerWheel.Timeout flushTimer;
+
+	/// runs the timed commits off the wheel thread
+	private final ThreadPoolExecutor io = IoExecutor.create("TrackJournal");
+
+	private final Runnable timedFlush = new Runnable() {
+		@Override
+		public void run() {
+			TrackJournal.this.timedFlush();
+		}
+	};
+
+	/**
+	 * Create the journal, replacing an existing file.
+	 *
+	 * @param filename the journal file
+	 * @throws IOException if the file can not be created
+	 */
+	public TrackJournal(final String filename) throws IOException {
+		this(filename, 256);
+	}
+
+	/**
+	 * @param filename     the journal file
+	 * @param windowBlocks number of 4 kB blocks mapped at a time
+	 * @throws IOException if the file can not be created
+	 */
+	public TrackJournal(final String filename, final int windowBlocks) throws IOException {
+		if ((filename == null) || filename.isEmpty()) {
+			throw new IllegalArgumentException("filename can not be empty!");
+		}
+		if (windowBlocks < 1) {
+			throw new IllegalArgumentException("windowBlocks must be positive: " + windowBlocks);
+		}
+		this.windowBlocks = windowBlocks;
+		this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+		final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+		header.putInt(MAGIC);
+		header.putShort(VERSION);
+		header.putShort((short) RECORD_SIZE);
+		header.putInt(RECORDS_PER_BLOCK);
+		header.putLong(System.currentTimeMillis());
+		header.flip();
+		this.channel.write(header, 0);
+		this.channel.force(true);
+		this.map(0);
+	}
+
+	private static long blockOffset(final long block) {
+		return FILE_HEADER + (block * BLOCK_SIZE);
+	}
+
+	/// map the window starting at a block, growing the file as needed
+	private void map(final long firstBlock) throws IOException {
+		this.window = this.channel.map(FileChannel.MapMode.READ_WRITE, blockOffset(firstBlock),
+				(long) this.windowBlocks * BLOCK_SIZE);
+		this.windowStart = firstBlock;
+	}
+
+	/**
+	 * Append the fix in a TPV report.
+	 *
+	 * @param tpv the report
+	 * @throws IOException on write errors
+	 */
+	public void append(final TPVObject tpv) throws IOException {
+		this.lock.lock();
+		try {
+			final int device = this.deviceId(tpv.getDevice());
+			final int p = this.startRecord(TPV);
+			final ENMEAMode mode = tpv.getMode();
+			this.window.put(p + 1, (byte) ((mode == null) ? 0 : mode.ordinal()));
+			this.window.putShort(p + 2, (short) device);
+			this.window.putFloat(p + 4, (float) tpv.getTimestampError());
+			this.window.putDouble(p + 8, tpv.getTimestamp());
+			this.window.putDouble(p + 16, tpv.getLatitude());
+			this.window.putDouble(p + 24, tpv.getLongitude());
+			this.window.putDouble(p + 32, tpv.getAltitude());
+			this.window.putFloat(p + 40, (float) tpv.getCourse());
+			this.window.putFloat(p + 44, (float) tpv.getSpeed());
+			this.window.putFloat(p + 48, (float) tpv.getClimbRate());
+			this.window.putFloat(p + 52, (float) tpv.getLongitudeError());
+			this.window.putFloat(p + 56, (float) tpv.getLatitudeError());
+			this.window.putFloat(p + 60, (float) tpv.getAltitudeError());
+			this.endRecord(p);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Append the DOPs and satellite counts of a SKY report.
+	 *
+	 * @param sky the report
+	 * @throws IOException on write errors
+	 */
+	public void append(final SKYObject sky) throws IOException {
+		this.lock.lock();
+		try {
+			final int device = this.deviceId(sky.getDevice());
+			int seen = 0;
+			int used = 0;
+			if (sky.getSatellites() != null) {
+				for (final SATObject sat : sky.getSatellites()) {
+					seen++;
+					if (sat.getUsed()) {
+						used++;
+					}
+				}
+			}
+			final int p = this.startRecord(SKY);
+			this.window.put(p + 1, (byte) Math.min(used, 255));
+			this.window.putShort(p + 2, (short) device);
+			this.window.put(p + 4, (byte) Math.min(seen, 255));
+			this.window.putDouble(p + 8, sky.getTimestamp());
+			this.window.putFloat(p + 16, (float) sky.getLongitudeDOP());
+			this.window.putFloat(p + 20, (float) sky.getLatitudeDOP());
+			this.window.putFloat(p + 24, (float) sky.getAltitudeDOP());
+			this.window.putFloat(p + 28, (float) sky.getTimestampDOP());
+			this.window.putFloat(p + 32, (float) sky.getHorizontalDOP());
+			this.window.putFloat(p + 36, (float) sky.getSphericalDOP());
+			this.window.putFloat(p + 40, (float) sky.getHypersphericalDOP());
+			this.endRecord(p);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/// id of a device, writing a DEVICE record the first time it is seen. -1 for none.
+	private int deviceId(final String name) throws IOException {
+		if (name == null) {
+			return -1;
+		}
+		final Integer id = this.deviceIds.get(name);
+		if (id != null) {
+			return id.intValue();
+		}
+		final int newId = this.deviceIds.size();
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > MAX_NAME) {
+			bytes = Arrays.copyOf(bytes, MAX_NAME);
+		}
+		final int p = this.startRecord(DEVICE);
+		this.window.put(p + 1, (byte) bytes.length);
+		this.window.putShort(p + 2, (short) newId);
+		for (int i = 0; i < bytes.length; i++) {
+			this.window.put(p + 4 + i, bytes[i]);
+		}
+		this.endRecord(p);
+		this.deviceIds.put(name, Integer.valueOf(newId));
+		return newId;
+	}
+
+	/// position of the next record in the window, cleared and tagged with its type
+	private int startRecord(final byte type) throws IOException {
+		if (this.closed) {
+			throw new IOException("TrackJournal is closed");
+		}
+		final int p = (int) (((this.block - this.windowStart) * BLOCK_SIZE) + BLOCK_HEADER + (this.count * RECORD_SIZE));
+		for (int i = 0; i < RECORD_SIZE; i += 8) {
+			this.window.putLong(p + i, 0L);
+		}
+		this.window.put(p, type);
+		return p;
+	}
+
+	private void endRecord(final int p) throws IOException {
+		for (int i = 0; i < RECORD_SIZE; i++) {
+			this.crc.update(this.window.get(p + i));
+		}
+		this.count++;
+		this.records++;
+		if (this.count == RECORDS_PER_BLOCK) {
+			this.commit();
+			this.nextBlock();
+		} else if ((this.flushIntervalMillis > 0)
+				&& ((System.currentTimeMillis() - this.lastCommit) >= this.flushIntervalMillis)) {
+			this.commit();
+		} else if ((this.flushIntervalMillis > 0) && (this.flushTimer == null)) {
+			this.armFlush(this.flushIntervalMillis - (System.currentTimeMillis() - this.lastCommit));
+		}
+	}
+
+	/// called with the lock held
+	private void armFlush(final long millis) {
+		try {
+			this.flushTimer = TimerWheel.getDefault().schedule(new Runnable() {
+				@Override
+				public void run() {
+					// the wheel thread must not wait for the storage device
+					try {
+						TrackJournal.this.io.execute(TrackJournal.this.timedFlush);
+					} catch (final RejectedExecutionException e) {
+						// closed meanwhile, close() committed everything
+					}
+				}
+			}, millis, TimeUnit.MILLISECONDS);
+		} catch (final RejectedExecutionException e) {
+			// the wheel was shut down, appends still commit on their own
+		}
+	}
+
+	/// on the journal's own thread. A commit forces at most one partly filled block.
+	private void timedFlush() {
+		this.lock.lock();
+		try {
+			this.flushTimer = null;
+			if (!this.closed && (this.count != this.committed)) {
+				this.commit();
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Write the count and checksum of the current block in one store, then force the mapping.
+	 * A later commit of the same block overwrites them with the larger count.
+	 */
+	private void commit() {
+		if (this.count != this.committed) {
+			final int p = (int) ((this.block - this.windowStart) * BLOCK_SIZE);
+			this.window.putLong(p, ((long) this.count << 32) | this.crc.getValue());
+			this.window.force();
+			this.committed = this.count;
+		}
+		this.lastCommit = System.currentTimeMillis();
+	}
+
+	private void nextBlock() throws IOException {
+		this.block++;
+		this.count = 0;
+		this.committed = 0;
+		this.crc.reset();
+		if ((this.block - this.windowStart) == this.windowBlocks) {
+			this.map(this.block);
+		}
+	}
+
+	/**
+	 * Commit the records appended so far and force them to the storage device.
+	 *
+	 * @throws IOException if the journal is closed
+	 */
+	public void flush() throws IOException {
+		this.lock.lock();
+		try {
+			if (this.closed) {
+				throw new IOException("TrackJournal is closed");
+			}
+			this.commit();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Commit the last records, cut the file after the last used block and close it.
+	 * Closing twice does nothing.
+	 *
+	 * @throws IOException on write errors
+	 */
+	@Override
+	public void close() throws IOException {
+		this.lock.lock();
+		try {
+			if (this.closed) {
+				return;
+			}
+			this.commit();
+			this.closed = true;
+			if (this.flushTimer != null) {
+				this.flushTimer.cancel();
+				this.flushTimer = null;
+			}
+			this.io.shutdown();
+			final long used = (this.count > 0) ? this.block + 1 : this.block;
+			this.window = null;
+			try {
+				this.channel.truncate(blockOffset(used));
+			} catch (final IOException e) {
+				// some platforms refuse while the mapping is alive, the reader stops at the first empty block
+			}
+			this.channel.force(true);
+			this.channel.close();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @param millis commit a partly filled block once this long has passed since the last commit.
+	 *               Default 1000ms, 0 to commit only full blocks and on flush.
+	 */
+	public void setFlushInterval(final long millis) {
+		this.flushIntervalMillis = millis;
+	}
+
+	/**
+	 * @return number of records appended, including DEVICE records
+	 */
+	public long getRecords() {
+		return this.records;
+	}
+
+	/**
+	 * Read a journal back and pass its reports to a listener in the order they were written.
+	 * Reading stops at the first block that is empty or fails its checksum.
+	 *
+	 * TPVObjects get their timestampText rebuilt in the GPSd format so they can go straight
+	 * to a {@link GPXWriter}.
+	 *
+	 * @param filename the journal file
+	 * @param listener gets handleTPV and handleSKY calls
+	 * @return number of TPV and SKY reports read
+	 * @throws IOException if the file can not be read or is not a journal
+	 */
+	public static long replay(final String filename, final IObjectListener listener) throws IOException {
+		final FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		try {
+			final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+			readFully(channel, header, 0);
+			if ((header.getInt(0) != MAGIC) || (header.getShort(4) != VERSION) || (header.getShort(6) != RECORD_SIZE)
+					|| (header.getInt(8) != RECORDS_PER_BLOCK)) {
+				throw new IOException("Not a track journal: " + filename);
+			}
+
+			final ArrayList<String> devices = new ArrayList<String>();
+			final ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+			final CRC32 crc = new CRC32();
+			final long size = channel.size();
+			long reports = 0;
+			for (long block = 0; blockOffset(block) + BLOCK_HEADER <= size; block++) {
+				buffer.clear();
+				if (!readFully(channel, buffer, blockOffset(block))) {
+					buffer.limit(buffer.position());
+				}
+				final long commit = buffer.getLong(0);
+				final int count = (int) (commit >>> 32);
+				if ((count <= 0) || (count > RECORDS_PER_BLOCK) || (buffer.limit() < (BLOCK_HEADER + (count * RECORD_SIZE)))) {
+					break;
+				}
+				crc.reset();
+				crc.update(buffer.array(), BLOCK_HEADER, count * RECORD_SIZE);
+				if (crc.getValue() != (commit & 0xFFFFFFFFL)) {
+					System.err.println("WARNING: TrackJournal - Checksum mismatch in block " + block + " of " + filename);
+					break;
+				}
+				for (int i = 0; i < count; i++) {
+					reports += readRecord(buffer, BLOCK_HEADER + (i * RECORD_SIZE), devices, listener);
+				}
+				if (count < RECORDS_PER_BLOCK) {
+					// only the last block is committed partly filled
+					break;
+				}
+			}
+			return reports;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/// fill the buffer from a file position. false if the file ended first.
+	private static boolean readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+			throws IOException {
+		long at = position;
+		while (buffer.hasRemaining()) {
+			final int n = channel.read(buffer, at);
+			if (n < 0) {
+				return false;
+			}
+			at += n;
+		}
+		return true;
+	}
+
+	private static int readRecord(final ByteBuffer b, final int p, final ArrayList<String> devices,
+			final IObjectListener listener) {
+		final int id = b.getShort(p + 2);
+		switch (b.get(p)) {
+		case TPV: {
+			final TPVObject tpv = new TPVObject();
+			tpv.setMode(ENMEAMode.fromInt(b.get(p + 1)));
+			tpv.setDevice(device(devices, id));
+			tpv.setTimestampError(b.getFloat(p + 4));
+			final double time = b.getDouble(p + 8);
+			tpv.setTimestamp(time);
+			if (!Double.isNaN(time)) {
+				tpv.setTimestampText(TIME_FORMAT.format(Instant.ofEpochMilli(Math.round(time * 1000.0))));
+			}
+			tpv.setLatitude(b.getDouble(p + 16));
+			tpv.setLongitude(b.getDouble(p + 24));
+			tpv.setAltitude(b.getDouble(p + 32));
+			tpv.setCourse(b.getFloat(p + 40));
+			tpv.setSpeed(b.getFloat(p + 44));
+			tpv.setClimbRate(b.getFloat(p + 48));
+			tpv.setLongitudeError(b.getFloat(p + 52));
+			tpv.setLatitudeError(b.getFloat(p + 56));
+			tpv.setAltitudeError(b.getFloat(p + 60));
+			listener.handleTPV(tpv);
+			return 1;
+		}
+		case SKY: {
+			final SKYObject sky = new SKYObject();
+			sky.setDevice(device(devices, id));
+			sky.setTimestamp(b.getDouble(p + 8));
+			sky.setLongitudeDOP(b.getFloat(p + 16));
+			sky.setLatitudeDOP(b.getFloat(p + 20));
+			sky.setAltitudeDOP(b.getFloat(p + 24));
+			sky.setTimestampDOP(b.getFloat(p + 28));
+			sky.setHorizontalDOP(b.getFloat(p + 32));
+			sky.setSphericalDOP(b.getFloat(p + 36));
+			sky.setHypersphericalDOP(b.getFloat(p + 40));
+			sky.setSatellites(new ArrayList<SATObject>(0));
+			listener.handleSKY(sky);
+			return 1;
+		}
+		case DEVICE: {
+			final int length = b.get(p + 1) & 0xFF;
+			final String name = new String(b.array(), p + 4, length, StandardCharsets.UTF_8);
+			while (devices.size() <= id) {
+				devices.add(null);
+			}
+			devices.set(id, name);
+			return 0;
+		}
+		default:
+			return 0;
+		}
+	}
+
+	private static String device(final ArrayList<String> devices, final int id) {
+		return ((id >= 0) && (id < devices.size())) ? devices.get(id) : null;
+	}
+}
@@ -0,0 +1,161 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* TrackRecorder
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.io.IOException;
+
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.types.ENMEAMode;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * Records the TPV stream as a GPX track.
+ *
+ * A 10 Hz receiver produces far more positions than a track needs. A TPV becomes a
+ * track point only when it passes all sampling rules that are switched on:
+ * <ul>
+ * <li>time: at least the minimum interval since the last recorded point</li>
+ * <li>distance: at least the minimum distance from the last recorded point, measured with {@link GISTool}</li>
+ * <li>error: the reported epx and epy are within the maximum error</li>
+ * </ul>
+ * The first fix is always recorded. Losing the fix ends the track segment.
+ *
+ * Writes are batched by the {@link GPXWriter}, so recorded points do not mean one disk
+ * write each. Subscribe the recorder to TPVObject only.
+ */
+public class TrackRecorder extends ObjectListener {
+
+	private final GPXWriter writer;
+
+	private double minInterval = 1.0;
+
+	private double minDistance = 0.0;
+
+	private double maxError = 0.0;
+
+	/// last recorded point, null at the start of a segment
+	private TPVObject last;
+
+	/// local clock of the last recorded point, for TPVs without a timestamp
+	private long lastMillis;
+
+	private long recorded;
+
+	private long skipped;
+
+	/**
+	 * @param writer the GPX file to record into
+	 */
+	public TrackRecorder(final GPXWriter writer) {
+		super(null, null, null);
+		if (writer == null) {
+			throw new IllegalArgumentException("writer can not be null!");
+		}
+		this.writer = writer;
+	}
+
+	@Override
+	public void handleTPV(final TPVObject tpv) {
+		if (!hasFix(tpv)) {
+			if (this.last != null) {
+				this.last = null;
+				try {
+					this.writer.endSegment();
+				} catch (final IOException e) {
+					System.err.println("WARNING: TrackRecorder - Problem encountered ending track segment " + e);
+				}
+			}
+			return;
+		}
+		if (!this.accept(tpv)) {
+			this.skipped++;
+			return;
+		}
+		try {
+			this.writer.addTrackPoint(tpv);
+			this.last = tpv;
+			this.lastMillis = System.currentTimeMillis();
+			this.recorded++;
+		} catch (final IOException e) {
+			System.err.println("WARNING: TrackRecorder - Problem encountered writing track point " + e);
+		}
+	}
+
+	private static boolean hasFix(final TPVObject tpv) {
+		return ((tpv.getMode() == ENMEAMode.TwoDimensional) || (tpv.getMode() == ENMEAMode.ThreeDimensional))
+				&& !Double.isNaN(tpv.getLatitude()) && !Double.isNaN(tpv.getLongitude());
+	}
+
+	/// apply the sampling rules
+	private boolean accept(final TPVObject tpv) {
+		if ((this.maxError > 0) && ((tpv.getLatitudeError() > this.maxError) || (tpv.getLongitudeError() > this.maxError))) {
+			// NaN compares false, an unknown error is accepted
+			return false;
+		}
+		if (this.last == null) {
+			return true;
+		}
+		if (this.minInterval > 0) {
+			final double elapsed = (!Double.isNaN(tpv.getTimestamp()) && !Double.isNaN(this.last.getTimestamp()))
+					? tpv.getTimestamp() - this.last.getTimestamp()
+					: (System.currentTimeMillis() - this.lastMillis) / 1000.0;
+			if (elapsed < this.minInterval) {
+				return false;
+			}
+		}
+		if ((this.minDistance > 0) && ((GISTool.getDistance(tpv, this.last) * 1000.0) < this.minDistance)) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param seconds least time between two track points. Default 1s, 0 to switch off.
+	 */
+	public void setMinInterval(final double seconds) {
+		this.minInterval = seconds;
+	}
+
+	/**
+	 * @param meters least distance between two track points. Default 0, switched off.
+	 */
+	public void setMinDistance(final double meters) {
+		this.minDistance = meters;
+	}
+
+	/**
+	 * @param meters largest accepted epx and epy. Default 0, switched off.
+	 */
+	public void setMaxError(final double meters) {
+		this.maxError = meters;
+	}
+
+	/**
+	 * @return number of TPVs written as track points
+	 */
+	public long getRecorded() {
+		return this.recorded;
+	}
+
+	/**
+	 * @return number of TPVs with a fix left out by the sampling rules
+	 */
+	public long getSkipped() {
+		return this.skipped;
+	}
+}
@@ -0,0 +1,204 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* TrackSimplifier
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.traviscons.GPSTrackPoints.api.IObjectListener;
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.types.ENMEAMode;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * Drops the redundant fixes of a TPV stream before they reach a track writer.
+ *
+ * This is the opening window form of Douglas-Peucker. The last kept fix is the anchor.
+ * Following fixes are collected in a window as long as every one of them lies within the
+ * tolerance of the straight line from the anchor to the newest fix, measured with
+ * {@link GISTool#getCrossTrackDistance(TPVObject, TPVObject, TPVObject)}. When a fix breaks
+ * the tolerance the one before it is kept and becomes the new anchor. On a straight road only
+ * the ends survive, in a bend the points that shape it.
+ *
+ * The window is bounded, a full window keeps its newest fix, so a kept fix is delayed by at
+ * most that many fixes. Losing the fix keeps the pending fix and passes the TPV on so the
+ * writer can end its segment. Call {@link #flush()} before closing the writer.
+ *
+ * Fixes worse than {@link #setMaxError(double)} are dropped before they take part, so a bad
+ * fix never becomes the anchor or stands in for the good fixes around it.
+ *
+ * <pre>
+ * final TrackSimplifier simplifier = new TrackSimplifier(new TrackRecorder(writer), 2.0);
+ * ep.addListener(simplifier, TPVObject.class);
+ * </pre>
+ */
+public class TrackSimplifier extends ObjectListener {
+
+	private final IObjectListener downstream;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private double tolerance;
+
+	private int maxWindow = 120;
+
+	private double maxError = 0.0;
+
+	/// last kept fix, null at the start of a segment
+	private TPVObject anchor;
+
+	/// fixes after the anchor that are not decided yet
+	private final ArrayList<TPVObject> window = new ArrayList<TPVObject>();
+
+	private long received;
+
+	private long kept;
+
+	/**
+	 * @param downstream gets the kept fixes
+	 * @param tolerance  largest distance in meters a dropped fix may be from the simplified track
+	 */
+	public TrackSimplifier(final IObjectListener downstream, final double tolerance) {
+		super(null, null, null);
+		if (downstream == null) {
+			throw new IllegalArgumentException("downstream can not be null!");
+		}
+		this.downstream = downstream;
+		this.setTolerance(tolerance);
+	}
+
+	@Override
+	public void handleTPV(final TPVObject tpv) {
+		this.lock.lock();
+		try {
+			if (!hasFix(tpv)) {
+				this.flushPending();
+				this.anchor = null;
+				this.downstream.handleTPV(tpv);
+				return;
+			}
+			if ((this.maxError > 0) && ((tpv.getLatitudeError() > this.maxError) || (tpv.getLongitudeError() > this.maxError))) {
+				// NaN compares false, an unknown error is accepted
+				return;
+			}
+			this.received++;
+			if (this.anchor == null) {
+				this.keep(tpv);
+				return;
+			}
+			if (!this.withinTolerance(tpv)) {
+				// the previous fix is the furthest the line from the anchor can reach
+				this.keep(this.window.get(this.window.size() - 1));
+			}
+			this.window.add(tpv);
+			if (this.window.size() >= this.maxWindow) {
+				this.keep(tpv);
+			}
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private static boolean hasFix(final TPVObject tpv) {
+		return ((tpv.getMode() == ENMEAMode.TwoDimensional) || (tpv.getMode() == ENMEAMode.ThreeDimensional))
+				&& !Double.isNaN(tpv.getLatitude()) && !Double.isNaN(tpv.getLongitude());
+	}
+
+	/// all window fixes within the tolerance of the line from the anchor to the new fix
+	private boolean withinTolerance(final TPVObject end) {
+		final double km = this.tolerance / 1000.0;
+		for (int i = 0; i < this.window.size(); i++) {
+			if (GISTool.getCrossTrackDistance(this.window.get(i), this.anchor, end) > km) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/// pass a fix on and make it the anchor
+	private void keep(final TPVObject tpv) {
+		this.window.clear();
+		this.anchor = tpv;
+		this.kept++;
+		this.downstream.handleTPV(tpv);
+	}
+
+	private void flushPending() {
+		if (!this.window.isEmpty()) {
+			this.keep(this.window.get(this.window.size() - 1));
+		}
+	}
+
+	/**
+	 * Pass on the newest pending fix so the track ends where the receiver is.
+	 */
+	public void flush() {
+		this.lock.lock();
+		try {
+			this.flushPending();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @param meters largest distance of a dropped fix from the simplified track. 0 drops only
+	 *               fixes exactly on the line.
+	 */
+	public void setTolerance(final double meters) {
+		if (meters < 0) {
+			throw new IllegalArgumentException("tolerance can not be negative: " + meters);
+		}
+		this.tolerance = meters;
+	}
+
+	/**
+	 * @param fixes largest number of undecided fixes. Bounds the delay and the work per fix. Default 120.
+	 */
+	public void setMaxWindow(final int fixes) {
+		this.maxWindow = Math.max(1, fixes);
+	}
+
+	/**
+	 * @param meters largest accepted epx and epy, worse fixes are dropped. Default 0, switched off.
+	 */
+	public void setMaxError(final double meters) {
+		this.maxError = meters;
+	}
+
+	/**
+	 * @return number of fixes received
+	 */
+	public long getReceived() {
+		return this.received;
+	}
+
+	/**
+	 * @return number of fixes passed on
+	 */
+	public long getKept() {
+		return this.kept;
+	}
+
+	/**
+	 * @return fixes received per fix kept, 1 when nothing was received
+	 */
+	public double getCompressionRatio() {
+		return (this.kept == 0) ? 1.0 : (double) this.received / this.kept;
+	}
+}
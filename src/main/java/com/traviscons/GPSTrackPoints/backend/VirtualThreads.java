@@ -0,0 +1,86 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* VirtualThreads
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import java.lang.reflect.Method;
+
+/**
+ * Create virtual threads when the running JVM supports them (Java 21 and later).
+ *
+ * The project is compiled for Java 8 so it keeps running on the JVMs found on a
+ * Raspberry Pi. The virtual thread builder is therefore looked up by reflection once.
+ */
+final class VirtualThreads {
+
+	private static final Method OF_VIRTUAL;
+
+	private static final Method NAME;
+
+	private static final Method UNSTARTED;
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method unstarted = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			name = builder.getMethod("name", String.class);
+			unstarted = builder.getMethod("unstarted", Runnable.class);
+			// preview releases throw here unless preview features are enabled
+			ofVirtual.invoke(null);
+		} catch (final Exception e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		UNSTARTED = unstarted;
+	}
+
+	private VirtualThreads() {
+		//
+	}
+
+	/**
+	 * @return true if virtual threads can be created on this JVM
+	 */
+	static boolean isSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Create an unstarted virtual thread. Virtual threads are always daemon threads.
+	 *
+	 * @param task the code to run
+	 * @param name the thread name
+	 * @return the thread
+	 * @throws UnsupportedOperationException if the JVM has no virtual threads
+	 */
+	static Thread newThread(final Runnable task, final String name) {
+		if (!isSupported()) {
+			throw new UnsupportedOperationException("Virtual threads need Java 21 or later");
+		}
+		try {
+			Object builder = OF_VIRTUAL.invoke(null);
+			builder = NAME.invoke(builder, name);
+			return (Thread) UNSTARTED.invoke(builder, task);
+		} catch (final Exception e) {
+			throw new UnsupportedOperationException("Could not create a virtual thread", e);
+		}
+	}
+}
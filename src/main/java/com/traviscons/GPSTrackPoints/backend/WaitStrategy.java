@@ -0,0 +1,38 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* WaitStrategy
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+/**
+ * How a thread waits on the {@link DispatchRing}: a listener waiting for the next
+ * message, or the socket reader waiting for space when the overflow policy is BLOCK.
+ */
+public enum WaitStrategy {
+
+	/**
+	 * Spin on the CPU. Lowest latency, but burns a whole core per waiting thread.
+	 */
+	BUSY_SPIN,
+	/**
+	 * Spin but give up the CPU to other threads on every turn.
+	 */
+	YIELD,
+	/**
+	 * Sleep until woken by the other side. Slowest to wake up, cheapest on a Raspberry Pi.
+	 */
+	PARK;
+}
@@ -1,28 +1,49 @@
 package com.traviscons.GPSTrackPoints.backend;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * Not as efficient as AtomicBoolean but you can wait on it.
  *
+ * Uses a java.util.concurrent lock rather than a monitor so a virtual thread waiting
+ * here releases its carrier thread.
+ *
  * @author TimW
  */
 class WaitableBoolean {
-	
-	private boolean val;
-	
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition changed = this.lock.newCondition();
+
+	private volatile boolean val;
+
 	public WaitableBoolean(boolean b) {
 		this.val = b;
 	}
-	
-	synchronized void set(boolean value) {
-		this.val = value;
-		notifyAll();
+
+	void set(boolean value) {
+		this.lock.lock();
+		try {
+			this.val = value;
+			this.changed.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
 	}
-	
-	synchronized boolean get() {
+
+	boolean get() {
 		return this.val;
 	}
-	
-	synchronized public void waitFor(long millis) throws InterruptedException {
-		super.wait(millis);
+
+	public void waitFor(long millis) throws InterruptedException {
+		this.lock.lock();
+		try {
+			this.changed.await(millis, TimeUnit.MILLISECONDS);
+		} finally {
+			this.lock.unlock();
+		}
 	}
-}
\ No newline at end of file
+}
@@ -1,22 +1,8 @@
 package com.traviscons.GPSTrackPoints.backend;
 
-import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
-import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
-
 import java.io.IOException;
-import java.nio.file.FileSystems;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.WatchEvent;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
-
-import java.util.concurrent.TimeUnit;
 
 import java.io.FileWriter;
-import java.io.FileReader;
 
 import java.lang.Runtime;
 
@@ -26,7 +12,7 @@ import java.lang.Runtime;
 * of files to set up the button. The only thing that is not possible is the
 * setup of the pull up resistor. This is done using a raspi-gpio command line.
 *
-* Once set up, the java.nio watch is used to monitor the value file for the gpio.
+* Once set up, a GpioButton watches the value file for the gpio.
 *
 * We are looking for specific transitions to support the GPS track logging. All we
 * want is a short button push (&lt;3 seconds) and a long button push (>3 seconds).
@@ -128,136 +114,48 @@ public class WatchButton implements Runnable {
 		buttonCallback = inButtonCallback;
 	}
 
-	/** Start a thread to watch for the button transitions. This thread
-	* uses watch to block while waiting. Once the button is pushed, simple sleeps
-	* are used to time the push.
+	/** Watch for the button transitions until a long push. Run this on its own thread.
 	*
-	* We'll take the watch signal that it has been pushed.
-	* \todo Study to make sure watch debounces reliably
-	*
-	* Once the button has been pushed, we use a loop with 100ms sleeps to watch
-	* the button. If it is released &lt;3 seconds - signal a GPS position log. If
-	* it remains pressed for 3 seconds or greater, signal a shutdown. Note we do not
-	* wait for the button to be relesed after 3 seconds.
+	* The gpio value file is kept open and watched by a GpioButton, see SysfsGpioInput.
+	* Edges are debounced in-process. If the button is released in less than 3 seconds
+	* signal a GPS position log. If it remains pressed for 3 seconds, signal a shutdown
+	* at once, without waiting for the release.
 	*/
 
 	public void run() {
-		/* buttonState keeps track of the button. 0 is inactive
-		* 1 is active waiting for a release or for 3 seconds to expire.
-		* 2 we had a 3 second timeout and we are waiting for the button to
-		* go inactive.
-		*/
-		int buttonState = 0; // 0 is inactive
-		boolean runningState = true;
-
+		final GpioInput input;
 		try {
-			// Set up the watch service. This is part of java.nio
-			WatchService watcher = FileSystems.getDefault().newWatchService();
-
-			// We watch the gpio directory. WatchService cannot watch specific files
-			// We'll watch for anything but we really want a modification of the value file
-			Path dir = Paths.get(gpioPath);
-			dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
-
-			while (runningState) {
-				WatchKey key;
-				try {
-					// This is the main point of watching.
-					// we will block while we wait for a key to be available
-					// take() is the other mechanism that will block
-					// The poll event will return a null with the timeout
-					if (buttonState == 0 || buttonState == 2) {
-						/* The button state is inactive or we are waiting for to go inactive.
-						* We can block until the button transitions.
-						*/
-						key = watcher.take();
-					} else {
-						/* The button statis active. Let's set a 3
-						* second timeout. If we get a transition
-						* before 3 seconds, that is a normal push.
-						* If we get a timeout, then it's a long push.
-						*/
-						key = watcher.poll(3000, TimeUnit.MILLISECONDS);
-					}
-				} catch (InterruptedException ex) {
-					// Something woke us up but not a watch event
-					System.err.println("poll was interrupted");
-					break;
-				}
+			input = new SysfsGpioInput(sysDir, gpioNum);
+		} catch (IOException ex) {
+			System.err.println(ex);
+			return;
+		}
 
-				// If the key is null, then it was the timeout.
-				if (key == null) {
-					/* We now know that it was a long push. */
-					if (buttonCallback != null) {
-						buttonCallback.LongPush();
-						resetButton();
-						runningState = false;
-					}
-					buttonState = 2; // wait for the button to go inactive
-					continue;
+		final GpioButton[] button = new GpioButton[1];
+		button[0] = new GpioButton(input, new iButtonCallback() {
+			public void ShortPush() {
+				if (buttonCallback != null) {
+					buttonCallback.ShortPush();
 				}
+			}
 
-				// We have one or more watch events, let's see what it is
-				for (WatchEvent<?> event : key.pollEvents()) {
-					// get event type
-					WatchEvent.Kind<?> kind = event.kind();
-
-					// get file name
-					@SuppressWarnings("unchecked")
-					WatchEvent<Path> ev = (WatchEvent<Path>) event;
-					Path fileName = ev.context();
-
-					if (kind == OVERFLOW) {
-						System.err.println("Overflow");
-						continue;
-					} else if (kind == ENTRY_CREATE) {
-
-						// process create event
-						System.err.println("Create " + fileName);
-
-					} else if (kind == ENTRY_DELETE) {
-
-						// process delete event
-						System.err.println("Delete " + fileName);
-
-					} else if (kind == ENTRY_MODIFY) {
-						// process modify event
-						int value;
-
-						if (fileName.toString().matches("value")) {
-							FileReader vFile = new FileReader(gpioValuePath);
-							value = vFile.read();
-							if (value == 49) {
-								/* Button high. That's inactive */
-								if (buttonState == 1 && buttonCallback != null) {
-									/* This is a normal release without a timeout */
-									buttonCallback.ShortPush();
-								}
-
-								/* whether it was a normal release or after a timeout,
-								/* we can go back to inactive
-								*/
-								buttonState = 0;
-							} else if (value == 48) {
-								/* Button low. That's active */
-								buttonState = 1;
-
-							}
-							vFile.close();
-						}
-
-					}
+			public void LongPush() {
+				if (buttonCallback != null) {
+					buttonCallback.LongPush();
+					resetButton();
+					button[0].halt();
 				}
+			}
+		});
 
-				// IMPORTANT: The key must be reset after processed
-				boolean valid = key.reset();
-				if (!valid) {
-					System.err.println("key is not valid after a reset. Exiting");
-					break;
-				}
+		try {
+			button[0].run();
+		} finally {
+			try {
+				input.close();
+			} catch (IOException ex) {
+				// ignore
 			}
-		} catch (IOException ex) {
-	            System.err.println(ex);
-        	}
+		}
 	}
 }
@@ -0,0 +1,33 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* iButtonListener
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+/**
+ * The debounced edges of a {@link GpioButton}, with System.nanoTime() timestamps of the
+ * samples that saw them, called on the button's thread. longPressed has the time the
+ * long press timer fired.
+ */
+public interface iButtonListener {
+
+	void pressed(long nanoTime);
+
+	void released(long nanoTime, long heldNanos);
+
+	void longPressed(long nanoTime);
+}
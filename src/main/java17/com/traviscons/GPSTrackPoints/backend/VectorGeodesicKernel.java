@@ -0,0 +1,68 @@
+package com.traviscons.GPSTrackPoints.backend;
+
+/* VectorGeodesicKernel
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Haversine with the JDK Vector API, as many segments per step as the CPU has double lanes.
+ *
+ * Only in the Java 17 part of the multi-release jar. {@link GeodesicEngine} loads it by
+ * name and falls back to the scalar kernel when the class or the jdk.incubator.vector
+ * module is missing (the JVM must run with --add-modules jdk.incubator.vector).
+ */
+final class VectorGeodesicKernel implements GeodesicKernel {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	private static final double RAD = Math.PI / 180.0;
+
+	private static final double DEG = 180.0 / Math.PI;
+
+	@Override
+	public void haversine(final double[] lat, final double[] lon, final int from, final int segments, final double radius,
+			final double[] distances, final double[] bearings) {
+		int i = from;
+		final int bound = from + SPECIES.loopBound(segments - from);
+		for (; i < bound; i += SPECIES.length()) {
+			final DoubleVector phi1 = DoubleVector.fromArray(SPECIES, lat, i).mul(RAD);
+			final DoubleVector phi2 = DoubleVector.fromArray(SPECIES, lat, i + 1).mul(RAD);
+			final DoubleVector dlon = DoubleVector.fromArray(SPECIES, lon, i + 1).sub(DoubleVector.fromArray(SPECIES, lon, i)).mul(RAD);
+			final DoubleVector cos1 = phi1.lanewise(VectorOperators.COS);
+			final DoubleVector cos2 = phi2.lanewise(VectorOperators.COS);
+			if (distances != null) {
+				final DoubleVector sdlat = phi2.sub(phi1).mul(0.5).lanewise(VectorOperators.SIN);
+				final DoubleVector sdlon = dlon.mul(0.5).lanewise(VectorOperators.SIN);
+				final DoubleVector a = sdlat.mul(sdlat).add(cos1.mul(cos2).mul(sdlon).mul(sdlon)).min(1.0);
+				a.sqrt().lanewise(VectorOperators.ASIN).mul(2 * radius).intoArray(distances, i);
+			}
+			if (bearings != null) {
+				final DoubleVector y = dlon.lanewise(VectorOperators.SIN).mul(cos2);
+				final DoubleVector x = cos1.mul(phi2.lanewise(VectorOperators.SIN))
+						.sub(phi1.lanewise(VectorOperators.SIN).mul(cos2).mul(dlon.lanewise(VectorOperators.COS)));
+				final DoubleVector b = y.lanewise(VectorOperators.ATAN2, x).mul(DEG);
+				final VectorMask<Double> negative = b.compare(VectorOperators.LT, 0.0);
+				b.add(360.0, negative).intoArray(bearings, i);
+			}
+		}
+		ScalarGeodesicKernel.INSTANCE.haversine(lat, lon, i, segments, radius, distances, bearings);
+	}
+}
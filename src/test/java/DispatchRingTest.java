@@ -0,0 +1,159 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * DispatchRingTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.backend.DispatchRing;
+import com.traviscons.GPSTrackPoints.backend.OverflowPolicy;
+import com.traviscons.GPSTrackPoints.backend.WaitStrategy;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * JUnit tests for DispatchRing
+ */
+public class DispatchRingTest {
+
+	/// collects the latitudes it sees, optionally holding up until released
+	private static class Recorder extends ObjectListener {
+		final List<Integer> seen = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch release;
+		final CountDownLatch entered = new CountDownLatch(1);
+		volatile CountDownLatch expected;
+
+		Recorder(final CountDownLatch release, final int expect) {
+			super(null, null, null);
+			this.release = release;
+			this.expected = new CountDownLatch(expect);
+		}
+
+		@Override
+		public void handleTPV(final TPVObject tpv) {
+			this.entered.countDown();
+			try {
+				this.release.await();
+			} catch (final InterruptedException e) {
+				return;
+			}
+			this.seen.add((int) tpv.getLatitude());
+			this.expected.countDown();
+		}
+	}
+
+	private static TPVObject tpv(final int i) {
+		final TPVObject tpv = new TPVObject();
+		tpv.setLatitude(i);
+		return tpv;
+	}
+
+	@Test
+	public void deliversInOrderForEveryWaitStrategy() throws Exception {
+		for (final WaitStrategy wait : WaitStrategy.values()) {
+			final DispatchRing ring = new DispatchRing(16, wait, OverflowPolicy.BLOCK, true);
+			final Recorder a = new Recorder(new CountDownLatch(0), 1000);
+			final Recorder b = new Recorder(new CountDownLatch(0), 1000);
+			ring.addListener(a);
+			ring.addListener(b);
+			for (int i = 0; i < 1000; i++) {
+				assertTrue(ring.publish(tpv(i)));
+			}
+			assertTrue(wait.name(), a.expected.await(5, TimeUnit.SECONDS));
+			assertTrue(wait.name(), b.expected.await(5, TimeUnit.SECONDS));
+			for (int i = 0; i < 1000; i++) {
+				assertEquals(i, a.seen.get(i).intValue());
+				assertEquals(i, b.seen.get(i).intValue());
+			}
+			assertEquals(0, ring.getDropped());
+			ring.halt();
+		}
+	}
+
+	@Test
+	public void dropOldestOnlyAffectsTheSlowListener() throws Exception {
+		final DispatchRing ring = new DispatchRing(8, WaitStrategy.PARK, OverflowPolicy.DROP_OLDEST, true);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Recorder slow = new Recorder(release, 1);
+		final Recorder fast = new Recorder(new CountDownLatch(0), 100);
+		ring.addListener(slow);
+		ring.addListener(fast);
+
+		assertTrue(ring.publish(tpv(0)));
+		assertTrue(slow.entered.await(5, TimeUnit.SECONDS));
+		// the slow listener is stuck on message 0, the producer must never wait for it
+		for (int i = 1; i < 100; i++) {
+			assertTrue(ring.publish(tpv(i)));
+			// a listener that keeps up must never lose anything
+			final long deadline = System.currentTimeMillis() + 5000;
+			while ((fast.seen.size() <= i) && (System.currentTimeMillis() < deadline)) {
+				Thread.yield();
+			}
+		}
+		assertTrue(fast.expected.await(5, TimeUnit.SECONDS));
+		assertEquals(0, ring.getDropped(fast));
+
+		// 0 is in hand, the last 8 are still in the ring, everything in between was dropped
+		final long dropped = ring.getDropped(slow);
+		assertEquals(100 - 1 - 8, dropped);
+		slow.expected = new CountDownLatch(9);
+		release.countDown();
+		assertTrue(slow.expected.await(5, TimeUnit.SECONDS));
+		assertEquals(0, slow.seen.get(0).intValue());
+		assertEquals(92, slow.seen.get(1).intValue());
+		assertEquals(99, slow.seen.get(8).intValue());
+		assertEquals(dropped, ring.getDropped());
+		ring.halt();
+	}
+
+	@Test
+	public void dropNewestKeepsWhatIsQueued() throws Exception {
+		final DispatchRing ring = new DispatchRing(4, WaitStrategy.YIELD, OverflowPolicy.DROP_NEWEST, true);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Recorder slow = new Recorder(release, 5);
+		ring.addListener(slow);
+
+		assertTrue(ring.publish(tpv(0)));
+		assertTrue(slow.entered.await(5, TimeUnit.SECONDS));
+		for (int i = 1; i <= 4; i++) {
+			assertTrue(ring.publish(tpv(i)));
+		}
+		assertFalse(ring.publish(tpv(5)));
+		assertFalse(ring.publish(tpv(6)));
+		assertEquals(2, ring.getDropped());
+		assertEquals(2, ring.getDropped(slow));
+
+		release.countDown();
+		assertTrue(slow.expected.await(5, TimeUnit.SECONDS));
+		assertEquals(4, slow.seen.get(4).intValue());
+		ring.halt();
+	}
+
+	@Test
+	public void capacityIsRoundedUp() {
+		assertEquals(8, new DispatchRing(5, WaitStrategy.PARK, OverflowPolicy.BLOCK, true).getCapacity());
+		assertEquals(8, new DispatchRing(8, WaitStrategy.PARK, OverflowPolicy.BLOCK, true).getCapacity());
+	}
+}
@@ -0,0 +1,125 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * EndpointFootprint
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.traviscons.GPSTrackPoints.backend.GPSdEndpoint;
+import com.traviscons.GPSTrackPoints.backend.StreamingResultParser;
+
+/**
+ * Measure the thread count and resident memory of many GPSdEndpoints.
+ *
+ * This is not a JUnit test. Run it by hand, e.g.
+ * <pre>
+ * java -cp ... com.traviscons.GPSTrackPoints.tests.EndpointFootprint 1000 virtual connected
+ * java -cp ... com.traviscons.GPSTrackPoints.tests.EndpointFootprint 1000 platform flapping
+ * </pre>
+ *
+ * In connected mode a local server accepts every connection and keeps it open without sending.
+ * In flapping mode nothing listens on the port so every endpoint keeps retrying.
+ */
+public class EndpointFootprint {
+
+	public static void main(final String[] args) throws Exception {
+		final int count = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+		final boolean virtual = (args.length <= 1) || "virtual".equals(args[1]);
+		final boolean connected = (args.length <= 2) || "connected".equals(args[2]);
+
+		System.err.println("INFO: EndpointFootprint - before: " + report());
+
+		final ServerSocket server = new ServerSocket(0, count);
+		final int port = server.getLocalPort();
+		final List<Socket> accepted = new ArrayList<Socket>();
+		if (connected) {
+			final Thread acceptThread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						while (true) {
+							accepted.add(server.accept());
+						}
+					} catch (final IOException e) {
+						// server closed
+					}
+				}
+			};
+			acceptThread.setDaemon(true);
+			acceptThread.start();
+		} else {
+			server.close();
+		}
+
+		final StreamingResultParser parser = new StreamingResultParser();
+		final List<GPSdEndpoint> endpoints = new ArrayList<GPSdEndpoint>(count);
+		for (int i = 0; i < count; i++) {
+			final GPSdEndpoint ep = new GPSdEndpoint("localhost", port, parser);
+			ep.setRetryInterval(500);
+			ep.setVirtualThreads(virtual);
+			ep.start();
+			endpoints.add(ep);
+		}
+
+		// let the endpoints connect or go through a few retries
+		Thread.sleep(5000);
+		System.gc();
+		Thread.sleep(500);
+		System.err.println("INFO: EndpointFootprint - " + count + " endpoints, "
+				+ (endpoints.get(0).isVirtualThreads() ? "virtual" : "platform") + " threads, "
+				+ (connected ? "connected (" + accepted.size() + " accepted)" : "flapping") + ": " + report());
+
+		for (final GPSdEndpoint ep : endpoints) {
+			ep.stop();
+		}
+		server.close();
+	}
+
+	private static String report() {
+		final long heap = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+		return "threads=" + ManagementFactory.getThreadMXBean().getThreadCount()
+				+ " rss=" + rssKilobytes() + "kB heapUsed=" + (heap / 1024) + "kB";
+	}
+
+	/// resident set size from /proc, Linux only
+	private static long rssKilobytes() {
+		try {
+			final BufferedReader status = new BufferedReader(new FileReader("/proc/self/status"));
+			try {
+				String line;
+				while ((line = status.readLine()) != null) {
+					if (line.startsWith("VmRSS:")) {
+						return Long.parseLong(line.replaceAll("[^0-9]", ""));
+					}
+				}
+			} finally {
+				status.close();
+			}
+		} catch (final IOException e) {
+			// not on Linux
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,204 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * EphemerisTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import com.traviscons.GPSTrackPoints.backend.Ephemeris;
+import com.traviscons.GPSTrackPoints.backend.EphemerisBatch;
+import com.traviscons.GPSTrackPoints.backend.EphemerisCache;
+import com.traviscons.GPSTrackPoints.backend.GpsTime;
+import com.traviscons.GPSTrackPoints.backend.Observer;
+import com.traviscons.GPSTrackPoints.backend.ResultParser;
+import com.traviscons.GPSTrackPoints.types.subframes.SUBFRAMEObject;
+
+/**
+ * JUnit tests for Ephemeris, EphemerisCache and EphemerisBatch.
+ */
+public class EphemerisTest {
+
+	private static final double WEEK = 2000 * GpsTime.SECONDS_PER_WEEK;
+
+	private static final double TOE = 331200;
+
+	private final ResultParser parser = new ResultParser();
+
+	static String sf1(final int prn, final int iodc) {
+		return "{\"class\":\"SUBFRAME\",\"device\":\"/dev/ttyUSB0\",\"tSV\":" + prn + ",\"TOW17\":110400,\"frame\":1,\"scaled\":true,"
+				+ "\"EPHEM1\":{\"WN\":976,\"IODC\":" + iodc + ",\"L2\":1,\"ura\":0,\"hlth\":0,\"L2P\":0,\"Tgd\":-1.1E-8,"
+				+ "\"toc\":331200,\"af2\":0.0,\"af1\":-2.2E-12,\"af0\":2.3E-4}}";
+	}
+
+	static String sf2(final int prn, final int iode, final double sqrtA, final double e, final double m0) {
+		return "{\"class\":\"SUBFRAME\",\"device\":\"/dev/ttyUSB0\",\"tSV\":" + prn + ",\"TOW17\":110401,\"frame\":2,\"scaled\":true,"
+				+ "\"EPHEM2\":{\"IODE\":" + iode + ",\"Crs\":20.5,\"deltan\":1.4E-9,\"M0\":" + m0 + ",\"Cuc\":1.1E-6,\"e\":" + e
+				+ ",\"Cus\":8.2E-6,\"sqrtA\":" + sqrtA + ",\"toe\":331200,\"FIT\":0,\"AODO\":27900}}";
+	}
+
+	static String sf3(final int prn, final int iode, final double i0, final double omega0) {
+		return "{\"class\":\"SUBFRAME\",\"device\":\"/dev/ttyUSB0\",\"tSV\":" + prn + ",\"TOW17\":110402,\"frame\":3,\"scaled\":true,"
+				+ "\"EPHEM3\":{\"IODE\":" + iode + ",\"IDOT\":1.0E-10,\"Cic\":1.2E-7,\"Omega0\":" + omega0 + ",\"Cis\":-5.0E-8,\"i0\":" + i0
+				+ ",\"Crc\":250.1,\"omega\":0.21,\"Omegad\":-2.6E-9}}";
+	}
+
+	private void feed(final EphemerisCache cache, final String line) throws Exception {
+		cache.handleSUBFRAME((SUBFRAMEObject) this.parser.parse(line));
+	}
+
+	private Ephemeris typical() throws Exception {
+		final EphemerisCache cache = new EphemerisCache();
+		this.feed(cache, sf1(7, 50));
+		this.feed(cache, sf2(7, 50, 5153.65, 0.0123, 0.5));
+		this.feed(cache, sf3(7, 50, 0.306, -0.6));
+		return cache.get(7);
+	}
+
+	@Test
+	public void assemblesSubframesOfOneIssue() throws Exception {
+		final EphemerisCache cache = new EphemerisCache();
+		this.feed(cache, sf1(7, 50));
+		this.feed(cache, sf2(7, 49, 5153.65, 0.0123, 0.5));
+		this.feed(cache, sf3(7, 50, 0.306, -0.6));
+		assertNull("subframe 2 is of another issue", cache.get(7));
+
+		this.feed(cache, sf2(7, 50, 5153.65, 0.0123, 0.5));
+		final Ephemeris eph = cache.get(7);
+		assertNotNull(eph);
+		assertEquals(50, eph.getIODE());
+		assertEquals(5153.65 * 5153.65, eph.getSemiMajorAxis(), 1e-6);
+		assertEquals(1, cache.getAssembled());
+
+		// the same issue broadcast again is not new
+		this.feed(cache, sf1(7, 50));
+		this.feed(cache, sf2(7, 50, 5153.65, 0.0123, 0.5));
+		this.feed(cache, sf3(7, 50, 0.306, -0.6));
+		assertEquals(1, cache.getAssembled());
+
+		// an upload: the new issue takes over, the old one is still there by IODE
+		this.feed(cache, sf1(7, 51));
+		this.feed(cache, sf2(7, 51, 5153.66, 0.0123, 0.5));
+		this.feed(cache, sf3(7, 51, 0.306, -0.6));
+		assertEquals(51, cache.get(7).getIODE());
+		assertEquals(50, cache.get(7, 50).getIODE());
+		assertEquals(2, cache.getAssembled());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void ignoresUnscaledSubframes() throws Exception {
+		final EphemerisCache cache = new EphemerisCache();
+		this.feed(cache, sf1(9, 50).replace("\"scaled\":true", "\"scaled\":false"));
+		this.feed(cache, sf2(9, 50, 5153.65, 0.0123, 0.5).replace("\"scaled\":true", "\"scaled\":false"));
+		this.feed(cache, sf3(9, 50, 0.306, -0.6).replace("\"scaled\":true", "\"scaled\":false"));
+		assertNull(cache.get(9));
+	}
+
+	@Test
+	public void circularEquatorialOrbit() throws Exception {
+		final EphemerisCache cache = new EphemerisCache();
+		this.feed(cache, sf1(1, 10));
+		this.feed(cache, sf2(1, 10, 5153.65, 0.0, 0.0).replaceAll("\"(Crs|Cuc|Cus|deltan)\":[-0-9.E]+", "\"$1\":0.0").replace("331200", "0"));
+		this.feed(cache, sf3(1, 10, 0.0, 0.0).replaceAll("\"(IDOT|Cic|Cis|Crc|omega|Omegad)\":[-0-9.E]+", "\"$1\":0.0"));
+		final Ephemeris eph = cache.get(1);
+		final double a = eph.getSemiMajorAxis();
+
+		// at toe the satellite is on the x axis, straight above 0 N 0 E
+		final double[] state = eph.compute(WEEK);
+		assertEquals(a, state[Ephemeris.X], 1e-3);
+		assertEquals(0, state[Ephemeris.Y], 1e-3);
+		assertEquals(0, state[Ephemeris.Z], 1e-3);
+		final double[] look = new double[3];
+		new Observer(0, 0, 0).look(state[Ephemeris.X], state[Ephemeris.Y], state[Ephemeris.Z], look, 0);
+		assertEquals(90, look[1], 1e-6);
+		assertEquals(a - 6378137.0, look[2], 1e-3);
+
+		// an hour later it has moved east by the orbit rate less the earth's rotation
+		final double n = Math.sqrt(3.986005e14 / (a * a * a));
+		final double angle = (n - 7.2921151467e-5) * 3600;
+		eph.compute(WEEK + 3600, state, 0);
+		assertEquals(a * Math.cos(angle), state[Ephemeris.X], 1e-3);
+		assertEquals(a * Math.sin(angle), state[Ephemeris.Y], 1e-3);
+		assertEquals(a * (n - 7.2921151467e-5), state[Ephemeris.VY] / Math.cos(angle), 1e-6);
+	}
+
+	@Test
+	public void velocityMatchesPositionChange() throws Exception {
+		final Ephemeris eph = this.typical();
+		for (final double dt : new double[] { -7000, -1800, 0, 2500, 7000 }) {
+			final double t = WEEK + TOE + dt;
+			final double[] before = eph.compute(t - 0.5);
+			final double[] now = eph.compute(t);
+			final double[] after = eph.compute(t + 0.5);
+			for (int i = Ephemeris.X; i <= Ephemeris.Z; i++) {
+				assertEquals(after[i] - before[i], now[Ephemeris.VX + i], 1e-3);
+			}
+			final double r = Math.sqrt((now[0] * now[0]) + (now[1] * now[1]) + (now[2] * now[2]));
+			assertTrue(r > 2.6e7 && r < 2.69e7);
+			assertEquals(2.3e-4, now[Ephemeris.CLOCK], 1e-6);
+		}
+		assertTrue(eph.isValidAt(WEEK + TOE + 7000));
+		assertFalse(eph.isValidAt(WEEK + TOE + 7300));
+		// toe near the end of the week is still found from the next week
+		assertEquals(-302400 + 1, eph.getAge(WEEK + TOE - 302400 + 1), 1e-6);
+	}
+
+	@Test
+	public void batchMatchesSingleLooks() throws Exception {
+		final EphemerisCache cache = new EphemerisCache();
+		for (int prn = 1; prn <= 8; prn++) {
+			this.feed(cache, sf1(prn, 20));
+			this.feed(cache, sf2(prn, 20, 5153.65, 0.01, -1 + (prn * 0.25)));
+			this.feed(cache, sf3(prn, 20, 0.306, -1 + (prn * 0.25)));
+		}
+		final Ephemeris[] sats = cache.getAll().toArray(new Ephemeris[0]);
+		final Observer observer = new Observer(42.24, -88.33, 268);
+		final EphemerisBatch batch = new EphemerisBatch(observer, 10);
+		final int epochs = 300;
+		final double start = WEEK + TOE - 600;
+		final double[] az = new double[epochs * sats.length];
+		final double[] el = new double[epochs * sats.length];
+		final double[] range = new double[epochs * sats.length];
+		final int visible = batch.evaluate(sats, start, 10, epochs, az, el, range);
+
+		int counted = 0;
+		final double[] look = new double[3];
+		for (int k = 0; k < epochs; k++) {
+			for (int s = 0; s < sats.length; s++) {
+				final int slot = (k * sats.length) + s;
+				final double[] state = sats[s].compute(start + (k * 10));
+				observer.look(state[0], state[1], state[2], look, 0);
+				if (look[1] >= 10) {
+					counted++;
+					assertEquals(look[0], az[slot], 1e-9);
+					assertEquals(look[1], el[slot], 1e-9);
+					assertEquals(look[2], range[slot], 1e-6);
+				} else {
+					assertTrue(Double.isNaN(el[slot]));
+				}
+			}
+		}
+		assertEquals(counted, visible);
+		assertTrue(visible > 0);
+		assertTrue(visible < (epochs * sats.length));
+		assertEquals(visible, batch.evaluate(Arrays.asList(sats), start, 10, epochs, null, null, null));
+	}
+}
@@ -0,0 +1,239 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * FixFusionTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.backend.DeviceTracker;
+import com.traviscons.GPSTrackPoints.backend.FixFusion;
+import com.traviscons.GPSTrackPoints.backend.FusionMode;
+import com.traviscons.GPSTrackPoints.types.ENMEAMode;
+import com.traviscons.GPSTrackPoints.types.GSTObject;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * JUnit tests for DeviceTracker and FixFusion.
+ */
+public class FixFusionTest {
+
+	private static final String A = "/dev/ttyUSB0";
+
+	private static final String B = "/dev/ttyACM0";
+
+	private final List<TPVObject> out = new ArrayList<TPVObject>();
+
+	private final ObjectListener collector = new ObjectListener(null, null, null) {
+		@Override
+		public void handleTPV(final TPVObject tpv) {
+			FixFusionTest.this.out.add(tpv);
+		}
+	};
+
+	private static TPVObject tpv(final String device, final double time, final double lat, final double lon, final double epx) {
+		final TPVObject tpv = new TPVObject();
+		tpv.setDevice(device);
+		tpv.setMode(ENMEAMode.ThreeDimensional);
+		tpv.setTimestamp(time);
+		tpv.setLatitude(lat);
+		tpv.setLongitude(lon);
+		tpv.setAltitude(250);
+		tpv.setLatitudeError(epx);
+		tpv.setLongitudeError(epx);
+		tpv.setAltitudeError(2 * epx);
+		return tpv;
+	}
+
+	private static TPVObject noFix(final String device, final double time) {
+		final TPVObject tpv = new TPVObject();
+		tpv.setDevice(device);
+		tpv.setMode(ENMEAMode.NoFix);
+		tpv.setTimestamp(time);
+		return tpv;
+	}
+
+	@Test
+	public void trackerKeepsLatestPerDevice() {
+		final DeviceTracker devices = new DeviceTracker();
+		devices.handleTPV(tpv(A, 1, 42.0, -88.0, 5));
+		devices.handleTPV(tpv(B, 1, 43.0, -89.0, 5));
+		devices.handleTPV(tpv(A, 2, 42.1, -88.0, 5));
+		final SKYObject sky = new SKYObject();
+		sky.setDevice(B);
+		devices.handleSKY(sky);
+		devices.handleTPV(tpv(null, 2, 44.0, -90.0, 5));
+
+		assertEquals(3, devices.getDevices().size());
+		assertEquals(42.1, devices.get(A).getTPV().getLatitude(), 0.0);
+		assertEquals(2, devices.get(A).getTPVCount());
+		assertEquals(43.0, devices.get(B).getTPV().getLatitude(), 0.0);
+		assertSame(sky, devices.get(B).getSKY());
+		assertNull(devices.get(A).getSKY());
+		assertEquals(44.0, devices.get(null).getTPV().getLatitude(), 0.0);
+		assertEquals(DeviceTracker.NO_DEVICE, devices.get(null).getDevice());
+		assertEquals(3, devices.getFixed(1000).size());
+
+		devices.handleTPV(noFix(A, 3));
+		assertEquals(2, devices.getFixed(1000).size());
+	}
+
+	@Test
+	public void trackerIgnoresOtherDevices() {
+		final DeviceTracker devices = new DeviceTracker(A);
+		devices.handleTPV(tpv(A, 1, 42.0, -88.0, 5));
+		devices.handleTPV(tpv(B, 1, 43.0, -89.0, 5));
+		assertEquals(1, devices.getDevices().size());
+		assertNull(devices.get(B));
+
+		// nor are their fixes passed on by the fusion
+		final FixFusion fusion = new FixFusion(devices, this.collector, FusionMode.BEST);
+		fusion.handleTPV(tpv(B, 2, 43.0, -89.0, 1));
+		assertTrue(this.out.isEmpty());
+		assertEquals(0, fusion.getReceived());
+	}
+
+	@Test
+	public void bestPassesOnTheSmallestErrorWithHysteresis() {
+		final FixFusion fusion = new FixFusion(new DeviceTracker(), this.collector, FusionMode.BEST);
+		fusion.handleTPV(tpv(A, 1, 42.0, -88.0, 10));
+		fusion.handleTPV(tpv(B, 1, 42.00001, -88.0, 3));
+		assertEquals(2, this.out.size()); // A alone at first, then B takes over
+		assertEquals(B, fusion.getSelected());
+
+		// A only a little better than B, B stays
+		fusion.handleTPV(tpv(A, 2, 42.0, -88.0, 2.8));
+		fusion.handleTPV(tpv(B, 2, 42.00001, -88.0, 3));
+		assertEquals(3, this.out.size());
+		assertEquals(B, this.out.get(2).getDevice());
+
+		// A clearly better
+		fusion.handleTPV(tpv(A, 3, 42.0, -88.0, 1));
+		fusion.handleTPV(tpv(B, 3, 42.00001, -88.0, 3));
+		assertEquals(4, this.out.size());
+		assertEquals(A, this.out.get(3).getDevice());
+		assertEquals(A, fusion.getSelected());
+	}
+
+	@Test
+	public void bestPrefers3D() {
+		final FixFusion fusion = new FixFusion(new DeviceTracker(), this.collector, FusionMode.BEST);
+		fusion.handleTPV(tpv(A, 1, 42.0, -88.0, 8));
+		final TPVObject twoD = tpv(B, 1, 42.0, -88.0, 1);
+		twoD.setMode(ENMEAMode.TwoDimensional);
+		fusion.handleTPV(twoD);
+		assertEquals(1, this.out.size());
+		assertEquals(A, fusion.getSelected());
+	}
+
+	@Test
+	public void blendWeightsByInverseVariance() {
+		final FixFusion fusion = new FixFusion(new DeviceTracker(), this.collector, FusionMode.BLEND);
+		fusion.handleTPV(tpv(A, 1, 42.0, -88.0, 2));
+		fusion.handleTPV(tpv(B, 1, 42.0, -88.0, 2));
+		// the first epoch is passed on with A alone, B was not known yet
+		assertEquals(1, this.out.size());
+
+		fusion.handleTPV(tpv(A, 2, 42.0, -88.0, 2));
+		assertEquals(1, this.out.size()); // waits for B
+		fusion.handleTPV(tpv(B, 2, 42.001, -88.002, 4));
+		assertEquals(2, this.out.size());
+
+		final TPVObject fused = this.out.get(1);
+		assertEquals(FixFusion.FUSED_DEVICE, fused.getDevice());
+		assertEquals(2.0, fused.getTimestamp(), 0.0);
+		assertEquals(ENMEAMode.ThreeDimensional, fused.getMode());
+		// weights 1/4 and 1/16: A counts four times as much as B
+		assertEquals(42.0 + (0.001 / 5), fused.getLatitude(), 1e-9);
+		assertEquals(-88.0 - (0.002 / 5), fused.getLongitude(), 1e-9);
+		assertEquals(250.0, fused.getAltitude(), 1e-9);
+		// combined error smaller than either
+		assertEquals(2 / Math.sqrt(1.25), fused.getLatitudeError(), 1e-9);
+		assertEquals(fusion.getReceived(), 4);
+	}
+
+	@Test
+	public void blendPrefersGSTSigma() {
+		final FixFusion fusion = new FixFusion(new DeviceTracker(), this.collector, FusionMode.BLEND);
+		fusion.handleTPV(tpv(A, 0, 42.0, -88.0, 1.96));
+		fusion.handleTPV(tpv(B, 0, 42.0, -88.0, 1.96));
+		final GSTObject gst = new GSTObject();
+		gst.setDevice(B);
+		gst.setTimestamp(1);
+		gst.setLat(0.5);
+		gst.setLon(0.5);
+		fusion.handleGST(gst);
+		fusion.handleTPV(tpv(A, 1, 42.0, -88.0, 1.96));
+		fusion.handleTPV(tpv(B, 1, 42.001, -88.0, 1.96));
+		assertEquals(2, this.out.size());
+		// sigma 1 for A and 0.5 for B from its GST: B counts four times as much
+		assertEquals(42.0 + (0.001 * 4 / 5), this.out.get(1).getLatitude(), 1e-9);
+	}
+
+	@Test
+	public void blendDoesNotWaitForADeviceThatStopped() {
+		final FixFusion fusion = new FixFusion(new DeviceTracker(), this.collector, FusionMode.BLEND);
+		fusion.handleTPV(tpv(A, 1, 42.0, -88.0, 2));
+		fusion.handleTPV(tpv(B, 1, 42.0, -88.0, 2));
+		this.out.clear();
+
+		fusion.handleTPV(tpv(A, 2, 42.0, -88.0, 2));
+		assertTrue(this.out.isEmpty());
+		// the next epoch starts without B, the pending one is passed on
+		fusion.handleTPV(tpv(A, 3, 42.0, -88.0, 2));
+		assertEquals(1, this.out.size());
+		assertEquals(2.0, this.out.get(0).getTimestamp(), 0.0);
+
+		// a straggler for epoch 2 is dropped
+		fusion.handleTPV(tpv(B, 2, 42.0, -88.0, 2));
+		assertEquals(1, this.out.size());
+		fusion.flush();
+		assertEquals(2, this.out.size());
+	}
+
+	@Test
+	public void blendAcrossTheAntimeridian() {
+		final FixFusion fusion = new FixFusion(new DeviceTracker(), this.collector, FusionMode.BLEND);
+		fusion.handleTPV(tpv(A, 1, 0.0, 179.9999, 2));
+		fusion.handleTPV(tpv(B, 1, 0.0, -179.9999, 2));
+		fusion.handleTPV(tpv(A, 2, 0.0, 179.9999, 2));
+		fusion.handleTPV(tpv(B, 2, 0.0, -179.9999, 2));
+		assertEquals(180.0, Math.abs(this.out.get(this.out.size() - 1).getLongitude()), 1e-9);
+	}
+
+	@Test
+	public void noFixPassedOnWhenEveryDeviceLostIt() {
+		final FixFusion fusion = new FixFusion(new DeviceTracker(), this.collector, FusionMode.BEST);
+		fusion.handleTPV(tpv(A, 1, 42.0, -88.0, 2));
+		fusion.handleTPV(tpv(B, 1, 42.0, -88.0, 3));
+		fusion.handleTPV(noFix(A, 2));
+		assertEquals(1, this.out.size());
+		fusion.handleTPV(tpv(B, 2, 42.0, -88.0, 3));
+		assertEquals(2, this.out.size());
+		assertEquals(B, fusion.getSelected());
+		fusion.handleTPV(noFix(B, 3));
+		assertEquals(3, this.out.size());
+		assertEquals(ENMEAMode.NoFix, this.out.get(2).getMode());
+		assertNull(fusion.getSelected());
+	}
+}
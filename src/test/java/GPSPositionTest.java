@@ -0,0 +1,175 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * GPSPositionTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.traviscons.GPSTrackPoints.backend.FixSnapshot;
+import com.traviscons.GPSTrackPoints.backend.GPSPosition;
+import com.traviscons.GPSTrackPoints.types.ENMEAMode;
+import com.traviscons.GPSTrackPoints.types.GSTObject;
+import com.traviscons.GPSTrackPoints.types.SATObject;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * JUnit tests for GPSPosition and its snapshots.
+ */
+public class GPSPositionTest {
+
+	private static TPVObject tpv(final double time, final double lat) {
+		final TPVObject tpv = new TPVObject();
+		tpv.setMode(ENMEAMode.ThreeDimensional);
+		tpv.setTimestamp(time);
+		tpv.setLatitude(lat);
+		tpv.setLongitude(-88.0);
+		return tpv;
+	}
+
+	@Test
+	public void emptyBeforeTheFirstFix() {
+		final GPSPosition position = new GPSPosition();
+		assertNull(position.getPosition());
+		assertEquals(0, position.getVersion());
+		assertNull(position.getSnapshotIfNewer(0));
+		assertEquals(Long.MAX_VALUE, position.getSnapshot().getAgeMillis());
+		assertTrue(Double.isNaN(position.getSnapshot().getHorizontalDOP()));
+	}
+
+	@Test
+	public void versionCountsFixes() {
+		final GPSPosition position = new GPSPosition();
+		final TPVObject first = tpv(1, 42.0);
+		position.setPosition(first);
+		assertSame(first, position.getPosition());
+		assertEquals(1, position.getVersion());
+
+		final FixSnapshot seen = position.getSnapshotIfNewer(0);
+		assertNotNull(seen);
+		assertNull(position.getSnapshotIfNewer(seen.getVersion()));
+
+		// SKY and GST do not count as a new fix
+		position.setSKY(new SKYObject());
+		position.setGST(new GSTObject());
+		assertNull(position.getSnapshotIfNewer(seen.getVersion()));
+
+		position.setPosition(tpv(2, 42.1));
+		assertEquals(2, position.getSnapshotIfNewer(seen.getVersion()).getVersion());
+		// the snapshot a reader holds does not change
+		assertSame(first, seen.getTPV());
+	}
+
+	@Test
+	public void snapshotCarriesSkyAndGst() {
+		final GPSPosition position = new GPSPosition();
+		position.setPosition(tpv(1, 42.0));
+
+		final SKYObject sky = new SKYObject();
+		sky.setHorizontalDOP(0.9);
+		sky.setAltitudeDOP(1.4);
+		final List<SATObject> sats = new ArrayList<SATObject>();
+		for (int i = 0; i < 5; i++) {
+			final SATObject sat = new SATObject();
+			sat.setUsed(i < 3);
+			sats.add(sat);
+		}
+		sky.setSatellites(sats);
+		position.setSKY(sky);
+
+		final GSTObject gst = new GSTObject();
+		gst.setTimestamp(1);
+		gst.setRms(2.5);
+		gst.setLat(1.5);
+		gst.setLon(1.2);
+		gst.setAlt(3.0);
+		position.setGST(gst);
+
+		FixSnapshot s = position.getSnapshot();
+		assertEquals(0.9, s.getHorizontalDOP(), 0.0);
+		assertEquals(1.4, s.getVerticalDOP(), 0.0);
+		assertEquals(5, s.getSatellitesVisible());
+		assertEquals(3, s.getSatellitesUsed());
+		assertEquals(2.5, s.getRms(), 0.0);
+		assertEquals(1.5, s.getLatitudeSigma(), 0.0);
+		assertEquals(3.0, s.getAltitudeSigma(), 0.0);
+		assertTrue(s.isGSTCurrent());
+
+		// a new fix keeps the values until the SKY and GST of its epoch arrive
+		position.setPosition(tpv(2, 42.1));
+		s = position.getSnapshot();
+		assertEquals(0.9, s.getHorizontalDOP(), 0.0);
+		assertEquals(1.5, s.getLatitudeSigma(), 0.0);
+		assertFalse(s.isGSTCurrent());
+		assertTrue(s.getAgeMillis() < 1000);
+	}
+
+	@Test
+	public void readersSeeWholeSnapshotsWhileWritersRace() throws Exception {
+		final GPSPosition position = new GPSPosition();
+		final int fixes = 20000;
+		final AtomicReference<String> failure = new AtomicReference<String>();
+
+		final Thread reader = new Thread() {
+			@Override
+			public void run() {
+				long last = 0;
+				while (last < fixes) {
+					final FixSnapshot s = position.getSnapshotIfNewer(last);
+					if (s == null) {
+						continue;
+					}
+					// the latitude of each fix encodes its version
+					if (s.getTPV().getTimestamp() != s.getTPV().getLatitude()) {
+						failure.set("torn fix at version " + s.getVersion());
+						return;
+					}
+					if (s.getVersion() <= last) {
+						failure.set("version went back from " + last + " to " + s.getVersion());
+						return;
+					}
+					last = s.getVersion();
+				}
+			}
+		};
+		final Thread sky = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < fixes; i++) {
+					position.setSKY(new SKYObject());
+				}
+			}
+		};
+		reader.start();
+		sky.start();
+		for (int i = 1; i <= fixes; i++) {
+			position.setPosition(tpv(i, i));
+		}
+		sky.join();
+		reader.join(10000);
+
+		assertNull(failure.get());
+		assertFalse(reader.isAlive());
+		assertEquals(fixes, position.getVersion());
+	}
+}
@@ -0,0 +1,142 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * GPSdEndpointCommandTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.traviscons.GPSTrackPoints.backend.GPSdEndpoint;
+import com.traviscons.GPSTrackPoints.backend.StreamingResultParser;
+import com.traviscons.GPSTrackPoints.types.PollObject;
+import com.traviscons.GPSTrackPoints.types.VersionObject;
+
+/**
+ * JUnit tests for the asynchronous command API of GPSdEndpoint against a local fake GPSd.
+ */
+public class GPSdEndpointCommandTest {
+
+	private static String version(final String release) {
+		return "{\"class\":\"VERSION\",\"release\":\"" + release + "\",\"rev\":\"" + release + "\",\"proto_major\":3,\"proto_minor\":11}\n";
+	}
+
+	private static final String POLL = "{\"class\":\"POLL\",\"time\":\"2018-05-12T17:01:04.000Z\",\"active\":1,\"tpv\":[],\"sky\":[]}\n";
+
+	@Test
+	public void pipelinedCommandsMatchByClassInOrder() throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", server.getLocalPort(), new StreamingResultParser());
+		ep.setRetryInterval(50);
+		ep.start();
+
+		final Socket client = server.accept();
+		final BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
+		final OutputStream out = client.getOutputStream();
+		// unrequested greeting, must not complete a later VERSION command
+		out.write(version("greeting").getBytes("UTF-8"));
+		out.flush();
+		Thread.sleep(200);
+
+		final CompletableFuture<VersionObject> first = ep.versionAsync();
+		final CompletableFuture<PollObject> poll = ep.pollAsync();
+		final CompletableFuture<VersionObject> second = ep.versionAsync();
+		assertEquals("?VERSION;", in.readLine());
+		assertEquals("?POLL;", in.readLine());
+		assertEquals("?VERSION;", in.readLine());
+		assertFalse(first.isDone());
+
+		// the POLL answer overtakes the VERSION answers
+		out.write((POLL + version("one") + version("two")).getBytes("UTF-8"));
+		out.flush();
+
+		assertEquals("one", first.get(5, TimeUnit.SECONDS).getRelease());
+		assertEquals("two", second.get(5, TimeUnit.SECONDS).getRelease());
+		assertEquals(1, poll.get(5, TimeUnit.SECONDS).getActive());
+
+		ep.stop();
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void watchBeforeStartIsSentOnConnect() throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", server.getLocalPort(), new StreamingResultParser());
+		ep.setRetryInterval(50);
+		// not connected yet, remembered rather than failed
+		assertNull(ep.watch(true, true));
+		ep.start();
+
+		final Socket client = server.accept();
+		final BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
+		assertTrue(in.readLine().startsWith("?WATCH="));
+
+		ep.stop();
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void commandTimesOut() throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", server.getLocalPort(), new StreamingResultParser());
+		ep.setRetryInterval(50);
+		ep.start();
+		final Socket client = server.accept();
+		Thread.sleep(200);
+
+		final CompletableFuture<VersionObject> version = ep.command("?VERSION;", VersionObject.class, 100);
+		try {
+			version.get(5, TimeUnit.SECONDS);
+			fail("expected a timeout");
+		} catch (final ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+
+		ep.stop();
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void stopFailsOutstandingCommands() throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", server.getLocalPort(), new StreamingResultParser());
+		ep.setRetryInterval(50);
+		ep.start();
+		final Socket client = server.accept();
+		Thread.sleep(200);
+
+		final CompletableFuture<PollObject> poll = ep.pollAsync();
+		ep.stop();
+		assertTrue(poll.isCompletedExceptionally());
+
+		client.close();
+		server.close();
+	}
+}
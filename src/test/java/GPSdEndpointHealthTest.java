@@ -0,0 +1,161 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * GPSdEndpointHealthTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import com.traviscons.GPSTrackPoints.backend.GPSdEndpoint;
+import com.traviscons.GPSTrackPoints.backend.GPSdSelector;
+import com.traviscons.GPSTrackPoints.backend.StreamingResultParser;
+
+/**
+ * JUnit tests for the reconnect backoff and the read idle watchdog of GPSdEndpoint.
+ */
+public class GPSdEndpointHealthTest {
+
+	private static final String TPV = "{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"mode\":3,\"time\":\"2018-05-12T17:01:04.000Z\",\"lat\":42.239283474,\"lon\":-88.329418327,\"alt\":268.474}\n";
+
+	@Test
+	public void retriesBackOff() throws Exception {
+		// nothing listens on the port
+		final ServerSocket closed = new ServerSocket(0);
+		final int port = closed.getLocalPort();
+		closed.close();
+
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", port, new StreamingResultParser());
+		ep.setRetryInterval(20);
+		ep.setMaxRetryInterval(200);
+		ep.start();
+		Thread.sleep(1500);
+		final int failures = ep.getHealth().getConsecutiveFailures();
+		ep.stop();
+
+		// a fixed 20ms interval would have made about 75 attempts
+		assertTrue("attempts " + failures, failures >= 4);
+		assertTrue("attempts " + failures, failures < 25);
+		assertFalse(ep.getHealth().isConnected());
+		assertEquals(0, ep.getHealth().getConnectCount());
+	}
+
+	@Test
+	public void idleConnectionIsReplacedAndWatchRestored() throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		server.setSoTimeout(5000);
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", server.getLocalPort(), new StreamingResultParser());
+		ep.setRetryInterval(20);
+		ep.setIdleTimeout(300);
+		ep.start();
+
+		final Socket first = server.accept();
+		this.awaitConnected(ep);
+		ep.watchAsync(true, true);
+		assertTrue(new BufferedReader(new InputStreamReader(first.getInputStream())).readLine().startsWith("?WATCH="));
+
+		// the first server goes silent without closing, like a half-open connection
+		final Socket second = server.accept();
+		assertTrue(new BufferedReader(new InputStreamReader(second.getInputStream())).readLine().startsWith("?WATCH="));
+		assertEquals(1, ep.getHealth().getIdleTimeouts());
+		this.awaitConnected(ep);
+		assertEquals(1, ep.getHealth().getReconnectCount());
+
+		this.sendReport(ep, second);
+
+		ep.stop();
+		first.close();
+		second.close();
+		server.close();
+	}
+
+	@Test
+	public void idleSelectorConnectionIsReplacedAndWatchRestored() throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		server.setSoTimeout(5000);
+		final GPSdSelector selector = new GPSdSelector();
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", server.getLocalPort(), new StreamingResultParser());
+		ep.setRetryInterval(20);
+		ep.setIdleTimeout(300);
+		selector.start();
+		ep.start(selector);
+
+		final Socket first = server.accept();
+		this.awaitConnected(ep);
+		ep.watchAsync(true, true);
+		assertTrue(new BufferedReader(new InputStreamReader(first.getInputStream())).readLine().startsWith("?WATCH="));
+
+		final Socket second = server.accept();
+		assertTrue(new BufferedReader(new InputStreamReader(second.getInputStream())).readLine().startsWith("?WATCH="));
+		assertEquals(1, ep.getHealth().getIdleTimeouts());
+
+		this.sendReport(ep, second);
+
+		ep.stop();
+		selector.stop();
+		first.close();
+		second.close();
+		server.close();
+	}
+
+	@Test
+	public void quietConnectionWithoutWatchIsKept() throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		server.setSoTimeout(5000);
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", server.getLocalPort(), new StreamingResultParser());
+		ep.setRetryInterval(20);
+		ep.setIdleTimeout(100);
+		ep.start();
+
+		final Socket client = server.accept();
+		Thread.sleep(500);
+		assertTrue(ep.getHealth().isConnected());
+		assertEquals(0, ep.getHealth().getIdleTimeouts());
+		assertEquals(1, ep.getHealth().getConnectCount());
+
+		ep.stop();
+		client.close();
+		server.close();
+	}
+
+	/// a report on the new connection resets the backoff and is seen by the health monitor
+	private void sendReport(final GPSdEndpoint ep, final Socket client) throws Exception {
+		final OutputStream out = client.getOutputStream();
+		out.write(TPV.getBytes("UTF-8"));
+		out.flush();
+		final long deadline = System.currentTimeMillis() + 2000;
+		while ((ep.getHealth().getMillisSinceLastReport() < 0) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+		assertTrue(ep.getHealth().getMillisSinceLastReport() >= 0);
+		assertEquals(0, ep.getHealth().getConsecutiveFailures());
+	}
+
+	private void awaitConnected(final GPSdEndpoint ep) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 2000;
+		while (!ep.getHealth().isConnected() && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+		assertTrue(ep.getHealth().isConnected());
+	}
+}
@@ -0,0 +1,241 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * GPSdEndpointListenerTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.traviscons.GPSTrackPoints.api.IObjectListener;
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.backend.GPSdEndpoint;
+import com.traviscons.GPSTrackPoints.backend.OverflowPolicy;
+import com.traviscons.GPSTrackPoints.backend.StreamingResultParser;
+import com.traviscons.GPSTrackPoints.backend.WaitStrategy;
+import com.traviscons.GPSTrackPoints.types.ATTObject;
+import com.traviscons.GPSTrackPoints.types.DeviceObject;
+import com.traviscons.GPSTrackPoints.types.DevicesObject;
+import com.traviscons.GPSTrackPoints.types.GSTObject;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+import com.traviscons.GPSTrackPoints.types.VersionObject;
+import com.traviscons.GPSTrackPoints.types.subframes.SUBFRAMEObject;
+
+/**
+ * JUnit tests for listener subscriptions of GPSdEndpoint against a local fake GPSd.
+ */
+public class GPSdEndpointListenerTest {
+
+	private static final String TPV = "{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"mode\":3,\"time\":\"2018-05-12T17:01:04.000Z\",\"lat\":42.239283474,\"lon\":-88.329418327,\"alt\":268.474}\n";
+
+	private static final String SKY = "{\"class\":\"SKY\",\"device\":\"/dev/ttyUSB0\",\"hdop\":1.05,\"satellites\":[{\"PRN\":7,\"el\":44,\"az\":306,\"ss\":29,\"used\":true}]}\n";
+
+	private static final String GST = "{\"class\":\"GST\",\"device\":\"/dev/ttyUSB0\",\"time\":\"2018-05-12T17:01:04.000Z\",\"rms\":2.4,\"major\":5.1,\"minor\":3.2,\"orient\":12.0,\"lat\":3.1,\"lon\":2.8,\"alt\":6.0}\n";
+
+	private static class Counter extends ObjectListener {
+		final AtomicInteger tpv = new AtomicInteger();
+		final AtomicInteger sky = new AtomicInteger();
+		final CountDownLatch gst = new CountDownLatch(1);
+		volatile double gstRms;
+
+		Counter() {
+			super(null, null, null);
+		}
+
+		@Override
+		public void handleTPV(final TPVObject tpv) {
+			this.tpv.incrementAndGet();
+		}
+
+		@Override
+		public void handleSKY(final SKYObject sky) {
+			this.sky.incrementAndGet();
+		}
+
+		@Override
+		public void handleGST(final GSTObject gst) {
+			this.gstRms = gst.getRms();
+			this.gst.countDown();
+		}
+	}
+
+	private void subscriptions(final boolean ring) throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", server.getLocalPort(), new StreamingResultParser());
+		ep.setRetryInterval(50);
+		final Counter all = new Counter();
+		final Counter tpvOnly = new Counter();
+		ep.addListener(all);
+		ep.addListener(tpvOnly, TPVObject.class);
+		if (ring) {
+			ep.setDispatchRing(64, WaitStrategy.PARK, OverflowPolicy.BLOCK);
+		}
+		ep.start();
+
+		final Socket client = server.accept();
+		final OutputStream out = client.getOutputStream();
+		out.write((TPV + SKY + GST + TPV + SKY).getBytes("UTF-8"));
+		out.flush();
+
+		assertTrue(all.gst.await(5, TimeUnit.SECONDS));
+		assertEquals(2.4, all.gstRms, 0.0);
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (((all.sky.get() < 2) || (tpvOnly.tpv.get() < 2)) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+		assertEquals(2, all.tpv.get());
+		assertEquals(2, all.sky.get());
+		assertEquals(2, tpvOnly.tpv.get());
+		assertEquals(0, tpvOnly.sky.get());
+		assertEquals(1, tpvOnly.gst.getCount());
+
+		ep.stop();
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void listenersOnlyGetTheirReports() throws Exception {
+		this.subscriptions(false);
+	}
+
+	@Test
+	public void listenersOnlyGetTheirReportsThroughRing() throws Exception {
+		this.subscriptions(true);
+	}
+
+	@Test
+	public void olderListenersIgnoreNewReports() throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", server.getLocalPort(), new StreamingResultParser());
+		ep.setRetryInterval(50);
+		final CountDownLatch tpvs = new CountDownLatch(2);
+		// written against the interface before GST and POLL were added
+		ep.addListener(new IObjectListener() {
+			@Override
+			public void handleTPV(final TPVObject tpv) {
+				tpvs.countDown();
+			}
+
+			@Override
+			public void handleSKY(final SKYObject sky) {
+				//
+			}
+
+			@Override
+			public void handleATT(final ATTObject att) {
+				//
+			}
+
+			@Override
+			public void handleSUBFRAME(final SUBFRAMEObject subframe) {
+				//
+			}
+
+			@Override
+			public void handleDevices(final DevicesObject devices) {
+				//
+			}
+
+			@Override
+			public void handleDevice(final DeviceObject device) {
+				//
+			}
+		});
+		ep.start();
+
+		final Socket client = server.accept();
+		final OutputStream out = client.getOutputStream();
+		out.write((TPV + GST + TPV).getBytes("UTF-8"));
+		out.flush();
+		assertTrue(tpvs.await(5, TimeUnit.SECONDS));
+
+		ep.stop();
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void gstDoesNotAnswerCommands() throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", server.getLocalPort(), new StreamingResultParser());
+		ep.setRetryInterval(50);
+		ep.start();
+		final Socket client = server.accept();
+		Thread.sleep(200);
+
+		final CompletableFuture<VersionObject> version = ep.versionAsync();
+		final OutputStream out = client.getOutputStream();
+		out.write((GST + "{\"class\":\"VERSION\",\"release\":\"3.17\",\"rev\":\"3.17\",\"proto_major\":3,\"proto_minor\":11}\n").getBytes("UTF-8"));
+		out.flush();
+		assertEquals("3.17", version.get(5, TimeUnit.SECONDS).getRelease());
+
+		ep.stop();
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void listenersChangeWhileDispatching() throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", server.getLocalPort(), new StreamingResultParser());
+		ep.setRetryInterval(50);
+		final Counter steady = new Counter();
+		ep.addListener(steady, TPVObject.class);
+		ep.start();
+		final Socket client = server.accept();
+		final OutputStream out = client.getOutputStream();
+
+		final Thread churn = new Thread() {
+			@Override
+			public void run() {
+				while (!this.isInterrupted()) {
+					final Counter c = new Counter();
+					ep.addListener(c);
+					ep.removeListener(c);
+				}
+			}
+		};
+		churn.start();
+		final StringBuilder lines = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			lines.append(TPV);
+		}
+		out.write(lines.toString().getBytes("UTF-8"));
+		out.flush();
+		final long deadline = System.currentTimeMillis() + 10000;
+		while ((steady.tpv.get() < 2000) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+		churn.interrupt();
+		churn.join();
+		assertEquals(2000, steady.tpv.get());
+
+		ep.stop();
+		client.close();
+		server.close();
+	}
+}
@@ -0,0 +1,580 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * GPSdReplayServer
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local stand-in for GPSd that replays a recorded JSON stream over TCP.
+ *
+ * The recording is the output of gpspipe -w, one JSON report per line. Lines may carry the
+ * gpspipe -u prefix of epoch seconds ("1526144464.123: {...}"). Otherwise the time of a line
+ * is the "time" field of the last TPV, SKY or GST before it. Lines with the same time are one
+ * epoch and go out together. Between epochs the replay waits the recorded gap divided by the
+ * speed, a speed of 0 sends as fast as the clients take it.
+ *
+ * Every client gets the VERSION banner on connect and answers to ?VERSION, ?WATCH, ?POLL,
+ * ?DEVICE and ?DEVICES like GPSd does. Reports are only sent to clients with a JSON watch.
+ * One replay thread writes each epoch to all watching clients in a single write per client,
+ * so a slow client slows the replay for everyone, like a slow reader of a real GPSd would
+ * get disconnected.
+ *
+ * This is not a JUnit test. Run it by hand to serve a recording:
+ * <pre>
+ * java -cp ... com.traviscons.GPSTrackPoints.tests.GPSdReplayServer track.json 2947 10 loop
+ * </pre>
+ * or use it from tests and {@link ReplayLoad}.
+ */
+public class GPSdReplayServer {
+
+	private static final Pattern PREFIX = Pattern.compile("^(\\d+(?:\\.\\d+)?):\\s*(\\{.*)$");
+
+	private static final Pattern TIME = Pattern.compile("\"time\":\"([^\"]+)\"");
+
+	private static final Pattern CLASS = Pattern.compile("\"class\":\"([A-Z]+)\"");
+
+	private static final Pattern DEVICE = Pattern.compile("\"device\":\"([^\"]+)\"");
+
+	private static final Pattern ENABLE = Pattern.compile("\"enable\":(true|false)");
+
+	private static final Pattern JSON = Pattern.compile("\"json\":(true|false)");
+
+	private static final String VERSION = "{\"class\":\"VERSION\",\"release\":\"3.17\",\"rev\":\"replay\",\"proto_major\":3,\"proto_minor\":12}";
+
+	/// one epoch of the recording
+	private static final class Epoch {
+		final double time;
+
+		final byte[] bytes;
+
+		final int tpvs;
+
+		Epoch(final double time, final byte[] bytes, final int tpvs) {
+			this.time = time;
+			this.bytes = bytes;
+			this.tpvs = tpvs;
+		}
+	}
+
+	private final List<Epoch> epochs = new ArrayList<Epoch>();
+
+	private final String devicePath;
+
+	private final ServerSocket server;
+
+	private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<Client>();
+
+	private volatile double speed = 1.0;
+
+	private volatile boolean loop;
+
+	private volatile boolean running;
+
+	private volatile String lastTPV;
+
+	private volatile String lastSKY;
+
+	private final AtomicLong epochsSent = new AtomicLong();
+
+	private final AtomicLong tpvsSent = new AtomicLong();
+
+	private volatile AtomicLongArray sendTimes;
+
+	private Thread acceptThread;
+
+	private Thread replayThread;
+
+	/**
+	 * @param lines the recording, one report per line
+	 * @param port  the port to listen on, 0 for any free port
+	 * @throws IOException if the port can not be opened
+	 */
+	public GPSdReplayServer(final List<String> lines, final int port) throws IOException {
+		String device = null;
+		double time = Double.NaN;
+		StringBuilder epoch = new StringBuilder();
+		int tpvs = 0;
+		for (final String raw : lines) {
+			String line = raw.trim();
+			if (line.isEmpty()) {
+				continue;
+			}
+			double lineTime = time;
+			final Matcher prefix = PREFIX.matcher(line);
+			if (prefix.matches()) {
+				lineTime = Double.parseDouble(prefix.group(1));
+				line = prefix.group(2);
+			} else {
+				final Matcher clazz = CLASS.matcher(line);
+				final Matcher t = TIME.matcher(line);
+				if (clazz.find() && isReport(clazz.group(1)) && t.find()) {
+					lineTime = parseTime(t.group(1), time);
+				}
+			}
+			if (device == null) {
+				final Matcher d = DEVICE.matcher(line);
+				if (d.find()) {
+					device = d.group(1);
+				}
+			}
+			if ((epoch.length() > 0) && !(lineTime == time)) {
+				this.epochs.add(new Epoch(time, epoch.toString().getBytes(StandardCharsets.UTF_8), tpvs));
+				epoch = new StringBuilder();
+				tpvs = 0;
+			}
+			time = lineTime;
+			epoch.append(line).append("\r\n");
+			if (line.contains("\"class\":\"TPV\"")) {
+				tpvs++;
+			}
+		}
+		if (epoch.length() > 0) {
+			this.epochs.add(new Epoch(time, epoch.toString().getBytes(StandardCharsets.UTF_8), tpvs));
+		}
+		this.devicePath = (device != null) ? device : "/dev/ttyUSB0";
+		this.server = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+	}
+
+	/**
+	 * Read a recording from a file.
+	 *
+	 * @param filename gpspipe -w output
+	 * @return the lines
+	 * @throws IOException if the file can not be read
+	 */
+	public static List<String> readRecording(final String filename) throws IOException {
+		final List<String> lines = new ArrayList<String>();
+		final BufferedReader in = new BufferedReader(new FileReader(filename));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			in.close();
+		}
+		return lines;
+	}
+
+	/**
+	 * Make up a recording of a receiver driving north at 10 m/s.
+	 *
+	 * @param epochs number of epochs
+	 * @param hz     epochs per second
+	 * @return one TPV per epoch and a SKY every tenth epoch
+	 */
+	public static List<String> synthetic(final int epochs, final double hz) {
+		final List<String> lines = new ArrayList<String>(epochs + (epochs / 10) + 1);
+		final long start = 1526144464000L;
+		for (int i = 0; i < epochs; i++) {
+			final String time = Instant.ofEpochMilli(start + (long) ((i * 1000) / hz)).toString();
+			lines.add("{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"mode\":3,\"time\":\"" + time
+					+ "\",\"ept\":0.005,\"lat\":" + (42.239283474 + ((i * 0.00009) / hz))
+					+ ",\"lon\":-88.329418327,\"alt\":268.474,\"epx\":8.473,\"epy\":11.297,\"epv\":30.360,\"track\":0.0,\"speed\":10.0,\"climb\":0.0}");
+			if ((i % 10) == 0) {
+				lines.add("{\"class\":\"SKY\",\"device\":\"/dev/ttyUSB0\",\"xdop\":0.72,\"ydop\":0.93,\"vdop\":1.67,\"tdop\":1.02,\"hdop\":1.05,\"gdop\":2.31,\"pdop\":1.97,\"satellites\":[{\"PRN\":7,\"el\":44,\"az\":306,\"ss\":29,\"used\":true},{\"PRN\":8,\"el\":18,\"az\":267,\"ss\":22,\"used\":true},{\"PRN\":30,\"el\":70,\"az\":52,\"ss\":31,\"used\":true}]}");
+			}
+		}
+		return lines;
+	}
+
+	private static boolean isReport(final String clazz) {
+		return "TPV".equals(clazz) || "SKY".equals(clazz) || "GST".equals(clazz) || "ATT".equals(clazz);
+	}
+
+	private static double parseTime(final String text, final double fallback) {
+		try {
+			return Instant.parse(text).toEpochMilli() / 1000.0;
+		} catch (final Exception e) {
+			return fallback;
+		}
+	}
+
+	/**
+	 * @param speed 1 for real time, N for N times faster, 0 for as fast as possible
+	 */
+	public void setSpeed(final double speed) {
+		this.speed = speed;
+	}
+
+	/**
+	 * @param loop true to start the recording over when it ends
+	 */
+	public void setLoop(final boolean loop) {
+		this.loop = loop;
+	}
+
+	/**
+	 * Remember the send time of the first TPVs, for latency measurements.
+	 *
+	 * @param tpvs how many TPVs to remember
+	 */
+	public void recordSendTimes(final int tpvs) {
+		this.sendTimes = new AtomicLongArray(tpvs);
+	}
+
+	/**
+	 * @param sequence the number of the TPV, counted from 0 over all passes
+	 * @return System.nanoTime() when the epoch with that TPV was written, 0 if not known
+	 */
+	public long getSendTime(final long sequence) {
+		final AtomicLongArray times = this.sendTimes;
+		if ((times == null) || (sequence >= times.length())) {
+			return 0;
+		}
+		return times.get((int) sequence);
+	}
+
+	/**
+	 * @return the port the server listens on
+	 */
+	public int getPort() {
+		return this.server.getLocalPort();
+	}
+
+	/**
+	 * @return number of connected clients
+	 */
+	public int getClientCount() {
+		return this.clients.size();
+	}
+
+	/**
+	 * @return number of clients with a JSON watch
+	 */
+	public int getWatchingCount() {
+		int n = 0;
+		for (final Client c : this.clients) {
+			if (c.watching) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @return number of epochs replayed
+	 */
+	public long getEpochsSent() {
+		return this.epochsSent.get();
+	}
+
+	/**
+	 * @return number of TPV reports replayed, counted once however many clients got them
+	 */
+	public long getTpvsSent() {
+		return this.tpvsSent.get();
+	}
+
+	/**
+	 * @return number of TPV reports in one pass of the recording
+	 */
+	public int getRecordedTpvs() {
+		int n = 0;
+		for (final Epoch e : this.epochs) {
+			n += e.tpvs;
+		}
+		return n;
+	}
+
+	/**
+	 * Start accepting clients. The replay waits until {@link #startReplay()}.
+	 */
+	public void start() {
+		this.running = true;
+		this.acceptThread = new Thread("GPSd Replay Accept") {
+			@Override
+			public void run() {
+				GPSdReplayServer.this.acceptLoop();
+			}
+		};
+		this.acceptThread.setDaemon(true);
+		this.acceptThread.start();
+	}
+
+	/**
+	 * Start sending the recording to the watching clients.
+	 */
+	public void startReplay() {
+		this.replayThread = new Thread("GPSd Replay") {
+			@Override
+			public void run() {
+				GPSdReplayServer.this.replayLoop();
+			}
+		};
+		this.replayThread.setDaemon(true);
+		this.replayThread.start();
+	}
+
+	/**
+	 * Wait for the replay to end. Never returns for a looping replay unless stopped.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void awaitReplay() throws InterruptedException {
+		if (this.replayThread != null) {
+			this.replayThread.join();
+		}
+	}
+
+	/**
+	 * Stop the replay, disconnect every client and close the port.
+	 */
+	public void stop() {
+		this.running = false;
+		try {
+			this.server.close();
+		} catch (final IOException e) {
+			// ignore
+		}
+		if (this.replayThread != null) {
+			this.replayThread.interrupt();
+		}
+		for (final Client c : this.clients) {
+			c.close();
+		}
+	}
+
+	private void acceptLoop() {
+		while (this.running) {
+			try {
+				final Socket socket = this.server.accept();
+				socket.setTcpNoDelay(true);
+				final Client client = new Client(socket);
+				this.clients.add(client);
+				client.send(VERSION + "\r\n");
+				client.start();
+			} catch (final IOException e) {
+				if (this.running) {
+					System.err.println("WARNING: GPSdReplayServer - Problem encountered accepting a client " + e);
+				}
+			}
+		}
+	}
+
+	private void replayLoop() {
+		long sequence = 0;
+		try {
+			do {
+				double previous = Double.NaN;
+				for (final Epoch epoch : this.epochs) {
+					if (!this.running) {
+						return;
+					}
+					this.pace(previous, epoch.time);
+					previous = epoch.time;
+
+					final long now = System.nanoTime();
+					final AtomicLongArray times = this.sendTimes;
+					if (times != null) {
+						for (int i = 0; i < epoch.tpvs; i++) {
+							if ((sequence + i) < times.length()) {
+								times.set((int) (sequence + i), now);
+							}
+						}
+					}
+					sequence += epoch.tpvs;
+					for (final Client c : this.clients) {
+						if (c.watching) {
+							c.send(epoch.bytes);
+						}
+					}
+					this.remember(epoch);
+					this.tpvsSent.addAndGet(epoch.tpvs);
+					this.epochsSent.incrementAndGet();
+				}
+			} while (this.loop && this.running);
+		} catch (final InterruptedException e) {
+			// stopped
+		}
+	}
+
+	/// sleep the recorded gap between two epochs, scaled by the speed
+	private void pace(final double previous, final double time) throws InterruptedException {
+		final double s = this.speed;
+		if ((s <= 0) || Double.isNaN(previous) || Double.isNaN(time) || (time <= previous)) {
+			return;
+		}
+		final long nanos = (long) (((time - previous) / s) * 1e9);
+		final long until = System.nanoTime() + nanos;
+		long left = nanos;
+		while (left > 0) {
+			Thread.sleep(left / 1000000, (int) (left % 1000000));
+			left = until - System.nanoTime();
+		}
+	}
+
+	/// keep the latest TPV and SKY for ?POLL
+	private void remember(final Epoch epoch) {
+		final String text = new String(epoch.bytes, StandardCharsets.UTF_8);
+		for (final String line : text.split("\r\n")) {
+			if (line.contains("\"class\":\"TPV\"")) {
+				this.lastTPV = line;
+			} else if (line.contains("\"class\":\"SKY\"")) {
+				this.lastSKY = line;
+			}
+		}
+	}
+
+	private String deviceJSON() {
+		return "{\"class\":\"DEVICE\",\"path\":\"" + this.devicePath
+				+ "\",\"driver\":\"replay\",\"activated\":\"" + Instant.now() + "\",\"native\":0,\"bps\":4800,\"parity\":\"N\",\"stopbits\":1,\"cycle\":1.00}";
+	}
+
+	private String answer(final Client client, final String command) {
+		if (command.startsWith("?VERSION")) {
+			return VERSION + "\r\n";
+		}
+		if (command.startsWith("?WATCH")) {
+			final Matcher enable = ENABLE.matcher(command);
+			final Matcher json = JSON.matcher(command);
+			if (command.startsWith("?WATCH=")) {
+				client.enable = !enable.find() || Boolean.parseBoolean(enable.group(1));
+				if (json.find()) {
+					client.json = Boolean.parseBoolean(json.group(1));
+				}
+			}
+			client.watching = client.enable && client.json;
+			return "{\"class\":\"DEVICES\",\"devices\":[" + this.deviceJSON() + "]}\r\n"
+					+ "{\"class\":\"WATCH\",\"enable\":" + client.enable + ",\"json\":" + client.json
+					+ ",\"nmea\":false,\"raw\":0,\"scaled\":false,\"timing\":false,\"split24\":false,\"pps\":false}\r\n";
+		}
+		if (command.startsWith("?POLL")) {
+			final String tpv = this.lastTPV;
+			final String sky = this.lastSKY;
+			return "{\"class\":\"POLL\",\"time\":\"" + Instant.now() + "\",\"active\":" + ((tpv != null) ? 1 : 0)
+					+ ",\"tpv\":[" + ((tpv != null) ? tpv : "") + "],\"gst\":[],\"sky\":[" + ((sky != null) ? sky : "") + "]}\r\n";
+		}
+		if (command.startsWith("?DEVICES")) {
+			return "{\"class\":\"DEVICES\",\"devices\":[" + this.deviceJSON() + "]}\r\n";
+		}
+		if (command.startsWith("?DEVICE")) {
+			return this.deviceJSON() + "\r\n";
+		}
+		return "{\"class\":\"ERROR\",\"message\":\"Unrecognized request '" + command.replace("\"", "") + "'\"}\r\n";
+	}
+
+	/// one connected client with its reader thread
+	private final class Client extends Thread {
+
+		private final Socket socket;
+
+		private final OutputStream out;
+
+		volatile boolean enable;
+
+		volatile boolean json;
+
+		volatile boolean watching;
+
+		Client(final Socket socket) throws IOException {
+			super("GPSd Replay Client " + socket.getPort());
+			this.setDaemon(true);
+			this.socket = socket;
+			this.out = socket.getOutputStream();
+		}
+
+		@Override
+		public void run() {
+			try {
+				final BufferedReader in = new BufferedReader(
+						new InputStreamReader(this.socket.getInputStream(), StandardCharsets.UTF_8));
+				String line;
+				while ((line = in.readLine()) != null) {
+					// several commands can arrive on one line, each ends with ';'
+					for (final String command : line.split(";")) {
+						final String c = command.trim();
+						if (!c.isEmpty()) {
+							this.send(GPSdReplayServer.this.answer(this, c));
+						}
+					}
+				}
+			} catch (final SocketException e) {
+				// disconnected
+			} catch (final IOException e) {
+				System.err.println("WARNING: GPSdReplayServer - Problem encountered reading a client " + e);
+			}
+			this.close();
+		}
+
+		void send(final String text) {
+			this.send(text.getBytes(StandardCharsets.UTF_8));
+		}
+
+		void send(final byte[] bytes) {
+			synchronized (this.out) {
+				try {
+					this.out.write(bytes);
+					this.out.flush();
+				} catch (final IOException e) {
+					this.close();
+				}
+			}
+		}
+
+		void close() {
+			this.watching = false;
+			GPSdReplayServer.this.clients.remove(this);
+			try {
+				this.socket.close();
+			} catch (final IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * @param args &lt;recording> [port] [speed] [loop]
+	 * @throws Exception on errors
+	 */
+	public static void main(final String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("usage: GPSdReplayServer <recording> [port] [speed] [loop]");
+			return;
+		}
+		final int port = (args.length > 1) ? Integer.parseInt(args[1]) : 2947;
+		final GPSdReplayServer replay = new GPSdReplayServer(readRecording(args[0]), port);
+		replay.setSpeed((args.length > 2) ? Double.parseDouble(args[2]) : 1.0);
+		replay.setLoop((args.length > 3) && "loop".equals(args[3]));
+		replay.start();
+		replay.startReplay();
+		System.err.println("INFO: GPSdReplayServer - replaying " + args[0] + " on port " + replay.getPort());
+		replay.awaitReplay();
+		System.err.println("INFO: GPSdReplayServer - " + replay.getEpochsSent() + " epochs sent");
+		replay.stop();
+	}
+}
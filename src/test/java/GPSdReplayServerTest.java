@@ -0,0 +1,154 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * GPSdReplayServerTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.backend.GPSdEndpoint;
+import com.traviscons.GPSTrackPoints.backend.StreamingResultParser;
+import com.traviscons.GPSTrackPoints.types.PollObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+import com.traviscons.GPSTrackPoints.types.VersionObject;
+import com.traviscons.GPSTrackPoints.types.WatchObject;
+
+/**
+ * JUnit tests for the GPSdReplayServer test fixture, driven by real GPSdEndpoints.
+ */
+public class GPSdReplayServerTest {
+
+	private GPSdReplayServer replay;
+
+	private final List<GPSdEndpoint> endpoints = new ArrayList<GPSdEndpoint>();
+
+	@After
+	public void tearDown() {
+		for (final GPSdEndpoint ep : this.endpoints) {
+			ep.stop();
+		}
+		if (this.replay != null) {
+			this.replay.stop();
+		}
+	}
+
+	private GPSdEndpoint connect() throws Exception {
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", this.replay.getPort(), new StreamingResultParser());
+		ep.setRetryInterval(50);
+		ep.setCommandTimeout(2000);
+		this.endpoints.add(ep);
+		final int before = this.replay.getClientCount();
+		ep.start();
+		while ((this.replay.getClientCount() == before) || !ep.getHealth().isConnected()) {
+			Thread.sleep(10);
+		}
+		return ep;
+	}
+
+	@Test
+	public void answersCommands() throws Exception {
+		this.replay = new GPSdReplayServer(GPSdReplayServer.synthetic(5, 10), 0);
+		this.replay.setSpeed(0);
+		this.replay.start();
+		final GPSdEndpoint ep = this.connect();
+
+		final VersionObject version = ep.version();
+		assertEquals("3.17", version.getRelease());
+		assertEquals("/dev/ttyUSB0", ep.deviceAsync().get(2, TimeUnit.SECONDS).getPath());
+
+		final PollObject empty = ep.poll();
+		assertEquals(0, empty.getActive());
+
+		final WatchObject watch = ep.watch(true, true);
+		assertTrue(watch.isEnable());
+		assertTrue(watch.isDump());
+		assertEquals(1, this.replay.getWatchingCount());
+
+		this.replay.startReplay();
+		this.replay.awaitReplay();
+		final PollObject poll = ep.poll();
+		assertEquals(1, poll.getActive());
+		assertEquals(1, poll.getFixes().size());
+		assertEquals(42.239283474 + (4 * 0.000009), poll.getFixes().get(0).getLatitude(), 1e-9);
+	}
+
+	@Test
+	public void replaysToEveryWatchingClient() throws Exception {
+		this.replay = new GPSdReplayServer(GPSdReplayServer.synthetic(100, 10), 0);
+		this.replay.setSpeed(0);
+		this.replay.start();
+
+		final CountDownLatch done = new CountDownLatch(2);
+		final double[][] seen = new double[2][100];
+		for (int i = 0; i < 2; i++) {
+			final double[] mine = seen[i];
+			final GPSdEndpoint ep = this.connect();
+			ep.addListener(new ObjectListener(null, null, null) {
+				private int n;
+
+				@Override
+				public void handleTPV(final TPVObject tpv) {
+					mine[this.n++] = tpv.getTimestamp();
+					if (this.n == mine.length) {
+						done.countDown();
+					}
+				}
+			}, TPVObject.class);
+			ep.watch(true, true);
+		}
+		// connected but not watching, gets nothing
+		this.connect();
+		assertEquals(3, this.replay.getClientCount());
+		assertEquals(2, this.replay.getWatchingCount());
+
+		this.replay.startReplay();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(100, this.replay.getTpvsSent());
+		assertTrue(Arrays.equals(seen[0], seen[1]));
+		for (int i = 1; i < 100; i++) {
+			assertEquals(0.1, seen[0][i] - seen[0][i - 1], 1e-6);
+		}
+	}
+
+	@Test
+	public void pacesByRecordedTime() throws Exception {
+		final List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < 5; i++) {
+			// gpspipe -u prefix, 0.2 seconds apart
+			lines.add(String.format(Locale.ROOT, "%.3f", 1526144464.0 + (i * 0.2)) + ": {\"class\":\"TPV\",\"device\":\"/dev/gps0\",\"mode\":1}");
+		}
+		this.replay = new GPSdReplayServer(lines, 0);
+		this.replay.setSpeed(2);
+		this.replay.start();
+
+		final long start = System.nanoTime();
+		this.replay.startReplay();
+		this.replay.awaitReplay();
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		// four gaps of 0.2s at twice the speed
+		assertEquals(0.4, seconds, 0.15);
+		assertEquals(5, this.replay.getEpochsSent());
+	}
+}
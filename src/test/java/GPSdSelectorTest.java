@@ -0,0 +1,181 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * GPSdSelectorTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.backend.GPSdEndpoint;
+import com.traviscons.GPSTrackPoints.backend.GPSdSelector;
+import com.traviscons.GPSTrackPoints.backend.StreamingResultParser;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+import com.traviscons.GPSTrackPoints.types.VersionObject;
+
+/**
+ * JUnit tests for GPSdSelector against a local fake GPSd.
+ */
+public class GPSdSelectorTest {
+
+	private static final String TPV = "{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"mode\":3,\"time\":\"2018-05-12T17:01:04.000Z\",\"lat\":42.239283474,\"lon\":-88.329418327,\"alt\":268.474}\r\n";
+
+	private static final String SKY = "{\"class\":\"SKY\",\"device\":\"/dev/ttyUSB0\",\"hdop\":1.05,\"satellites\":[{\"PRN\":7,\"el\":44,\"az\":306,\"ss\":29,\"used\":true}]}\n";
+
+	@Test
+	public void framesLinesSplitAcrossReads() throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		final GPSdSelector selector = new GPSdSelector(2, true);
+		final CountDownLatch tpvs = new CountDownLatch(3);
+		final CountDownLatch skys = new CountDownLatch(1);
+
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", server.getLocalPort(), new StreamingResultParser());
+		ep.setRetryInterval(50);
+		ep.addListener(new ObjectListener(null, null, null) {
+			@Override
+			public void handleTPV(final TPVObject tpv) {
+				assertEquals(42.239283474, tpv.getLatitude(), 0.0);
+				tpvs.countDown();
+			}
+
+			@Override
+			public void handleSKY(final SKYObject sky) {
+				assertEquals(1, sky.getSatellites().size());
+				skys.countDown();
+			}
+		});
+
+		selector.start();
+		ep.start(selector);
+
+		final Socket client = server.accept();
+		final OutputStream out = client.getOutputStream();
+		final byte[] bytes = (TPV + SKY + TPV + "\n" + TPV).getBytes("UTF-8");
+		// dribble the stream out in small pieces so frames straddle reads
+		for (int i = 0; i < bytes.length; i += 7) {
+			out.write(bytes, i, Math.min(7, bytes.length - i));
+			out.flush();
+			Thread.sleep(1);
+		}
+
+		assertTrue(tpvs.await(5, TimeUnit.SECONDS));
+		assertTrue(skys.await(5, TimeUnit.SECONDS));
+
+		ep.stop();
+		selector.stop();
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void reconnectRestoresWatch() throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		final GPSdSelector selector = new GPSdSelector();
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", server.getLocalPort(), new StreamingResultParser());
+		ep.setRetryInterval(50);
+
+		selector.start();
+		ep.start(selector);
+
+		Socket client = server.accept();
+		Thread.sleep(200); // let the selector finish connecting
+		ep.watch(true, true); // no reply, the command times out but is remembered
+		BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
+		assertTrue(in.readLine().startsWith("?WATCH="));
+
+		// drop the connection, the selector must come back and send the WATCH again
+		client.close();
+		client = server.accept();
+		in = new BufferedReader(new InputStreamReader(client.getInputStream()));
+		assertTrue(in.readLine().startsWith("?WATCH="));
+
+		ep.stop();
+		selector.stop();
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void unknownHostDoesNotHoldUpOthers() throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		final GPSdSelector selector = new GPSdSelector(1, true);
+		final CountDownLatch tpvs = new CountDownLatch(1);
+		// looked up again and again on resolver threads, never on the one I/O thread
+		final GPSdEndpoint unknown = new GPSdEndpoint("gpsd.invalid", 2947, new StreamingResultParser());
+		unknown.setRetryInterval(10);
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", server.getLocalPort(), new StreamingResultParser());
+		ep.addListener(new ObjectListener(null, null, null) {
+			@Override
+			public void handleTPV(final TPVObject tpv) {
+				tpvs.countDown();
+			}
+		});
+		selector.start();
+		unknown.start(selector);
+		ep.start(selector);
+
+		final Socket client = server.accept();
+		client.getOutputStream().write(TPV.getBytes("UTF-8"));
+		client.getOutputStream().flush();
+		assertTrue(tpvs.await(5, TimeUnit.SECONDS));
+		assertFalse(unknown.getHealth().isConnected());
+
+		unknown.stop();
+		ep.stop();
+		selector.stop();
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void commandFailsWhileDisconnected() throws Exception {
+		// nothing listens on the port
+		final ServerSocket server = new ServerSocket(0);
+		final int port = server.getLocalPort();
+		server.close();
+		final GPSdSelector selector = new GPSdSelector();
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", port, new StreamingResultParser());
+		ep.setRetryInterval(50);
+		selector.start();
+		ep.start(selector);
+
+		final CompletableFuture<VersionObject> version = ep.command("?VERSION;", VersionObject.class, 0);
+		assertTrue(version.isCompletedExceptionally());
+		try {
+			version.get();
+			fail();
+		} catch (final ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+
+		ep.stop();
+		selector.stop();
+	}
+}
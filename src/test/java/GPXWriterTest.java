@@ -0,0 +1,176 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * GPXWriterTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+
+import com.traviscons.GPSTrackPoints.backend.GPXWriter;
+import com.traviscons.GPSTrackPoints.types.ENMEAMode;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * JUnit tests for GPXWriter
+ */
+public class GPXWriterTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		this.file = File.createTempFile("GPXWriterTest", ".gpx");
+	}
+
+	@After
+	public void tearDown() {
+		this.file.delete();
+	}
+
+	private static TPVObject tpv(final double lat, final double lon) {
+		final TPVObject tpv = new TPVObject();
+		tpv.setLatitude(lat);
+		tpv.setLongitude(lon);
+		tpv.setAltitude(268.5);
+		tpv.setTimestampText("2018-05-12T17:01:04.000Z");
+		tpv.setMode(ENMEAMode.ThreeDimensional);
+		return tpv;
+	}
+
+	private Document parse() throws Exception {
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(this.file);
+	}
+
+	private String content() throws Exception {
+		return new String(Files.readAllBytes(this.file.toPath()), "UTF-8");
+	}
+
+	@Test
+	public void headerAloneIsComplete() throws Exception {
+		final GPXWriter gpx = new GPXWriter(this.file.getPath(), "Test & <name>");
+		assertTrue(this.content().endsWith("</metadata>\n</gpx>\n"));
+		assertEquals("Test & <name>", this.parse().getElementsByTagName("name").item(0).getTextContent());
+		gpx.close();
+	}
+
+	@Test
+	public void trackPointsAreBatched() throws Exception {
+		final GPXWriter gpx = new GPXWriter(this.file.getPath(), "batch");
+		gpx.setBatchSize(4);
+		gpx.setFlushInterval(0);
+		final long empty = gpx.size();
+		for (int i = 0; i < 3; i++) {
+			gpx.addTrackPoint(tpv(42.0 + i, -88.0));
+		}
+		assertEquals(empty, gpx.size());
+
+		gpx.addTrackPoint(tpv(45.0, -88.0));
+		// the file is a complete document between batches
+		assertEquals(4, this.parse().getElementsByTagName("trkpt").getLength());
+		assertTrue(this.content().endsWith("</trkseg></trk>\n</gpx>\n"));
+
+		gpx.addTrackPoint(tpv(46.0, -88.0));
+		gpx.close();
+		assertEquals(5, this.parse().getElementsByTagName("trkpt").getLength());
+	}
+
+	@Test
+	public void waypointIsWrittenAtOnceAndSplitsTheTrack() throws Exception {
+		final GPXWriter gpx = new GPXWriter(this.file.getPath(), "wpt");
+		gpx.addTrackPoint(tpv(42.0, -88.0));
+		gpx.addWaypoint(tpv(42.5, -88.5), "1");
+		Document doc = this.parse();
+		assertEquals(1, doc.getElementsByTagName("trkpt").getLength());
+		assertEquals(1, doc.getElementsByTagName("wpt").getLength());
+		assertEquals("42.5", doc.getElementsByTagName("wpt").item(0).getAttributes().getNamedItem("lat").getNodeValue());
+		assertTrue(this.content().contains("<wpt lat=\"42.5\" lon=\"-88.5\"><ele>268.5</ele><time>2018-05-12T17:01:04.000Z</time><name>1</name><fix>3d</fix></wpt>\n</gpx>\n"));
+
+		gpx.addTrackPoint(tpv(43.0, -88.0));
+		gpx.close();
+		doc = this.parse();
+		assertEquals(2, doc.getElementsByTagName("trk").getLength());
+		assertEquals(2, doc.getElementsByTagName("trkpt").getLength());
+	}
+
+	@Test
+	public void closeIsFinal() throws Exception {
+		final GPXWriter gpx = new GPXWriter(this.file.getPath(), "close");
+		gpx.close();
+		gpx.close();
+		try {
+			gpx.addTrackPoint(tpv(1, 2));
+			fail("expected IOException");
+		} catch (final IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void manyPointsOverflowTheBuffer() throws Exception {
+		final GPXWriter gpx = new GPXWriter(this.file.getPath(), "many", 4096);
+		gpx.setBatchSize(1000);
+		gpx.setSyncEveryPoints(0);
+		gpx.setSyncInterval(0);
+		for (int i = 0; i < 500; i++) {
+			gpx.addTrackPoint(tpv(40.0 + (i / 1000.0), -88.0));
+		}
+		gpx.close();
+		assertEquals(500, this.parse().getElementsByTagName("trkpt").getLength());
+	}
+
+	@Test
+	public void longNamesFit() throws Exception {
+		final StringBuilder name = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			name.append("&\u00e9");
+		}
+		final GPXWriter gpx = new GPXWriter(this.file.getPath(), name.toString(), 1024);
+		gpx.addTrackPoint(tpv(42.0, -88.0));
+		gpx.addWaypoint(tpv(42.1, -88.1), name.toString());
+		gpx.addTrackPoint(tpv(42.2, -88.2));
+		gpx.close();
+		final Document doc = this.parse();
+		assertEquals(name.toString(), doc.getElementsByTagName("name").item(0).getTextContent());
+		assertEquals(name.toString(), doc.getElementsByTagName("name").item(1).getTextContent());
+		assertEquals(2, doc.getElementsByTagName("trkpt").getLength());
+	}
+
+	@Test
+	public void flushIntervalWritesWithoutMorePoints() throws Exception {
+		final GPXWriter gpx = new GPXWriter(this.file.getPath(), "timed");
+		gpx.setBatchSize(1000);
+		gpx.setFlushInterval(50);
+		gpx.addTrackPoint(tpv(42.0, -88.0));
+		assertFalse(this.content().contains("<trkpt"));
+		// no further point arrives, the timer writes the pending one
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (!this.content().contains("<trkpt") && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, this.parse().getElementsByTagName("trkpt").getLength());
+		gpx.close();
+	}
+}
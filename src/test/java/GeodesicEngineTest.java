@@ -0,0 +1,147 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * GeodesicEngineTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import com.traviscons.GPSTrackPoints.backend.GISTool;
+import com.traviscons.GPSTrackPoints.backend.GeodesicEngine;
+
+/**
+ * JUnit tests for GeodesicEngine
+ */
+public class GeodesicEngineTest {
+
+	private static double[][] randomTrack(final int count) {
+		final Random random = new Random(42);
+		final double[] lat = new double[count];
+		final double[] lon = new double[count];
+		lat[0] = 42.2;
+		lon[0] = -88.3;
+		for (int i = 1; i < count; i++) {
+			// mostly short steps with an occasional long jump
+			final double step = (i % 50 == 0) ? 10.0 : 0.001;
+			lat[i] = Math.max(-89.9, Math.min(89.9, lat[i - 1] + ((random.nextDouble() - 0.5) * step)));
+			lon[i] = lon[i - 1] + ((random.nextDouble() - 0.5) * step);
+		}
+		return new double[][] { lat, lon };
+	}
+
+	@Test
+	public void sphericalMatchesGISTool() {
+		final double[][] track = randomTrack(1001);
+		final double[] d = new double[1000];
+		new GeodesicEngine(GeodesicEngine.Model.SPHERICAL, false).segments(track[0], track[1], 1001, d, null, null);
+		for (int i = 0; i < 1000; i++) {
+			final double expected = GISTool.getDistance(track[1][i], track[1][i + 1], track[0][i], track[0][i + 1]) * 1000.0;
+			assertEquals(expected, d[i], 1e-6);
+		}
+	}
+
+	@Test
+	public void onePassAgreesWithItself() {
+		final double[][] track = randomTrack(257);
+		final GeodesicEngine engine = new GeodesicEngine(GeodesicEngine.Model.SPHERICAL);
+		final double[] d = new double[256];
+		final double[] cumulative = new double[257];
+		final double[] bearings = new double[256];
+		engine.segments(track[0], track[1], 257, d, cumulative, bearings);
+
+		double sum = 0;
+		for (int i = 0; i < 256; i++) {
+			sum += d[i];
+			assertEquals(sum, cumulative[i + 1], 1e-6);
+			assertTrue((bearings[i] >= 0) && (bearings[i] < 360));
+		}
+		assertEquals(0, cumulative[0], 0);
+		assertEquals(sum, engine.length(track[0], track[1], 257), 1e-6);
+
+		final double[] onlyCumulative = new double[257];
+		engine.segments(track[0], track[1], 257, null, onlyCumulative, null);
+		assertEquals(cumulative[256], onlyCumulative[256], 1e-6);
+	}
+
+	@Test
+	public void bearingsPointTheRightWay() {
+		final GeodesicEngine engine = new GeodesicEngine(GeodesicEngine.Model.SPHERICAL);
+		final double[] lat = { 10, 11, 11, 10, 10 };
+		final double[] lon = { 20, 20, 21, 21, 20 };
+		final double[] bearings = new double[4];
+		engine.segments(lat, lon, 5, null, null, bearings);
+		assertEquals(0, bearings[0], 1e-9);
+		assertEquals(90, bearings[1], 0.1);
+		assertEquals(180, bearings[2], 1e-9);
+		assertEquals(270, bearings[3], 0.1);
+	}
+
+	@Test
+	public void vectorMatchesScalar() {
+		final GeodesicEngine vector = new GeodesicEngine(GeodesicEngine.Model.SPHERICAL, true);
+		assertEquals(GeodesicEngine.isVectorAvailable(), vector.isVectorized());
+		final GeodesicEngine scalar = new GeodesicEngine(GeodesicEngine.Model.SPHERICAL, false);
+		assertFalse(scalar.isVectorized());
+
+		final double[][] track = randomTrack(1003);
+		final double[] dv = new double[1002];
+		final double[] bv = new double[1002];
+		final double[] ds = new double[1002];
+		final double[] bs = new double[1002];
+		vector.segments(track[0], track[1], 1003, dv, null, bv);
+		scalar.segments(track[0], track[1], 1003, ds, null, bs);
+		for (int i = 0; i < 1002; i++) {
+			assertEquals(ds[i], dv[i], 1e-6 + (ds[i] * 1e-12));
+			assertEquals(bs[i], bv[i], 1e-9);
+		}
+	}
+
+	@Test
+	public void vincentyFlindersPeakToBuninyong() {
+		// the worked example from Vincenty's paper
+		final double lat1 = -(37 + (57 / 60.0) + (3.72030 / 3600.0));
+		final double lon1 = 144 + (25 / 60.0) + (29.52440 / 3600.0);
+		final double lat2 = -(37 + (39 / 60.0) + (10.15610 / 3600.0));
+		final double lon2 = 143 + (55 / 60.0) + (35.38390 / 3600.0);
+		final GeodesicEngine engine = new GeodesicEngine(GeodesicEngine.Model.VINCENTY);
+		assertEquals(54972.271, engine.distance(lat1, lon1, lat2, lon2), 0.001);
+
+		final double[] bearings = new double[1];
+		engine.segments(new double[] { lat1, lat2 }, new double[] { lon1, lon2 }, 2, null, null, bearings);
+		assertEquals(306 + (52 / 60.0) + (5.37 / 3600.0), bearings[0], 1e-5);
+	}
+
+	@Test
+	public void samePointIsZero() {
+		for (final GeodesicEngine.Model model : GeodesicEngine.Model.values()) {
+			assertEquals(0, new GeodesicEngine(model).distance(42.2, -88.3, 42.2, -88.3), 0);
+		}
+	}
+
+	@Test
+	public void shortTracks() {
+		final GeodesicEngine engine = new GeodesicEngine(GeodesicEngine.Model.SPHERICAL);
+		assertEquals(0, engine.length(new double[0], new double[0], 0), 0);
+		assertEquals(0, engine.length(new double[] { 1 }, new double[] { 2 }, 1), 0);
+		final double[] cumulative = new double[1];
+		engine.segments(new double[] { 1 }, new double[] { 2 }, 1, null, cumulative, null);
+		assertEquals(0, cumulative[0], 0);
+	}
+}
@@ -0,0 +1,251 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * GpioButtonTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.traviscons.GPSTrackPoints.backend.GpioButton;
+import com.traviscons.GPSTrackPoints.backend.SysfsGpioInput;
+import com.traviscons.GPSTrackPoints.backend.WatchButton;
+import com.traviscons.GPSTrackPoints.backend.iButtonCallback;
+import com.traviscons.GPSTrackPoints.backend.iButtonListener;
+
+/**
+ * JUnit tests for GpioButton and SysfsGpioInput against a fake sysfs tree in a temp directory.
+ */
+public class GpioButtonTest {
+
+	private File sysDir;
+
+	private final AtomicInteger shortPushes = new AtomicInteger();
+
+	private final AtomicInteger longPushes = new AtomicInteger();
+
+	/// the thread LongPush was called on
+	private volatile String longPushThread;
+
+	/// edge kind and System.nanoTime() of the callback
+	private final ConcurrentLinkedQueue<String> edges = new ConcurrentLinkedQueue<String>();
+
+	private final iButtonCallback callback = new iButtonCallback() {
+		public void ShortPush() {
+			GpioButtonTest.this.shortPushes.incrementAndGet();
+		}
+
+		public void LongPush() {
+			GpioButtonTest.this.longPushThread = Thread.currentThread().getName();
+			GpioButtonTest.this.longPushes.incrementAndGet();
+		}
+	};
+
+	private volatile long pressedAt;
+
+	private Thread thread;
+
+	private final iButtonListener listener = new iButtonListener() {
+		public void pressed(final long nanoTime) {
+			GpioButtonTest.this.pressedAt = nanoTime;
+			GpioButtonTest.this.edges.add("pressed");
+		}
+
+		public void released(final long nanoTime, final long heldNanos) {
+			GpioButtonTest.this.edges.add("released");
+		}
+
+		public void longPressed(final long nanoTime) {
+			GpioButtonTest.this.edges.add("long");
+		}
+	};
+
+	@Before
+	public void createSysfs() throws IOException {
+		this.sysDir = Files.createTempDirectory("gpio").toFile();
+		new File(this.sysDir, "gpio23").mkdir();
+		this.write("1");
+	}
+
+	@After
+	public void deleteSysfs() {
+		for (final File f : new File(this.sysDir, "gpio23").listFiles()) {
+			f.delete();
+		}
+		new File(this.sysDir, "gpio23").delete();
+		for (final File f : this.sysDir.listFiles()) {
+			f.delete();
+		}
+		this.sysDir.delete();
+	}
+
+	/// what the kernel does on an edge: the value file never goes empty
+	private void write(final String value) throws IOException {
+		final RandomAccessFile f = new RandomAccessFile(new File(this.sysDir, "gpio23/value"), "rw");
+		f.write((value + "\n").getBytes("US-ASCII"));
+		f.close();
+	}
+
+	private GpioButton start(final SysfsGpioInput input) {
+		final GpioButton button = new GpioButton(input, this.callback);
+		button.setListener(this.listener);
+		button.setDebounce(TimeUnit.MILLISECONDS.toNanos(20));
+		button.setLongPress(TimeUnit.MILLISECONDS.toNanos(500));
+		this.thread = new Thread(button, "GpioButtonTest");
+		this.thread.start();
+		return button;
+	}
+
+	private void stop(final GpioButton button, final SysfsGpioInput input) throws Exception {
+		button.halt();
+		this.thread.join(2000);
+		assertFalse(this.thread.isAlive());
+		input.close();
+	}
+
+	private static void await(final AtomicInteger counter, final int value) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 3000;
+		while ((counter.get() < value) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	public void readsTheOpenValueFile() throws Exception {
+		final SysfsGpioInput input = new SysfsGpioInput(this.sysDir.getPath(), 23);
+		assertEquals(1, input.read());
+		this.write("0");
+		assertEquals(0, input.read());
+		// nothing changes, the wait times out with the old level
+		assertEquals(0, input.awaitChange(0, TimeUnit.MILLISECONDS.toNanos(20)));
+		input.close();
+	}
+
+	@Test
+	public void shortPushOnRelease() throws Exception {
+		this.shortPush(new SysfsGpioInput(this.sysDir.getPath(), 23));
+	}
+
+	@Test
+	public void shortPushWhileSampling() throws Exception {
+		final SysfsGpioInput input = new SysfsGpioInput(this.sysDir.getPath(), 23, false);
+		assertFalse(input.isNotified());
+		this.shortPush(input);
+	}
+
+	private void shortPush(final SysfsGpioInput input) throws Exception {
+		final GpioButton button = this.start(input);
+		Thread.sleep(50);
+
+		final long written = System.nanoTime();
+		this.write("0");
+		final long deadline = System.currentTimeMillis() + 2000;
+		while ((this.pressedAt == 0) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(1);
+		}
+		assertTrue(this.pressedAt != 0);
+		// seen within a few poll intervals, at once where the change is notified
+		assertTrue("latency " + ((this.pressedAt - written) / 1000) + "us", (this.pressedAt - written) < TimeUnit.MILLISECONDS.toNanos(100));
+
+		Thread.sleep(100);
+		this.write("1");
+		await(this.shortPushes, 1);
+		this.stop(button, input);
+
+		assertEquals(1, this.shortPushes.get());
+		assertEquals(0, this.longPushes.get());
+		assertEquals("pressed", this.edges.poll());
+		assertEquals("released", this.edges.poll());
+	}
+
+	@Test
+	public void bounceIsIgnored() throws Exception {
+		final SysfsGpioInput input = new SysfsGpioInput(this.sysDir.getPath(), 23);
+		final GpioButton button = this.start(input);
+		Thread.sleep(50);
+
+		// contacts chatter for a few ms, then stay closed
+		this.write("0");
+		this.write("1");
+		this.write("0");
+		Thread.sleep(2);
+		this.write("1");
+		this.write("0");
+		Thread.sleep(100);
+		this.write("1");
+		await(this.shortPushes, 1);
+		Thread.sleep(100);
+		this.stop(button, input);
+
+		assertEquals(1, this.shortPushes.get());
+		assertEquals(2, this.edges.size());
+	}
+
+	@Test
+	public void longPushWhileHeld() throws Exception {
+		final SysfsGpioInput input = new SysfsGpioInput(this.sysDir.getPath(), 23);
+		final GpioButton button = this.start(input);
+		Thread.sleep(50);
+
+		this.write("0");
+		await(this.longPushes, 1);
+		assertEquals(1, this.longPushes.get());
+		// on the button's thread, not the timer wheel's
+		assertEquals("GpioButtonTest", this.longPushThread);
+		// reported without waiting for the release
+		this.write("1");
+		Thread.sleep(100);
+		this.stop(button, input);
+
+		assertEquals(0, this.shortPushes.get());
+		assertEquals("pressed", this.edges.poll());
+		assertEquals("long", this.edges.poll());
+		assertEquals("released", this.edges.poll());
+	}
+
+	@Test
+	public void watchButtonStopsAfterLongPush() throws Exception {
+		final WatchButton wp = new WatchButton(23, this.sysDir.getPath());
+		wp.initButton();
+		wp.setButtonCallback(this.callback);
+		final Thread watchThread = new Thread(wp);
+		watchThread.start();
+		Thread.sleep(50);
+
+		this.write("0");
+		Thread.sleep(100);
+		this.write("1");
+		await(this.shortPushes, 1);
+		assertEquals(1, this.shortPushes.get());
+
+		this.write("0");
+		watchThread.join(5000);
+		assertFalse(watchThread.isAlive());
+		assertEquals(1, this.longPushes.get());
+		// the gpio was handed back
+		assertTrue(new File(this.sysDir, "unexport").exists());
+	}
+}
@@ -0,0 +1,152 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * LatencyMetricsTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.backend.GPSdEndpoint;
+import com.traviscons.GPSTrackPoints.backend.LatencyHistogram;
+import com.traviscons.GPSTrackPoints.backend.LatencyMetrics;
+import com.traviscons.GPSTrackPoints.backend.OverflowPolicy;
+import com.traviscons.GPSTrackPoints.backend.StreamingResultParser;
+import com.traviscons.GPSTrackPoints.backend.WaitStrategy;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * JUnit tests for LatencyHistogram and the LatencyMetrics of a GPSdEndpoint.
+ */
+public class LatencyMetricsTest {
+
+	@Test
+	public void histogramPercentiles() {
+		final LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.getValueAtPercentile(99));
+		for (long v = 1; v <= 100000; v++) {
+			h.record(v * 1000);
+		}
+		assertEquals(100000, h.getCount());
+		assertEquals(100000000, h.getMax());
+		assertEquals(50000500.0, h.getMean(), 1.0);
+		for (final double p : new double[] { 1, 50, 90, 99, 99.9 }) {
+			final double exact = p * 1000 * 1000;
+			final long reported = h.getValueAtPercentile(p);
+			// never below the true value, at most one bucket (1/32) above
+			assertTrue(p + ": " + reported, reported >= exact);
+			assertTrue(p + ": " + reported, reported <= (exact * 1.032));
+		}
+		assertEquals(100000000, h.getValueAtPercentile(100));
+
+		h.record(-5);
+		h.record(7);
+		assertEquals(100002, h.getCount());
+		assertEquals(0, h.getValueAtPercentile(0.0001));
+		h.reset();
+		assertEquals(0, h.getCount());
+		assertEquals(0, h.getMax());
+	}
+
+	private void replayThrough(final boolean ring) throws Exception {
+		final GPSdReplayServer replay = new GPSdReplayServer(GPSdReplayServer.synthetic(200, 10), 0);
+		replay.setSpeed(0);
+		replay.start();
+		final GPSdEndpoint ep = new GPSdEndpoint("localhost", replay.getPort(), new StreamingResultParser());
+		if (ring) {
+			ep.setDispatchRing(256, WaitStrategy.PARK, OverflowPolicy.BLOCK);
+		}
+		final LatencyMetrics metrics = ep.enableMetrics();
+		assertSame(metrics, ep.enableMetrics());
+
+		final CountDownLatch done = new CountDownLatch(200);
+		final ObjectListener listener = new ObjectListener(null, null, null) {
+			@Override
+			public void handleTPV(final TPVObject tpv) {
+				done.countDown();
+			}
+		};
+		ep.addListener(listener, TPVObject.class, SKYObject.class);
+		ep.setRetryInterval(50);
+		ep.start();
+		while (!ep.getHealth().isConnected()) {
+			Thread.sleep(10);
+		}
+		ep.watch(true, true);
+		replay.startReplay();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		Thread.sleep(50);
+
+		assertEquals(200, metrics.get(TPVObject.class, LatencyMetrics.Stage.PARSE).getCount());
+		assertEquals(200, metrics.get(TPVObject.class, LatencyMetrics.Stage.TOTAL).getCount());
+		assertEquals(20, metrics.get(SKYObject.class, LatencyMetrics.Stage.QUEUE).getCount());
+		assertEquals(220, metrics.getListener(listener).getCount());
+		final LatencyHistogram total = metrics.get(TPVObject.class, LatencyMetrics.Stage.TOTAL);
+		assertTrue(total.getValueAtPercentile(50) >= metrics.get(TPVObject.class, LatencyMetrics.Stage.PARSE).getValueAtPercentile(50));
+		// the synthetic recording is from 2018, so every fix is years old
+		assertEquals(200, metrics.getFixAgeHistogram().getCount());
+		assertTrue(metrics.getFixAge().getP50Micros() > (365 * 24 * 3600 * 1e6));
+
+		ep.disableMetrics();
+		assertNull(ep.getMetrics());
+		ep.stop();
+		replay.stop();
+	}
+
+	@Test
+	public void timesInlineDispatch() throws Exception {
+		this.replayThrough(false);
+	}
+
+	@Test
+	public void timesRingDispatch() throws Exception {
+		this.replayThrough(true);
+	}
+
+	@Test
+	public void exposedThroughJMX() throws Exception {
+		final LatencyMetrics metrics = new LatencyMetrics();
+		metrics.get(TPVObject.class, LatencyMetrics.Stage.PARSE).record(12000);
+		final ObjectName name = metrics.register("localhost:2947");
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final TabularData stages = (TabularData) server.getAttribute(name, "Stages");
+			assertEquals(3, stages.size());
+			final CompositeData row = stages.get(new Object[] { "TPVObject PARSE" });
+			final CompositeData parse = (CompositeData) row.get("value");
+			assertEquals(1L, parse.get("count"));
+			assertEquals(12.0, (Double) parse.get("p50Micros"), 0.4);
+			assertEquals(0L, ((CompositeData) server.getAttribute(name, "FixAge")).get("count"));
+
+			server.invoke(name, "reset", new Object[0], new String[0]);
+			assertEquals(0, metrics.get(TPVObject.class, LatencyMetrics.Stage.PARSE).getCount());
+		} finally {
+			metrics.unregister();
+		}
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+}
@@ -0,0 +1,147 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * LedSchedulerTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import com.traviscons.GPSTrackPoints.backend.BlinkPattern;
+import com.traviscons.GPSTrackPoints.backend.Led;
+import com.traviscons.GPSTrackPoints.backend.LedScheduler;
+
+/**
+ * JUnit tests for LedScheduler, Led and BlinkPattern against a fake sysfs LED in a temp directory.
+ */
+public class LedSchedulerTest {
+
+	private File ledDir;
+
+	private LedScheduler scheduler;
+
+	@Before
+	public void createLed() throws IOException {
+		this.ledDir = Files.createTempDirectory("led").toFile();
+		this.scheduler = new LedScheduler();
+	}
+
+	@After
+	public void deleteLed() {
+		this.scheduler.shutdown();
+		for (final File f : this.ledDir.listFiles()) {
+			f.delete();
+		}
+		this.ledDir.delete();
+	}
+
+	private String read(final String name) throws IOException {
+		return new String(Files.readAllBytes(new File(this.ledDir, name).toPath()), "US-ASCII");
+	}
+
+	@Test
+	public void openTakesOverTheLed() throws Exception {
+		final Led led = this.scheduler.open(this.ledDir.getPath());
+		assertEquals("none", this.read("trigger"));
+		assertEquals("0", this.read("brightness"));
+		assertFalse(led.isOn());
+		assertFalse(led.isScheduled());
+		assertEquals(0, this.scheduler.getPending());
+		led.close();
+	}
+
+	@Test
+	public void unchangedLevelsAreNotWritten() throws Exception {
+		final Led led = this.scheduler.open(this.ledDir.getPath());
+		final long writes = led.getWrites();
+		led.set(false);
+		led.set(false);
+		assertEquals(writes, led.getWrites());
+		led.set(true);
+		led.set(true);
+		assertEquals(writes + 1, led.getWrites());
+		assertEquals("1", this.read("brightness"));
+		// steady levels leave nothing for the timer thread
+		assertEquals(0, this.scheduler.getPending());
+		led.close();
+	}
+
+	@Test
+	public void flashReturnsToTheStartOfTheBasePattern() throws Exception {
+		final Led led = this.scheduler.open(this.ledDir.getPath());
+		led.setPattern(BlinkPattern.repeat(false, 5000, 200));
+		assertFalse(led.isOn());
+		assertEquals(1, this.scheduler.getPending());
+
+		led.flash(BlinkPattern.once(50));
+		assertTrue(led.isOn());
+		assertEquals("1", this.read("brightness"));
+		// the transition of the base pattern was replaced, not added to
+		assertEquals(1, this.scheduler.getPending());
+
+		Thread.sleep(200);
+		assertFalse(led.isOn());
+		assertEquals("0", this.read("brightness"));
+		assertTrue(led.isScheduled());
+		led.close();
+		assertEquals(0, this.scheduler.getPending());
+	}
+
+	@Test
+	public void repeatingPatternBlinks() throws Exception {
+		final Led led = this.scheduler.open(this.ledDir.getPath());
+		final long writes = led.getWrites();
+		led.setPattern(BlinkPattern.repeat(true, 20, 20));
+		Thread.sleep(500);
+		led.set(false);
+		// about 25 changes, one write each
+		final long blinks = led.getWrites() - writes;
+		assertTrue("writes " + blinks, (blinks > 8) && (blinks < 30));
+		assertFalse(led.isScheduled());
+		led.close();
+	}
+
+	@Test
+	public void manyLedsShareOneThread() throws Exception {
+		final File[] dirs = new File[8];
+		final Led[] leds = new Led[dirs.length];
+		for (int i = 0; i < dirs.length; i++) {
+			dirs[i] = new File(this.ledDir, "led" + i);
+			dirs[i].mkdir();
+			leds[i] = this.scheduler.open(dirs[i].getPath());
+			leds[i].flash(BlinkPattern.once(30 + (i * 10)));
+		}
+		assertEquals(dirs.length, this.scheduler.getPending());
+		Thread.sleep(300);
+		for (int i = 0; i < dirs.length; i++) {
+			assertFalse(leds[i].isOn());
+			leds[i].close();
+			new File(dirs[i], "trigger").delete();
+			new File(dirs[i], "brightness").delete();
+		}
+		assertEquals(0, this.scheduler.getPending());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void repeatingStepsNeedADuration() {
+		BlinkPattern.repeat(false, 5000, 0);
+	}
+}
@@ -0,0 +1,177 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * PassPredictorTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import com.traviscons.GPSTrackPoints.backend.AlmanacSet;
+import com.traviscons.GPSTrackPoints.backend.GpsTime;
+import com.traviscons.GPSTrackPoints.backend.Observer;
+import com.traviscons.GPSTrackPoints.backend.PassPredictor;
+import com.traviscons.GPSTrackPoints.backend.PassTable;
+import com.traviscons.GPSTrackPoints.backend.ResultParser;
+import com.traviscons.GPSTrackPoints.backend.SatellitePass;
+import com.traviscons.GPSTrackPoints.types.subframes.SUBFRAMEObject;
+
+/**
+ * JUnit tests for PassPredictor and the almanac it is fed.
+ */
+public class PassPredictorTest {
+
+	/// week 2000 mod 256
+	private static final int WNA = 2000 & 0xFF;
+
+	private static final int TOA = 405504;
+
+	/// a few hours after toa in week 2000
+	private static final double START = (2000 * GpsTime.SECONDS_PER_WEEK) + TOA + 3600;
+
+	private static final Observer OBSERVER = new Observer(42.24, -88.33, 268);
+
+	private final ResultParser parser = new ResultParser();
+
+	static String almanac(final int prn, final int health, final int toa, final double omega0, final double m0) {
+		return "{\"class\":\"SUBFRAME\",\"device\":\"/dev/ttyUSB0\",\"tSV\":3,\"TOW17\":110403,\"frame\":5,\"scaled\":true,"
+				+ "\"ALMANAC\":{\"ID\":" + prn + ",\"Health\":" + health + ",\"e\":0.0053,\"toa\":" + toa
+				+ ",\"deltai\":0.0068,\"Omegad\":-2.6E-9,\"sqrtA\":5153.6,\"Omega0\":" + omega0
+				+ ",\"omega\":0.28,\"M0\":" + m0 + ",\"af0\":1.2E-4,\"af1\":0.0}}";
+	}
+
+	static String health2(final int sv7, final int toa, final int wna) {
+		final StringBuilder line = new StringBuilder("{\"class\":\"SUBFRAME\",\"device\":\"/dev/ttyUSB0\",\"tSV\":3,\"TOW17\":110404,"
+				+ "\"frame\":5,\"scaled\":true,\"HEALTH2\":{\"toa\":" + toa + ",\"WNa\":" + wna);
+		for (int sv = 1; sv <= 24; sv++) {
+			line.append(",\"SV").append(sv).append("\":").append((sv == 7) ? sv7 : 0);
+		}
+		return line.append("}}").toString();
+	}
+
+	private void feed(final PassPredictor predictor, final String line) throws Exception {
+		predictor.handleSUBFRAME((SUBFRAMEObject) this.parser.parse(line));
+	}
+
+	/// six satellites spread over the sky, almanac of week 2000
+	private PassPredictor constellation(final int toa) throws Exception {
+		final PassPredictor predictor = new PassPredictor();
+		for (int prn = 1; prn <= 6; prn++) {
+			this.feed(predictor, almanac(prn, 0, toa, ((prn % 3) * 0.66) - 0.66, (prn * 0.33) - 1));
+		}
+		this.feed(predictor, health2(0, toa, WNA));
+		return predictor;
+	}
+
+	@Test
+	public void passesAgreeWithElevation() throws Exception {
+		final PassPredictor predictor = this.constellation(TOA);
+		final AlmanacSet almanac = predictor.getAlmanac();
+		assertEquals(6, almanac.getHealthy().size());
+
+		final List<SatellitePass> passes = predictor.getPasses(OBSERVER, START, 12);
+		assertFalse(passes.isEmpty());
+		final double[] xyz = new double[3];
+		final double[] look = new double[3];
+		for (final SatellitePass pass : passes) {
+			assertTrue(pass.getRise() <= pass.getMaxTime());
+			assertTrue(pass.getMaxTime() <= pass.getSet());
+			assertTrue(pass.getMaxElevation() >= 5);
+			if (pass.risesInWindow()) {
+				final int prn = pass.getPrn();
+				almanac.get(prn).position(almanac.sinceToa(almanac.get(prn), pass.getRise()), xyz, 0);
+				OBSERVER.look(xyz[0], xyz[1], xyz[2], look, 0);
+				assertEquals(5, look[1], 0.05);
+				assertEquals(pass.getRiseAzimuth(), look[0], 1e-9);
+			}
+		}
+
+		// every minute a satellite is above the mask exactly when a pass says so
+		final PassTable table = predictor.getTable(OBSERVER, START, 12);
+		for (double t = START + 30; t < (START + (12 * 3600)); t += 600) {
+			for (int prn = 1; prn <= 6; prn++) {
+				almanac.get(prn).position(almanac.sinceToa(almanac.get(prn), t), xyz, 0);
+				OBSERVER.look(xyz[0], xyz[1], xyz[2], look, 0);
+				boolean up = false;
+				for (final SatellitePass pass : table.getPasses(prn)) {
+					up |= pass.isUpAt(t);
+				}
+				if (Math.abs(look[1] - 5) > 0.1) {
+					assertEquals("PRN " + prn + " at " + t, look[1] > 5, up);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void tableIsCachedUntilNewAlmanac() throws Exception {
+		final PassPredictor predictor = this.constellation(TOA);
+		final PassTable table = predictor.getTable(OBSERVER, START, 6);
+		assertEquals(1, predictor.getPredictions());
+
+		// a later span within the horizon, and the same almanac broadcast again
+		assertSame(table, predictor.getTable(OBSERVER, START + 3600, 6));
+		final long version = predictor.getAlmanac().getVersion();
+		this.feed(predictor, almanac(1, 0, TOA, ((1 % 3) * 0.66) - 0.66, (1 * 0.33) - 1));
+		this.feed(predictor, health2(0, TOA, WNA));
+		assertEquals(version, predictor.getAlmanac().getVersion());
+		assertSame(table, predictor.getTable(new Observer(42.24, -88.33, 268), START, 6));
+		assertEquals(1, predictor.getPredictions());
+
+		// another place is another table
+		predictor.getTable(new Observer(-33.9, 151.2, 20), START, 6);
+		assertEquals(2, predictor.getPredictions());
+
+		// a new upload replaces the tables
+		this.feed(predictor, almanac(1, 0, TOA + 4096, 0, -0.5));
+		assertTrue(predictor.getAlmanac().getVersion() > version);
+		final PassTable fresh = predictor.getTable(OBSERVER, START, 6);
+		assertNotSame(table, fresh);
+		assertEquals(predictor.getAlmanac().getVersion(), fresh.getAlmanacVersion());
+		assertEquals(3, predictor.getPredictions());
+	}
+
+	@Test
+	public void skipsUnhealthySatellites() throws Exception {
+		final PassPredictor predictor = this.constellation(TOA);
+		this.feed(predictor, almanac(7, 0, TOA, 0.3, 2.0));
+		this.feed(predictor, almanac(8, 1, TOA, 0.3, 2.5));
+		assertTrue(predictor.getAlmanac().isHealthy(7));
+		assertFalse(predictor.getAlmanac().isHealthy(8));
+
+		// page 25 marks PRN 7 unusable
+		this.feed(predictor, health2(63, TOA, WNA));
+		assertFalse(predictor.getAlmanac().isHealthy(7));
+		assertEquals(6, predictor.getAlmanac().getHealthy().size());
+		for (final SatellitePass pass : predictor.getPasses(OBSERVER, START, 24)) {
+			assertTrue(pass.getPrn() <= 6);
+		}
+	}
+
+	@Test
+	public void almanacWeekRollsOver() throws Exception {
+		final PassPredictor predictor = new PassPredictor();
+		this.feed(predictor, almanac(1, 0, TOA, 0, 0));
+		// week 2048 is 0 in the 8 bits of WNa, so 255 is the week before
+		this.feed(predictor, health2(0, TOA, 255));
+		final AlmanacSet almanac = predictor.getAlmanac();
+		final double t = (2048 * GpsTime.SECONDS_PER_WEEK) + 100;
+		assertEquals(t - ((2047 * GpsTime.SECONDS_PER_WEEK) + TOA), almanac.sinceToa(almanac.get(1), t), 1e-6);
+	}
+}
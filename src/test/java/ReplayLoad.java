@@ -0,0 +1,141 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * ReplayLoad
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.backend.GPSdEndpoint;
+import com.traviscons.GPSTrackPoints.backend.GPSdSelector;
+import com.traviscons.GPSTrackPoints.backend.StreamingResultParser;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * Measure end to end throughput and latency of GPSdEndpoint and the parser against a
+ * {@link GPSdReplayServer}.
+ *
+ * This is not a JUnit test. Run it by hand, e.g.
+ * <pre>
+ * java -cp ... com.traviscons.GPSTrackPoints.tests.ReplayLoad 100 0 100000
+ * java -cp ... com.traviscons.GPSTrackPoints.tests.ReplayLoad 100 10 6000 selector
+ * java -cp ... com.traviscons.GPSTrackPoints.tests.ReplayLoad 10 1 0 threads track.json
+ * </pre>
+ * Arguments are the number of clients, the replay speed (0 for as fast as possible), the
+ * number of synthetic 10 Hz epochs, socket threads or the shared selector, and optionally a
+ * recording to replay instead.
+ *
+ * Latency is from the replay thread writing an epoch to the listener getting its TPV, so it
+ * includes the kernel, the socket read, parsing and dispatch.
+ */
+public class ReplayLoad {
+
+	public static void main(final String[] args) throws Exception {
+		final int count = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+		final double speed = (args.length > 1) ? Double.parseDouble(args[1]) : 0;
+		final int epochs = (args.length > 2) ? Integer.parseInt(args[2]) : 100000;
+		final boolean selector = (args.length > 3) && "selector".equals(args[3]);
+		final List<String> recording = (args.length > 4) ? GPSdReplayServer.readRecording(args[4])
+				: GPSdReplayServer.synthetic(epochs, 10);
+
+		final GPSdReplayServer replay = new GPSdReplayServer(recording, 0);
+		replay.setSpeed(speed);
+		final int tpvs = replay.getRecordedTpvs();
+		replay.recordSendTimes(tpvs);
+		replay.start();
+
+		final GPSdSelector shared = selector ? new GPSdSelector() : null;
+		if (shared != null) {
+			shared.start();
+		}
+		final StreamingResultParser parser = new StreamingResultParser();
+		final AtomicLong received = new AtomicLong();
+		final long[][] latencies = new long[count][];
+		final List<GPSdEndpoint> endpoints = new ArrayList<GPSdEndpoint>(count);
+		for (int i = 0; i < count; i++) {
+			final long[] mine = new long[tpvs];
+			latencies[i] = mine;
+			final GPSdEndpoint ep = new GPSdEndpoint("localhost", replay.getPort(), parser);
+			ep.addListener(new ObjectListener(null, null, null) {
+				private int sequence;
+
+				@Override
+				public void handleTPV(final TPVObject tpv) {
+					final long now = System.nanoTime();
+					if (this.sequence < mine.length) {
+						mine[this.sequence] = now - replay.getSendTime(this.sequence);
+					}
+					this.sequence++;
+					received.incrementAndGet();
+				}
+			}, TPVObject.class);
+			// fails while not connected but is remembered and sent once the connection is up
+			ep.watchAsync(true, true);
+			if (shared != null) {
+				ep.start(shared);
+			} else {
+				ep.start();
+			}
+			endpoints.add(ep);
+		}
+		while (replay.getWatchingCount() < count) {
+			Thread.sleep(10);
+		}
+
+		final long start = System.nanoTime();
+		replay.startReplay();
+		replay.awaitReplay();
+		final long expected = (long) tpvs * count;
+		final long deadline = System.currentTimeMillis() + 30000;
+		while ((received.get() < expected) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(1);
+		}
+		final double seconds = (System.nanoTime() - start) / 1e9;
+
+		final long[] all = new long[(int) Math.min(Integer.MAX_VALUE, expected)];
+		int n = 0;
+		for (final long[] l : latencies) {
+			for (final long v : l) {
+				if ((v > 0) && (n < all.length)) {
+					all[n++] = v;
+				}
+			}
+		}
+		Arrays.sort(all, 0, n);
+		System.err.println("INFO: ReplayLoad - " + count + " clients, " + (selector ? "selector" : "threads")
+				+ ", speed " + speed + ": " + received.get() + " of " + expected + " TPVs in "
+				+ String.format("%.2f", seconds) + "s, " + String.format("%.0f", received.get() / seconds) + " TPV/s");
+		if (n > 0) {
+			System.err.println("INFO: ReplayLoad - latency us p50=" + (all[n / 2] / 1000) + " p99="
+					+ (all[(int) (n * 0.99)] / 1000) + " p99.9=" + (all[(int) (n * 0.999)] / 1000)
+					+ " max=" + (all[n - 1] / 1000));
+		}
+
+		for (final GPSdEndpoint ep : endpoints) {
+			ep.stop();
+		}
+		if (shared != null) {
+			shared.stop();
+		}
+		replay.stop();
+	}
+}
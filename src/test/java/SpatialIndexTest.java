@@ -0,0 +1,137 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * SpatialIndexTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.traviscons.GPSTrackPoints.backend.GISTool;
+import com.traviscons.GPSTrackPoints.backend.SpatialIndex;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * JUnit tests for SpatialIndex, checked against a scan of every point.
+ */
+public class SpatialIndexTest {
+
+	private static final int POINTS = 20000;
+
+	private SpatialIndex index;
+
+	private double[] lat;
+
+	private double[] lon;
+
+	@Before
+	public void setUp() {
+		final Random random = new Random(42);
+		this.index = new SpatialIndex();
+		this.lat = new double[POINTS];
+		this.lon = new double[POINTS];
+		for (int i = 0; i < POINTS; i++) {
+			// a 20 km square around the start, with every 100th point a waypoint
+			this.lat[i] = 42.2 + ((random.nextDouble() - 0.5) * 0.2);
+			this.lon[i] = -88.3 + ((random.nextDouble() - 0.5) * 0.3);
+			assertEquals(i, this.index.add(this.lat[i], this.lon[i], ((i % 100) == 0) ? "wpt" + i : null));
+		}
+	}
+
+	private double meters(final int i, final double la, final double lo) {
+		return GISTool.getDistance(lo, this.lon[i], la, this.lat[i]) * 1000.0;
+	}
+
+	@Test
+	public void radiusMatchesScan() {
+		final double la = 42.21;
+		final double lo = -88.31;
+		for (final double radius : new double[] { 10, 250, 2000 }) {
+			final int[] found = this.index.withinRadius(la, lo, radius, false);
+			Arrays.sort(found);
+			int expected = 0;
+			for (int i = 0; i < POINTS; i++) {
+				if (this.meters(i, la, lo) <= radius) {
+					assertTrue(Arrays.binarySearch(found, i) >= 0);
+					expected++;
+				}
+			}
+			assertEquals(expected, found.length);
+		}
+		for (final int id : this.index.withinRadius(la, lo, 2000, true)) {
+			assertTrue(this.index.isWaypoint(id));
+			assertEquals("wpt" + id, this.index.getName(id));
+		}
+	}
+
+	@Test
+	public void boxMatchesScan() {
+		final int[] found = this.index.withinBox(42.19, -88.32, 42.2, -88.3);
+		int expected = 0;
+		for (int i = 0; i < POINTS; i++) {
+			if ((this.lat[i] >= 42.19) && (this.lat[i] <= 42.2) && (this.lon[i] >= -88.32) && (this.lon[i] <= -88.3)) {
+				expected++;
+			}
+		}
+		assertEquals(expected, found.length);
+	}
+
+	@Test
+	public void nearestMatchesScan() {
+		final Random random = new Random(7);
+		for (int q = 0; q < 50; q++) {
+			// some queries well outside the points
+			final double la = 42.2 + ((random.nextDouble() - 0.5) * 0.6);
+			final double lo = -88.3 + ((random.nextDouble() - 0.5) * 0.6);
+			int best = -1;
+			int bestWaypoint = -1;
+			for (int i = 0; i < POINTS; i++) {
+				if ((best < 0) || (this.meters(i, la, lo) < this.meters(best, la, lo))) {
+					best = i;
+				}
+				if (((i % 100) == 0) && ((bestWaypoint < 0) || (this.meters(i, la, lo) < this.meters(bestWaypoint, la, lo)))) {
+					bestWaypoint = i;
+				}
+			}
+			assertEquals(best, this.index.nearest(la, lo, false));
+			assertEquals(bestWaypoint, this.index.nearest(la, lo, true));
+		}
+		assertEquals(-1, new SpatialIndex().nearest(0, 0, false));
+	}
+
+	@Test
+	public void crossesTheAntimeridian() {
+		final SpatialIndex wrap = new SpatialIndex();
+		final TPVObject east = new TPVObject();
+		east.setLatitude(10.0);
+		east.setLongitude(179.999);
+		final TPVObject west = new TPVObject();
+		west.setLatitude(10.0);
+		west.setLongitude(-179.999);
+		final int e = wrap.add(east);
+		final int w = wrap.addWaypoint(west, "dateline");
+		assertEquals(-1, wrap.add(new TPVObject()));
+
+		assertEquals(2, wrap.withinRadius(10.0, 180.0, 500, false).length);
+		assertEquals(2, wrap.withinBox(9.0, 179.0, 11.0, -179.0).length);
+		assertEquals(w, wrap.nearest(10.0, -179.9999, false));
+		assertEquals(e, wrap.nearest(10.0, 179.9999, false));
+		assertEquals(-180, wrap.getLongitude(w), 0.01);
+	}
+}
@@ -0,0 +1,107 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * StreamingResultParserTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import com.traviscons.GPSTrackPoints.backend.ResultParser;
+import com.traviscons.GPSTrackPoints.backend.StreamingResultParser;
+import com.traviscons.GPSTrackPoints.types.IGPSObject;
+import com.traviscons.GPSTrackPoints.types.ParseException;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * Conformance tests for StreamingResultParser.
+ *
+ * Every line of the corpus is parsed by ResultParser and by StreamingResultParser and the
+ * resulting objects must be identical.
+ */
+public class StreamingResultParserTest {
+
+	/// lines captured from gpsd 3.16/3.17 plus a few hand made edge cases
+	private static final String[] CORPUS = {
+		"{\"class\":\"VERSION\",\"release\":\"3.17\",\"rev\":\"3.17\",\"proto_major\":3,\"proto_minor\":12}",
+		"{\"class\":\"DEVICES\",\"devices\":[{\"class\":\"DEVICE\",\"path\":\"/dev/ttyUSB0\",\"driver\":\"SiRF\",\"activated\":\"2018-05-12T17:01:02.319Z\",\"flags\":1,\"native\":1,\"bps\":4800,\"parity\":\"N\",\"stopbits\":1,\"cycle\":1.00}]}",
+		"{\"class\":\"WATCH\",\"enable\":true,\"json\":true,\"nmea\":false,\"raw\":0,\"scaled\":false,\"timing\":false,\"split24\":false,\"pps\":false}",
+		"{\"class\":\"DEVICE\",\"path\":\"/dev/ttyUSB0\",\"driver\":\"SiRF\",\"activated\":\"2018-05-12T17:01:02.319Z\",\"flags\":1,\"native\":1,\"bps\":4800,\"parity\":\"N\",\"stopbits\":1,\"cycle\":1.00}",
+		"{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"mode\":1}",
+		"{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"mode\":3,\"time\":\"2018-05-12T17:01:04.000Z\",\"ept\":0.005,\"lat\":42.239283474,\"lon\":-88.329418327,\"alt\":268.474,\"epx\":8.473,\"epy\":11.297,\"epv\":30.360,\"track\":0.0000,\"speed\":0.000,\"climb\":0.000,\"eps\":22.59,\"epc\":60.72}",
+		"{\"class\":\"TPV\",\"tag\":\"RMC\",\"device\":\"/dev/ttyACM0\",\"mode\":2,\"time\":\"2018-05-12T17:01:05.000Z\",\"ept\":0.005,\"lat\":42.239285012,\"lon\":-88.329420880,\"epx\":9.160,\"epy\":12.105,\"track\":231.2100,\"speed\":0.232,\"eps\":24.21}",
+		"{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"mode\":3,\"time\":\"2018-05-12T17:01:06.12Z\",\"lat\":4.2e1,\"lon\":-8.83294E+1,\"alt\":-0.5,\"epd\":12.345678901234567,\"climb\":-0}",
+		"{\"device\":\"/dev/ttyUSB0\",\"lat\":42.5,\"class\":\"TPV\",\"mode\":\"3\",\"speed\":\"1.25\",\"time\":1526144466.5,\"extra\":{\"nested\":[1,2,{\"a\":\"}\"}]}}",
+		"{\"class\":\"TPV\",\"tag\":\"G\\u0050S\\\"\\\\x\",\"device\":null,\"mode\":3,\"lat\":true,\"lon\":123456789012345678901234567890}",
+		"{ \"class\" : \"TPV\" , \"device\" : \"/dev/ttyUSB0\" , \"mode\" : 3 , \"lat\" : 42.239283474 }",
+		"{\"class\":\"SKY\",\"device\":\"/dev/ttyUSB0\",\"xdop\":0.72,\"ydop\":0.93,\"vdop\":1.67,\"tdop\":1.02,\"hdop\":1.05,\"gdop\":2.31,\"pdop\":1.97,\"satellites\":[{\"PRN\":7,\"el\":44,\"az\":306,\"ss\":29,\"used\":true},{\"PRN\":8,\"el\":18,\"az\":267,\"ss\":22,\"used\":true},{\"PRN\":9,\"el\":8,\"az\":173,\"ss\":0,\"used\":false},{\"PRN\":30,\"el\":70,\"az\":52,\"ss\":31,\"used\":true},{\"PRN\":133,\"el\":33,\"az\":235,\"ss\":0,\"used\":false}]}",
+		"{\"class\":\"SKY\",\"device\":\"/dev/ttyACM0\",\"time\":\"2018-05-12T17:01:07.000Z\",\"xdop\":0.84,\"hdop\":1.05,\"satellites\":[{\"PRN\":1,\"el\":61.5,\"az\":\"12\",\"ss\":35.0,\"used\":\"TRUE\",\"gnssid\":0,\"svid\":1}]}",
+		"{\"class\":\"SKY\",\"device\":\"/dev/ttyUSB0\",\"hdop\":1.05,\"satellites\":[]}",
+		"{\"class\":\"SKY\",\"device\":\"/dev/ttyUSB0\",\"hdop\":1.05}",
+		"{\"class\":\"GST\",\"device\":\"/dev/ttyUSB0\",\"time\":\"2010-12-07T10:23:07.096Z\",\"rms\":2.440,\"major\":1.660,\"minor\":1.120,\"orient\":68.989,\"lat\":1.600,\"lon\":1.200,\"alt\":2.520}",
+		"{\"class\":\"ATT\",\"tag\":\"PTNTHTM\",\"device\":\"/dev/pts/1\",\"time\":\"2018-05-12T17:01:08.000Z\",\"heading\":14223.00,\"mag_st\":\"C\",\"pitch\":169.00,\"pitch_st\":\"N\",\"roll\":-43.00,\"roll_st\":\"N\",\"dip\":4262.00,\"mag_x\":1.5,\"mag_y\":-2.25,\"mag_z\":0.125,\"acc_x\":0.01,\"acc_y\":0.02,\"acc_z\":9.81,\"acc_len\":9.81,\"mag_len\":3.0,\"gyro_x\":0.5,\"gyro_y\":-0.5,\"yaw\":12.0,\"yaw_st\":\"N\",\"depth\":1.25,\"temperature\":21.5}",
+		"{\"class\":\"POLL\",\"time\":\"2018-05-12T17:01:09.000Z\",\"active\":1,\"tpv\":[{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"mode\":3,\"lat\":42.2,\"lon\":-88.3}],\"sky\":[{\"class\":\"SKY\",\"device\":\"/dev/ttyUSB0\",\"hdop\":1.05,\"satellites\":[]}]}",
+		"{\"class\":\"SUBFRAME\",\"device\":\"/dev/ttyUSB0\",\"tSV\":7,\"TOW17\":112230,\"frame\":1,\"scaled\":true,\"EPHEM1\":{\"WN\":1000,\"IODC\":50,\"L2\":1,\"ura\":0,\"hlth\":0,\"L2P\":0,\"Tgd\":-1.0E-8,\"toc\":331200,\"af2\":0.0,\"af1\":-2.2E-12,\"af0\":2.3E-4}}"
+	};
+
+	private final ResultParser reference = new ResultParser();
+
+	private final StreamingResultParser streaming = new StreamingResultParser();
+
+	@Test
+	public void corpusMatchesResultParser() throws ParseException {
+		for (final String line : CORPUS) {
+			final IGPSObject expected = this.reference.parse(line);
+			final IGPSObject actual = this.streaming.parse(line);
+
+			assertEquals(line, expected.getClass(), actual.getClass());
+			assertEquals(line, expected.toString(), actual.toString());
+			if (expected instanceof TPVObject) {
+				assertEquals(line, expected, actual);
+				assertEquals(line, ((TPVObject) expected).getTimestampText(), ((TPVObject) actual).getTimestampText());
+				assertEquals(line, ((TPVObject) expected).getMode(), ((TPVObject) actual).getMode());
+			} else if (expected instanceof SKYObject) {
+				assertEquals(line, expected, actual);
+				assertEquals(line, ((SKYObject) expected).getSatellites(), ((SKYObject) actual).getSatellites());
+			}
+		}
+	}
+
+	@Test
+	public void parsesCharSequence() throws ParseException {
+		final StringBuilder line = new StringBuilder(CORPUS[5]);
+		assertEquals(this.reference.parse(CORPUS[5]), this.streaming.parse(line));
+	}
+
+	@Test
+	public void reusesDeviceNames() throws ParseException {
+		final TPVObject first = (TPVObject) this.streaming.parse(CORPUS[5]);
+		final TPVObject second = (TPVObject) this.streaming.parse(new String(CORPUS[5]));
+		assertSame(first.getDevice(), second.getDevice());
+	}
+
+	@Test(expected = ParseException.class)
+	public void rejectsTruncatedLine() throws ParseException {
+		this.streaming.parse("{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"lat\":42.2");
+	}
+
+	@Test(expected = ParseException.class)
+	public void rejectsUnknownClass() throws ParseException {
+		this.streaming.parse("{\"class\":\"BOGUS\"}");
+	}
+}
@@ -0,0 +1,157 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * TimerWheelTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.traviscons.GPSTrackPoints.backend.TimerWheel;
+
+/**
+ * JUnit tests for TimerWheel.
+ */
+public class TimerWheelTest {
+
+	private TimerWheel wheel;
+
+	@After
+	public void tearDown() {
+		if (this.wheel != null) {
+			this.wheel.shutdown();
+		}
+	}
+
+	private Runnable record(final List<Integer> order, final int id, final CountDownLatch done) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				order.add(id);
+				done.countDown();
+			}
+		};
+	}
+
+	@Test
+	public void runsInDeadlineOrderAndNeverEarly() throws Exception {
+		this.wheel = new TimerWheel();
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(4);
+		final long start = System.nanoTime();
+		final long[] ranAt = new long[1];
+		this.wheel.schedule(this.record(order, 3, done), 120, TimeUnit.MILLISECONDS);
+		this.wheel.schedule(this.record(order, 1, done), 20, TimeUnit.MILLISECONDS);
+		this.wheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				ranAt[0] = System.nanoTime();
+				order.add(4);
+				done.countDown();
+			}
+		}, 300, TimeUnit.MILLISECONDS);
+		this.wheel.schedule(this.record(order, 2, done), 60, TimeUnit.MILLISECONDS);
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(1, 2, 3, 4), order);
+		assertTrue(ranAt[0] - start >= TimeUnit.MILLISECONDS.toNanos(300));
+		assertEquals(0, this.wheel.getPending());
+	}
+
+	@Test
+	public void cancelledTaskDoesNotRun() throws Exception {
+		this.wheel = new TimerWheel();
+		final AtomicInteger runs = new AtomicInteger();
+		final Runnable count = new Runnable() {
+			@Override
+			public void run() {
+				runs.incrementAndGet();
+			}
+		};
+		final TimerWheel.Timeout cancelled = this.wheel.schedule(count, 50, TimeUnit.MILLISECONDS);
+		final TimerWheel.Timeout kept = this.wheel.schedule(count, 50, TimeUnit.MILLISECONDS);
+		assertEquals(2, this.wheel.getPending());
+
+		assertTrue(cancelled.cancel());
+		assertFalse(cancelled.cancel());
+		assertTrue(cancelled.isCancelled());
+		assertEquals(1, this.wheel.getPending());
+
+		Thread.sleep(200);
+		assertEquals(1, runs.get());
+		assertTrue(kept.isExpired());
+		// too late, the task has run
+		assertFalse(kept.cancel());
+		assertFalse(kept.isCancelled());
+	}
+
+	@Test
+	public void longDelaysMoveThroughTheOuterWheels() throws Exception {
+		// a 10 us tick puts 50 ms in the second wheel and 1 s in the third
+		this.wheel = new TimerWheel("test wheel", TimeUnit.MICROSECONDS.toNanos(10));
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(3);
+		final long start = System.nanoTime();
+		this.wheel.schedule(this.record(order, 3, done), 1000, TimeUnit.MILLISECONDS);
+		this.wheel.schedule(this.record(order, 2, done), 50, TimeUnit.MILLISECONDS);
+		this.wheel.schedule(this.record(order, 1, done), 1, TimeUnit.MILLISECONDS);
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(1000));
+		assertEquals(Arrays.asList(1, 2, 3), order);
+	}
+
+	@Test
+	public void taskScheduledFromATaskRuns() throws Exception {
+		this.wheel = new TimerWheel();
+		final CountDownLatch done = new CountDownLatch(1);
+		this.wheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				TimerWheelTest.this.wheel.schedule(new Runnable() {
+					@Override
+					public void run() {
+						done.countDown();
+					}
+				}, 10, TimeUnit.MILLISECONDS);
+				throw new IllegalStateException("logged, the wheel keeps running");
+			}
+		}, 10, TimeUnit.MILLISECONDS);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void shutDownWheelRejects() {
+		this.wheel = new TimerWheel();
+		this.wheel.shutdown();
+		this.wheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				//
+			}
+		}, 10, TimeUnit.MILLISECONDS);
+	}
+}
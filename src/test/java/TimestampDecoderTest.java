@@ -0,0 +1,109 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * TimestampDecoderTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.TimeZone;
+
+import com.traviscons.GPSTrackPoints.backend.TimestampDecoder;
+
+/**
+ * JUnit tests for the GPSd timestamp decoder.
+ */
+public class TimestampDecoderTest {
+
+	@Test
+	public void matchesSimpleDateFormat() throws Exception {
+		final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		final TimestampDecoder decoder = new TimestampDecoder();
+		final Random random = new Random(2018);
+
+		for (int i = 0; i < 10000; i++) {
+			// anywhere from 1980 to 2100, out of order so the day cache is exercised both ways
+			final long millis = 315532800000L + (long) (random.nextDouble() * 3786912000000L);
+			final String text = dateFormat.format(new java.util.Date(millis));
+			assertEquals(text, millis / 1000.0, decoder.decode(text), 0.0);
+			assertEquals(text, millis / 1000.0, decoder.decode(text), 0.0);
+		}
+	}
+
+	@Test
+	public void variableFraction() {
+		final TimestampDecoder decoder = new TimestampDecoder();
+		assertEquals(1526144464.0, decoder.decode("2018-05-12T17:01:04Z"), 0.0);
+		assertEquals(1526144464.5, decoder.decode("2018-05-12T17:01:04.5Z"), 0.0);
+		assertEquals(1526144464.12, decoder.decode("2018-05-12T17:01:04.12Z"), 0.0);
+		assertEquals(1526144464.123456, decoder.decode("2018-05-12T17:01:04.123456Z"), 1e-6);
+		assertEquals(1526144464.123456789, decoder.decode("2018-05-12T17:01:04.1234567891234Z"), 1e-6);
+	}
+
+	@Test
+	public void dayBoundary() {
+		final TimestampDecoder decoder = new TimestampDecoder();
+		assertEquals(1546300799.9, decoder.decode("2018-12-31T23:59:59.9Z"), 0.0);
+		assertEquals(1546300800.0, decoder.decode("2019-01-01T00:00:00.000Z"), 0.0);
+		assertEquals(951782400.0, decoder.decode("2000-02-29T00:00:00Z"), 0.0);
+		assertEquals(0.0, decoder.decode("1970-01-01T00:00:00.000Z"), 0.0);
+	}
+
+	@Test
+	public void rejectsOtherShapes() {
+		final TimestampDecoder decoder = new TimestampDecoder();
+		assertTrue(Double.isNaN(decoder.decode("1526144464.5")));
+		assertTrue(Double.isNaN(decoder.decode("2018-05-12 17:01:04.000Z")));
+		assertTrue(Double.isNaN(decoder.decode("2018-05-12T17:01:04.000+01:00")));
+		assertTrue(Double.isNaN(decoder.decode("2018-05-12T17:01:04.Z")));
+		assertTrue(Double.isNaN(decoder.decode("2018-13-12T17:01:04.000Z")));
+		assertTrue(Double.isNaN(decoder.decode("")));
+	}
+
+	@Test
+	public void sharedBetweenThreads() throws Exception {
+		final TimestampDecoder decoder = new TimestampDecoder();
+		final String[] days = {"2018-05-12T17:01:04.250Z", "2018-05-13T17:01:04.250Z", "2018-05-14T17:01:04.250Z"};
+		final double[] expected = {1526144464.25, 1526230864.25, 1526317264.25};
+		final boolean[] failed = new boolean[1];
+
+		final Thread[] threads = new Thread[days.length];
+		for (int t = 0; t < threads.length; t++) {
+			final int index = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 100000; i++) {
+						if (decoder.decode(days[index]) != expected[index]) {
+							failed[0] = true;
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		assertFalse(failed[0]);
+	}
+}
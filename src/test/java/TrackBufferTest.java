@@ -0,0 +1,116 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * TrackBufferTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import com.traviscons.GPSTrackPoints.backend.GeodesicEngine;
+import com.traviscons.GPSTrackPoints.backend.StreamingResultParser;
+import com.traviscons.GPSTrackPoints.backend.TrackBuffer;
+import com.traviscons.GPSTrackPoints.types.ENMEAMode;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * JUnit tests for the columnar TrackBuffer.
+ */
+public class TrackBufferTest {
+
+	private static final String TPV = "{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"mode\":3,\"time\":\"2018-05-12T17:01:04.000Z\",\"ept\":0.005,\"lat\":42.239283474,\"lon\":-88.329418327,\"alt\":268.474,\"epx\":3.2,\"epy\":4.1,\"epv\":9.5,\"track\":92.5,\"speed\":1.25,\"climb\":0.1}";
+
+	@Test
+	public void appendFromParserMatchesTPVObject() throws Exception {
+		final StreamingResultParser parser = new StreamingResultParser();
+		final TrackBuffer buffer = new TrackBuffer(1);
+
+		assertTrue(parser.appendTPV(TPV, buffer));
+		assertFalse(parser.appendTPV("{\"class\":\"SKY\",\"device\":\"/dev/ttyUSB0\"}", buffer));
+		assertEquals(1, buffer.size());
+
+		final TPVObject tpv = (TPVObject) parser.parse(TPV);
+		final TrackBuffer.Cursor c = buffer.cursor();
+		assertTrue(c.next());
+		assertEquals(tpv.getTimestamp(), c.getTimestamp(), 0.0);
+		assertEquals(tpv.getLatitude(), c.getLatitude(), 0.0);
+		assertEquals(tpv.getLongitude(), c.getLongitude(), 0.0);
+		assertEquals(tpv.getAltitude(), c.getAltitude(), 0.0);
+		assertEquals(tpv.getSpeed(), c.getSpeed(), 0.0);
+		assertEquals(tpv.getCourse(), c.getCourse(), 0.0);
+		assertEquals(tpv.getLongitudeError(), c.getLongitudeError(), 1e-6);
+		assertEquals(tpv.getLatitudeError(), c.getLatitudeError(), 1e-6);
+		assertEquals(tpv.getAltitudeError(), c.getAltitudeError(), 1e-6);
+		assertEquals(tpv.getTimestampError(), c.getTimestampError(), 1e-6);
+		assertEquals(ENMEAMode.ThreeDimensional, c.getMode());
+		assertEquals("/dev/ttyUSB0", c.getDevice());
+		assertFalse(c.next());
+	}
+
+	@Test
+	public void growsAndInternsDevices() {
+		final TrackBuffer buffer = new TrackBuffer(2);
+		for (int i = 0; i < 1000; i++) {
+			buffer.append(i, i * 0.001, -i * 0.001, Double.NaN, 1, 2, 0, 3, 4, 5, 2, ((i % 2) == 0) ? "/dev/a" : "/dev/b");
+		}
+		buffer.append(new TPVObject());
+		assertEquals(1001, buffer.size());
+		assertEquals(2, buffer.getDeviceCount());
+
+		final TrackBuffer.Cursor c = buffer.cursor();
+		int count = 0;
+		while (c.next()) {
+			if (c.getIndex() < 1000) {
+				assertEquals(c.getIndex() * 0.001, c.getLatitude(), 0.0);
+				assertEquals((c.getIndex() % 2) == 0 ? "/dev/a" : "/dev/b", c.getDevice());
+			}
+			count++;
+		}
+		assertEquals(1001, count);
+
+		c.moveTo(1000);
+		assertNull(c.getDevice());
+		assertTrue(Double.isNaN(c.getLatitude()));
+		assertEquals(ENMEAMode.NotSeen, c.getMode());
+		assertEquals(2, buffer.intern("/dev/c"));
+
+		buffer.trimToSize();
+		assertEquals(1001, buffer.capacity());
+	}
+
+	@Test
+	public void columnsFeedGeodesicEngine() {
+		final TrackBuffer buffer = new TrackBuffer();
+		final TPVObject tpv = new TPVObject();
+		tpv.setLatitude(42.0);
+		tpv.setLongitude(-88.0);
+		buffer.append(tpv);
+		tpv.setLatitude(42.01);
+		buffer.append(tpv);
+
+		final GeodesicEngine engine = new GeodesicEngine(GeodesicEngine.Model.SPHERICAL, false);
+		assertEquals(engine.distance(42.0, -88.0, 42.01, -88.0), buffer.length(engine), 1e-9);
+
+		final TPVObject copy = buffer.toTPV(1);
+		assertEquals(42.01, copy.getLatitude(), 0.0);
+		assertNull(copy.getDevice());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void moveOutOfRange() {
+		new TrackBuffer().cursor().moveTo(0);
+	}
+}
@@ -0,0 +1,181 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * TrackJournalTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.backend.JournalExporter;
+import com.traviscons.GPSTrackPoints.backend.TrackJournal;
+import com.traviscons.GPSTrackPoints.types.ENMEAMode;
+import com.traviscons.GPSTrackPoints.types.SATObject;
+import com.traviscons.GPSTrackPoints.types.SKYObject;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * JUnit tests for the binary TrackJournal and the GPX export.
+ */
+public class TrackJournalTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		this.file = File.createTempFile("TrackJournalTest", ".journal");
+	}
+
+	@After
+	public void tearDown() {
+		this.file.delete();
+	}
+
+	private static TPVObject fix(final int i) {
+		final TPVObject tpv = new TPVObject();
+		tpv.setDevice("/dev/ttyUSB0");
+		tpv.setMode(ENMEAMode.ThreeDimensional);
+		tpv.setTimestamp(1526144464.0 + (i * 0.1));
+		tpv.setLatitude(42.0 + (i * 0.0001));
+		tpv.setLongitude(-88.0);
+		tpv.setAltitude(268.5);
+		tpv.setSpeed(1.5);
+		tpv.setLatitudeError(4.0);
+		return tpv;
+	}
+
+	private static class Collector extends ObjectListener {
+		final List<TPVObject> tpvs = new ArrayList<TPVObject>();
+
+		final List<SKYObject> skys = new ArrayList<SKYObject>();
+
+		Collector() {
+			super(null, null, null);
+		}
+
+		@Override
+		public void handleTPV(final TPVObject tpv) {
+			this.tpvs.add(tpv);
+		}
+
+		@Override
+		public void handleSKY(final SKYObject sky) {
+			this.skys.add(sky);
+		}
+	}
+
+	@Test
+	public void roundTripAcrossBlocksAndWindows() throws Exception {
+		final TrackJournal journal = new TrackJournal(this.file.getPath(), 2);
+		for (int i = 0; i < 500; i++) {
+			journal.append(fix(i));
+		}
+		final SKYObject sky = new SKYObject();
+		sky.setHorizontalDOP(1.25);
+		final List<SATObject> sats = new ArrayList<SATObject>();
+		sats.add(new SATObject());
+		sky.setSatellites(sats);
+		journal.append(sky);
+		journal.close();
+		journal.close();
+
+		final Collector collector = new Collector();
+		assertEquals(501, TrackJournal.replay(this.file.getPath(), collector));
+		assertEquals(500, collector.tpvs.size());
+		for (int i = 0; i < 500; i++) {
+			final TPVObject expected = fix(i);
+			final TPVObject actual = collector.tpvs.get(i);
+			assertEquals(expected.getTimestamp(), actual.getTimestamp(), 0.0);
+			assertEquals(expected.getLatitude(), actual.getLatitude(), 0.0);
+			assertEquals(expected.getLongitude(), actual.getLongitude(), 0.0);
+			assertEquals(expected.getSpeed(), actual.getSpeed(), 1e-6);
+			assertEquals("/dev/ttyUSB0", actual.getDevice());
+			assertEquals(ENMEAMode.ThreeDimensional, actual.getMode());
+			assertTrue(Double.isNaN(actual.getCourse()));
+		}
+		assertEquals("2018-05-12T17:01:04.000Z", collector.tpvs.get(0).getTimestampText());
+		assertEquals(1, collector.skys.size());
+		assertEquals(1.25, collector.skys.get(0).getHorizontalDOP(), 1e-6);
+		assertNull(collector.skys.get(0).getDevice());
+	}
+
+	@Test
+	public void uncommittedRecordsAreLost() throws Exception {
+		final TrackJournal journal = new TrackJournal(this.file.getPath());
+		journal.setFlushInterval(0);
+		for (int i = 0; i < 10; i++) {
+			journal.append(fix(i));
+		}
+		journal.flush();
+		for (int i = 10; i < 20; i++) {
+			journal.append(fix(i));
+		}
+		// simulate a power cut: read the file as it is without closing the journal
+		final Collector collector = new Collector();
+		assertEquals(10, TrackJournal.replay(this.file.getPath(), collector));
+		journal.close();
+	}
+
+	@Test
+	public void corruptBlockEndsTheJournal() throws Exception {
+		final TrackJournal journal = new TrackJournal(this.file.getPath());
+		for (int i = 0; i < 200; i++) {
+			journal.append(fix(i));
+		}
+		journal.close();
+
+		// flip a byte in the second block
+		final RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		final long offset = 32 + 4112 + 16 + 100;
+		raf.seek(offset);
+		final int b = raf.read();
+		raf.seek(offset);
+		raf.write(b ^ 0xFF);
+		raf.close();
+
+		final Collector collector = new Collector();
+		// the first block holds the DEVICE record and 63 fixes
+		assertEquals(63, TrackJournal.replay(this.file.getPath(), collector));
+	}
+
+	@Test
+	public void exportsGPX() throws Exception {
+		final TrackJournal journal = new TrackJournal(this.file.getPath());
+		for (int i = 0; i < 30; i++) {
+			journal.append(fix(i));
+		}
+		journal.close();
+
+		final File gpx = File.createTempFile("TrackJournalTest", ".gpx");
+		try {
+			assertEquals(30, JournalExporter.export(this.file.getPath(), gpx.getPath(), "test", 0));
+			assertEquals(3, JournalExporter.export(this.file.getPath(), gpx.getPath(), "test", 1.0));
+			final String text = new String(Files.readAllBytes(gpx.toPath()), StandardCharsets.UTF_8);
+			assertTrue(text.contains("<time>2018-05-12T17:01:04.000Z</time>"));
+			assertTrue(text.endsWith("</gpx>\n"));
+		} finally {
+			gpx.delete();
+		}
+	}
+}
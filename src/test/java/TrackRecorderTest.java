@@ -0,0 +1,127 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * TrackRecorderTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+
+import com.traviscons.GPSTrackPoints.backend.GPXWriter;
+import com.traviscons.GPSTrackPoints.backend.TrackRecorder;
+import com.traviscons.GPSTrackPoints.types.ENMEAMode;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * JUnit tests for TrackRecorder
+ */
+public class TrackRecorderTest {
+
+	private File file;
+
+	private GPXWriter writer;
+
+	private TrackRecorder recorder;
+
+	@Before
+	public void setUp() throws Exception {
+		this.file = File.createTempFile("TrackRecorderTest", ".gpx");
+		this.writer = new GPXWriter(this.file.getPath(), "test");
+		this.recorder = new TrackRecorder(this.writer);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.writer.close();
+		this.file.delete();
+	}
+
+	/// a 10 Hz fix moving north at about 1.1 m per sample
+	private static TPVObject tpv(final int i, final ENMEAMode mode, final double error) {
+		final TPVObject tpv = new TPVObject();
+		tpv.setTimestamp(1526144464.0 + (i / 10.0));
+		tpv.setLatitude(42.0 + (i * 0.00001));
+		tpv.setLongitude(-88.0);
+		tpv.setAltitude(268.0);
+		tpv.setLatitudeError(error);
+		tpv.setLongitudeError(error);
+		tpv.setMode(mode);
+		return tpv;
+	}
+
+	private Document close() throws Exception {
+		this.writer.close();
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(this.file);
+	}
+
+	@Test
+	public void samplesByTime() throws Exception {
+		this.recorder.setMinInterval(1.0);
+		for (int i = 0; i < 100; i++) {
+			this.recorder.handleTPV(tpv(i, ENMEAMode.ThreeDimensional, 5.0));
+		}
+		// 10 seconds at 10 Hz
+		assertEquals(10, this.recorder.getRecorded());
+		assertEquals(90, this.recorder.getSkipped());
+		assertEquals(10, this.close().getElementsByTagName("trkpt").getLength());
+	}
+
+	@Test
+	public void samplesByDistance() throws Exception {
+		this.recorder.setMinInterval(0);
+		this.recorder.setMinDistance(5.0);
+		for (int i = 0; i < 100; i++) {
+			this.recorder.handleTPV(tpv(i, ENMEAMode.ThreeDimensional, 5.0));
+		}
+		// 1.11 m per sample, a point every fifth sample
+		assertEquals(20, this.recorder.getRecorded());
+	}
+
+	@Test
+	public void dropsInaccurateFixes() throws Exception {
+		this.recorder.setMinInterval(0);
+		this.recorder.setMaxError(20.0);
+		for (int i = 0; i < 10; i++) {
+			this.recorder.handleTPV(tpv(i, ENMEAMode.TwoDimensional, (i % 2 == 0) ? 5.0 : 80.0));
+		}
+		this.recorder.handleTPV(tpv(10, ENMEAMode.ThreeDimensional, Double.NaN));
+		assertEquals(6, this.recorder.getRecorded());
+		assertEquals(5, this.recorder.getSkipped());
+	}
+
+	@Test
+	public void lostFixEndsTheSegment() throws Exception {
+		this.recorder.setMinInterval(0);
+		for (int i = 0; i < 3; i++) {
+			this.recorder.handleTPV(tpv(i, ENMEAMode.ThreeDimensional, 5.0));
+		}
+		this.recorder.handleTPV(tpv(3, ENMEAMode.NoFix, 5.0));
+		this.recorder.handleTPV(tpv(4, ENMEAMode.NoFix, 5.0));
+		for (int i = 5; i < 8; i++) {
+			this.recorder.handleTPV(tpv(i, ENMEAMode.ThreeDimensional, 5.0));
+		}
+		final Document doc = this.close();
+		assertEquals(2, doc.getElementsByTagName("trkseg").getLength());
+		assertEquals(6, doc.getElementsByTagName("trkpt").getLength());
+	}
+}
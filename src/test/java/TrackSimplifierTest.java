@@ -0,0 +1,148 @@
+package com.traviscons.GPSTrackPoints.tests;
+
+/*
+ * TrackSimplifierTest
+ *
+ * Copyright 2018 Travis Marlatte
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.traviscons.GPSTrackPoints.api.ObjectListener;
+import com.traviscons.GPSTrackPoints.backend.GISTool;
+import com.traviscons.GPSTrackPoints.backend.TrackSimplifier;
+import com.traviscons.GPSTrackPoints.types.ENMEAMode;
+import com.traviscons.GPSTrackPoints.types.TPVObject;
+
+/**
+ * JUnit tests for the streaming TrackSimplifier.
+ */
+public class TrackSimplifierTest {
+
+	private static class Collector extends ObjectListener {
+		final List<TPVObject> tpvs = new ArrayList<TPVObject>();
+
+		Collector() {
+			super(null, null, null);
+		}
+
+		@Override
+		public void handleTPV(final TPVObject tpv) {
+			this.tpvs.add(tpv);
+		}
+	}
+
+	private static TPVObject fix(final double lat, final double lon) {
+		final TPVObject tpv = new TPVObject();
+		tpv.setMode(ENMEAMode.ThreeDimensional);
+		tpv.setLatitude(lat);
+		tpv.setLongitude(lon);
+		return tpv;
+	}
+
+	@Test
+	public void crossTrackDistance() {
+		final TPVObject start = fix(42.0, -88.0);
+		final TPVObject end = fix(42.0, -87.99);
+		// 0.0001 degrees of latitude is about 11.1m
+		assertEquals(0.0111, GISTool.getCrossTrackDistance(fix(42.0001, -87.995), start, end), 0.0001);
+		// behind the start and past the end measure to the ends
+		assertEquals(GISTool.getDistance(start, fix(42.0, -88.001)),
+				GISTool.getCrossTrackDistance(fix(42.0, -88.001), start, end), 1e-9);
+		assertEquals(GISTool.getDistance(end, fix(42.0, -87.98)),
+				GISTool.getCrossTrackDistance(fix(42.0, -87.98), start, end), 1e-9);
+		assertEquals(90.0, GISTool.getBearing(start, end), 0.01);
+	}
+
+	@Test
+	public void straightLineKeepsOnlyTheEnds() {
+		final Collector out = new Collector();
+		final TrackSimplifier simplifier = new TrackSimplifier(out, 1.0);
+		for (int i = 0; i <= 100; i++) {
+			// wobble of about 0.5m across a straight northbound line
+			simplifier.handleTPV(fix(42.0 + (i * 0.00001), -88.0 + (((i % 2) == 0) ? 0.000006 : 0)));
+		}
+		simplifier.flush();
+		assertEquals(2, out.tpvs.size());
+		assertEquals(42.0, out.tpvs.get(0).getLatitude(), 0.0);
+		assertEquals(42.001, out.tpvs.get(1).getLatitude(), 1e-9);
+		assertEquals(101.0 / 2, simplifier.getCompressionRatio(), 1e-9);
+	}
+
+	@Test
+	public void cornerIsKept() {
+		final Collector out = new Collector();
+		final TrackSimplifier simplifier = new TrackSimplifier(out, 1.0);
+		for (int i = 0; i <= 50; i++) {
+			simplifier.handleTPV(fix(42.0 + (i * 0.00001), -88.0));
+		}
+		for (int i = 1; i <= 50; i++) {
+			simplifier.handleTPV(fix(42.0005, -88.0 + (i * 0.00001)));
+		}
+		simplifier.flush();
+		assertEquals(3, out.tpvs.size());
+		// the kept fix is at the corner or one fix past it, still within the tolerance
+		assertTrue(GISTool.getDistance(fix(42.0005, -88.0), out.tpvs.get(1)) < 0.0015);
+	}
+
+	@Test
+	public void badFixesAreDroppedFirst() {
+		final Collector out = new Collector();
+		final TrackSimplifier simplifier = new TrackSimplifier(out, 1.0);
+		simplifier.setMaxError(50.0);
+		final TPVObject bad = fix(42.0, -88.0);
+		bad.setLatitudeError(120.0);
+		simplifier.handleTPV(bad);
+		for (int i = 1; i <= 10; i++) {
+			simplifier.handleTPV(fix(42.0 + (i * 0.00001), -88.001));
+		}
+		final TPVObject off = fix(42.00005, -87.99);
+		off.setLongitudeError(80.0);
+		simplifier.handleTPV(off);
+		simplifier.flush();
+		// the straight line of good fixes, neither bad fix is the anchor or breaks the line
+		assertEquals(2, out.tpvs.size());
+		assertEquals(42.00001, out.tpvs.get(0).getLatitude(), 1e-9);
+		assertEquals(42.0001, out.tpvs.get(1).getLatitude(), 1e-9);
+		assertEquals(10, simplifier.getReceived());
+	}
+
+	@Test
+	public void lostFixAndWindowBound() {
+		final Collector out = new Collector();
+		final TrackSimplifier simplifier = new TrackSimplifier(out, 5.0);
+		simplifier.setMaxWindow(10);
+		for (int i = 0; i < 25; i++) {
+			simplifier.handleTPV(fix(42.0 + (i * 0.00001), -88.0));
+		}
+		// first fix, then every tenth
+		assertEquals(3, out.tpvs.size());
+
+		final TPVObject lost = new TPVObject();
+		lost.setMode(ENMEAMode.NoFix);
+		simplifier.handleTPV(lost);
+		// the pending fix is kept, then the no fix TPV is passed on
+		assertEquals(5, out.tpvs.size());
+		assertEquals(42.00024, out.tpvs.get(3).getLatitude(), 1e-9);
+		assertSame(lost, out.tpvs.get(4));
+
+		simplifier.handleTPV(fix(43.0, -88.0));
+		assertEquals(6, out.tpvs.size());
+		assertEquals(25, simplifier.getReceived() - 1);
+	}
+}